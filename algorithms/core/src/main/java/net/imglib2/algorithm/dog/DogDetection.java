@@ -0,0 +1,395 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.algorithm.dog;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.imglib2.Interval;
+import net.imglib2.Point;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.gauss3.Gauss3;
+import net.imglib2.algorithm.gauss3.SeparableSymmetricConvolution;
+import net.imglib2.exception.IncompatibleTypeException;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.Views;
+
+/**
+ * Difference-of-Gaussian extremum detection in (multiscale) blocks.
+ *
+ * <p>
+ * The interval is divided into blocks which are processed independently and in
+ * parallel. For each block, the Gaussian smoothed images at all scales are
+ * computed with {@link Gauss3} on the block plus a one pixel halo, the
+ * differences of adjacent scales are formed, and the extremum test is done,
+ * all while the block is hot in cache. Temporary memory is thus proportional
+ * to the block size, not to the image size.
+ *
+ * <p>
+ * For scales <em>s<sub>0</sub> &lt; s<sub>1</sub> &lt; ... &lt;
+ * s<sub>k</sub></em> the DoG at level <em>i</em> is <em>(G(s<sub>i</sub>) -
+ * G(s<sub>i+1</sub>)) / (s<sub>i+1</sub> / s<sub>i</sub> - 1)</em>. The
+ * normalization makes levels approximate the scale-normalized (negative)
+ * Laplacian of Gaussian, so responses are comparable across scales. Bright
+ * blobs are maxima, dark blobs are minima.
+ */
+public class DogDetection
+{
+	public static enum ExtremaType
+	{
+		/**
+		 * Detect bright blobs, i.e. maxima of the DoG with a value &ge; the
+		 * threshold.
+		 */
+		MAXIMA,
+		/**
+		 * Detect dark blobs, i.e. minima of the DoG with a value &le; -the
+		 * threshold.
+		 */
+		MINIMA
+	}
+
+	/**
+	 * A detected DoG extremum.
+	 */
+	public static class Peak extends Point
+	{
+		private final int scale;
+
+		private final double value;
+
+		public Peak( final long[] position, final int scale, final double value )
+		{
+			super( position );
+			this.scale = scale;
+			this.value = value;
+		}
+
+		/**
+		 * @return index <em>i</em> of the DoG level, i.e. the peak was found
+		 *         in the difference of scales <em>i</em> and <em>i+1</em>.
+		 */
+		public int getScale()
+		{
+			return scale;
+		}
+
+		/**
+		 * @return (normalized) DoG value at the peak.
+		 */
+		public double getValue()
+		{
+			return value;
+		}
+	}
+
+	public static final int DEFAULT_BLOCK_SIZE = 64;
+
+	/**
+	 * Detect extrema of the difference of two Gaussians.
+	 *
+	 * @param source
+	 *            source image, must be sufficiently padded (e.g.
+	 *            {@link Views#extendMirrorSingle(RandomAccessibleInterval)}) to
+	 *            provide values for the interval plus a border of half the
+	 *            largest kernel size plus one.
+	 * @param interval
+	 *            interval in which to detect extrema.
+	 * @param sigma1
+	 *            smaller sigma.
+	 * @param sigma2
+	 *            larger sigma.
+	 * @param threshold
+	 *            minimum absolute DoG value of extrema.
+	 * @param type
+	 *            whether to detect maxima or minima.
+	 * @param numThreads
+	 *            how many threads to use for the computation.
+	 * @return detected extrema.
+	 */
+	public static < T extends RealType< T > > ArrayList< Peak > detect( final RandomAccessible< T > source, final Interval interval, final double sigma1, final double sigma2, final double threshold, final ExtremaType type, final int numThreads )
+	{
+		final int[] blockSize = new int[ interval.numDimensions() ];
+		for ( int d = 0; d < blockSize.length; ++d )
+			blockSize[ d ] = DEFAULT_BLOCK_SIZE;
+		return detect( source, interval, new double[] { sigma1, sigma2 }, threshold, type, false, blockSize, numThreads );
+	}
+
+	/**
+	 * Detect extrema of differences of Gaussians at multiple scales.
+	 *
+	 * @param source
+	 *            source image, must be sufficiently padded (e.g.
+	 *            {@link Views#extendMirrorSingle(RandomAccessibleInterval)}) to
+	 *            provide values for the interval plus a border of half the
+	 *            largest kernel size plus one.
+	 * @param interval
+	 *            interval in which to detect extrema.
+	 * @param sigmas
+	 *            strictly increasing scales <em>s<sub>0</sub> ...
+	 *            s<sub>k</sub></em>. DoG levels are computed between each pair
+	 *            of adjacent scales.
+	 * @param threshold
+	 *            minimum absolute (normalized) DoG value of extrema.
+	 * @param type
+	 *            whether to detect maxima or minima.
+	 * @param scaleSpace
+	 *            if true, extrema are tested against the 3<sup>n+1</sup>
+	 *            neighborhood in space and scale, and only inner DoG levels
+	 *            (those with two neighboring levels) are searched. If false,
+	 *            every DoG level is searched for extrema in its 3<sup>n</sup>
+	 *            spatial neighborhood.
+	 * @param blockSize
+	 *            size of blocks in every dimension.
+	 * @param numThreads
+	 *            how many threads to use for the computation.
+	 * @return detected extrema, ordered by block.
+	 */
+	public static < T extends RealType< T > > ArrayList< Peak > detect( final RandomAccessible< T > source, final Interval interval, final double[] sigmas, final double threshold, final ExtremaType type, final boolean scaleSpace, final int[] blockSize, final int numThreads )
+	{
+		final int n = interval.numDimensions();
+		if ( sigmas.length < ( scaleSpace ? 4 : 2 ) )
+			throw new IllegalArgumentException( "need at least " + ( scaleSpace ? 4 : 2 ) + " scales" );
+		for ( int i = 1; i < sigmas.length; ++i )
+			if ( sigmas[ i ] <= sigmas[ i - 1 ] )
+				throw new IllegalArgumentException( "scales must be strictly increasing" );
+		if ( blockSize.length != n )
+			throw new IllegalArgumentException( "block size must be given for every dimension" );
+
+		final long[] numBlocks = new long[ n ];
+		long totalBlocks = 1;
+		for ( int d = 0; d < n; ++d )
+		{
+			numBlocks[ d ] = ( interval.dimension( d ) + blockSize[ d ] - 1 ) / blockSize[ d ];
+			totalBlocks *= numBlocks[ d ];
+		}
+
+		final ExecutorService ex = Executors.newFixedThreadPool( numThreads );
+		final ArrayList< Future< ArrayList< Peak > > > futures = new ArrayList< Future< ArrayList< Peak > > >();
+		final long[] blockPos = new long[ n ];
+		for ( long b = 0; b < totalBlocks; ++b )
+		{
+			final long[] min = new long[ n ];
+			final long[] max = new long[ n ];
+			for ( int d = 0; d < n; ++d )
+			{
+				min[ d ] = interval.min( d ) + blockPos[ d ] * blockSize[ d ];
+				max[ d ] = Math.min( min[ d ] + blockSize[ d ] - 1, interval.max( d ) );
+			}
+			futures.add( ex.submit( new Callable< ArrayList< Peak > >()
+			{
+				@Override
+				public ArrayList< Peak > call()
+				{
+					return detectInBlock( source, min, max, sigmas, threshold, type, scaleSpace );
+				}
+			} ) );
+			for ( int d = 0; d < n; ++d )
+			{
+				if ( ++blockPos[ d ] < numBlocks[ d ] )
+					break;
+				blockPos[ d ] = 0;
+			}
+		}
+
+		final ArrayList< Peak > peaks = new ArrayList< Peak >();
+		try
+		{
+			for ( final Future< ArrayList< Peak > > f : futures )
+				peaks.addAll( f.get() );
+		}
+		catch ( final InterruptedException e )
+		{
+			throw new RuntimeException( e );
+		}
+		catch ( final ExecutionException e )
+		{
+			throw new RuntimeException( e.getCause() );
+		}
+		finally
+		{
+			ex.shutdown();
+		}
+		return peaks;
+	}
+
+	/**
+	 * Compute DoG levels on the block [min, max] plus a one pixel halo and find
+	 * extrema in the block.
+	 */
+	static < T extends RealType< T > > ArrayList< Peak > detectInBlock( final RandomAccessible< T > source, final long[] min, final long[] max, final double[] sigmas, final double threshold, final ExtremaType type, final boolean scaleSpace )
+	{
+		final int n = min.length;
+		final long[] haloMin = new long[ n ];
+		final long[] haloDim = new long[ n ];
+		final int[] steps = new int[ n ];
+		int size = 1;
+		for ( int d = 0; d < n; ++d )
+		{
+			haloMin[ d ] = min[ d ] - 1;
+			haloDim[ d ] = max[ d ] - min[ d ] + 3;
+			steps[ d ] = size;
+			size *= haloDim[ d ];
+		}
+
+		// DoG levels, computed one Gaussian at a time
+		final int numLevels = sigmas.length - 1;
+		final float[][] dogs = new float[ numLevels ][];
+		float[] previous = gauss( source, sigmas[ 0 ], haloMin, haloDim, size );
+		for ( int i = 0; i < numLevels; ++i )
+		{
+			final float[] current = gauss( source, sigmas[ i + 1 ], haloMin, haloDim, size );
+			final float norm = ( float ) ( 1.0 / ( sigmas[ i + 1 ] / sigmas[ i ] - 1 ) );
+			for ( int j = 0; j < size; ++j )
+				previous[ j ] = ( previous[ j ] - current[ j ] ) * norm;
+			dogs[ i ] = previous;
+			previous = current;
+		}
+
+		// offsets of the 3^n neighborhood, center first
+		final int numNeighbors = ( int ) Math.pow( 3, n );
+		final int[] offsets = new int[ numNeighbors ];
+		final int[] pos = new int[ n ];
+		for ( int d = 0; d < n; ++d )
+			pos[ d ] = -1;
+		for ( int k = 0; k < numNeighbors; ++k )
+		{
+			for ( int d = 0; d < n; ++d )
+				offsets[ k ] += pos[ d ] * steps[ d ];
+			for ( int d = 0; d < n; ++d )
+			{
+				if ( ++pos[ d ] <= 1 )
+					break;
+				pos[ d ] = -1;
+			}
+		}
+		final int center = numNeighbors / 2;
+		offsets[ center ] = offsets[ 0 ];
+		offsets[ 0 ] = 0;
+
+		final float sign = type == ExtremaType.MAXIMA ? 1 : -1;
+		final float t = ( float ) threshold;
+		final int firstLevel = scaleSpace ? 1 : 0;
+		final int lastLevel = scaleSpace ? numLevels - 2 : numLevels - 1;
+
+		final ArrayList< Peak > peaks = new ArrayList< Peak >();
+		final long[] blockDim = new long[ n ];
+		long blockSize = 1;
+		for ( int d = 0; d < n; ++d )
+		{
+			blockDim[ d ] = max[ d ] - min[ d ] + 1;
+			blockSize *= blockDim[ d ];
+		}
+		final long[] p = new long[ n ];
+		for ( long b = 0; b < blockSize; ++b )
+		{
+			int index = 0;
+			for ( int d = 0; d < n; ++d )
+				index += ( p[ d ] + 1 ) * steps[ d ];
+
+			for ( int level = firstLevel; level <= lastLevel; ++level )
+			{
+				final float v = sign * dogs[ level ][ index ];
+				if ( v >= t && isExtremum( v, sign, index, dogs, level, offsets, scaleSpace ) )
+				{
+					final long[] position = new long[ n ];
+					for ( int d = 0; d < n; ++d )
+						position[ d ] = min[ d ] + p[ d ];
+					peaks.add( new Peak( position, level, dogs[ level ][ index ] ) );
+				}
+			}
+
+			for ( int d = 0; d < n; ++d )
+			{
+				if ( ++p[ d ] < blockDim[ d ] )
+					break;
+				p[ d ] = 0;
+			}
+		}
+		return peaks;
+	}
+
+	/**
+	 * Check whether sign * dogs[level][index] (= v) is strictly larger than
+	 * all (sign-multiplied) neighbors.
+	 */
+	private static boolean isExtremum( final float v, final float sign, final int index, final float[][] dogs, final int level, final int[] offsets, final boolean scaleSpace )
+	{
+		final float[] dog = dogs[ level ];
+		for ( int k = 1; k < offsets.length; ++k )
+			if ( sign * dog[ index + offsets[ k ] ] >= v )
+				return false;
+		if ( scaleSpace )
+		{
+			final float[] below = dogs[ level - 1 ];
+			final float[] above = dogs[ level + 1 ];
+			for ( int k = 0; k < offsets.length; ++k )
+				if ( sign * below[ index + offsets[ k ] ] >= v || sign * above[ index + offsets[ k ] ] >= v )
+					return false;
+		}
+		return true;
+	}
+
+	private static < T extends RealType< T > > float[] gauss( final RandomAccessible< T > source, final double sigma, final long[] min, final long[] dim, final int size )
+	{
+		final int n = min.length;
+		final double[] s = new double[ n ];
+		for ( int d = 0; d < n; ++d )
+			s[ d ] = sigma;
+		final float[] data = new float[ size ];
+		final RandomAccessibleInterval< FloatType > target = Views.translate( ArrayImgs.floats( data, dim ), min );
+		try
+		{
+			SeparableSymmetricConvolution.convolve( Gauss3.halfkernels( s ), source, target, 1 );
+		}
+		catch ( final IncompatibleTypeException e )
+		{
+			// cannot happen, RealType source into FloatType target
+			throw new RuntimeException( e );
+		}
+		return data;
+	}
+}
@@ -0,0 +1,208 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.algorithm.edge;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A list of {@link Edgel edgels} stored in columns of primitive arrays: the
+ * sub-pixel positions, gradient directions and gradient magnitudes of all
+ * edgels are each kept in one <code>float[]</code>. {@link Edgel} objects are
+ * only created on demand by {@link #get(int)} and {@link #toEdgels()}.
+ */
+public class EdgelList
+{
+	private final int n;
+
+	private int size;
+
+	private float[] positions;
+
+	private float[] gradients;
+
+	private float[] magnitudes;
+
+	public EdgelList( final int numDimensions )
+	{
+		this( numDimensions, 16 );
+	}
+
+	public EdgelList( final int numDimensions, final int initialCapacity )
+	{
+		n = numDimensions;
+		size = 0;
+		final int capacity = Math.max( 1, initialCapacity );
+		positions = new float[ capacity * n ];
+		gradients = new float[ capacity * n ];
+		magnitudes = new float[ capacity ];
+	}
+
+	public int numDimensions()
+	{
+		return n;
+	}
+
+	/**
+	 * @return the number of edgels in the list.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Append an edgel.
+	 *
+	 * @param position
+	 *            the sub-pixel position of the edgel.
+	 * @param gradient
+	 *            the gradient direction (a unit vector) at the edgel position.
+	 * @param magnitude
+	 *            the gradient magnitude at the edgel position.
+	 */
+	public void add( final float[] position, final float[] gradient, final float magnitude )
+	{
+		ensureCapacity( size + 1 );
+		System.arraycopy( position, 0, positions, size * n, n );
+		System.arraycopy( gradient, 0, gradients, size * n, n );
+		magnitudes[ size ] = magnitude;
+		++size;
+	}
+
+	/**
+	 * Append all edgels of another list.
+	 */
+	public void addAll( final EdgelList edgels )
+	{
+		addAll( edgels, 0, edgels.size );
+	}
+
+	/**
+	 * Append <em>count</em> edgels of another list, starting with edgel
+	 * <em>from</em>.
+	 */
+	public void addAll( final EdgelList edgels, final int from, final int count )
+	{
+		if ( edgels.n != n )
+			throw new IllegalArgumentException( "Expected edgels with " + n + " dimensions." );
+		if ( from < 0 || count < 0 || from + count > edgels.size )
+			throw new IndexOutOfBoundsException( "Edgels " + from + " to " + ( from + count ) + " of a list of " + edgels.size + "." );
+		ensureCapacity( size + count );
+		System.arraycopy( edgels.positions, from * n, positions, size * n, count * n );
+		System.arraycopy( edgels.gradients, from * n, gradients, size * n, count * n );
+		System.arraycopy( edgels.magnitudes, from, magnitudes, size, count );
+		size += count;
+	}
+
+	public float getPosition( final int i, final int d )
+	{
+		return positions[ i * n + d ];
+	}
+
+	public float getGradient( final int i, final int d )
+	{
+		return gradients[ i * n + d ];
+	}
+
+	public float getMagnitude( final int i )
+	{
+		return magnitudes[ i ];
+	}
+
+	/**
+	 * Get the positions of all edgels. The position of edgel <em>i</em> in
+	 * dimension <em>d</em> is at index <em>i * numDimensions() + d</em>. The
+	 * returned array is the storage of this list and may be longer than
+	 * <em>size() * numDimensions()</em>.
+	 */
+	public float[] getPositions()
+	{
+		return positions;
+	}
+
+	/**
+	 * Get the gradient directions of all edgels, in the same layout as
+	 * {@link #getPositions()}.
+	 */
+	public float[] getGradients()
+	{
+		return gradients;
+	}
+
+	/**
+	 * Get the gradient magnitudes of all edgels. The returned array is the
+	 * storage of this list and may be longer than <em>size()</em>.
+	 */
+	public float[] getMagnitudes()
+	{
+		return magnitudes;
+	}
+
+	/**
+	 * Create an {@link Edgel} for the i-th edgel of the list.
+	 */
+	public Edgel get( final int i )
+	{
+		final float[] position = Arrays.copyOfRange( positions, i * n, i * n + n );
+		final float[] gradient = Arrays.copyOfRange( gradients, i * n, i * n + n );
+		return new Edgel( position, gradient, magnitudes[ i ] );
+	}
+
+	/**
+	 * Create {@link Edgel} objects for all edgels of the list.
+	 */
+	public ArrayList< Edgel > toEdgels()
+	{
+		final ArrayList< Edgel > edgels = new ArrayList< Edgel >( size );
+		for ( int i = 0; i < size; ++i )
+			edgels.add( get( i ) );
+		return edgels;
+	}
+
+	private void ensureCapacity( final int capacity )
+	{
+		if ( capacity > magnitudes.length )
+		{
+			final int newCapacity = Math.max( capacity, 2 * magnitudes.length );
+			positions = Arrays.copyOf( positions, newCapacity * n );
+			gradients = Arrays.copyOf( gradients, newCapacity * n );
+			magnitudes = Arrays.copyOf( magnitudes, newCapacity );
+		}
+	}
+}
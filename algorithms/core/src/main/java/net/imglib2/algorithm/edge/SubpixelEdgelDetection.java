@@ -38,15 +38,16 @@
 package net.imglib2.algorithm.edge;
 
 import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import net.imglib2.Cursor;
 import net.imglib2.Interval;
-import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessibleInterval;
-import net.imglib2.RealRandomAccess;
-import net.imglib2.algorithm.gradient.PartialDerivative;
-import net.imglib2.img.Img;
 import net.imglib2.img.ImgFactory;
-import net.imglib2.interpolation.randomaccess.NLinearInterpolatorFactory;
 import net.imglib2.type.numeric.RealType;
 import net.imglib2.util.Intervals;
 import net.imglib2.view.Views;
@@ -61,10 +62,23 @@ import net.imglib2.view.Views;
  * <em>A Non-Maxima Suppression Method for Edge Detection with Sub-Pixel Accuracy</em>,
  * RR 2724, INRIA, nov. 1995</p>
  *
+ * <p>
+ * The image is processed in blocks along all dimensions. For each block,
+ * the input with a border of 2 pixels is copied to a <code>float[]</code>, the
+ * partial derivatives are computed into scratch buffers of the same size, and
+ * the gradient maxima are found and localized in the same pass. Blocks are
+ * processed in parallel, and no full-size gradient image is created.
+ * </p>
+ *
  * @author Tobias Pietzsch <tobias.pietzsch@gmail.com>
  */
 public class SubpixelEdgelDetection
 {
+	/**
+	 * The target number of pixels in a block, including its border.
+	 */
+	public static final int BLOCK_SIZE = 64 * 1024;
+
 	/**
 	 * Compute the set of sub-pixel edgels for the input image. A pixel contains
 	 * an edgel if its gradient magnitude is a local maximum in the direction of
@@ -75,142 +89,467 @@ public class SubpixelEdgelDetection
 	 * @param input
 	 *            input image
 	 * @param factory
-	 *            used to create an image to store the partial derivatives of
-	 *            the input image
+	 *            not used anymore, the partial derivatives are computed
+	 *            block-wise into <code>float[]</code> buffers.
 	 * @param minGradientMagnitude
 	 *            Only consider a pixel an edgel if the gradient magnitude is
 	 *            greater than this
 	 * @return set of edgels found in the input image
+	 * @deprecated use {@link #getEdgelList(RandomAccessibleInterval, float)},
+	 *             which does not create an object per edgel.
 	 */
+	@Deprecated
 	public static < T extends RealType< T > > ArrayList< Edgel > getEdgels(
 					final RandomAccessibleInterval< T > input,
 					final ImgFactory< T > factory,
 					final float minGradientMagnitude )
+	{
+		return getEdgelList( input, minGradientMagnitude ).toEdgels();
+	}
+
+	/**
+	 * Compute the set of sub-pixel edgels for the input image, using all
+	 * available processors.
+	 *
+	 * @see #getEdgelList(RandomAccessibleInterval, float, int)
+	 */
+	public static < T extends RealType< T > > EdgelList getEdgelList(
+					final RandomAccessibleInterval< T > input,
+					final float minGradientMagnitude )
+	{
+		return getEdgelList( input, minGradientMagnitude, Runtime.getRuntime().availableProcessors() );
+	}
+
+	/**
+	 * Compute the set of sub-pixel edgels for the input image. A pixel contains
+	 * an edgel if its gradient magnitude is a local maximum in the direction of
+	 * the gradient (perpendicular to the edge). The sub-pixel position of the
+	 * edgel is found as the maximum of a quadratic function fitted to the
+	 * neighboring magnitudes in the gradient direction.
+	 *
+	 * Edgels are only found at least 2 pixels away from the image border, and
+	 * are listed in the flat iteration order of their pixels.
+	 *
+	 * @param input
+	 *            input image
+	 * @param minGradientMagnitude
+	 *            Only consider a pixel an edgel if the gradient magnitude is
+	 *            greater than this
+	 * @param numThreads
+	 *            how many threads to use
+	 * @return set of edgels found in the input image
+	 */
+	public static < T extends RealType< T > > EdgelList getEdgelList(
+					final RandomAccessibleInterval< T > input,
+					final float minGradientMagnitude,
+					final int numThreads )
+	{
+		return getEdgelList( input, minGradientMagnitude, numThreads, BLOCK_SIZE );
+	}
+
+	/**
+	 * Compute the set of sub-pixel edgels for the input image, in blocks of
+	 * about <code>blockSize</code> pixels including their border.
+	 */
+	static < T extends RealType< T > > EdgelList getEdgelList(
+					final RandomAccessibleInterval< T > input,
+					final float minGradientMagnitude,
+					final int numThreads,
+					final int blockSize )
 	{
 		// number of dimensions of the input image.
 		final int n = input.numDimensions();
 
-		// Image of n+1 dimensions to store the partial derivatives of the input
-		// image. The (n+1)-th dimension is used to index the partial
-		// derivative. For example, the partial derivative by Y of pixel (a,b,c)
-		// is stored at position (a,b,c,1).
-		final long[] dim = new long[ n + 1 ];
+		// Find gradient maxima. This requires a border of 2 pixels with respect
+		// to the input image
+		final Interval maximaComputationInterval = Intervals.expand( input, -2 );
 		for ( int d = 0; d < n; ++d )
-			dim[ d ] = input.dimension( d );
-		dim[ n ] = n;
-		final Img< T > gradients = factory.create( dim, input.randomAccess().get() );
+			if ( maximaComputationInterval.dimension( d ) <= 0 )
+				return new EdgelList( n );
 
-		// Compute partial derivatives of input in all dimension. This requires
-		// a border of 1 pixel with respect to the input image
-		final Interval gradientComputationInterval = Intervals.expand( input, -1 );
+		// Split the maxima interval into blocks along all dimensions.
+		final long[] blockExtent = blockExtent( maximaComputationInterval, blockSize );
+		final long[] gridSize = new long[ n ];
+		long gridVolume = 1;
 		for ( int d = 0; d < n; ++d )
-			PartialDerivative.gradientCentralDifference( input, Views.interval( Views.hyperSlice( gradients, n, d ), gradientComputationInterval ), d );
+		{
+			gridSize[ d ] = ( maximaComputationInterval.dimension( d ) + blockExtent[ d ] - 1 ) / blockExtent[ d ];
+			gridVolume *= gridSize[ d ];
+		}
+		if ( gridVolume > Integer.MAX_VALUE )
+			throw new IllegalArgumentException( "The image would be split into " + gridVolume + " blocks, which is too many." );
+		final int numBlocks = ( int ) gridVolume;
+		final EdgelList[] blockEdgels = new EdgelList[ numBlocks ];
 
-		// Find gradient maxima. This requires a border of 2 pixels with respect
-		// to the input image
-		final Interval maximaComputationInterval = Intervals.expand( input, -2 );
+		// number of edgels found in each line (along dimension 0) of each
+		// block, to merge the blocks in flat iteration order
+		final int[][] blockLineCounts = new int[ numBlocks ][];
 
-		final ArrayList< Edgel > edgels = new ArrayList< Edgel >();
+		final AtomicInteger nextBlock = new AtomicInteger();
+		final Runnable task = new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				final BlockDetector< T > detector = new BlockDetector< T >( input, minGradientMagnitude );
+				final long[] min = new long[ n ];
+				final long[] max = new long[ n ];
+				for ( int b = nextBlock.getAndIncrement(); b < numBlocks; b = nextBlock.getAndIncrement() )
+				{
+					long g = b;
+					long numLines = 1;
+					for ( int d = 0; d < n; ++d )
+					{
+						min[ d ] = maximaComputationInterval.min( d ) + ( g % gridSize[ d ] ) * blockExtent[ d ];
+						max[ d ] = Math.min( maximaComputationInterval.max( d ), min[ d ] + blockExtent[ d ] - 1 );
+						g /= gridSize[ d ];
+						if ( d > 0 )
+							numLines *= max[ d ] - min[ d ] + 1;
+					}
+					blockLineCounts[ b ] = new int[ ( int ) numLines ];
+					blockEdgels[ b ] = detector.detect( min, max, blockLineCounts[ b ] );
+				}
+			}
+		};
 
-		final long[] min = new long[ n ];
-		maximaComputationInterval.min( min );
-		final long[] max = new long[ n ];
-		maximaComputationInterval.max( max );
-		final long[] shiftback = new long[ n ];
-		for ( int d = 0; d < n; ++d )
-			shiftback[ d ] = min[ d ] - max[ d ];
+		final int numTasks = Math.max( 1, Math.min( numThreads, numBlocks ) );
+		if ( numTasks == 1 )
+		{
+			task.run();
+		}
+		else
+		{
+			final ExecutorService ex = Executors.newFixedThreadPool( numTasks );
+			final ArrayList< Future< ? > > futures = new ArrayList< Future< ? > >();
+			for ( int t = 0; t < numTasks; ++t )
+				futures.add( ex.submit( task ) );
+			try
+			{
+				for ( final Future< ? > f : futures )
+					f.get();
+			}
+			catch ( final InterruptedException e )
+			{
+				throw new RuntimeException( e );
+			}
+			catch ( final ExecutionException e )
+			{
+				throw new RuntimeException( e.getCause() );
+			}
+			finally
+			{
+				ex.shutdown();
+			}
+		}
 
-		final NLinearInterpolatorFactory< T > interpolatorFactory = new NLinearInterpolatorFactory< T >();
-		@SuppressWarnings( "unchecked" )
-		final RealRandomAccess< T >[] gradientAccess = new RealRandomAccess[ n ];
-		for ( int d = 0; d < n; ++d )
-			gradientAccess[ d ] = interpolatorFactory.create( Views.hyperSlice( gradients, n, d ) );
+		int size = 0;
+		for ( final EdgelList e : blockEdgels )
+			size += e.size();
+		final EdgelList edgels = new EdgelList( n, size );
 
-		final RandomAccess< T > src = gradients.randomAccess();
+		// Visit the lines of the maxima interval in flat iteration order, and
+		// append the edgels of each line from the row of blocks containing it.
+		final int[] next = new int[ numBlocks ];
+		final long[] position = new long[ n ];
+		maximaComputationInterval.min( position );
+		while ( true )
+		{
+			long row = 0;
+			long rowStride = gridSize[ 0 ];
+			int line = 0;
+			int lineStride = 1;
+			for ( int d = 1; d < n; ++d )
+			{
+				final long offset = position[ d ] - maximaComputationInterval.min( d );
+				final long g = offset / blockExtent[ d ];
+				row += g * rowStride;
+				rowStride *= gridSize[ d ];
+				line += ( int ) ( offset - g * blockExtent[ d ] ) * lineStride;
+				lineStride *= ( int ) Math.min( blockExtent[ d ], maximaComputationInterval.dimension( d ) - g * blockExtent[ d ] );
+			}
+			for ( int b = ( int ) row; b < row + gridSize[ 0 ]; ++b )
+			{
+				final int count = blockLineCounts[ b ][ line ];
+				edgels.addAll( blockEdgels[ b ], next[ b ], count );
+				next[ b ] += count;
+			}
+
+			int d = 1;
+			for ( ; d < n; ++d )
+			{
+				if ( ++position[ d ] <= maximaComputationInterval.max( d ) )
+					break;
+				position[ d ] = maximaComputationInterval.min( d );
+			}
+			if ( d >= n )
+				break;
+		}
+		return edgels;
+	}
 
+	/**
+	 * Edge lengths of the blocks the given interval is split into, such that a
+	 * block including its border of 2 pixels holds about
+	 * <code>blockSize</code> pixels. Dimensions which fit into a block as a
+	 * whole are not split, the others get the same edge length.
+	 */
+	private static long[] blockExtent( final Interval interval, final int blockSize )
+	{
+		final int n = interval.numDimensions();
+		final long[] extent = new long[ n ];
+		double remainingSize = blockSize;
+		int numSplit = n;
+		long edge = 1;
+		boolean changed = true;
+		while ( changed && numSplit > 0 )
+		{
+			changed = false;
+			edge = Math.max( 1, ( long ) Math.floor( Math.pow( remainingSize, 1.0 / numSplit ) + 1e-9 ) - 4 );
+			for ( int d = 0; d < n; ++d )
+			{
+				if ( extent[ d ] == 0 && interval.dimension( d ) <= edge )
+				{
+					extent[ d ] = interval.dimension( d );
+					remainingSize /= extent[ d ] + 4;
+					--numSplit;
+					changed = true;
+				}
+			}
+		}
 		for ( int d = 0; d < n; ++d )
-			src.setPosition( min[ d ], d );
-		src.setPosition( 0, n );
+			if ( extent[ d ] == 0 )
+				extent[ d ] = edge;
+		return extent;
+	}
+
+	/**
+	 * Finds the edgels of one block at a time, reusing its buffers.
+	 */
+	private static final class BlockDetector< T extends RealType< T > >
+	{
+		private final RandomAccessibleInterval< T > input;
 
-		final float g[] = new float[ n ];
-		final float doublePos[] = new float[ n ];
+		private final float minMagnitudeSquared;
 
-		final float minMagnitudeSquared = minGradientMagnitude * minGradientMagnitude;
-		final long max0 = max[ 0 ];
-		while ( true )
+		private final int n;
+
+		/**
+		 * Size of the buffers, which cover the block with a border of 2 pixels.
+		 */
+		private final int[] dims;
+
+		private final int[] strides;
+
+		/**
+		 * Offsets of the 2^n corners of a pixel cell, for n-linear
+		 * interpolation.
+		 */
+		private final int[] cornerOffsets;
+
+		private float[] values;
+
+		private float[][] gradients;
+
+		private final int[] position;
+
+		private final float[] g;
+
+		private final float[] doublePos;
+
+		private final float[] edgelPos;
+
+		private final float[] fraction;
+
+		BlockDetector( final RandomAccessibleInterval< T > input, final float minGradientMagnitude )
 		{
-			// process pixel...
-			// gradient direction
-			float len = 0;
+			this.input = input;
+			minMagnitudeSquared = minGradientMagnitude * minGradientMagnitude;
+			n = input.numDimensions();
+			dims = new int[ n ];
+			strides = new int[ n ];
+			cornerOffsets = new int[ 1 << n ];
+			values = new float[ 0 ];
+			gradients = new float[ n ][ 0 ];
+			position = new int[ n ];
+			g = new float[ n ];
+			doublePos = new float[ n ];
+			edgelPos = new float[ n ];
+			fraction = new float[ n ];
+		}
+
+		/**
+		 * Finds the edgels of the block from min to max, and counts them per
+		 * line of the block in <code>lineCounts</code>.
+		 */
+		EdgelList detect( final long[] min, final long[] max, final int[] lineCounts )
+		{
+			int size = 1;
 			for ( int d = 0; d < n; ++d )
 			{
-				final float gg = src.get().getRealFloat();
-				len += gg * gg;
-				g[ d ] = gg;
-				src.fwd( n );
+				strides[ d ] = size;
+				dims[ d ] = ( int ) ( max[ d ] - min[ d ] + 5 );
+				size *= dims[ d ];
 			}
-			src.setPosition( 0, n );
-			if ( len >= minMagnitudeSquared )
+			for ( int c = 0; c < cornerOffsets.length; ++c )
 			{
-				len = ( float ) Math.sqrt( len );
-
+				cornerOffsets[ c ] = 0;
 				for ( int d = 0; d < n; ++d )
+					if ( ( c & ( 1 << d ) ) != 0 )
+						cornerOffsets[ c ] += strides[ d ];
+			}
+			if ( values.length < size )
+			{
+				values = new float[ size ];
+				gradients = new float[ n ][ size ];
+			}
+
+			// copy the block with a border of 2 pixels
+			final long[] bufferMin = new long[ n ];
+			final long[] bufferMax = new long[ n ];
+			for ( int d = 0; d < n; ++d )
+			{
+				bufferMin[ d ] = min[ d ] - 2;
+				bufferMax[ d ] = max[ d ] + 2;
+			}
+			final Cursor< T > cursor = Views.flatIterable( Views.interval( input, bufferMin, bufferMax ) ).cursor();
+			for ( int i = 0; cursor.hasNext(); ++i )
+				values[ i ] = cursor.next().getRealFloat();
+
+			// partial derivatives, leaving out the outermost layer which is
+			// only touched with zero weight by the interpolation below
+			for ( int d = 0; d < n; ++d )
+			{
+				final float[] gradient = gradients[ d ];
+				final int stride = strides[ d ];
+				forEach( 1, new PixelVisitor()
 				{
-					g[ d ] /= len;
-					doublePos[ d ] = src.getFloatPosition( d ) + g[ d ];
-				}
-				final float lighterMag = gradientMagnitudeInDirection( doublePos, g, gradientAccess );
-				if ( len >= lighterMag )
+					@Override
+					public void visit( final int i )
+					{
+						gradient[ i ] = ( values[ i + stride ] - values[ i - stride ] ) * 0.5f;
+					}
+				} );
+			}
+
+			// gradient maxima
+			final EdgelList edgels = new EdgelList( n );
+			forEach( 2, new PixelVisitor()
+			{
+				@Override
+				public void visit( final int i )
 				{
+					float len = 0;
 					for ( int d = 0; d < n; ++d )
-						doublePos[ d ] = src.getFloatPosition( d ) - g[ d ];
-					final float darkerMag = gradientMagnitudeInDirection( doublePos, g, gradientAccess );
-
-					if ( len >= darkerMag )
 					{
-						// sub-pixel localization
-						final float m = ( darkerMag - lighterMag ) / ( 2 * ( darkerMag - 2 * len + lighterMag ) );
+						final float gg = gradients[ d ][ i ];
+						len += gg * gg;
+						g[ d ] = gg;
+					}
+					if ( len >= minMagnitudeSquared )
+					{
+						len = ( float ) Math.sqrt( len );
+
 						for ( int d = 0; d < n; ++d )
-							doublePos[ d ] = src.getFloatPosition( d ) + m * g[ d ];
-						edgels.add( new Edgel( doublePos, g, len ) );
+						{
+							g[ d ] /= len;
+							doublePos[ d ] = position[ d ] + g[ d ];
+						}
+						final float lighterMag = gradientMagnitudeInDirection( doublePos, g );
+						if ( len >= lighterMag )
+						{
+							for ( int d = 0; d < n; ++d )
+								doublePos[ d ] = position[ d ] - g[ d ];
+							final float darkerMag = gradientMagnitudeInDirection( doublePos, g );
+
+							if ( len >= darkerMag )
+							{
+								// sub-pixel localization
+								final float m = ( darkerMag - lighterMag ) / ( 2 * ( darkerMag - 2 * len + lighterMag ) );
+								for ( int d = 0; d < n; ++d )
+									edgelPos[ d ] = bufferMin[ d ] + position[ d ] + m * g[ d ];
+								edgels.add( edgelPos, g, len );
+
+								int line = 0;
+								for ( int d = n - 1; d > 0; --d )
+									line = line * ( dims[ d ] - 4 ) + position[ d ] - 2;
+								++lineCounts[ line ];
+							}
+						}
 					}
 				}
-			}
+			} );
+			return edgels;
+		}
 
-			// move to next pixel
-			if ( src.getLongPosition( 0 ) == max0 )
+		/**
+		 * Visit all buffer indices at least border pixels away from the buffer
+		 * boundary, in flat iteration order. The buffer coordinates of the
+		 * current index are kept in {@link #position}.
+		 */
+		private void forEach( final int border, final PixelVisitor visitor )
+		{
+			int base = 0;
+			for ( int d = 0; d < n; ++d )
+			{
+				position[ d ] = border;
+				base += border * strides[ d ];
+			}
+			int i = base;
+			while ( true )
 			{
-				src.move( shiftback[ 0 ], 0 );
-				if ( n == 1 )
-					return edgels;
-				for ( int d = 1; d < n; ++d )
+				visitor.visit( i );
+				++i;
+				if ( ++position[ 0 ] == dims[ 0 ] - border )
 				{
-					if ( src.getLongPosition( d ) == max[ d ] )
-					{
-						src.move( shiftback[ d ], d );
-						if ( d == n - 1 )
-							return edgels;
-					}
-					else
+					int d = 0;
+					for ( ; d < n - 1 && position[ d ] == dims[ d ] - border; ++d )
 					{
-						src.fwd( d );
-						break;
+						position[ d ] = border;
+						++position[ d + 1 ];
 					}
+					if ( position[ n - 1 ] == dims[ n - 1 ] - border )
+						return;
+					i = 0;
+					for ( d = 0; d < n; ++d )
+						i += position[ d ] * strides[ d ];
 				}
 			}
-			else
-				src.fwd( 0 );
 		}
-	}
 
-	private static < T extends RealType< T > > float gradientMagnitudeInDirection( final float[] position, final float[] direction, final RealRandomAccess< T >[] gradientAccess )
-	{
-		float len = 0;
-		for ( int d = 0; d < gradientAccess.length; ++d )
+		/**
+		 * The gradient at the given buffer position, n-linearly interpolated
+		 * and projected on the given direction.
+		 */
+		private float gradientMagnitudeInDirection( final float[] pos, final float[] direction )
 		{
-			gradientAccess[ d ].setPosition( position );
-			len += gradientAccess[ d ].get().getRealFloat() * direction[ d ];
+			int base = 0;
+			for ( int d = 0; d < n; ++d )
+			{
+				final int f = ( int ) Math.floor( pos[ d ] );
+				base += f * strides[ d ];
+				fraction[ d ] = pos[ d ] - f;
+			}
+			float len = 0;
+			for ( int c = 0; c < cornerOffsets.length; ++c )
+			{
+				float w = 1;
+				for ( int d = 0; d < n; ++d )
+					w *= ( ( c & ( 1 << d ) ) != 0 ) ? fraction[ d ] : 1 - fraction[ d ];
+				if ( w == 0 )
+					continue;
+				final int i = base + cornerOffsets[ c ];
+				float projected = 0;
+				for ( int d = 0; d < n; ++d )
+					projected += gradients[ d ][ i ] * direction[ d ];
+				len += w * projected;
+			}
+			return len;
 		}
-		return len;
+
+	}
+
+	private interface PixelVisitor
+	{
+		void visit( int i );
 	}
 }
@@ -37,38 +37,58 @@
 
 package net.imglib2.algorithm.floydsteinberg;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import net.imglib2.Cursor;
-import net.imglib2.ExtendedRandomAccessibleInterval;
 import net.imglib2.IterableInterval;
 import net.imglib2.RandomAccess;
 import net.imglib2.algorithm.Benchmark;
+import net.imglib2.algorithm.MultiThreaded;
 import net.imglib2.algorithm.OutputAlgorithm;
 import net.imglib2.algorithm.stats.ComputeMinMax;
 import net.imglib2.exception.IncompatibleTypeException;
 import net.imglib2.img.Img;
 import net.imglib2.img.array.ArrayImgFactory;
-import net.imglib2.iterator.ZeroMinIntervalIterator;
-import net.imglib2.outofbounds.OutOfBoundsConstantValueFactory;
 import net.imglib2.type.logic.BitType;
 import net.imglib2.type.numeric.RealType;
 import net.imglib2.type.numeric.real.FloatType;
 import net.imglib2.util.Util;
 
 /**
- * TODO
+ * Floyd-Steinberg dithering of an image into a {@link BitType} image. Each XY
+ * plane is dithered independently, in raster order, with the classic 2d error
+ * diffusion kernel. The input image is not modified, the diffused errors are
+ * accumulated in <code>float</code> lines.
+ * 
+ * The error of a pixel is pushed to the next pixel of its row and to three
+ * pixels of the next row, so row <em>y</em> can process pixel <em>x</em> as
+ * soon as row <em>y-1</em> is done up to pixel <em>x+1</em>. Rows of a plane
+ * are therefore processed by several threads in a staggered wavefront, and
+ * if there are at least as many planes as threads, whole planes are processed
+ * in parallel instead.
  *
  * @author Stephan Preibisch
  */
-public class FloydSteinbergDithering<T extends RealType<T>> implements OutputAlgorithm<Img<BitType>>, Benchmark
+public class FloydSteinbergDithering<T extends RealType<T>> implements OutputAlgorithm<Img<BitType>>, Benchmark, MultiThreaded
 {
+	/** Number of pixels of a row processed between two progress updates. */
+	public static final int BLOCK_SIZE = 256;
+
 	Img<BitType> result;
 	final Img<T> img;
 	final Img<FloatType> errorDiffusionKernel;
-	final long[] dim, tmp1, tmp2;
+	final long[] dim;
 	final float ditheringThreshold;
 	long processingTime;
+	int numThreads;
 	
 	String errorMessage = "";
 	
@@ -76,12 +96,11 @@ public class FloydSteinbergDithering<T extends RealType<T>> implements OutputAlg
 	{
 		this.img = img;
 		this.dim = Util.intervalDimensions(img);
-		this.tmp1 = new long[img.numDimensions()];
-		this.tmp2 = new long[img.numDimensions()];
 
-		this.errorDiffusionKernel = createErrorDiffusionKernel( img.numDimensions() );
+		this.errorDiffusionKernel = createErrorDiffusionKernel( 2 );
 		
 		this.ditheringThreshold = ditheringThreshold;
+		setNumThreads();
 	}
 
 	/** Will estimate the dithering threshold by (max - min) / 2 */
@@ -99,7 +118,6 @@ public class FloydSteinbergDithering<T extends RealType<T>> implements OutputAlg
 		cmm.process();
 		final float minValue = cmm.getMin().getRealFloat();
 		final float maxValue = cmm.getMax().getRealFloat();
-		final long numDimensions = img.numDimensions();
 		final float ditheringThreshold =
 			Float.NEGATIVE_INFINITY == this.ditheringThreshold ?
 					(maxValue - minValue) / 2.0f
@@ -111,66 +129,83 @@ public class FloydSteinbergDithering<T extends RealType<T>> implements OutputAlg
 		} catch (IncompatibleTypeException e) {
 			throw new RuntimeException(e);
 		}
-		
-		// we create a Cursor that traverses (top -> bottom) and (left -> right) in n dimensions,
-		// which is a Cursor on a normal Array, therefore we use a FakeArray which just gives us position
-		// information without allocating memory
-		final ZeroMinIntervalIterator cursor = new ZeroMinIntervalIterator( dim );
-
-		// we also need a Cursors for the input, the output and the kernel image
-		final RandomAccess<T> cursorInput
-			= new ExtendedRandomAccessibleInterval<T,Img<T>>
-				(img, new OutOfBoundsConstantValueFactory<T, Img<T>>
-					( img.firstElement().createVariable() ))
-						.randomAccess( img );
-			
-			//img.randomAccess( new OutOfBoundsConstantValueFactory<T,Img<T>>( img.firstElement().createVariable() ) );
-		final RandomAccess<BitType> cursorOutput = result.randomAccess();
-		final Cursor<FloatType> cursorKernel = errorDiffusionKernel.cursor();
-		
-		while( cursor.hasNext() )
+
+		// the weights of the 2d kernel
+		final RandomAccess<FloatType> kernel = errorDiffusionKernel.randomAccess();
+		final float[] weights = new float[ 4 ];
+		final long[][] kernelPositions = new long[][] { { 2, 1 }, { 0, 2 }, { 1, 2 }, { 2, 2 } };
+		for ( int i = 0; i < 4; ++i )
 		{
-			cursor.fwd();
-			
-			// move input and output cursor to the current location
-			cursorInput.setPosition( cursor );
-			cursorOutput.setPosition( cursor );
-			
-			// set new value and compute error
-			final float error;
-			final float in = cursorInput.get().getRealFloat(); 
-			if ( in < ditheringThreshold )
-			{
-				cursorOutput.get().setZero();
-				error = in - minValue; 
-			}
-			else
+			kernel.setPosition( kernelPositions[ i ] );
+			weights[ i ] = kernel.get().get();
+		}
+
+		final int width = (int) dim[ 0 ];
+		final int height = dim.length > 1 ? (int) dim[ 1 ] : 1;
+		long planes = 1;
+		for ( int d = 2; d < dim.length; ++d )
+			planes *= dim[ d ];
+		final long numPlanes = planes;
+
+		final int numTasks = Math.max( 1, numThreads );
+		final ArrayList<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		if ( numTasks == 1 || numPlanes >= numTasks || height == 1 )
+		{
+			// whole planes in parallel
+			final AtomicInteger nextPlane = new AtomicInteger();
+			for ( int t = 0; t < Math.min( numTasks, numPlanes ); ++t )
 			{
-				cursorOutput.get().setOne();
-				error = in - maxValue; 
+				tasks.add( new Callable<Void>()
+				{
+					@Override
+					public Void call() throws InterruptedException
+					{
+						final RowDitherer ditherer = new RowDitherer( width, height, 1, minValue, maxValue, ditheringThreshold, weights,
+								new Progress( height ), new float[ 2 ][ width + 2 ] );
+						for ( long plane = nextPlane.getAndIncrement(); plane < numPlanes; plane = nextPlane.getAndIncrement() )
+							ditherer.dither( plane, 0 );
+						return null;
+					}
+				} );
 			}
-			
-			if ( error != 0.0f )
+			run( tasks, numTasks );
+		}
+		else
+		{
+			// rows of one plane in a wavefront
+			for ( long plane = 0; plane < numPlanes; ++plane )
 			{
-				// distribute the error
-				cursorKernel.reset();
-				cursorKernel.jumpFwd( errorDiffusionKernel.size()/2 );
-				cursor.localize( tmp1 );	
-				
-				while ( cursorKernel.hasNext() )
+				final long p = plane;
+				final int numRowTasks = Math.min( numTasks, height );
+				final Progress progress = new Progress( height );
+				final float[][] lines = new float[ 2 * numRowTasks + 2 ][ width + 2 ];
+				tasks.clear();
+				for ( int t = 0; t < numRowTasks; ++t )
 				{
-					cursorKernel.fwd();				
-					
-					final float value = error * cursorKernel.get().get();
-					cursorKernel.localize( tmp2 );
-					
-					for ( int d = 0; d < numDimensions; ++d )
-						tmp2[ d ] += tmp1[ d ] - 1;
-					
-					cursorInput.move( tmp2 );
-					cursorInput.get().setReal( cursorInput.get().getRealFloat() + value );
+					final int firstRow = t;
+					tasks.add( new Callable<Void>()
+					{
+						@Override
+						public Void call() throws InterruptedException
+						{
+							boolean done = false;
+							try
+							{
+								new RowDitherer( width, height, numRowTasks, minValue, maxValue, ditheringThreshold, weights, progress, lines ).dither( p, firstRow );
+								done = true;
+							}
+							finally
+							{
+								// let the rows waiting on this one give up
+								if ( !done )
+									progress.fail();
+							}
+							return null;
+						}
+					} );
 				}
-			}		
+				run( tasks, numRowTasks );
+			}
 		}
 		
 		processingTime = System.currentTimeMillis() - startTime;
@@ -178,6 +213,232 @@ public class FloydSteinbergDithering<T extends RealType<T>> implements OutputAlg
 		// successfully computed the dithering
 		return true;
 	}
+
+	private static void run( final ArrayList<Callable<Void>> tasks, final int numThreads )
+	{
+		if ( tasks.size() == 1 )
+		{
+			try
+			{
+				tasks.get( 0 ).call();
+			}
+			catch ( final Exception e )
+			{
+				throw new RuntimeException( e );
+			}
+			return;
+		}
+
+		final ExecutorService ex = Executors.newFixedThreadPool( numThreads );
+		try
+		{
+			for ( final Future<Void> f : ex.invokeAll( tasks ) )
+				f.get();
+		}
+		catch ( final InterruptedException e )
+		{
+			throw new RuntimeException( e );
+		}
+		catch ( final ExecutionException e )
+		{
+			throw new RuntimeException( e.getCause() );
+		}
+		finally
+		{
+			ex.shutdown();
+		}
+	}
+
+	/**
+	 * Number of pixels done in each row of a plane. Threads waiting for a row
+	 * give up once any row thread of the plane has failed.
+	 */
+	private static class Progress
+	{
+		final int[] done;
+		boolean failed;
+
+		Progress( final int height )
+		{
+			this.done = new int[ height ];
+		}
+
+		synchronized void reset()
+		{
+			Arrays.fill( done, 0 );
+			failed = false;
+		}
+
+		synchronized void set( final int y, final int x )
+		{
+			done[ y ] = x;
+			notifyAll();
+		}
+
+		synchronized void fail()
+		{
+			failed = true;
+			notifyAll();
+		}
+
+		/**
+		 * Waits until row <code>y</code> is done up to pixel <code>x</code>.
+		 * 
+		 * @return false if a row thread failed before that
+		 */
+		synchronized boolean await( final int y, final int x ) throws InterruptedException
+		{
+			while ( done[ y ] < x )
+			{
+				if ( failed )
+					return false;
+				wait();
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Dithers every <code>step</code>-th row of a plane. The errors diffused
+	 * into the next row are accumulated in a ring of lines shared by all row
+	 * threads of the plane, and each row publishes how many of its pixels are
+	 * done in <code>progress</code>.
+	 */
+	private class RowDitherer
+	{
+		final int width, height, step;
+		final float minValue, maxValue, threshold;
+		final float right, downLeft, down, downRight;
+		final RandomAccess<T> input;
+		final RandomAccess<BitType> output;
+		final long[] position;
+		final float[] row;
+		final boolean[] bits;
+		final Progress progress;
+		final float[][] lines;
+
+		RowDitherer( final int width, final int height, final int step, final float minValue, final float maxValue, final float threshold, final float[] weights,
+				final Progress progress, final float[][] lines )
+		{
+			this.width = width;
+			this.height = height;
+			this.step = step;
+			this.minValue = minValue;
+			this.maxValue = maxValue;
+			this.threshold = threshold;
+			this.right = weights[ 0 ];
+			this.downLeft = weights[ 1 ];
+			this.down = weights[ 2 ];
+			this.downRight = weights[ 3 ];
+			this.input = img.randomAccess();
+			this.output = result.randomAccess();
+			this.position = new long[ dim.length ];
+			this.row = new float[ width ];
+			this.bits = new boolean[ width ];
+			this.progress = progress;
+			this.lines = lines;
+		}
+
+		void dither( final long plane, final int firstRow ) throws InterruptedException
+		{
+			// position of the plane in dimensions 2..n-1
+			long p = plane;
+			for ( int d = 2; d < dim.length; ++d )
+			{
+				position[ d ] = p % dim[ d ];
+				p /= dim[ d ];
+			}
+			if ( step == 1 )
+			{
+				for ( final float[] line : lines )
+					Arrays.fill( line, 0 );
+				progress.reset();
+			}
+
+			final int numLines = lines.length;
+			for ( int y = firstRow; y < height; y += step )
+			{
+				final float[] current = lines[ y % numLines ];
+				final float[] next = lines[ ( y + 1 ) % numLines ];
+				if ( y == 0 )
+					Arrays.fill( current, 0 );
+
+				// the next line is free once the row that used it is done
+				final int previousUser = y + 1 - numLines;
+				if ( previousUser >= 0 && !progress.await( previousUser, width ) )
+					return;
+				Arrays.fill( next, 0 );
+
+				readRow( y );
+
+				float carry = 0;
+				for ( int x0 = 0; x0 < width; x0 += BLOCK_SIZE )
+				{
+					final int x1 = Math.min( width, x0 + BLOCK_SIZE );
+
+					// the previous row must be done up to the pixel right of the last one in this block
+					if ( y > 0 )
+					{
+						if ( !progress.await( y - 1, Math.min( width, x1 + 1 ) ) )
+							return;
+					}
+
+					for ( int x = x0; x < x1; ++x )
+					{
+						final float in = row[ x ] + current[ x + 1 ] + carry;
+						final float error;
+						if ( in < threshold )
+						{
+							bits[ x ] = false;
+							error = in - minValue;
+						}
+						else
+						{
+							bits[ x ] = true;
+							error = in - maxValue;
+						}
+						carry = error * right;
+						next[ x ] += error * downLeft;
+						next[ x + 1 ] += error * down;
+						next[ x + 2 ] += error * downRight;
+					}
+					progress.set( y, x1 );
+				}
+				writeRow( y );
+			}
+		}
+
+		private void readRow( final int y )
+		{
+			position[ 0 ] = 0;
+			if ( dim.length > 1 )
+				position[ 1 ] = y;
+			input.setPosition( position );
+			for ( int x = 0; x < width; ++x )
+			{
+				row[ x ] = input.get().getRealFloat();
+				input.fwd( 0 );
+			}
+		}
+
+		private void writeRow( final int y )
+		{
+			position[ 0 ] = 0;
+			if ( dim.length > 1 )
+				position[ 1 ] = y;
+
+			// bits of neighboring rows may share storage, so write one row at a time
+			synchronized ( result )
+			{
+				output.setPosition( position );
+				for ( int x = 0; x < width; ++x )
+				{
+					output.get().set( bits[ x ] );
+					output.fwd( 0 );
+				}
+			}
+		}
+	}
 	
 	@Override
 	public long getProcessingTime() { return processingTime; }
@@ -191,6 +452,15 @@ public class FloydSteinbergDithering<T extends RealType<T>> implements OutputAlg
 	@Override
 	public String getErrorMessage() { return errorMessage; }
 
+	@Override
+	public void setNumThreads() { this.numThreads = Runtime.getRuntime().availableProcessors(); }
+
+	@Override
+	public void setNumThreads( final int numThreads ) { this.numThreads = numThreads; }
+
+	@Override
+	public int getNumThreads() { return numThreads; }
+
 	public Img<FloatType> createErrorDiffusionKernel( final int numDimensions )
 	{
 		ArrayImgFactory<FloatType> factory = new ArrayImgFactory<FloatType>();
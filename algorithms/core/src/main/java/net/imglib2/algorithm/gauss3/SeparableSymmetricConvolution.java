@@ -326,7 +326,8 @@ public final class SeparableSymmetricConvolution
 			srcmax[ i ] = max[ i ] + sourceOffset[ i ] + 2 * k1;
 		}
 
-		final ExecutorService ex = Executors.newFixedThreadPool( numThreads );
+		// single-threaded calls (e.g. per block of a blocked algorithm) run in the calling thread
+		final ExecutorService ex = numThreads > 1 ? Executors.newFixedThreadPool( numThreads ) : null;
 		for ( int taskNum = 0; taskNum < numTasks; ++taskNum )
 		{
 			final long myStartIndex = taskNum * ( ( endIndex + 1 ) / numTasks );
@@ -375,8 +376,13 @@ public final class SeparableSymmetricConvolution
 					}
 				}
 			};
-			ex.execute( r );
+			if ( ex == null )
+				r.run();
+			else
+				ex.execute( r );
 		}
+		if ( ex == null )
+			return;
 		ex.shutdown();
 		try
 		{
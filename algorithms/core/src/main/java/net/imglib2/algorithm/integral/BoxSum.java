@@ -0,0 +1,212 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.algorithm.integral;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * Computes sums over arbitrary n-dimensional boxes of an image in constant time
+ * per box, using its integral image as computed by {@link IntegralImg}.
+ *
+ * The integral image is one pixel larger than the input image in each dimension,
+ * and pixel x of the input image corresponds to position x + 1 of the integral
+ * image. The sum over the box [min, max] (inclusive, in input image coordinates)
+ * is obtained from the 2<sup>n</sup> corners of the box by inclusion-exclusion.
+ * Boxes are clipped to the input image, so they can extend beyond its border.
+ *
+ * A {@link BoxSum} keeps a {@link RandomAccess} on the integral image and must
+ * not be shared between threads; use {@link #copy()} to get one per thread.
+ *
+ * @param <T> the type of the integral image.
+ */
+public class BoxSum< T extends RealType< T > >
+{
+	final protected RandomAccessibleInterval< T > integral;
+
+	final protected RandomAccess< T > access;
+
+	final protected int n;
+
+	final protected long[] min;
+
+	final protected long[] max;
+
+	final protected T tmp;
+
+	/**
+	 * @param integral
+	 *            the integral image, with a zero row at the beginning of each
+	 *            dimension.
+	 */
+	public BoxSum( final RandomAccessibleInterval< T > integral )
+	{
+		this.integral = integral;
+		this.n = integral.numDimensions();
+		this.access = integral.randomAccess();
+		this.min = new long[ n ];
+		this.max = new long[ n ];
+		this.tmp = access.get().createVariable();
+	}
+
+	/**
+	 * @return a new {@link BoxSum} on the same integral image, to be used by
+	 *         another thread.
+	 */
+	public BoxSum< T > copy()
+	{
+		return new BoxSum< T >( integral );
+	}
+
+	public int numDimensions()
+	{
+		return n;
+	}
+
+	/**
+	 * Clip the box [boxMin, boxMax] to the input image and store the
+	 * corresponding integral image positions in min and max.
+	 *
+	 * @return false if the clipped box is empty.
+	 */
+	protected boolean clip( final long[] boxMin, final long[] boxMax )
+	{
+		for ( int d = 0; d < n; ++d )
+		{
+			// min[ d ] is the integral position of the last pixel before the
+			// box, max[ d ] the integral position of the last pixel in the box
+			min[ d ] = Math.max( boxMin[ d ], 0 ) + integral.min( d );
+			max[ d ] = Math.min( boxMax[ d ] + 1, integral.dimension( d ) - 1 ) + integral.min( d );
+			if ( max[ d ] <= min[ d ] )
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return the number of pixels of the input image within the box [boxMin,
+	 *         boxMax].
+	 */
+	public long getCount( final long[] boxMin, final long[] boxMax )
+	{
+		if ( !clip( boxMin, boxMax ) )
+			return 0;
+		long count = 1;
+		for ( int d = 0; d < n; ++d )
+			count *= max[ d ] - min[ d ];
+		return count;
+	}
+
+	/**
+	 * @return the sum of the input image over the box [boxMin, boxMax], as a
+	 *         double.
+	 */
+	public double getSum( final long[] boxMin, final long[] boxMax )
+	{
+		if ( !clip( boxMin, boxMax ) )
+			return 0;
+
+		double sum = 0;
+		for ( int corner = 0; corner < ( 1 << n ); ++corner )
+		{
+			int numMin = 0;
+			for ( int d = 0; d < n; ++d )
+			{
+				if ( ( corner & ( 1 << d ) ) == 0 )
+				{
+					access.setPosition( min[ d ], d );
+					++numMin;
+				}
+				else
+					access.setPosition( max[ d ], d );
+			}
+			if ( ( numMin & 1 ) == 0 )
+				sum += access.get().getRealDouble();
+			else
+				sum -= access.get().getRealDouble();
+		}
+		return sum;
+	}
+
+	/**
+	 * Compute the sum of the input image over the box [boxMin, boxMax] with the
+	 * precision of the integral image type, which is exact for integer types.
+	 *
+	 * @param result
+	 *            is set to the sum.
+	 */
+	public void getSum( final long[] boxMin, final long[] boxMax, final T result )
+	{
+		result.setZero();
+		if ( !clip( boxMin, boxMax ) )
+			return;
+
+		for ( int corner = 0; corner < ( 1 << n ); ++corner )
+		{
+			int numMin = 0;
+			for ( int d = 0; d < n; ++d )
+			{
+				if ( ( corner & ( 1 << d ) ) == 0 )
+				{
+					access.setPosition( min[ d ], d );
+					++numMin;
+				}
+				else
+					access.setPosition( max[ d ], d );
+			}
+			tmp.set( access.get() );
+			if ( ( numMin & 1 ) == 0 )
+				result.add( tmp );
+			else
+				result.sub( tmp );
+		}
+	}
+
+	/**
+	 * @return the mean of the input image over the box [boxMin, boxMax], or 0
+	 *         if the box does not intersect the image.
+	 */
+	public double getMean( final long[] boxMin, final long[] boxMax )
+	{
+		final long count = getCount( boxMin, boxMax );
+		if ( count == 0 )
+			return 0;
+		return getSum( boxMin, boxMax ) / count;
+	}
+}
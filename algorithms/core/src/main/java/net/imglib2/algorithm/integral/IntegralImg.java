@@ -37,10 +37,19 @@
 
 package net.imglib2.algorithm.integral;
 
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import net.imglib2.RandomAccess;
+import net.imglib2.algorithm.MultiThreaded;
 import net.imglib2.algorithm.OutputAlgorithm;
 import net.imglib2.converter.Converter;
 import net.imglib2.img.Img;
+import net.imglib2.img.ImgFactory;
 import net.imglib2.img.array.ArrayImgFactory;
 import net.imglib2.iterator.LocalizingZeroMinIntervalIterator;
 import net.imglib2.type.NativeType;
@@ -57,24 +66,45 @@ import net.imglib2.type.numeric.NumericType;
  * Sums are done with the precision of {@param <T>} and then set to the integral image type,
  * which may crop the values according to the type's capabilities.
  *
+ * The integral is computed one dimension after the other. Within a dimension all lines
+ * are independent, so they are distributed over {@link #getNumThreads()} threads. The
+ * integral image is created by an {@link ImgFactory}, which is an {@link ArrayImgFactory}
+ * by default; a {@link net.imglib2.img.cell.CellImgFactory} gives a tiled layout for
+ * images that are too large for a single array.
+ *
+ * Sums over arbitrary boxes of the input image can be queried with {@link BoxSum}.
+ *
  * @param <R> The type of the input image.
  * @param <T> The type of the integral image.
  *
  * @author Stephan Preibisch
  * @author Albert Cardona
  */
-public class IntegralImg< R extends NumericType< R >, T extends NumericType< T > & NativeType< T > > implements OutputAlgorithm< Img< T > >
+public class IntegralImg< R extends NumericType< R >, T extends NumericType< T > & NativeType< T > > implements OutputAlgorithm< Img< T > >, MultiThreaded
 {
 	protected final Img< R > img;
 	protected final T type;
 	protected Img< T > integral;
 	protected final Converter< R, T > converter;
+	protected final ImgFactory< T > factory;
+	protected int numThreads;
 
 	public IntegralImg( final Img< R > img, final T type, final Converter< R, T > converter )
+	{
+		this( img, type, converter, new ArrayImgFactory< T >() );
+	}
+
+	/**
+	 * @param factory the factory used to create the integral image, for instance
+	 * a {@link net.imglib2.img.cell.CellImgFactory} for a tiled layout.
+	 */
+	public IntegralImg( final Img< R > img, final T type, final Converter< R, T > converter, final ImgFactory< T > factory )
 	{
 		this.img = img;
 		this.type = type;
 		this.converter = converter;
+		this.factory = factory;
+		setNumThreads();
 	}
 
 	@Override
@@ -87,7 +117,7 @@ public class IntegralImg< R extends NumericType< R >, T extends NumericType< T >
 		for ( int d = 0; d < numDimensions; ++d )
 			integralSize[ d ] = (int) img.dimension( d ) + 1;
 
-		final Img< T > integral = new ArrayImgFactory<T>().create( integralSize, type.createVariable() );
+		final Img< T > integral = factory.create( integralSize, type.createVariable() );
 
 		// not enough RAM or disc space
 		if ( integral == null )
@@ -96,76 +126,7 @@ public class IntegralImg< R extends NumericType< R >, T extends NumericType< T >
 
 		if ( numDimensions > 1 )
 		{
-			/**
-			 * Here we "misuse" a ArrayLocalizableCursor to iterate through all dimensions except the one we are computing the integral image in
-			 */
-			final long[] fakeSize = new long[ numDimensions - 1 ];
-
-			// location for the input location
-			final long[] tmpIn = new long[ numDimensions ];
-
-			// location for the integral location
-			final long[] tmpOut = new long[ numDimensions ];
-
-			// the size of dimension 0
-			final long size = integralSize[ 0 ];
-
-			for ( int d = 1; d < numDimensions; ++d )
-				fakeSize[ d - 1 ] = integralSize[ d ];
-
-			final LocalizingZeroMinIntervalIterator cursorDim = new LocalizingZeroMinIntervalIterator( fakeSize );
-
-			final RandomAccess< R > cursorIn = img.randomAccess();
-			final RandomAccess< T > cursorOut = integral.randomAccess();
-
-			final T tmpVar = type.createVariable();
-			final T sum = type.createVariable();
-
-			// iterate over all dimensions except the one we are computing the integral in, which is dim=0 here
-main:		while( cursorDim.hasNext() )
-			{
-				cursorDim.fwd();
-
-				// get all dimensions except the one we are currently doing the integral on
-				cursorDim.localize( fakeSize );
-
-				tmpIn[ 0 ] = 0;
-				tmpOut[ 0 ] = 1;
-
-				for ( int d = 1; d < numDimensions; ++d )
-				{
-					tmpIn[ d ] = fakeSize[ d - 1 ] - 1;
-					tmpOut[ d ] = fakeSize[ d - 1 ];
-
-					// all entries of position 0 are 0
-					if ( tmpOut[ d ] == 0 )
-						continue main;
-				}
-
-				// set the cursor to the beginning of the correct line
-				cursorIn.setPosition( tmpIn );
-
-				// set the cursor in the integral image to the right position
-				cursorOut.setPosition( tmpOut );
-				
-				// integrate over the line
-				integrateLineDim0( converter, cursorIn, cursorOut, sum, tmpVar, size );
-				/*
-				// compute the first pixel
-				converter.convert( cursorIn.getType(), sum );
-				cursorOut.getType().set( sum );
-
-				for ( int i = 2; i < size; ++i )
-				{
-					cursorIn.fwd( 0 );
-					cursorOut.fwd( 0 );
-
-					converter.convert( cursorIn.getType(), tmpVar );
-					sum.add( tmpVar );
-					cursorOut.getType().set( sum );
-				}
-				*/
-			}
+			integrateDimension( 0, integralSize );
 		}
 		else
 		{
@@ -199,63 +160,156 @@ main:		while( cursorDim.hasNext() )
 		}
 
 		for ( int d = 1; d < numDimensions; ++d )
+			integrateDimension( d, integralSize );
+
+		return true;
+	}
+
+	/**
+	 * Integrate all lines along dimension d. For d = 0 the lines are read from the
+	 * input image and converted, for d &gt; 0 the integral image is updated in place.
+	 * The lines are split into contiguous ranges that are processed in parallel.
+	 */
+	protected void integrateDimension( final int d, final long[] integralSize )
+	{
+		final int numDimensions = integralSize.length;
+
+		/**
+		 * Here we "misuse" a ArrayLocalizableCursor to iterate through all dimensions except the one we are computing the integral image in
+		 */
+		final long[] fakeSize = new long[ numDimensions - 1 ];
+		int countDim = 0;
+		for ( int e = 0; e < numDimensions; ++e )
+			if ( e != d )
+				fakeSize[ countDim++ ] = integralSize[ e ];
+
+		long numLines = 1;
+		for ( int e = 0; e < numDimensions - 1; ++e )
+			numLines *= fakeSize[ e ];
+
+		final int numTasks = ( int ) Math.max( 1, Math.min( numThreads, numLines ) );
+		if ( numTasks == 1 )
 		{
-			/**
-			 * Here we "misuse" a ArrayLocalizableCursor to iterate through all dimensions except the one we are computing the fft in
-			 */
-			final long[] fakeSize = new long[ numDimensions - 1 ];
-			final long[] tmp = new long[ numDimensions ];
+			integrateLines( d, integralSize, fakeSize, 0, numLines );
+			return;
+		}
 
-			// the size of dimension d
-			final long size = integralSize[ d ];
+		final ExecutorService ex = Executors.newFixedThreadPool( numTasks );
+		final ArrayList< Future< Void > > futures = new ArrayList< Future< Void > >();
+		final long linesPerTask = numLines / numTasks;
+		final long remainder = numLines % numTasks;
+		long start = 0;
+		for ( int t = 0; t < numTasks; ++t )
+		{
+			final long firstLine = start;
+			final long count = linesPerTask + ( t < remainder ? 1 : 0 );
+			start += count;
+			futures.add( ex.submit( new Callable< Void >()
+			{
+				@Override
+				public Void call()
+				{
+					integrateLines( d, integralSize, fakeSize, firstLine, count );
+					return null;
+				}
+			} ) );
+		}
 
-			// get all dimensions except the one we are currently doing the integral on
-			int countDim = 0;
-			for ( int e = 0; e < numDimensions; ++e )
-				if ( e != d )
-					fakeSize[ countDim++ ] = integralSize[ e ];
+		try
+		{
+			for ( final Future< Void > f : futures )
+				f.get();
+		}
+		catch ( final InterruptedException e )
+		{
+			throw new RuntimeException( e );
+		}
+		catch ( final ExecutionException e )
+		{
+			throw new RuntimeException( e.getCause() );
+		}
+		finally
+		{
+			ex.shutdown();
+		}
+	}
 
-			final LocalizingZeroMinIntervalIterator cursorDim = new LocalizingZeroMinIntervalIterator( fakeSize );
+	/**
+	 * Integrate count lines along dimension d, starting at the given line index in
+	 * the iteration order of the remaining dimensions.
+	 */
+	protected void integrateLines( final int d, final long[] integralSize, final long[] fakeSize, final long firstLine, final long count )
+	{
+		final int numDimensions = integralSize.length;
 
-			final RandomAccess< T > cursor = integral.randomAccess();
-			final T sum = type.createVariable();
+		// the size of dimension d
+		final long size = integralSize[ d ];
 
-			while( cursorDim.hasNext() )
-			{
-				cursorDim.fwd();
+		final LocalizingZeroMinIntervalIterator cursorDim = new LocalizingZeroMinIntervalIterator( fakeSize );
+		cursorDim.jumpFwd( firstLine );
 
-				// get all dimensions except the one we are currently doing the integral on
-				cursorDim.localize( fakeSize );
+		final long[] linePos = new long[ numDimensions - 1 ];
 
-				tmp[ d ] = 1;
-				countDim = 0;
-				for ( int e = 0; e < numDimensions; ++e )
-					if ( e != d )
-						tmp[ e ] = fakeSize[ countDim++ ];
+		// location for the input location
+		final long[] tmpIn = new long[ numDimensions ];
 
-				// update the cursor in the input image to the current dimension position
-				cursor.setPosition( tmp );
+		// location for the integral location
+		final long[] tmpOut = new long[ numDimensions ];
 
-				// sum up line
-				integrateLine( d, cursor, sum, size );
-				/*
-				// init sum on first pixel that is not zero
-				sum.set( cursor.getType() );
+		final RandomAccess< R > cursorIn = d == 0 ? img.randomAccess() : null;
+		final RandomAccess< T > cursorOut = integral.randomAccess();
+
+		final T tmpVar = type.createVariable();
+		final T sum = type.createVariable();
+
+		// iterate over all dimensions except the one we are computing the integral in
+main:	for ( long l = 0; l < count; ++l )
+		{
+			cursorDim.fwd();
 
-				for ( int i = 2; i < size; ++i )
+			// get all dimensions except the one we are currently doing the integral on
+			cursorDim.localize( linePos );
+
+			int countDim = 0;
+			for ( int e = 0; e < numDimensions; ++e )
+			{
+				if ( e == d )
+				{
+					tmpIn[ e ] = 0;
+					tmpOut[ e ] = 1;
+				}
+				else
 				{
-					cursor.fwd( d );
+					tmpIn[ e ] = linePos[ countDim ] - 1;
+					tmpOut[ e ] = linePos[ countDim ];
+					++countDim;
 
-					sum.add( cursor.getType() );
-					cursor.getType().set( sum );
+					// all entries of position 0 are 0, and the first pass
+					// must not read outside of the input image
+					if ( d == 0 && tmpOut[ e ] == 0 )
+						continue main;
 				}
-				*/
 			}
-		}
 
-		return true;
+			// set the cursor in the integral image to the right position
+			cursorOut.setPosition( tmpOut );
+
+			if ( d == 0 )
+			{
+				// set the cursor to the beginning of the correct line
+				cursorIn.setPosition( tmpIn );
+
+				// integrate over the line
+				integrateLineDim0( converter, cursorIn, cursorOut, sum, tmpVar, size );
+			}
+			else
+			{
+				// sum up line
+				integrateLine( d, cursorOut, sum, size );
+			}
+		}
 	}
-	
+
 	protected void integrateLineDim0( final Converter< R, T > converter, final RandomAccess< R > cursorIn, final RandomAccess< T > cursorOut, final T sum, final T tmpVar, final long size )
 	{
 		// compute the first pixel
@@ -287,6 +341,24 @@ main:		while( cursorDim.hasNext() )
 		}
 	}
 
+	@Override
+	public void setNumThreads()
+	{
+		this.numThreads = Runtime.getRuntime().availableProcessors();
+	}
+
+	@Override
+	public void setNumThreads( final int numThreads )
+	{
+		this.numThreads = numThreads;
+	}
+
+	@Override
+	public int getNumThreads()
+	{
+		return numThreads;
+	}
+
 	@Override
 	public boolean checkInput() {
 		return true;
@@ -40,6 +40,7 @@ package net.imglib2.algorithm.integral;
 import net.imglib2.RandomAccess;
 import net.imglib2.converter.Converter;
 import net.imglib2.img.Img;
+import net.imglib2.img.ImgFactory;
 import net.imglib2.type.numeric.NumericType;
 import net.imglib2.type.numeric.real.DoubleType;
 
@@ -57,6 +58,11 @@ public class IntegralImgDouble< R extends NumericType< R > > extends IntegralImg
 		super( img, type, converter );
 	}
 
+	public IntegralImgDouble( final Img<R> img, final DoubleType type, final Converter<R, DoubleType> converter, final ImgFactory<DoubleType> factory ) 
+	{
+		super( img, type, converter, factory );
+	}
+
 	@Override
 	protected void integrateLineDim0( final Converter< R, DoubleType > converter, final RandomAccess< R > cursorIn, final RandomAccess< DoubleType > cursorOut, final DoubleType sum, final DoubleType tmpVar, final long size )
 	{
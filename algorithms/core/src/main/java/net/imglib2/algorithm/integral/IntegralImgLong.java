@@ -40,6 +40,7 @@ package net.imglib2.algorithm.integral;
 import net.imglib2.RandomAccess;
 import net.imglib2.converter.Converter;
 import net.imglib2.img.Img;
+import net.imglib2.img.ImgFactory;
 import net.imglib2.type.numeric.NumericType;
 import net.imglib2.type.numeric.integer.LongType;
 
@@ -56,6 +57,11 @@ public class IntegralImgLong< R extends NumericType< R > > extends IntegralImg<
 	{
 		super( img, type, converter );
 	}
+
+	public IntegralImgLong( final Img<R> img, final LongType type, final Converter<R, LongType> converter, final ImgFactory<LongType> factory ) 
+	{
+		super( img, type, converter, factory );
+	}
 	
 	@Override
 	protected void integrateLineDim0( final Converter< R, LongType > converter, final RandomAccess< R > cursorIn, final RandomAccess< LongType > cursorOut, final LongType sum, final LongType tmpVar, final long size )
@@ -0,0 +1,816 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.algorithm.kdtree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.imglib2.Interval;
+import net.imglib2.Point;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RealInterval;
+import net.imglib2.RealLocalizable;
+
+/**
+ * A bounding volume hierarchy over n-dimensional intervals, to search for all
+ * intervals that contain a given point or overlap a given box. Unlike
+ * {@link VolumetricSearch}, the query cost does not degrade when intervals
+ * vary widely in size or overlap heavily.
+ * 
+ * <p>
+ * Nodes and leaf contents are stored in flat primitive arrays. The hierarchy
+ * is built top-down by median splits along the widest axis of the interval
+ * centers, in parallel on disjoint subtrees. Intervals can later be
+ * {@link #add(RealInterval) added} and {@link #remove(RealInterval) removed};
+ * the hierarchy is refitted but not rebalanced, so a hierarchy that has
+ * changed a lot should be rebuilt.
+ * </p>
+ * 
+ * <p>
+ * Queries append their results to a list given by the caller, so that one list
+ * can be reused over many queries. They do not allocate and may be run
+ * concurrently, but not concurrently with {@link #add(RealInterval)} or
+ * {@link #remove(RealInterval)}. As a {@link RandomAccessible}, get() returns
+ * a list owned by the {@link RandomAccess}, refilled at each call.
+ * </p>
+ */
+public class BoundingVolumeHierarchy< I extends RealInterval > implements RandomAccessible< List< I > >
+{
+	/**
+	 * Maximum number of intervals in a leaf.
+	 */
+	public static final int LEAF_SIZE = 8;
+
+	/**
+	 * Number of dimensions. 0 for a hierarchy built from an empty list, until
+	 * the first interval is added.
+	 */
+	int n;
+
+	/**
+	 * Number of intervals in the hierarchy.
+	 */
+	private int size;
+
+	private int numNodes;
+
+	/**
+	 * For an inner node, the index of the left child. -1 for a leaf.
+	 */
+	private int[] left;
+
+	/**
+	 * For an inner node, the index of the right child. For a leaf, the index
+	 * of its block of {@link #LEAF_SIZE} item slots.
+	 */
+	private int[] right;
+
+	/**
+	 * The index of the parent node. -1 for the root.
+	 */
+	private int[] parent;
+
+	/**
+	 * For a leaf, the number of intervals it holds.
+	 */
+	private int[] count;
+
+	private double[] nodeMin;
+
+	private double[] nodeMax;
+
+	private int numBlocks;
+
+	private Object[] items;
+
+	private double[] itemMin;
+
+	private double[] itemMax;
+
+	/**
+	 * Create an empty hierarchy, to be filled by {@link #add(RealInterval)}.
+	 */
+	public BoundingVolumeHierarchy( final int numDimensions )
+	{
+		n = numDimensions;
+		initEmpty();
+	}
+
+	public BoundingVolumeHierarchy( final List< I > intervals )
+	{
+		this( intervals, Runtime.getRuntime().availableProcessors() );
+	}
+
+	/**
+	 * Build a hierarchy containing the given intervals, using numThreads
+	 * threads. If the list is empty, the number of dimensions is taken from
+	 * the first {@link #add(RealInterval) added} interval.
+	 */
+	public BoundingVolumeHierarchy( final List< I > intervals, final int numThreads )
+	{
+		final int m = intervals.size();
+		if ( m == 0 )
+		{
+			n = 0;
+			initEmpty();
+			return;
+		}
+		n = intervals.get( 0 ).numDimensions();
+
+		final int nodes = countNodes( m );
+		allocateNodes( nodes );
+		allocateBlocks( ( nodes + 1 ) / 2 );
+		numNodes = nodes;
+		numBlocks = ( nodes + 1 ) / 2;
+		size = m;
+
+		final Object[] tmpItems = new Object[ m ];
+		final double[] tmpMin = new double[ m * n ];
+		final double[] tmpMax = new double[ m * n ];
+		final double[] centers = new double[ m * n ];
+		final int[] indices = new int[ m ];
+		int i = 0;
+		for ( final I interval : intervals )
+		{
+			if ( interval.numDimensions() != n )
+				throw new IllegalArgumentException( "All intervals must have " + n + " dimensions." );
+			for ( int d = 0; d < n; ++d )
+			{
+				tmpMin[ i * n + d ] = interval.realMin( d );
+				tmpMax[ i * n + d ] = interval.realMax( d );
+				centers[ i * n + d ] = 0.5 * ( tmpMin[ i * n + d ] + tmpMax[ i * n + d ] );
+			}
+			tmpItems[ i ] = interval;
+			indices[ i ] = i;
+			++i;
+		}
+
+		if ( numThreads <= 1 )
+		{
+			new Builder( tmpItems, tmpMin, tmpMax, centers, indices, 0 ).build( 0, -1, 0, m, 0, 0, false );
+			return;
+		}
+
+		// split the upper levels sequentially, and build the subtrees below in parallel
+		int splitDepth = 2;
+		while ( ( 1 << splitDepth ) < 4 * numThreads )
+			++splitDepth;
+		final Builder builder = new Builder( tmpItems, tmpMin, tmpMax, centers, indices, splitDepth );
+		builder.build( 0, -1, 0, m, 0, 0, true );
+
+		final ExecutorService ex = Executors.newFixedThreadPool( numThreads );
+		try
+		{
+			for ( final Future< Void > f : ex.invokeAll( builder.tasks ) )
+				f.get();
+		}
+		catch ( final InterruptedException e )
+		{
+			throw new RuntimeException( e );
+		}
+		catch ( final ExecutionException e )
+		{
+			throw new RuntimeException( e.getCause() );
+		}
+		finally
+		{
+			ex.shutdown();
+		}
+
+		// children come after their parent, so refit upper nodes in reverse order
+		for ( int j = builder.numUpperNodes - 1; j >= 0; --j )
+			refitInner( builder.upperNodes[ j ] );
+	}
+
+	/**
+	 * Top-down construction. Nodes are laid out in depth-first order and leaf
+	 * blocks in left-to-right order, so the index ranges of every subtree are
+	 * known in advance and subtrees can be built concurrently.
+	 */
+	private final class Builder
+	{
+		final Object[] intervals;
+
+		final double[] tmpMin;
+
+		final double[] tmpMax;
+
+		final double[] centers;
+
+		final int[] indices;
+
+		final int splitDepth;
+
+		final ArrayList< Callable< Void > > tasks = new ArrayList< Callable< Void > >();
+
+		final int[] upperNodes;
+
+		int numUpperNodes = 0;
+
+		Builder( final Object[] intervals, final double[] tmpMin, final double[] tmpMax, final double[] centers, final int[] indices, final int splitDepth )
+		{
+			this.intervals = intervals;
+			this.tmpMin = tmpMin;
+			this.tmpMax = tmpMax;
+			this.centers = centers;
+			this.indices = indices;
+			this.splitDepth = splitDepth;
+			upperNodes = new int[ 1 << splitDepth ];
+		}
+
+		/**
+		 * Build the subtree rooted at node over indices[from, to). If split is
+		 * true, subtrees at splitDepth are added to the tasks instead, and the
+		 * inner nodes above them are recorded in upperNodes to be refitted
+		 * later.
+		 */
+		void build( final int node, final int parentNode, final int from, final int to, final int block, final int depth, final boolean split )
+		{
+			parent[ node ] = parentNode;
+			final int m = to - from;
+			if ( m <= LEAF_SIZE )
+			{
+				left[ node ] = -1;
+				right[ node ] = block;
+				count[ node ] = m;
+				int slot = block * LEAF_SIZE;
+				for ( int i = from; i < to; ++i, ++slot )
+				{
+					final int j = indices[ i ];
+					items[ slot ] = intervals[ j ];
+					System.arraycopy( tmpMin, j * n, itemMin, slot * n, n );
+					System.arraycopy( tmpMax, j * n, itemMax, slot * n, n );
+				}
+				refitLeaf( node );
+				return;
+			}
+
+			if ( split && depth >= splitDepth )
+			{
+				tasks.add( new Callable< Void >()
+				{
+					@Override
+					public Void call()
+					{
+						build( node, parentNode, from, to, block, depth, false );
+						return null;
+					}
+				} );
+				return;
+			}
+
+			// split at the median center along the widest axis
+			int axis = 0;
+			double widest = -1;
+			for ( int d = 0; d < n; ++d )
+			{
+				double min = Double.POSITIVE_INFINITY;
+				double max = Double.NEGATIVE_INFINITY;
+				for ( int i = from; i < to; ++i )
+				{
+					final double c = centers[ indices[ i ] * n + d ];
+					if ( c < min )
+						min = c;
+					if ( c > max )
+						max = c;
+				}
+				if ( max - min > widest )
+				{
+					widest = max - min;
+					axis = d;
+				}
+			}
+			final int half = m / 2;
+			select( from, to - 1, from + half, axis );
+
+			final int leftChild = node + 1;
+			final int rightChild = node + 1 + countNodes( half );
+			left[ node ] = leftChild;
+			right[ node ] = rightChild;
+			count[ node ] = 0;
+			if ( split )
+				upperNodes[ numUpperNodes++ ] = node;
+			build( leftChild, node, from, from + half, block, depth + 1, split );
+			build( rightChild, node, from + half, to, block + ( countNodes( half ) + 1 ) / 2, depth + 1, split );
+			if ( !split )
+				refitInner( node );
+		}
+
+		/**
+		 * Partially sort indices[left, right] such that the element at k has
+		 * the k-th smallest center along the axis.
+		 */
+		private void select( int left, int right, final int k, final int axis )
+		{
+			while ( right > left )
+			{
+				final double pivot = centers[ indices[ ( left + right ) >>> 1 ] * n + axis ];
+				int i = left;
+				int j = right;
+				while ( i <= j )
+				{
+					while ( centers[ indices[ i ] * n + axis ] < pivot )
+						++i;
+					while ( centers[ indices[ j ] * n + axis ] > pivot )
+						--j;
+					if ( i <= j )
+					{
+						final int tmp = indices[ i ];
+						indices[ i ] = indices[ j ];
+						indices[ j ] = tmp;
+						++i;
+						--j;
+					}
+				}
+				if ( k <= j )
+					right = j;
+				else if ( k >= i )
+					left = i;
+				else
+					return;
+			}
+		}
+	}
+
+	/**
+	 * Number of nodes of the hierarchy built over m intervals.
+	 */
+	private static int countNodes( final int m )
+	{
+		if ( m <= LEAF_SIZE )
+			return 1;
+		return 1 + countNodes( m / 2 ) + countNodes( m - m / 2 );
+	}
+
+	@Override
+	public int numDimensions()
+	{
+		return n;
+	}
+
+	/**
+	 * @return the number of intervals in the hierarchy.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Find all intervals that contain a given point.
+	 * 
+	 * @param pt
+	 *            the point in question
+	 * @param result
+	 *            the intervals containing the point are appended to this list.
+	 */
+	@SuppressWarnings( "unchecked" )
+	public void find( final RealLocalizable pt, final List< ? super I > result )
+	{
+		// stackless traversal, following parent links back up
+		int node = 0;
+		int previous = -1;
+		while ( node >= 0 )
+		{
+			final int next;
+			if ( previous == parent[ node ] )
+			{
+				if ( !contains( nodeMin, nodeMax, node, pt ) )
+					next = parent[ node ];
+				else if ( left[ node ] < 0 )
+				{
+					final int first = right[ node ] * LEAF_SIZE;
+					final int last = first + count[ node ];
+					for ( int slot = first; slot < last; ++slot )
+						if ( contains( itemMin, itemMax, slot, pt ) )
+							result.add( ( I ) items[ slot ] );
+					next = parent[ node ];
+				}
+				else
+					next = left[ node ];
+			}
+			else if ( previous == left[ node ] )
+				next = right[ node ];
+			else
+				next = parent[ node ];
+			previous = node;
+			node = next;
+		}
+	}
+
+	/**
+	 * Find all intervals that overlap a given box, including intervals that
+	 * only touch its border.
+	 * 
+	 * @param box
+	 *            the box in question
+	 * @param result
+	 *            the intervals overlapping the box are appended to this list.
+	 */
+	@SuppressWarnings( "unchecked" )
+	public void findOverlapping( final RealInterval box, final List< ? super I > result )
+	{
+		int node = 0;
+		int previous = -1;
+		while ( node >= 0 )
+		{
+			final int next;
+			if ( previous == parent[ node ] )
+			{
+				if ( !overlaps( nodeMin, nodeMax, node, box ) )
+					next = parent[ node ];
+				else if ( left[ node ] < 0 )
+				{
+					final int first = right[ node ] * LEAF_SIZE;
+					final int last = first + count[ node ];
+					for ( int slot = first; slot < last; ++slot )
+						if ( overlaps( itemMin, itemMax, slot, box ) )
+							result.add( ( I ) items[ slot ] );
+					next = parent[ node ];
+				}
+				else
+					next = left[ node ];
+			}
+			else if ( previous == left[ node ] )
+				next = right[ node ];
+			else
+				next = parent[ node ];
+			previous = node;
+			node = next;
+		}
+	}
+
+	private boolean contains( final double[] min, final double[] max, final int i, final RealLocalizable pt )
+	{
+		final int o = i * n;
+		for ( int d = 0; d < n; ++d )
+		{
+			final double p = pt.getDoublePosition( d );
+			if ( p < min[ o + d ] || p > max[ o + d ] )
+				return false;
+		}
+		return true;
+	}
+
+	private boolean overlaps( final double[] min, final double[] max, final int i, final RealInterval box )
+	{
+		final int o = i * n;
+		for ( int d = 0; d < n; ++d )
+			if ( box.realMax( d ) < min[ o + d ] || box.realMin( d ) > max[ o + d ] )
+				return false;
+		return true;
+	}
+
+	/**
+	 * Add an interval to the hierarchy. It is put in the leaf whose bounds
+	 * grow least, which is split if it is full.
+	 */
+	public void add( final I interval )
+	{
+		if ( n == 0 && size == 0 )
+		{
+			// built from an empty list, the first interval fixes the dimensionality
+			n = interval.numDimensions();
+			initEmpty();
+		}
+		if ( interval.numDimensions() != n )
+			throw new IllegalArgumentException( "Expected an interval with " + n + " dimensions." );
+
+		// descend along the smallest enlargement
+		int node = 0;
+		while ( left[ node ] >= 0 )
+		{
+			final double l = enlargement( left[ node ], interval );
+			final double r = enlargement( right[ node ], interval );
+			node = l <= r ? left[ node ] : right[ node ];
+		}
+
+		if ( count[ node ] == LEAF_SIZE )
+			node = split( node, interval );
+
+		final int slot = right[ node ] * LEAF_SIZE + count[ node ]++;
+		setItem( slot, interval );
+		++size;
+		refitUp( node );
+	}
+
+	/**
+	 * Remove an interval from the hierarchy. Intervals are compared by
+	 * identity.
+	 * 
+	 * @return whether the interval was found.
+	 */
+	public boolean remove( final I interval )
+	{
+		int node = 0;
+		int previous = -1;
+		while ( node >= 0 )
+		{
+			final int next;
+			if ( previous == parent[ node ] )
+			{
+				if ( !overlaps( nodeMin, nodeMax, node, interval ) )
+					next = parent[ node ];
+				else if ( left[ node ] < 0 )
+				{
+					final int first = right[ node ] * LEAF_SIZE;
+					final int last = first + count[ node ] - 1;
+					for ( int slot = first; slot <= last; ++slot )
+					{
+						if ( items[ slot ] == interval )
+						{
+							// move the last item of the leaf into the hole
+							items[ slot ] = items[ last ];
+							System.arraycopy( itemMin, last * n, itemMin, slot * n, n );
+							System.arraycopy( itemMax, last * n, itemMax, slot * n, n );
+							items[ last ] = null;
+							--count[ node ];
+							--size;
+							refitUp( node );
+							return true;
+						}
+					}
+					next = parent[ node ];
+				}
+				else
+					next = left[ node ];
+			}
+			else if ( previous == left[ node ] )
+				next = right[ node ];
+			else
+				next = parent[ node ];
+			previous = node;
+			node = next;
+		}
+		return false;
+	}
+
+	/**
+	 * Turn a full leaf into an inner node with two leaf children, splitting
+	 * its intervals at the median center along the widest axis.
+	 * 
+	 * @return the child that should receive the new interval.
+	 */
+	private int split( final int leaf, final I interval )
+	{
+		if ( numNodes + 2 > left.length )
+			allocateNodes( Math.max( 2 * left.length, numNodes + 2 ) );
+		if ( numBlocks + 1 > items.length / LEAF_SIZE )
+			allocateBlocks( Math.max( 2 * ( items.length / LEAF_SIZE ), numBlocks + 1 ) );
+
+		final int block = right[ leaf ];
+		final int first = block * LEAF_SIZE;
+		int axis = 0;
+		double widest = -1;
+		for ( int d = 0; d < n; ++d )
+		{
+			final double extent = nodeMax[ leaf * n + d ] - nodeMin[ leaf * n + d ];
+			if ( extent > widest )
+			{
+				widest = extent;
+				axis = d;
+			}
+		}
+		final double[] centers = new double[ LEAF_SIZE ];
+		for ( int j = 0; j < LEAF_SIZE; ++j )
+			centers[ j ] = itemMin[ ( first + j ) * n + axis ] + itemMax[ ( first + j ) * n + axis ];
+		final double[] sorted = centers.clone();
+		Arrays.sort( sorted );
+		final double median = sorted[ LEAF_SIZE / 2 ];
+
+		final int a = numNodes++;
+		final int b = numNodes++;
+		final int newBlock = numBlocks++;
+		left[ a ] = -1;
+		right[ a ] = block;
+		parent[ a ] = leaf;
+		count[ a ] = 0;
+		left[ b ] = -1;
+		right[ b ] = newBlock;
+		parent[ b ] = leaf;
+		count[ b ] = 0;
+
+		// compact intervals below the median at the start of the old block,
+		// move the others to the new one
+		for ( int j = 0; j < LEAF_SIZE; ++j )
+		{
+			final int slot = first + j;
+			final int target;
+			if ( centers[ j ] < median )
+				target = block * LEAF_SIZE + count[ a ]++;
+			else
+				target = newBlock * LEAF_SIZE + count[ b ]++;
+			if ( target != slot )
+			{
+				items[ target ] = items[ slot ];
+				System.arraycopy( itemMin, slot * n, itemMin, target * n, n );
+				System.arraycopy( itemMax, slot * n, itemMax, target * n, n );
+			}
+		}
+		for ( int slot = first + count[ a ]; slot < first + LEAF_SIZE; ++slot )
+			items[ slot ] = null;
+
+		left[ leaf ] = a;
+		right[ leaf ] = b;
+		count[ leaf ] = 0;
+		refitLeaf( a );
+		refitLeaf( b );
+		refitInner( leaf );
+
+		final double c = n > 0 ? interval.realMin( axis ) + interval.realMax( axis ) : 0;
+		final int child = c < median ? a : b;
+		if ( count[ child ] == LEAF_SIZE )
+			return child == a ? b : a;
+		return child;
+	}
+
+	private double enlargement( final int node, final RealInterval interval )
+	{
+		double before = 0;
+		double after = 0;
+		for ( int d = 0; d < n; ++d )
+		{
+			final double min = nodeMin[ node * n + d ];
+			final double max = nodeMax[ node * n + d ];
+			if ( min <= max )
+				before += max - min;
+			after += Math.max( max, interval.realMax( d ) ) - Math.min( min, interval.realMin( d ) );
+		}
+		return after - before;
+	}
+
+	private void setItem( final int slot, final I interval )
+	{
+		items[ slot ] = interval;
+		for ( int d = 0; d < n; ++d )
+		{
+			itemMin[ slot * n + d ] = interval.realMin( d );
+			itemMax[ slot * n + d ] = interval.realMax( d );
+		}
+	}
+
+	private void refitUp( final int leaf )
+	{
+		refitLeaf( leaf );
+		for ( int node = parent[ leaf ]; node >= 0; node = parent[ node ] )
+			refitInner( node );
+	}
+
+	/**
+	 * Set the bounds of a leaf to the union of its intervals. An empty leaf
+	 * gets empty bounds, that no query overlaps.
+	 */
+	private void refitLeaf( final int node )
+	{
+		final int o = node * n;
+		for ( int d = 0; d < n; ++d )
+		{
+			nodeMin[ o + d ] = Double.POSITIVE_INFINITY;
+			nodeMax[ o + d ] = Double.NEGATIVE_INFINITY;
+		}
+		final int first = right[ node ] * LEAF_SIZE;
+		final int last = first + count[ node ];
+		for ( int slot = first; slot < last; ++slot )
+		{
+			for ( int d = 0; d < n; ++d )
+			{
+				nodeMin[ o + d ] = Math.min( nodeMin[ o + d ], itemMin[ slot * n + d ] );
+				nodeMax[ o + d ] = Math.max( nodeMax[ o + d ], itemMax[ slot * n + d ] );
+			}
+		}
+	}
+
+	private void refitInner( final int node )
+	{
+		final int o = node * n;
+		final int l = left[ node ] * n;
+		final int r = right[ node ] * n;
+		for ( int d = 0; d < n; ++d )
+		{
+			nodeMin[ o + d ] = Math.min( nodeMin[ l + d ], nodeMin[ r + d ] );
+			nodeMax[ o + d ] = Math.max( nodeMax[ l + d ], nodeMax[ r + d ] );
+		}
+	}
+
+	/**
+	 * Reset to a hierarchy of n dimensions consisting of a single empty leaf.
+	 */
+	private void initEmpty()
+	{
+		left = right = parent = count = null;
+		nodeMin = nodeMax = itemMin = itemMax = null;
+		items = null;
+		allocateNodes( 1 );
+		allocateBlocks( 1 );
+		numNodes = 1;
+		numBlocks = 1;
+		left[ 0 ] = -1;
+		right[ 0 ] = 0;
+		parent[ 0 ] = -1;
+		refitLeaf( 0 );
+	}
+
+	private void allocateNodes( final int capacity )
+	{
+		left = left == null ? new int[ capacity ] : Arrays.copyOf( left, capacity );
+		right = right == null ? new int[ capacity ] : Arrays.copyOf( right, capacity );
+		parent = parent == null ? new int[ capacity ] : Arrays.copyOf( parent, capacity );
+		count = count == null ? new int[ capacity ] : Arrays.copyOf( count, capacity );
+		nodeMin = nodeMin == null ? new double[ capacity * n ] : Arrays.copyOf( nodeMin, capacity * n );
+		nodeMax = nodeMax == null ? new double[ capacity * n ] : Arrays.copyOf( nodeMax, capacity * n );
+	}
+
+	private void allocateBlocks( final int capacity )
+	{
+		final int slots = capacity * LEAF_SIZE;
+		items = items == null ? new Object[ slots ] : Arrays.copyOf( items, slots );
+		itemMin = itemMin == null ? new double[ slots * n ] : Arrays.copyOf( itemMin, slots * n );
+		itemMax = itemMax == null ? new double[ slots * n ] : Arrays.copyOf( itemMax, slots * n );
+	}
+
+	private class BoundingVolumeHierarchyRandomAccess extends Point implements RandomAccess< List< I > >
+	{
+		private final ArrayList< I > result = new ArrayList< I >();
+
+		BoundingVolumeHierarchyRandomAccess()
+		{
+			super( BoundingVolumeHierarchy.this.n );
+		}
+
+		@Override
+		public List< I > get()
+		{
+			result.clear();
+			find( this, result );
+			return result;
+		}
+
+		@Override
+		public BoundingVolumeHierarchyRandomAccess copy()
+		{
+			final BoundingVolumeHierarchyRandomAccess myCopy = new BoundingVolumeHierarchyRandomAccess();
+			myCopy.setPosition( this );
+			return myCopy;
+		}
+
+		@Override
+		public BoundingVolumeHierarchyRandomAccess copyRandomAccess()
+		{
+			return copy();
+		}
+	}
+
+	@Override
+	public RandomAccess< List< I > > randomAccess()
+	{
+		return new BoundingVolumeHierarchyRandomAccess();
+	}
+
+	@Override
+	public RandomAccess< List< I > > randomAccess( final Interval interval )
+	{
+		return randomAccess();
+	}
+}
@@ -60,6 +60,8 @@ import net.imglib2.collection.KDTreeNode;
  *   Localize it to your point
  *   get() performs the search, returning the list.
  *
+ *For many intervals of varying size that overlap heavily, or if intervals
+ *are added and removed, use {@link BoundingVolumeHierarchy} instead.
  *
  * @author Lee Kamentsky
  * @author Tobias Pietzsch
@@ -38,6 +38,8 @@
 package net.imglib2.algorithm.region.localneighborhood;
 
 import net.imglib2.AbstractInterval;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
 import net.imglib2.Localizable;
 import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessibleInterval;
@@ -61,7 +63,7 @@ public class HyperSphereNeighborhoodRandomAccess< T > extends AbstractInterval i
 		this.radius = radius;
 		neighborhoodFactory = factory;
 		currentPos = new long[ n ];
-		currentNeighborhood = neighborhoodFactory.create( currentPos, radius, source.randomAccess() );
+		currentNeighborhood = neighborhoodFactory.create( currentPos, radius, source.randomAccess( accessInterval( source, radius ) ) );
 	}
 
 	protected HyperSphereNeighborhoodRandomAccess( final HyperSphereNeighborhoodRandomAccess< T > c )
@@ -71,7 +73,26 @@ public class HyperSphereNeighborhoodRandomAccess< T > extends AbstractInterval i
 		radius = c.radius;
 		neighborhoodFactory = c.neighborhoodFactory;
 		currentPos = c.currentPos.clone();
-		currentNeighborhood = neighborhoodFactory.create( currentPos, radius, source.randomAccess() );
+		currentNeighborhood = neighborhoodFactory.create( currentPos, radius, source.randomAccess( accessInterval( source, radius ) ) );
+	}
+
+	/**
+	 * The interval that neighborhoods of all positions in source can touch,
+	 * such that an extended source provides an out-of-bounds aware access.
+	 */
+	private static Interval accessInterval( final RandomAccessibleInterval< ? > source, final long radius )
+	{
+		final int n = source.numDimensions();
+		final long[] accessMin = new long[ n ];
+		final long[] accessMax = new long[ n ];
+		source.min( accessMin );
+		source.max( accessMax );
+		for ( int d = 0; d < n; ++d )
+		{
+			accessMin[ d ] -= radius;
+			accessMax[ d ] += radius;
+		}
+		return new FinalInterval( accessMin, accessMax );
 	}
 
 	@Override
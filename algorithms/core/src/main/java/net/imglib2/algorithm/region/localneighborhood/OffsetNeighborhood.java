@@ -0,0 +1,487 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.algorithm.region.localneighborhood;
+
+import java.util.Iterator;
+
+import net.imglib2.AbstractEuclideanSpace;
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.IterableRealInterval;
+import net.imglib2.Positionable;
+import net.imglib2.RealPositionable;
+import net.imglib2.img.NativeImg;
+import net.imglib2.img.planar.PlanarImg;
+import net.imglib2.type.NativeType;
+
+/**
+ * A {@link Neighborhood} on an {@link net.imglib2.img.array.ArrayImg} or
+ * {@link PlanarImg} that is entirely inside the image. Its pixels are visited
+ * by adding precomputed linear index offsets to the index of the center pixel,
+ * without any {@link net.imglib2.RandomAccess} or bounds checking.
+ * 
+ * The offsets are split into an index offset within a plane and an offset of
+ * the plane index. For an {@link net.imglib2.img.array.ArrayImg} the whole
+ * image is a single plane.
+ * 
+ * Like the unsafe neighborhoods, {@link #cursor()} always returns the same
+ * cursor instance.
+ */
+public final class OffsetNeighborhood< T > extends AbstractEuclideanSpace implements Neighborhood< T >
+{
+	final NativeImg< ?, ? > img;
+
+	/**
+	 * neighbor positions relative to the center, flattened.
+	 */
+	final long[] relative;
+
+	final int[] indexOffsets;
+
+	final int[] sliceOffsets;
+
+	final int size;
+
+	final Interval structuringElementBoundingBox;
+
+	final long[] position;
+
+	int centerIndex;
+
+	int centerSlice;
+
+	private final LocalCursor theCursor;
+
+	private final LocalCursor firstElementCursor;
+
+	OffsetNeighborhood( final NativeImg< ?, ? > img, final long[] relative, final int[] indexOffsets, final int[] sliceOffsets, final Interval structuringElementBoundingBox )
+	{
+		super( img.numDimensions() );
+		this.img = img;
+		this.relative = relative;
+		this.indexOffsets = indexOffsets;
+		this.sliceOffsets = sliceOffsets;
+		this.size = indexOffsets.length;
+		this.structuringElementBoundingBox = structuringElementBoundingBox;
+		this.position = new long[ n ];
+		theCursor = new LocalCursor();
+		firstElementCursor = new LocalCursor();
+	}
+
+	/**
+	 * Move the center to the given position, with the given linear index
+	 * within its plane and plane index.
+	 */
+	void setCenter( final long[] position, final int centerIndex, final int centerSlice )
+	{
+		for ( int d = 0; d < n; ++d )
+			this.position[ d ] = position[ d ];
+		this.centerIndex = centerIndex;
+		this.centerSlice = centerSlice;
+	}
+
+	@Override
+	public Interval getStructuringElementBoundingBox()
+	{
+		return structuringElementBoundingBox;
+	}
+
+	@Override
+	public long size()
+	{
+		return size;
+	}
+
+	@Override
+	public T firstElement()
+	{
+		firstElementCursor.reset();
+		return firstElementCursor.next();
+	}
+
+	@Override
+	public Object iterationOrder()
+	{
+		return this; // iteration order is only compatible with ourselves
+	}
+
+	@Override
+	public boolean equalIterationOrder( final IterableRealInterval< ? > f )
+	{
+		return iterationOrder().equals( f.iterationOrder() );
+	}
+
+	@Override
+	public Iterator< T > iterator()
+	{
+		return cursor();
+	}
+
+	@Override
+	public LocalCursor cursor()
+	{
+		theCursor.reset();
+		return theCursor;
+	}
+
+	@Override
+	public LocalCursor localizingCursor()
+	{
+		return cursor();
+	}
+
+	@Override
+	public void localize( final int[] pos )
+	{
+		for ( int d = 0; d < n; ++d )
+			pos[ d ] = ( int ) position[ d ];
+	}
+
+	@Override
+	public void localize( final long[] pos )
+	{
+		for ( int d = 0; d < n; ++d )
+			pos[ d ] = position[ d ];
+	}
+
+	@Override
+	public int getIntPosition( final int d )
+	{
+		return ( int ) position[ d ];
+	}
+
+	@Override
+	public long getLongPosition( final int d )
+	{
+		return position[ d ];
+	}
+
+	@Override
+	public void localize( final float[] pos )
+	{
+		for ( int d = 0; d < n; ++d )
+			pos[ d ] = position[ d ];
+	}
+
+	@Override
+	public void localize( final double[] pos )
+	{
+		for ( int d = 0; d < n; ++d )
+			pos[ d ] = position[ d ];
+	}
+
+	@Override
+	public float getFloatPosition( final int d )
+	{
+		return position[ d ];
+	}
+
+	@Override
+	public double getDoublePosition( final int d )
+	{
+		return position[ d ];
+	}
+
+	@Override
+	public long min( final int d )
+	{
+		return position[ d ] + structuringElementBoundingBox.min( d );
+	}
+
+	@Override
+	public void min( final long[] min )
+	{
+		for ( int d = 0; d < n; ++d )
+			min[ d ] = min( d );
+	}
+
+	@Override
+	public void min( final Positionable min )
+	{
+		for ( int d = 0; d < n; ++d )
+			min.setPosition( min( d ), d );
+	}
+
+	@Override
+	public long max( final int d )
+	{
+		return position[ d ] + structuringElementBoundingBox.max( d );
+	}
+
+	@Override
+	public void max( final long[] max )
+	{
+		for ( int d = 0; d < n; ++d )
+			max[ d ] = max( d );
+	}
+
+	@Override
+	public void max( final Positionable max )
+	{
+		for ( int d = 0; d < n; ++d )
+			max.setPosition( max( d ), d );
+	}
+
+	@Override
+	public double realMin( final int d )
+	{
+		return min( d );
+	}
+
+	@Override
+	public void realMin( final double[] min )
+	{
+		for ( int d = 0; d < n; ++d )
+			min[ d ] = min( d );
+	}
+
+	@Override
+	public void realMin( final RealPositionable min )
+	{
+		for ( int d = 0; d < n; ++d )
+			min.setPosition( min( d ), d );
+	}
+
+	@Override
+	public double realMax( final int d )
+	{
+		return max( d );
+	}
+
+	@Override
+	public void realMax( final double[] max )
+	{
+		for ( int d = 0; d < n; ++d )
+			max[ d ] = max( d );
+	}
+
+	@Override
+	public void realMax( final RealPositionable max )
+	{
+		for ( int d = 0; d < n; ++d )
+			max.setPosition( max( d ), d );
+	}
+
+	@Override
+	public void dimensions( final long[] dimensions )
+	{
+		structuringElementBoundingBox.dimensions( dimensions );
+	}
+
+	@Override
+	public long dimension( final int d )
+	{
+		return structuringElementBoundingBox.dimension( d );
+	}
+
+	/**
+	 * Create the structuring element bounding box from flattened relative
+	 * positions.
+	 */
+	static Interval boundingBox( final long[] relative, final int n )
+	{
+		final long[] min = new long[ n ];
+		final long[] max = new long[ n ];
+		for ( int i = 0; i < relative.length; i += n )
+		{
+			for ( int d = 0; d < n; ++d )
+			{
+				min[ d ] = Math.min( min[ d ], relative[ i + d ] );
+				max[ d ] = Math.max( max[ d ], relative[ i + d ] );
+			}
+		}
+		return new FinalInterval( min, max );
+	}
+
+	public final class LocalCursor extends AbstractEuclideanSpace implements Cursor< T >, PlanarImg.PlanarContainerSampler
+	{
+		private final T type;
+
+		private final NativeType< ? > nativeType;
+
+		private int index;
+
+		private int slice;
+
+		@SuppressWarnings( "unchecked" )
+		public LocalCursor()
+		{
+			super( OffsetNeighborhood.this.n );
+			nativeType = ( NativeType< ? > ) img.createLinkedType();
+			type = ( T ) nativeType;
+			slice = 0;
+			nativeType.updateContainer( this );
+			reset();
+		}
+
+		protected LocalCursor( final LocalCursor c )
+		{
+			this();
+			index = c.index;
+			if ( index >= 0 )
+				update();
+		}
+
+		private void update()
+		{
+			final int s = centerSlice + sliceOffsets[ index ];
+			if ( s != slice )
+			{
+				slice = s;
+				nativeType.updateContainer( this );
+			}
+			nativeType.updateIndex( centerIndex + indexOffsets[ index ] );
+		}
+
+		@Override
+		public int getCurrentSliceIndex()
+		{
+			return slice;
+		}
+
+		@Override
+		public T get()
+		{
+			return type;
+		}
+
+		@Override
+		public void fwd()
+		{
+			++index;
+			update();
+		}
+
+		@Override
+		public void jumpFwd( final long steps )
+		{
+			index += ( int ) steps;
+			update();
+		}
+
+		@Override
+		public T next()
+		{
+			fwd();
+			return type;
+		}
+
+		@Override
+		public void remove()
+		{
+			// NB: no action.
+		}
+
+		@Override
+		public void reset()
+		{
+			index = -1;
+		}
+
+		@Override
+		public boolean hasNext()
+		{
+			return index < size - 1;
+		}
+
+		@Override
+		public long getLongPosition( final int d )
+		{
+			return position[ d ] + relative[ index * n + d ];
+		}
+
+		@Override
+		public int getIntPosition( final int d )
+		{
+			return ( int ) getLongPosition( d );
+		}
+
+		@Override
+		public float getFloatPosition( final int d )
+		{
+			return getLongPosition( d );
+		}
+
+		@Override
+		public double getDoublePosition( final int d )
+		{
+			return getLongPosition( d );
+		}
+
+		@Override
+		public void localize( final long[] pos )
+		{
+			for ( int d = 0; d < n; ++d )
+				pos[ d ] = getLongPosition( d );
+		}
+
+		@Override
+		public void localize( final int[] pos )
+		{
+			for ( int d = 0; d < n; ++d )
+				pos[ d ] = ( int ) getLongPosition( d );
+		}
+
+		@Override
+		public void localize( final float[] pos )
+		{
+			for ( int d = 0; d < n; ++d )
+				pos[ d ] = getLongPosition( d );
+		}
+
+		@Override
+		public void localize( final double[] pos )
+		{
+			for ( int d = 0; d < n; ++d )
+				pos[ d ] = getLongPosition( d );
+		}
+
+		@Override
+		public LocalCursor copy()
+		{
+			return new LocalCursor( this );
+		}
+
+		@Override
+		public LocalCursor copyCursor()
+		{
+			return copy();
+		}
+	}
+}
@@ -0,0 +1,445 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.algorithm.region.localneighborhood;
+
+import java.util.Iterator;
+
+import net.imglib2.AbstractInterval;
+import net.imglib2.Cursor;
+import net.imglib2.ExtendedRandomAccessibleInterval;
+import net.imglib2.FlatIterationOrder;
+import net.imglib2.Interval;
+import net.imglib2.IterableInterval;
+import net.imglib2.IterableRealInterval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.NativeImg;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.planar.PlanarImg;
+import net.imglib2.view.IntervalView;
+
+/**
+ * Iterates the {@link Neighborhood Neighborhoods} of a {@link Shape} using
+ * precomputed linear index offsets, for sources backed by an {@link ArrayImg}
+ * or {@link PlanarImg}.
+ * 
+ * The neighbor positions of the shape are recorded once and converted to index
+ * offsets in the underlying image. For centers in the interior of the image,
+ * i.e., where the whole neighborhood lies inside the image, the cursor returns
+ * an {@link OffsetNeighborhood} that reads the neighbors without any bounds
+ * logic. Only for centers in the border band, the regular (unsafe) neighborhood
+ * of the shape is used, which reads through the source and therefore through
+ * the out-of-bounds strategy of an extended source.
+ * 
+ * Supported sources are {@link ArrayImg}, {@link PlanarImg}, and
+ * {@link IntervalView views} of an {@link ExtendedRandomAccessibleInterval}
+ * on either, as obtained by
+ * <code>Views.interval( Views.extendMirrorSingle( img ), img )</code> for
+ * example. For other sources, {@link #neighborhoods(Shape, RandomAccessibleInterval)}
+ * falls back to {@link Shape#neighborhoods(RandomAccessibleInterval)}.
+ * 
+ * The neighbors are visited in the same order as by the shape's own
+ * neighborhoods.
+ */
+public final class OffsetNeighborhoods< T > extends AbstractInterval implements IterableInterval< Neighborhood< T > >
+{
+	/**
+	 * Get an {@link IterableInterval} that contains all {@link Neighborhood
+	 * Neighborhoods} of the source image, iterating interior neighborhoods with
+	 * linear index offsets if the source is supported. The neighborhoods are
+	 * unsafe in the same sense as {@link Shape#neighborhoods(RandomAccessibleInterval)}.
+	 * 
+	 * @param shape
+	 *            the neighborhood shape, e.g., {@link RectangleShape} or
+	 *            {@link HyperSphereShape}.
+	 * @param source
+	 *            source image.
+	 */
+	public static < T > IterableInterval< Neighborhood< T > > neighborhoods( final Shape shape, final RandomAccessibleInterval< T > source )
+	{
+		final NativeImg< ?, ? > img = getNativeImg( source );
+		if ( img == null )
+			return shape.neighborhoods( source );
+		return new OffsetNeighborhoods< T >( shape, source, img );
+	}
+
+	/**
+	 * @return the {@link ArrayImg} or {@link PlanarImg} underlying source, or
+	 *         null if the source is not supported.
+	 */
+	static NativeImg< ?, ? > getNativeImg( final RandomAccessibleInterval< ? > source )
+	{
+		RandomAccessible< ? > s = source;
+		if ( s instanceof IntervalView )
+		{
+			s = ( ( IntervalView< ? > ) s ).getSource();
+			if ( !( s instanceof ExtendedRandomAccessibleInterval ) )
+				return null;
+			s = ( ( ExtendedRandomAccessibleInterval< ?, ? > ) s ).getSource();
+		}
+		if ( s instanceof ArrayImg || s instanceof PlanarImg )
+			return ( NativeImg< ?, ? > ) s;
+		return null;
+	}
+
+	final Shape shape;
+
+	final RandomAccessibleInterval< T > source;
+
+	final NativeImg< ?, ? > img;
+
+	final long size;
+
+	/**
+	 * number of leading dimensions that make up a plane.
+	 */
+	final int planeDimensions;
+
+	/**
+	 * index steps within a plane, and plane index steps.
+	 */
+	final long[] steps;
+
+	/**
+	 * neighbor positions relative to the center, flattened.
+	 */
+	final long[] relative;
+
+	final int[] indexOffsets;
+
+	final int[] sliceOffsets;
+
+	final Interval boundingBox;
+
+	/**
+	 * range of interior centers.
+	 */
+	final long[] interiorMin;
+
+	final long[] interiorMax;
+
+	OffsetNeighborhoods( final Shape shape, final RandomAccessibleInterval< T > source, final NativeImg< ?, ? > img )
+	{
+		super( source );
+		this.shape = shape;
+		this.source = source;
+		this.img = img;
+
+		long s = 1;
+		for ( int d = 0; d < n; ++d )
+			s *= source.dimension( d );
+		size = s;
+
+		planeDimensions = ( img instanceof PlanarImg ) ? Math.min( n, 2 ) : n;
+		steps = new long[ n ];
+		long step = 1;
+		for ( int d = 0; d < n; ++d )
+		{
+			if ( d == planeDimensions )
+				step = 1;
+			steps[ d ] = step;
+			step *= img.dimension( d );
+		}
+
+		// record the neighbor positions around the origin
+		final RandomAccess< Neighborhood< T > > access = shape.neighborhoodsRandomAccessible( source ).randomAccess();
+		for ( int d = 0; d < n; ++d )
+			access.setPosition( 0, d );
+		final Neighborhood< T > neighborhood = access.get();
+		final int k = ( int ) neighborhood.size();
+		relative = new long[ k * n ];
+		indexOffsets = new int[ k ];
+		sliceOffsets = new int[ k ];
+		final Cursor< T > c = neighborhood.localizingCursor();
+		for ( int i = 0; i < k; ++i )
+		{
+			c.fwd();
+			long index = 0;
+			long slice = 0;
+			for ( int d = 0; d < n; ++d )
+			{
+				final long r = c.getLongPosition( d );
+				relative[ i * n + d ] = r;
+				if ( d < planeDimensions )
+					index += r * steps[ d ];
+				else
+					slice += r * steps[ d ];
+			}
+			indexOffsets[ i ] = ( int ) index;
+			sliceOffsets[ i ] = ( int ) slice;
+		}
+
+		boundingBox = OffsetNeighborhood.boundingBox( relative, n );
+		interiorMin = new long[ n ];
+		interiorMax = new long[ n ];
+		for ( int d = 0; d < n; ++d )
+		{
+			interiorMin[ d ] = -boundingBox.min( d );
+			interiorMax[ d ] = img.dimension( d ) - 1 - boundingBox.max( d );
+		}
+	}
+
+	@Override
+	public OffsetNeighborhoodsCursor cursor()
+	{
+		return new OffsetNeighborhoodsCursor();
+	}
+
+	@Override
+	public OffsetNeighborhoodsCursor localizingCursor()
+	{
+		return cursor();
+	}
+
+	@Override
+	public long size()
+	{
+		return size;
+	}
+
+	@Override
+	public Neighborhood< T > firstElement()
+	{
+		return cursor().next();
+	}
+
+	@Override
+	public Object iterationOrder()
+	{
+		return new FlatIterationOrder( this );
+	}
+
+	@Override
+	public boolean equalIterationOrder( final IterableRealInterval< ? > f )
+	{
+		return iterationOrder().equals( f.iterationOrder() );
+	}
+
+	@Override
+	public Iterator< Neighborhood< T > > iterator()
+	{
+		return cursor();
+	}
+
+	/**
+	 * Iterates all centers in flat order. Returns the shared
+	 * {@link OffsetNeighborhood} for interior centers and the neighborhood of
+	 * the shape for border centers.
+	 */
+	public final class OffsetNeighborhoodsCursor extends AbstractInterval implements Cursor< Neighborhood< T > >
+	{
+		private final long[] position;
+
+		private final OffsetNeighborhood< T > interior;
+
+		private final RandomAccess< Neighborhood< T > > border;
+
+		private long index;
+
+		/**
+		 * whether all dimensions but the first are within the interior.
+		 */
+		private boolean lineInterior;
+
+		public OffsetNeighborhoodsCursor()
+		{
+			super( source );
+			position = new long[ n ];
+			interior = new OffsetNeighborhood< T >( img, relative, indexOffsets, sliceOffsets, boundingBox );
+			border = shape.neighborhoodsRandomAccessible( source ).randomAccess();
+			reset();
+		}
+
+		private OffsetNeighborhoodsCursor( final OffsetNeighborhoodsCursor c )
+		{
+			this();
+			index = c.index;
+			lineInterior = c.lineInterior;
+			for ( int d = 0; d < n; ++d )
+				position[ d ] = c.position[ d ];
+		}
+
+		private void updateLineInterior()
+		{
+			lineInterior = true;
+			for ( int d = 1; d < n; ++d )
+				if ( position[ d ] < interiorMin[ d ] || position[ d ] > interiorMax[ d ] )
+					lineInterior = false;
+		}
+
+		@Override
+		public Neighborhood< T > get()
+		{
+			if ( lineInterior && position[ 0 ] >= interiorMin[ 0 ] && position[ 0 ] <= interiorMax[ 0 ] )
+			{
+				long centerIndex = 0;
+				long centerSlice = 0;
+				for ( int d = 0; d < n; ++d )
+				{
+					if ( d < planeDimensions )
+						centerIndex += position[ d ] * steps[ d ];
+					else
+						centerSlice += position[ d ] * steps[ d ];
+				}
+				interior.setCenter( position, ( int ) centerIndex, ( int ) centerSlice );
+				return interior;
+			}
+			border.setPosition( position );
+			return border.get();
+		}
+
+		@Override
+		public void fwd()
+		{
+			++index;
+			if ( ++position[ 0 ] > max[ 0 ] )
+			{
+				position[ 0 ] = min[ 0 ];
+				for ( int d = 1; d < n; ++d )
+				{
+					if ( ++position[ d ] > max[ d ] )
+						position[ d ] = min[ d ];
+					else
+						break;
+				}
+				updateLineInterior();
+			}
+		}
+
+		@Override
+		public void jumpFwd( final long steps )
+		{
+			for ( long i = 0; i < steps; ++i )
+				fwd();
+		}
+
+		@Override
+		public void reset()
+		{
+			index = 0;
+			for ( int d = 0; d < n; ++d )
+				position[ d ] = min[ d ];
+			position[ 0 ] = min[ 0 ] - 1;
+			updateLineInterior();
+		}
+
+		@Override
+		public boolean hasNext()
+		{
+			return index < size;
+		}
+
+		@Override
+		public Neighborhood< T > next()
+		{
+			fwd();
+			return get();
+		}
+
+		@Override
+		public void remove()
+		{
+			// NB: no action.
+		}
+
+		@Override
+		public void localize( final float[] pos )
+		{
+			for ( int d = 0; d < n; ++d )
+				pos[ d ] = position[ d ];
+		}
+
+		@Override
+		public void localize( final double[] pos )
+		{
+			for ( int d = 0; d < n; ++d )
+				pos[ d ] = position[ d ];
+		}
+
+		@Override
+		public void localize( final int[] pos )
+		{
+			for ( int d = 0; d < n; ++d )
+				pos[ d ] = ( int ) position[ d ];
+		}
+
+		@Override
+		public void localize( final long[] pos )
+		{
+			for ( int d = 0; d < n; ++d )
+				pos[ d ] = position[ d ];
+		}
+
+		@Override
+		public float getFloatPosition( final int d )
+		{
+			return position[ d ];
+		}
+
+		@Override
+		public double getDoublePosition( final int d )
+		{
+			return position[ d ];
+		}
+
+		@Override
+		public int getIntPosition( final int d )
+		{
+			return ( int ) position[ d ];
+		}
+
+		@Override
+		public long getLongPosition( final int d )
+		{
+			return position[ d ];
+		}
+
+		@Override
+		public OffsetNeighborhoodsCursor copy()
+		{
+			return new OffsetNeighborhoodsCursor( this );
+		}
+
+		@Override
+		public OffsetNeighborhoodsCursor copyCursor()
+		{
+			return copy();
+		}
+	}
+}
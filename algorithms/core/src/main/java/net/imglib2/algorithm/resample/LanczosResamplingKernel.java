@@ -0,0 +1,85 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.algorithm.resample;
+
+import net.imglib2.interpolation.randomaccess.LanczosInterpolator;
+
+/**
+ * Lanczos interpolation kernel. Resampling with this kernel in every
+ * dimension corresponds to {@link LanczosInterpolator} with the same alpha.
+ */
+public class LanczosResamplingKernel implements ResamplingKernel
+{
+	final private int alpha;
+
+	/**
+	 * @param alpha
+	 *            the radius of the kernel.
+	 */
+	public LanczosResamplingKernel( final int alpha )
+	{
+		if ( alpha < 1 )
+			throw new IllegalArgumentException( "alpha must be >= 1" );
+		this.alpha = alpha;
+	}
+
+	/**
+	 * Creates a Lanczos kernel with alpha = 3.
+	 */
+	public LanczosResamplingKernel()
+	{
+		this( 3 );
+	}
+
+	@Override
+	public int radius()
+	{
+		return alpha;
+	}
+
+	@Override
+	public double weight( final double x )
+	{
+		if ( x == 0 )
+			return 1;
+		if ( x <= -alpha || x >= alpha )
+			return 0;
+		final double px = Math.PI * x;
+		return alpha * Math.sin( px ) * Math.sin( px / alpha ) / ( px * px );
+	}
+}
@@ -0,0 +1,394 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.algorithm.resample;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.AbstractImg;
+import net.imglib2.img.Img;
+import net.imglib2.img.ImgFactory;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.real.DoubleType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.IntervalIndexer;
+import net.imglib2.util.Util;
+import net.imglib2.view.Views;
+
+/**
+ * Resampling of an image onto a regular grid with a separable interpolation
+ * kernel.
+ *
+ * <p>
+ * For each target pixel, an interpolator such as {@link
+ * net.imglib2.interpolation.randomaccess.NLinearInterpolator} computes
+ * 2<sup>n</sup> (or (2r)<sup>n</sup>) kernel weights and visits the
+ * corresponding source pixels. When the target grid is axis-aligned with the
+ * source (scaling and translation only), the source positions and weights
+ * along each axis repeat for every line. Here they are computed once per axis
+ * into index/weight tables, and the image is resampled one dimension at a
+ * time: every line is copied into a buffer, resampled with a few
+ * multiply-adds per output pixel, and written to a temporary image of type
+ * {@link FloatType} (or {@link DoubleType} if the target is
+ * {@link DoubleType}). Lines are processed in parallel. Dimensions that
+ * shrink the most are processed first to keep temporary images small.
+ *
+ * <p>
+ * The target position t maps to source position scale[d] * t +
+ * translation[d] in dimension d. Values written to the target are clipped to
+ * the range of the target type.
+ */
+public final class SeparableResampler
+{
+	/**
+	 * Resample a source interval onto a target interval, such that the source
+	 * interval is stretched to cover the target interval. Target min maps to
+	 * source min and the scale is the ratio of source and target dimensions
+	 * (the same convention as the ops Resample operation).
+	 * The source is extended by mirroring.
+	 *
+	 * @param kernel
+	 *            interpolation kernel
+	 * @param source
+	 *            source image
+	 * @param target
+	 *            target image
+	 * @param numThreads
+	 *            how many threads to use for the computation.
+	 */
+	public static < S extends RealType< S >, T extends RealType< T > > void resample( final ResamplingKernel kernel, final RandomAccessibleInterval< S > source, final RandomAccessibleInterval< T > target, final int numThreads )
+	{
+		final int n = source.numDimensions();
+		final double[] scale = new double[ n ];
+		final double[] translation = new double[ n ];
+		for ( int d = 0; d < n; ++d )
+		{
+			scale[ d ] = ( double ) source.dimension( d ) / target.dimension( d );
+			translation[ d ] = source.min( d ) - scale[ d ] * target.min( d );
+		}
+		resample( kernel, Views.extendMirrorSingle( source ), scale, translation, target, numThreads );
+	}
+
+	/**
+	 * Resample source into target, where target position t maps to source
+	 * position scale[d] * t + translation[d] in dimension d.
+	 *
+	 * @param kernel
+	 *            interpolation kernel
+	 * @param source
+	 *            source image, must be sufficiently padded (e.g.
+	 *            {@link Views#extendMirrorSingle(RandomAccessibleInterval)}) to
+	 *            provide values for all kernel footprints.
+	 * @param scale
+	 *            source pixel spacing per target pixel for every dimension.
+	 * @param translation
+	 *            source position of target position 0 for every dimension.
+	 * @param target
+	 *            target image.
+	 * @param numThreads
+	 *            how many threads to use for the computation.
+	 */
+	public static < S extends RealType< S >, T extends RealType< T > > void resample( final ResamplingKernel kernel, final RandomAccessible< S > source, final double[] scale, final double[] translation, final RandomAccessibleInterval< T > target, final int numThreads )
+	{
+		final int n = target.numDimensions();
+		if ( source.numDimensions() != n || scale.length != n || translation.length != n )
+			throw new IllegalArgumentException( "dimensionality mismatch" );
+
+		final AxisTable[] tables = new AxisTable[ n ];
+		for ( int d = 0; d < n; ++d )
+			tables[ d ] = new AxisTable( kernel, scale[ d ], translation[ d ], target.min( d ), target.dimension( d ) );
+
+		final T targetType = Util.getTypeFromInterval( target );
+		final double clipMin = targetType.getMinValue();
+		final double clipMax = targetType.getMaxValue();
+
+		// process dimensions in order of increasing target/source size ratio
+		final Integer[] order = new Integer[ n ];
+		for ( int d = 0; d < n; ++d )
+			order[ d ] = d;
+		Arrays.sort( order, new Comparator< Integer >()
+		{
+			@Override
+			public int compare( final Integer a, final Integer b )
+			{
+				return Double.compare( tables[ a ].ratio(), tables[ b ].ratio() );
+			}
+		} );
+
+		final long[] dims = new long[ n ];
+		final long[] sourceOffset = new long[ n ];
+		final long[] zeroOffset = new long[ n ];
+		final long[] targetOffset = new long[ n ];
+		for ( int d = 0; d < n; ++d )
+		{
+			dims[ d ] = tables[ d ].sourceLength;
+			sourceOffset[ d ] = tables[ d ].sourceMin;
+		}
+		target.min( targetOffset );
+
+		RandomAccessible< ? extends RealType< ? > > in = source;
+		long[] inOffset = sourceOffset;
+		for ( int i = 0; i < n; ++i )
+		{
+			final int d = order[ i ];
+			dims[ d ] = tables[ d ].targetLength;
+			if ( i == n - 1 )
+			{
+				resampleDimension( tables[ d ], d, in, inOffset, target, targetOffset, dims, clipMin, clipMax, numThreads );
+			}
+			else
+			{
+				final Img< ? extends RealType< ? > > tmp = createTempImage( dims, targetType );
+				resampleDimension( tables[ d ], d, in, inOffset, tmp, zeroOffset, dims, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, numThreads );
+				in = tmp;
+				inOffset = zeroOffset;
+			}
+		}
+	}
+
+	/**
+	 * Source indices and kernel weights along one axis.
+	 */
+	static final class AxisTable
+	{
+		/**
+		 * minimum source position read along this axis.
+		 */
+		final long sourceMin;
+
+		/**
+		 * number of source positions read along this axis.
+		 */
+		final int sourceLength;
+
+		/**
+		 * number of target positions along this axis.
+		 */
+		final int targetLength;
+
+		/**
+		 * number of source samples contributing to each target position.
+		 */
+		final int taps;
+
+		/**
+		 * for each target position, the first contributing source position
+		 * relative to sourceMin.
+		 */
+		final int[] start;
+
+		/**
+		 * for each target position, the weights of the contributing source
+		 * positions (flattened, taps weights per target position).
+		 */
+		final double[] weights;
+
+		AxisTable( final ResamplingKernel kernel, final double scale, final double translation, final long targetMin, final long targetDimension )
+		{
+			if ( targetDimension > Integer.MAX_VALUE )
+				throw new IllegalArgumentException( "target dimension too large" );
+			final int r = kernel.radius();
+			taps = 2 * r;
+			targetLength = ( int ) targetDimension;
+			final long[] first = new long[ targetLength ];
+			weights = new double[ targetLength * taps ];
+			long min = Long.MAX_VALUE;
+			long max = Long.MIN_VALUE;
+			for ( int t = 0; t < targetLength; ++t )
+			{
+				final double x = scale * ( targetMin + t ) + translation;
+				final long f = ( long ) Math.floor( x ) - r + 1;
+				first[ t ] = f;
+				for ( int k = 0; k < taps; ++k )
+					weights[ t * taps + k ] = kernel.weight( x - ( f + k ) );
+				min = Math.min( min, f );
+				max = Math.max( max, f + taps - 1 );
+			}
+			if ( max - min + 1 > Integer.MAX_VALUE )
+				throw new IllegalArgumentException( "source extent too large" );
+			sourceMin = min;
+			sourceLength = ( int ) ( max - min + 1 );
+			start = new int[ targetLength ];
+			for ( int t = 0; t < targetLength; ++t )
+				start[ t ] = ( int ) ( first[ t ] - min );
+		}
+
+		double ratio()
+		{
+			return ( double ) targetLength / sourceLength;
+		}
+
+		/**
+		 * Resample one line.
+		 */
+		void apply( final double[] in, final double[] out )
+		{
+			for ( int t = 0, w = 0; t < targetLength; ++t )
+			{
+				double sum = 0;
+				for ( int k = 0, i = start[ t ]; k < taps; ++k, ++i, ++w )
+					sum += in[ i ] * weights[ w ];
+				out[ t ] = sum;
+			}
+		}
+	}
+
+	/**
+	 * Resample all lines along dimension d.
+	 *
+	 * @param table
+	 *            index/weight table for dimension d.
+	 * @param in
+	 *            input accessible.
+	 * @param inOffset
+	 *            position in input of the first pixel read.
+	 * @param out
+	 *            output accessible.
+	 * @param outOffset
+	 *            position in output of the first pixel written.
+	 * @param outDims
+	 *            dimensions of the output region.
+	 */
+	static void resampleDimension( final AxisTable table, final int d, final RandomAccessible< ? extends RealType< ? > > in, final long[] inOffset, final RandomAccessible< ? extends RealType< ? > > out, final long[] outOffset, final long[] outDims, final double clipMin, final double clipMax, final int numThreads )
+	{
+		final int n = outDims.length;
+		final long[] lineDims = outDims.clone();
+		lineDims[ d ] = 1;
+		final long numLines = AbstractImg.numElements( lineDims );
+		final int numTasks = ( int ) Math.max( 1, Math.min( numLines, numThreads > 1 ? numThreads * 4 : 1 ) );
+		final boolean clip = clipMin > Double.NEGATIVE_INFINITY || clipMax < Double.POSITIVE_INFINITY;
+
+		final ExecutorService ex = Executors.newFixedThreadPool( numThreads );
+		final List< Callable< Void > > tasks = new ArrayList< Callable< Void > >();
+		for ( int taskNum = 0; taskNum < numTasks; ++taskNum )
+		{
+			final long myStartIndex = taskNum * ( numLines / numTasks );
+			final long myEndIndex = ( taskNum == numTasks - 1 ) ? numLines : ( taskNum + 1 ) * ( numLines / numTasks );
+			tasks.add( new Callable< Void >()
+			{
+				@Override
+				public Void call()
+				{
+					final RandomAccess< ? extends RealType< ? > > inAccess = in.randomAccess();
+					final RandomAccess< ? extends RealType< ? > > outAccess = out.randomAccess();
+					final double[] inLine = new double[ table.sourceLength ];
+					final double[] outLine = new double[ table.targetLength ];
+					final long[] position = new long[ n ];
+					for ( long index = myStartIndex; index < myEndIndex; ++index )
+					{
+						IntervalIndexer.indexToPosition( index, lineDims, position );
+						for ( int i = 0; i < n; ++i )
+						{
+							inAccess.setPosition( position[ i ] + inOffset[ i ], i );
+							outAccess.setPosition( position[ i ] + outOffset[ i ], i );
+						}
+						for ( int i = 0; i < inLine.length; ++i )
+						{
+							inLine[ i ] = inAccess.get().getRealDouble();
+							inAccess.fwd( d );
+						}
+						table.apply( inLine, outLine );
+						for ( int i = 0; i < outLine.length; ++i )
+						{
+							double v = outLine[ i ];
+							if ( clip )
+							{
+								if ( v < clipMin )
+									v = clipMin;
+								else if ( v > clipMax )
+									v = clipMax;
+							}
+							outAccess.get().setReal( v );
+							outAccess.fwd( d );
+						}
+					}
+					return null;
+				}
+			} );
+		}
+		try
+		{
+			for ( final Future< Void > f : ex.invokeAll( tasks ) )
+				f.get();
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			throw new RuntimeException( e );
+		}
+		catch ( final ExecutionException e )
+		{
+			throw new RuntimeException( e.getCause() );
+		}
+		finally
+		{
+			ex.shutdown();
+		}
+	}
+
+	private static Img< ? extends RealType< ? > > createTempImage( final long[] dims, final RealType< ? > targetType )
+	{
+		if ( targetType instanceof DoubleType )
+			return getImgFactory( dims, new DoubleType() ).create( dims, new DoubleType() );
+		return getImgFactory( dims, new FloatType() ).create( dims, new FloatType() );
+	}
+
+	private static < T extends NativeType< T > > ImgFactory< T > getImgFactory( final long[] dims, final T type )
+	{
+		if ( AbstractImg.numElements( dims ) <= Integer.MAX_VALUE )
+			return new ArrayImgFactory< T >();
+		final int cellSize = ( int ) Math.pow( Integer.MAX_VALUE / type.getEntitiesPerPixel(), 1.0 / dims.length );
+		return new CellImgFactory< T >( cellSize );
+	}
+
+	private SeparableResampler()
+	{}
+}
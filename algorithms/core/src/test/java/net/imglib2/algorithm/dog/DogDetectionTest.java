@@ -0,0 +1,146 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.algorithm.dog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccessible;
+import net.imglib2.algorithm.dog.DogDetection.ExtremaType;
+import net.imglib2.algorithm.dog.DogDetection.Peak;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.Views;
+
+import org.junit.Test;
+
+/**
+ * Detects synthetic blobs with {@link DogDetection}.
+ */
+public class DogDetectionTest
+{
+	// x, y, sigma, amplitude
+	final static double[][] blobs = new double[][] {
+			{ 20, 20, 2, 100 },
+			{ 70, 25, 2, -100 },
+			{ 45, 60, 5, 100 },
+			{ 33, 90, 2, 100 } };
+
+	private static ArrayImg< FloatType, ? > createSource()
+	{
+		final ArrayImg< FloatType, ? > img = ArrayImgs.floats( 100, 110 );
+		final Cursor< FloatType > c = img.localizingCursor();
+		while ( c.hasNext() )
+		{
+			c.fwd();
+			double v = 0;
+			for ( final double[] b : blobs )
+			{
+				final double dx = c.getDoublePosition( 0 ) - b[ 0 ];
+				final double dy = c.getDoublePosition( 1 ) - b[ 1 ];
+				v += b[ 3 ] * Math.exp( -( dx * dx + dy * dy ) / ( 2 * b[ 2 ] * b[ 2 ] ) );
+			}
+			c.get().setReal( v );
+		}
+		return img;
+	}
+
+	private static boolean contains( final ArrayList< Peak > peaks, final long x, final long y )
+	{
+		for ( final Peak p : peaks )
+			if ( p.getLongPosition( 0 ) == x && p.getLongPosition( 1 ) == y )
+				return true;
+		return false;
+	}
+
+	@Test
+	public void testBlocksMatchSingleBlock()
+	{
+		final ArrayImg< FloatType, ? > img = createSource();
+		final RandomAccessible< FloatType > source = Views.extendMirrorSingle( img );
+		final double[] sigmas = new double[] { 1.5, 2.5 };
+
+		final ArrayList< Peak > single = DogDetection.detect( source, img, sigmas, 10, ExtremaType.MAXIMA, false, new int[] { 100, 110 }, 1 );
+		final ArrayList< Peak > blocked = DogDetection.detect( source, img, sigmas, 10, ExtremaType.MAXIMA, false, new int[] { 16, 7 }, 4 );
+
+		assertEquals( single.size(), blocked.size() );
+		for ( final Peak p : single )
+			assertTrue( contains( blocked, p.getLongPosition( 0 ), p.getLongPosition( 1 ) ) );
+
+		assertEquals( 3, single.size() );
+		assertTrue( contains( single, 20, 20 ) );
+		assertTrue( contains( single, 45, 60 ) );
+		assertTrue( contains( single, 33, 90 ) );
+	}
+
+	@Test
+	public void testMinima()
+	{
+		final ArrayImg< FloatType, ? > img = createSource();
+		final ArrayList< Peak > peaks = DogDetection.detect( Views.extendMirrorSingle( img ), img, 1.5, 2.5, 10, ExtremaType.MINIMA, 3 );
+		assertEquals( 1, peaks.size() );
+		assertTrue( contains( peaks, 70, 25 ) );
+		assertTrue( peaks.get( 0 ).getValue() < 0 );
+	}
+
+	@Test
+	public void testScaleSpace()
+	{
+		final ArrayImg< FloatType, ? > img = createSource();
+		final double[] sigmas = new double[ 10 ];
+		for ( int i = 0; i < sigmas.length; ++i )
+			sigmas[ i ] = Math.pow( 1.3, i );
+		final ArrayList< Peak > peaks = DogDetection.detect( Views.extendMirrorSingle( img ), img, sigmas, 10, ExtremaType.MAXIMA, true, new int[] { 32, 32 }, 2 );
+
+		int small = -1;
+		int large = -1;
+		for ( final Peak p : peaks )
+		{
+			if ( p.getLongPosition( 0 ) == 20 && p.getLongPosition( 1 ) == 20 )
+				small = p.getScale();
+			if ( p.getLongPosition( 0 ) == 45 && p.getLongPosition( 1 ) == 60 )
+				large = p.getScale();
+		}
+		assertTrue( small > 0 );
+		assertTrue( large > small );
+	}
+}
@@ -0,0 +1,189 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.algorithm.edge;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import net.imglib2.Cursor;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.FloatArray;
+import net.imglib2.type.numeric.real.FloatType;
+
+import org.junit.Test;
+
+public class SubpixelEdgelDetectionTest
+{
+	/**
+	 * An image with a smooth step of the given direction through the given
+	 * point.
+	 */
+	private static ArrayImg< FloatType, FloatArray > step( final long[] dims, final double[] normal, final double[] origin )
+	{
+		final ArrayImg< FloatType, FloatArray > img = ArrayImgs.floats( dims );
+		final Cursor< FloatType > c = img.localizingCursor();
+		while ( c.hasNext() )
+		{
+			c.fwd();
+			double distance = 0;
+			for ( int d = 0; d < dims.length; ++d )
+				distance += ( c.getDoublePosition( d ) - origin[ d ] ) * normal[ d ];
+			c.get().setReal( 100 / ( 1 + Math.exp( -2 * distance ) ) );
+		}
+		return img;
+	}
+
+	private static void checkStep( final long[] dims, final double[] normal, final double[] origin )
+	{
+		final int n = dims.length;
+		final ArrayImg< FloatType, FloatArray > img = step( dims, normal, origin );
+		final EdgelList edgels = SubpixelEdgelDetection.getEdgelList( img, 10, 1 );
+		assertTrue( edgels.size() > 0 );
+		for ( int i = 0; i < edgels.size(); ++i )
+		{
+			// sub-pixel position on the step, and gradient along its normal
+			double distance = 0;
+			double cos = 0;
+			for ( int d = 0; d < n; ++d )
+			{
+				distance += ( edgels.getPosition( i, d ) - origin[ d ] ) * normal[ d ];
+				cos += edgels.getGradient( i, d ) * normal[ d ];
+			}
+			assertEquals( 0, distance, 0.2 );
+			assertEquals( 1, cos, 0.01 );
+		}
+
+		// multi-threaded detection finds the same edgels in the same order
+		final EdgelList parallel = SubpixelEdgelDetection.getEdgelList( img, 10, 4 );
+		assertEquals( edgels.size(), parallel.size() );
+		for ( int i = 0; i < edgels.size(); ++i )
+		{
+			for ( int d = 0; d < n; ++d )
+				assertEquals( edgels.getPosition( i, d ), parallel.getPosition( i, d ), 0 );
+			assertEquals( edgels.getMagnitude( i ), parallel.getMagnitude( i ), 0 );
+		}
+	}
+
+	@Test
+	public void testStep2D()
+	{
+		final double s = Math.sqrt( 0.5 );
+		checkStep( new long[] { 64, 48 }, new double[] { s, s }, new double[] { 30.3, 20.1 } );
+	}
+
+	@Test
+	public void testStep3D()
+	{
+		final double[] normal = new double[] { 0.2, 0.4, -0.6 };
+		final double norm = Math.sqrt( 0.56 );
+		for ( int d = 0; d < 3; ++d )
+			normal[ d ] /= norm;
+		// enough slices for several blocks
+		checkStep( new long[] { 40, 60, 50 }, normal, new double[] { 20.2, 30.7, 25.4 } );
+	}
+
+	/**
+	 * Checks that detection in small blocks finds the same edgels in the same
+	 * order as detection in a single block, for a blob with edges in all
+	 * directions. Values may differ by float rounding, as the interpolation
+	 * works in block coordinates.
+	 */
+	private static void checkBlocks( final long[] dims, final int blockSize )
+	{
+		final ArrayImg< FloatType, FloatArray > img = ArrayImgs.floats( dims );
+		final Cursor< FloatType > c = img.localizingCursor();
+		while ( c.hasNext() )
+		{
+			c.fwd();
+			double r = 0;
+			for ( int d = 0; d < dims.length; ++d )
+			{
+				final double x = ( c.getDoublePosition( d ) - dims[ d ] * 0.45 ) / dims[ d ];
+				r += x * x;
+			}
+			c.get().setReal( 100 / ( 1 + Math.exp( 40 * ( Math.sqrt( r ) - 0.3 ) ) ) + 3 * Math.sin( c.getDoublePosition( 0 ) ) );
+		}
+
+		final EdgelList whole = SubpixelEdgelDetection.getEdgelList( img, 5, 1, Integer.MAX_VALUE );
+		final EdgelList blocks = SubpixelEdgelDetection.getEdgelList( img, 5, 3, blockSize );
+		assertTrue( whole.size() > 0 );
+		assertEquals( whole.size(), blocks.size() );
+		for ( int i = 0; i < whole.size(); ++i )
+		{
+			for ( int d = 0; d < dims.length; ++d )
+			{
+				assertEquals( whole.getPosition( i, d ), blocks.getPosition( i, d ), 1e-4 );
+				assertEquals( whole.getGradient( i, d ), blocks.getGradient( i, d ), 1e-4 );
+			}
+			assertEquals( whole.getMagnitude( i ), blocks.getMagnitude( i ), 1e-3 );
+		}
+	}
+
+	@Test
+	public void testBlocks2D()
+	{
+		checkBlocks( new long[] { 53, 41 }, 100 );
+	}
+
+	@Test
+	public void testBlocks3D()
+	{
+		// the last dimension is thin enough to be kept whole
+		checkBlocks( new long[] { 37, 29, 7 }, 1000 );
+		checkBlocks( new long[] { 23, 19, 17 }, 500 );
+	}
+
+	@Test
+	public void testToEdgels()
+	{
+		final ArrayImg< FloatType, FloatArray > img = step( new long[] { 20, 20 }, new double[] { 1, 0 }, new double[] { 10.25, 0 } );
+		final EdgelList list = SubpixelEdgelDetection.getEdgelList( img, 10 );
+		assertEquals( 16, list.size() );
+		final Edgel edgel = list.toEdgels().get( 3 );
+		assertEquals( list.getPosition( 3, 0 ), edgel.getPosition()[ 0 ], 0 );
+		assertEquals( list.getPosition( 3, 1 ), edgel.getPosition()[ 1 ], 0 );
+		assertEquals( list.getMagnitude( 3 ), edgel.getMagnitude(), 0 );
+	}
+
+	@Test
+	public void testTooSmall()
+	{
+		assertEquals( 0, SubpixelEdgelDetection.getEdgelList( ArrayImgs.floats( 4, 30 ), 0 ).size() );
+	}
+}
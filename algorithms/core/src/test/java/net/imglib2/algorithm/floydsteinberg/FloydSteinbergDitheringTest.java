@@ -0,0 +1,139 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.algorithm.floydsteinberg;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.type.logic.BitType;
+import net.imglib2.type.numeric.real.FloatType;
+
+import org.junit.Test;
+
+/**
+ * Checks that the wavefront and plane parallel dithering produce the same
+ * result as the single threaded one and preserve the mean intensity.
+ */
+public class FloydSteinbergDitheringTest
+{
+	private static Img< FloatType > createSource( final long... dims )
+	{
+		final Img< FloatType > img = new ArrayImgFactory< FloatType >().create( dims, new FloatType() );
+		final Random random = new Random( 42 );
+		final Cursor< FloatType > c = img.localizingCursor();
+		while ( c.hasNext() )
+		{
+			c.fwd();
+			// a horizontal ramp with some noise
+			c.get().set( ( float ) c.getDoublePosition( 0 ) / dims[ 0 ] + 0.1f * random.nextFloat() );
+		}
+		return img;
+	}
+
+	private static Img< BitType > dither( final Img< FloatType > img, final int numThreads )
+	{
+		final FloydSteinbergDithering< FloatType > fs = new FloydSteinbergDithering< FloatType >( img, 0.5f );
+		fs.setNumThreads( numThreads );
+		assertTrue( fs.process() );
+		return fs.getResult();
+	}
+
+	private static void assertSame( final Img< BitType > expected, final Img< BitType > actual )
+	{
+		final Cursor< BitType > c = expected.localizingCursor();
+		final RandomAccess< BitType > r = actual.randomAccess();
+		while ( c.hasNext() )
+		{
+			c.fwd();
+			r.setPosition( c );
+			assertEquals( c.get().get(), r.get().get() );
+		}
+	}
+
+	@Test
+	public void testWavefrontMatchesSingleThreaded()
+	{
+		final Img< FloatType > img = createSource( 701, 53 );
+		assertSame( dither( img, 1 ), dither( img, 4 ) );
+		assertSame( dither( img, 1 ), dither( img, 7 ) );
+	}
+
+	@Test
+	public void testPlanesMatchSingleThreaded()
+	{
+		final Img< FloatType > img = createSource( 67, 31, 5, 2 );
+		assertSame( dither( img, 1 ), dither( img, 3 ) );
+	}
+
+	@Test
+	public void testMeanIsPreserved()
+	{
+		final Img< FloatType > img = createSource( 300, 200 );
+		final Img< FloatType > copy = img.copy();
+		final Img< BitType > result = dither( img, 4 );
+
+		// normalized mean of the input against the fraction of set bits
+		float min = Float.MAX_VALUE, max = -Float.MAX_VALUE;
+		double sum = 0;
+		for ( final FloatType t : img )
+		{
+			min = Math.min( min, t.get() );
+			max = Math.max( max, t.get() );
+			sum += t.get();
+		}
+		final double mean = ( sum / img.size() - min ) / ( max - min );
+
+		long ones = 0;
+		for ( final BitType t : result )
+			if ( t.get() )
+				++ones;
+		assertEquals( mean, ( double ) ones / result.size(), 0.01 );
+
+		// the input is left untouched
+		final Cursor< FloatType > c = img.cursor();
+		final Cursor< FloatType > d = copy.cursor();
+		while ( c.hasNext() )
+			assertEquals( d.next().get(), c.next().get(), 0 );
+	}
+}
@@ -0,0 +1,170 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.algorithm.integral;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.converter.Converter;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.type.numeric.integer.LongType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.real.DoubleType;
+
+import org.junit.Test;
+
+/**
+ * Compares parallel integral images and box sums to brute force sums.
+ */
+public class IntegralImgTest
+{
+	final static long[] dims = new long[] { 23, 17, 11 };
+
+	private static Img< UnsignedByteType > createSource()
+	{
+		final Img< UnsignedByteType > img = new ArrayImgFactory< UnsignedByteType >().create( dims, new UnsignedByteType() );
+		final Random random = new Random( 42 );
+		for ( final UnsignedByteType t : img )
+			t.set( random.nextInt( 256 ) );
+		return img;
+	}
+
+	private static long bruteForceSum( final Img< UnsignedByteType > img, final long[] min, final long[] max )
+	{
+		long sum = 0;
+		final Cursor< UnsignedByteType > c = img.localizingCursor();
+		A: while ( c.hasNext() )
+		{
+			c.fwd();
+			for ( int d = 0; d < dims.length; ++d )
+				if ( c.getLongPosition( d ) < min[ d ] || c.getLongPosition( d ) > max[ d ] )
+					continue A;
+			sum += c.get().get();
+		}
+		return sum;
+	}
+
+	final static Converter< UnsignedByteType, LongType > toLong = new Converter< UnsignedByteType, LongType >()
+	{
+		@Override
+		public void convert( final UnsignedByteType input, final LongType output )
+		{
+			output.set( input.get() );
+		}
+	};
+
+	final static Converter< UnsignedByteType, DoubleType > toDouble = new Converter< UnsignedByteType, DoubleType >()
+	{
+		@Override
+		public void convert( final UnsignedByteType input, final DoubleType output )
+		{
+			output.set( input.get() );
+		}
+	};
+
+	@Test
+	public void testParallelMatchesSingleThreaded()
+	{
+		final Img< UnsignedByteType > img = createSource();
+
+		final IntegralImgLong< UnsignedByteType > single = new IntegralImgLong< UnsignedByteType >( img, new LongType(), toLong );
+		single.setNumThreads( 1 );
+		assertTrue( single.process() );
+
+		final IntegralImgLong< UnsignedByteType > parallel = new IntegralImgLong< UnsignedByteType >( img, new LongType(), toLong, new CellImgFactory< LongType >( 5 ) );
+		parallel.setNumThreads( 4 );
+		assertTrue( parallel.process() );
+
+		final Cursor< LongType > c = single.getResult().localizingCursor();
+		final RandomAccess< LongType > r = parallel.getResult().randomAccess();
+		while ( c.hasNext() )
+		{
+			c.fwd();
+			r.setPosition( c );
+			assertEquals( c.get().get(), r.get().get() );
+		}
+	}
+
+	@Test
+	public void testBoxSum()
+	{
+		final Img< UnsignedByteType > img = createSource();
+		final IntegralImgDouble< UnsignedByteType > integral = new IntegralImgDouble< UnsignedByteType >( img, new DoubleType(), toDouble );
+		integral.setNumThreads( 3 );
+		assertTrue( integral.process() );
+
+		final IntegralImgLong< UnsignedByteType > integralLong = new IntegralImgLong< UnsignedByteType >( img, new LongType(), toLong );
+		assertTrue( integralLong.process() );
+
+		final BoxSum< DoubleType > boxSum = new BoxSum< DoubleType >( integral.getResult() );
+		final BoxSum< LongType > boxSumLong = new BoxSum< LongType >( integralLong.getResult() );
+		final LongType result = new LongType();
+
+		final long[][] boxes = new long[][] {
+				{ 0, 0, 0, 22, 16, 10 },
+				{ 3, 4, 5, 3, 4, 5 },
+				{ 2, 1, 7, 15, 9, 8 },
+				{ -5, -3, -1, 4, 30, 2 },
+				{ 20, 10, 9, 40, 40, 40 },
+				{ 30, 0, 0, 40, 5, 5 } };
+
+		for ( final long[] box : boxes )
+		{
+			final long[] min = new long[] { box[ 0 ], box[ 1 ], box[ 2 ] };
+			final long[] max = new long[] { box[ 3 ], box[ 4 ], box[ 5 ] };
+			final long expected = bruteForceSum( img, min, max );
+
+			assertEquals( expected, boxSum.getSum( min, max ), 0 );
+			boxSumLong.getSum( min, max, result );
+			assertEquals( expected, result.get() );
+
+			long count = 1;
+			for ( int d = 0; d < dims.length; ++d )
+				count *= Math.max( 0, Math.min( max[ d ], dims[ d ] - 1 ) - Math.max( min[ d ], 0 ) + 1 );
+			assertEquals( count, boxSum.getCount( min, max ) );
+			if ( count > 0 )
+				assertEquals( ( double ) expected / count, boxSum.copy().getMean( min, max ), 1e-10 );
+		}
+	}
+}
@@ -0,0 +1,220 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.algorithm.kdtree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import net.imglib2.FinalInterval;
+import net.imglib2.FinalRealInterval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RealInterval;
+import net.imglib2.RealPoint;
+
+import org.junit.Test;
+
+public class BoundingVolumeHierarchyTest
+{
+	private static FinalInterval randomInterval( final Random random )
+	{
+		final long[] min = new long[ 3 ];
+		final long[] max = new long[ 3 ];
+		for ( int k = 0; k < 3; k++ )
+		{
+			min[ k ] = random.nextInt( 100 );
+			// mix small and large intervals
+			max[ k ] = min[ k ] + ( random.nextBoolean() ? random.nextInt( 5 ) : random.nextInt( 100 ) );
+		}
+		return new FinalInterval( min, max );
+	}
+
+	private static boolean contains( final RealInterval interval, final double[] position )
+	{
+		for ( int d = 0; d < position.length; d++ )
+			if ( position[ d ] < interval.realMin( d ) || position[ d ] > interval.realMax( d ) )
+				return false;
+		return true;
+	}
+
+	private static boolean overlaps( final RealInterval a, final RealInterval b )
+	{
+		for ( int d = 0; d < a.numDimensions(); d++ )
+			if ( a.realMax( d ) < b.realMin( d ) || a.realMin( d ) > b.realMax( d ) )
+				return false;
+		return true;
+	}
+
+	private static void checkFind( final BoundingVolumeHierarchy< FinalInterval > bvh, final List< FinalInterval > list, final Random random, final List< FinalInterval > result )
+	{
+		final double[] position = new double[ 3 ];
+		for ( int j = 0; j < 3; j++ )
+			position[ j ] = random.nextDouble() * 150.0;
+		result.clear();
+		bvh.find( new RealPoint( position ), result );
+		int expected = 0;
+		for ( final FinalInterval interval : list )
+		{
+			if ( contains( interval, position ) )
+			{
+				++expected;
+				assertTrue( result.contains( interval ) );
+			}
+		}
+		assertEquals( expected, result.size() );
+	}
+
+	@Test
+	public void testFind()
+	{
+		final Random random = new Random( 12345 );
+		final ArrayList< FinalInterval > result = new ArrayList< FinalInterval >();
+		for ( int i = 0; i < 50; i++ )
+		{
+			final int nIntervals = random.nextInt( 500 ) + 1;
+			final ArrayList< FinalInterval > list = new ArrayList< FinalInterval >();
+			for ( int j = 0; j < nIntervals; j++ )
+				list.add( randomInterval( random ) );
+			final BoundingVolumeHierarchy< FinalInterval > bvh = new BoundingVolumeHierarchy< FinalInterval >( list, 1 + i % 4 );
+			assertEquals( nIntervals, bvh.size() );
+			for ( int j = 0; j < 10; j++ )
+				checkFind( bvh, list, random, result );
+		}
+	}
+
+	@Test
+	public void testFindOverlapping()
+	{
+		final Random random = new Random( 54321 );
+		final ArrayList< FinalInterval > list = new ArrayList< FinalInterval >();
+		for ( int j = 0; j < 1000; j++ )
+			list.add( randomInterval( random ) );
+		final BoundingVolumeHierarchy< FinalInterval > bvh = new BoundingVolumeHierarchy< FinalInterval >( list, 4 );
+		final ArrayList< FinalInterval > result = new ArrayList< FinalInterval >();
+		for ( int i = 0; i < 50; i++ )
+		{
+			final double[] min = new double[ 3 ];
+			final double[] max = new double[ 3 ];
+			for ( int d = 0; d < 3; d++ )
+			{
+				min[ d ] = random.nextDouble() * 150;
+				max[ d ] = min[ d ] + random.nextDouble() * 10;
+			}
+			final FinalRealInterval box = new FinalRealInterval( min, max );
+			result.clear();
+			bvh.findOverlapping( box, result );
+			int expected = 0;
+			for ( final FinalInterval interval : list )
+				if ( overlaps( interval, box ) )
+					++expected;
+			assertEquals( expected, result.size() );
+			for ( final FinalInterval interval : result )
+				assertTrue( overlaps( interval, box ) );
+		}
+	}
+
+	@Test
+	public void testAddRemove()
+	{
+		final Random random = new Random( 777 );
+		final BoundingVolumeHierarchy< FinalInterval > bvh = new BoundingVolumeHierarchy< FinalInterval >( 3 );
+		final ArrayList< FinalInterval > list = new ArrayList< FinalInterval >();
+		final ArrayList< FinalInterval > result = new ArrayList< FinalInterval >();
+		for ( int i = 0; i < 2000; i++ )
+		{
+			if ( list.isEmpty() || random.nextInt( 3 ) > 0 )
+			{
+				final FinalInterval interval = randomInterval( random );
+				list.add( interval );
+				bvh.add( interval );
+			}
+			else
+			{
+				final FinalInterval interval = list.remove( random.nextInt( list.size() ) );
+				assertTrue( bvh.remove( interval ) );
+				assertFalse( bvh.remove( interval ) );
+			}
+			assertEquals( list.size(), bvh.size() );
+			if ( i % 20 == 0 )
+				checkFind( bvh, list, random, result );
+		}
+		for ( int j = 0; j < 50; j++ )
+			checkFind( bvh, list, random, result );
+	}
+
+	@Test
+	public void testAddToEmptyList()
+	{
+		final Random random = new Random( 4242 );
+		final BoundingVolumeHierarchy< FinalInterval > bvh = new BoundingVolumeHierarchy< FinalInterval >( new ArrayList< FinalInterval >(), 2 );
+		assertEquals( 0, bvh.size() );
+		final ArrayList< FinalInterval > list = new ArrayList< FinalInterval >();
+		final ArrayList< FinalInterval > result = new ArrayList< FinalInterval >();
+		for ( int i = 0; i < 100; i++ )
+		{
+			final FinalInterval interval = randomInterval( random );
+			list.add( interval );
+			bvh.add( interval );
+		}
+		assertEquals( 3, bvh.numDimensions() );
+		assertEquals( list.size(), bvh.size() );
+		for ( int j = 0; j < 50; j++ )
+			checkFind( bvh, list, random, result );
+	}
+
+	@Test
+	public void testRandomAccess()
+	{
+		final ArrayList< FinalInterval > list = new ArrayList< FinalInterval >();
+		list.add( new FinalInterval( new long[] { 0, 0 }, new long[] { 1, 1 } ) );
+		list.add( new FinalInterval( new long[] { 1, 1 }, new long[] { 3, 3 } ) );
+		final BoundingVolumeHierarchy< FinalInterval > bvh = new BoundingVolumeHierarchy< FinalInterval >( list );
+		final RandomAccess< List< FinalInterval > > ra = bvh.randomAccess();
+		ra.setPosition( new long[] { 1, 1 } );
+		assertEquals( 2, ra.get().size() );
+		ra.setPosition( new long[] { 3, 2 } );
+		assertEquals( 1, ra.get().size() );
+		assertTrue( ra.get().get( 0 ) == list.get( 1 ) );
+		ra.setPosition( new long[] { 5, 5 } );
+		assertTrue( ra.get().isEmpty() );
+	}
+}
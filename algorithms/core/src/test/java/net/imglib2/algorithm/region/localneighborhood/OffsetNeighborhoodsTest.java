@@ -0,0 +1,150 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.algorithm.region.localneighborhood;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.IterableInterval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.planar.PlanarImgFactory;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.view.Views;
+
+import org.junit.Test;
+
+/**
+ * Checks that {@link OffsetNeighborhoods} visits the same neighbors with the
+ * same values as the shapes' own neighborhoods.
+ */
+public class OffsetNeighborhoodsTest
+{
+	final static long[] dims = new long[] { 13, 9, 7 };
+
+	private static void fill( final Img< IntType > img )
+	{
+		final Random random = new Random( 1 );
+		for ( final IntType t : img )
+			t.set( random.nextInt() );
+	}
+
+	private static void assertSameNeighborhoods( final Shape shape, final RandomAccessibleInterval< IntType > source )
+	{
+		final IterableInterval< Neighborhood< IntType > > expected = shape.neighborhoods( source );
+		final IterableInterval< Neighborhood< IntType > > actual = OffsetNeighborhoods.neighborhoods( shape, source );
+		assertTrue( actual instanceof OffsetNeighborhoods );
+		assertEquals( expected.size(), actual.size() );
+
+		final int n = source.numDimensions();
+		final Cursor< Neighborhood< IntType > > ec = expected.cursor();
+		final Cursor< Neighborhood< IntType > > ac = actual.cursor();
+		int numInterior = 0;
+		while ( ec.hasNext() )
+		{
+			assertTrue( ac.hasNext() );
+			final Neighborhood< IntType > e = ec.next();
+			final Neighborhood< IntType > a = ac.next();
+			if ( a instanceof OffsetNeighborhood )
+				++numInterior;
+			assertEquals( e.size(), a.size() );
+			for ( int d = 0; d < n; ++d )
+			{
+				assertEquals( e.getLongPosition( d ), a.getLongPosition( d ) );
+				assertEquals( e.min( d ), a.min( d ) );
+				assertEquals( e.max( d ), a.max( d ) );
+			}
+			final Cursor< IntType > enc = e.localizingCursor();
+			final Cursor< IntType > anc = a.localizingCursor();
+			while ( enc.hasNext() )
+			{
+				assertEquals( enc.next().get(), anc.next().get() );
+				for ( int d = 0; d < n; ++d )
+					assertEquals( enc.getLongPosition( d ), anc.getLongPosition( d ) );
+			}
+			assertTrue( !anc.hasNext() );
+		}
+		assertTrue( !ac.hasNext() );
+		assertTrue( numInterior > 0 );
+	}
+
+	@Test
+	public void testArrayImg()
+	{
+		final Img< IntType > img = new ArrayImgFactory< IntType >().create( dims, new IntType() );
+		fill( img );
+		final RandomAccessibleInterval< IntType > source = Views.interval( Views.extendMirrorSingle( img ), img );
+		assertSameNeighborhoods( new RectangleShape( 2, false ), source );
+		assertSameNeighborhoods( new RectangleShape( 1, true ), source );
+		assertSameNeighborhoods( new HyperSphereShape( 2 ), source );
+	}
+
+	@Test
+	public void testPlanarImg()
+	{
+		final Img< IntType > img = new PlanarImgFactory< IntType >().create( dims, new IntType() );
+		fill( img );
+		final RandomAccessibleInterval< IntType > source = Views.interval( Views.extendBorder( img ), img );
+		assertSameNeighborhoods( new RectangleShape( 1, false ), source );
+		assertSameNeighborhoods( new HyperSphereShape( 2 ), source );
+	}
+
+	@Test
+	public void testLargerInterval()
+	{
+		final Img< IntType > img = new ArrayImgFactory< IntType >().create( dims, new IntType() );
+		fill( img );
+		final RandomAccessibleInterval< IntType > source = Views.interval( Views.extendPeriodic( img ), new FinalInterval( new long[] { -3, 2, -1 }, new long[] { 15, 12, 5 } ) );
+		assertSameNeighborhoods( new RectangleShape( 1, true ), source );
+		assertSameNeighborhoods( new HyperSphereShape( 1 ), source );
+	}
+
+	@Test
+	public void testFallback()
+	{
+		final Img< IntType > img = new ArrayImgFactory< IntType >().create( dims, new IntType() );
+		final Shape shape = new RectangleShape( 1, false );
+		final RandomAccessibleInterval< IntType > view = Views.interval( Views.translate( Views.extendZero( img ), 1, 1, 1 ), img );
+		assertTrue( !( OffsetNeighborhoods.neighborhoods( shape, view ) instanceof OffsetNeighborhoods ) );
+	}
+}
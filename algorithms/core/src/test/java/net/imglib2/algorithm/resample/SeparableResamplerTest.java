@@ -0,0 +1,154 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.algorithm.resample;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RealRandomAccess;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.interpolation.randomaccess.LanczosInterpolatorFactory;
+import net.imglib2.interpolation.randomaccess.NLinearInterpolatorFactory;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.Views;
+
+import org.junit.Test;
+
+/**
+ * Compares {@link SeparableResampler} to sampling with interpolators.
+ */
+public class SeparableResamplerTest
+{
+	final static double[] scale = new double[] { 0.37, 2.5, 1.0 };
+
+	final static double[] translation = new double[] { 1.3, -4.25, 0 };
+
+	private static ArrayImg< FloatType, ? > createSource()
+	{
+		final ArrayImg< FloatType, ? > img = ArrayImgs.floats( 20, 30, 4 );
+		final Random random = new Random( 42 );
+		for ( final FloatType t : img )
+			t.set( random.nextFloat() * 100 );
+		return img;
+	}
+
+	private static void assertMatchesInterpolator( final ArrayImg< FloatType, ? > target, final RealRandomAccess< FloatType > interpolator, final double tolerance )
+	{
+		final Cursor< FloatType > c = target.localizingCursor();
+		while ( c.hasNext() )
+		{
+			c.fwd();
+			for ( int d = 0; d < 3; ++d )
+				interpolator.setPosition( scale[ d ] * c.getLongPosition( d ) + translation[ d ], d );
+			assertEquals( interpolator.get().getRealDouble(), c.get().getRealDouble(), tolerance );
+		}
+	}
+
+	@Test
+	public void testNLinear()
+	{
+		final ArrayImg< FloatType, ? > target = ArrayImgs.floats( 50, 12, 4 );
+		final RandomAccessible< FloatType > source = Views.extendMirrorSingle( createSource() );
+		SeparableResampler.resample( new NLinearResamplingKernel(), source, scale, translation, target, 4 );
+		assertMatchesInterpolator( target, new NLinearInterpolatorFactory< FloatType >().create( source ), 0.001 );
+	}
+
+	@Test
+	public void testLanczos()
+	{
+		final ArrayImg< FloatType, ? > target = ArrayImgs.floats( 50, 12, 4 );
+		final RandomAccessible< FloatType > source = Views.extendMirrorSingle( createSource() );
+		final LanczosResamplingKernel kernel = new LanczosResamplingKernel( 3 );
+		SeparableResampler.resample( kernel, source, scale, translation, target, 2 );
+
+		// compare to the full (non-separated) sum over the 6x6x6 footprint
+		final RandomAccess< FloatType > a = source.randomAccess();
+		final Cursor< FloatType > c = target.localizingCursor();
+		final double[] x = new double[ 3 ];
+		final long[] f = new long[ 3 ];
+		while ( c.hasNext() )
+		{
+			c.fwd();
+			for ( int d = 0; d < 3; ++d )
+			{
+				x[ d ] = scale[ d ] * c.getLongPosition( d ) + translation[ d ];
+				f[ d ] = ( long ) Math.floor( x[ d ] ) - 2;
+			}
+			double sum = 0;
+			for ( int k2 = 0; k2 < 6; ++k2 )
+				for ( int k1 = 0; k1 < 6; ++k1 )
+					for ( int k0 = 0; k0 < 6; ++k0 )
+					{
+						a.setPosition( new long[] { f[ 0 ] + k0, f[ 1 ] + k1, f[ 2 ] + k2 } );
+						sum += a.get().getRealDouble() *
+								kernel.weight( x[ 0 ] - f[ 0 ] - k0 ) *
+								kernel.weight( x[ 1 ] - f[ 1 ] - k1 ) *
+								kernel.weight( x[ 2 ] - f[ 2 ] - k2 );
+					}
+			assertEquals( sum, c.get().getRealDouble(), 0.001 );
+		}
+
+		// LanczosInterpolator approximates the kernel by a lookup table
+		assertMatchesInterpolator( target, new LanczosInterpolatorFactory< FloatType >( 3, false ).create( source ), 5.0 );
+	}
+
+	@Test
+	public void testIntervalsAndClipping()
+	{
+		final ArrayImg< UnsignedByteType, ? > source = ArrayImgs.unsignedBytes( 8, 8 );
+		int i = 0;
+		for ( final UnsignedByteType t : source )
+			t.set( ( i++ % 2 ) * 255 );
+		final ArrayImg< UnsignedByteType, ? > target = ArrayImgs.unsignedBytes( 16, 4 );
+		SeparableResampler.resample( new LanczosResamplingKernel( 3 ), source, target, 1 );
+		for ( final UnsignedByteType t : target )
+			assertEquals( t.get(), Math.min( 255, Math.max( 0, t.get() ) ) );
+
+		final ArrayImg< UnsignedByteType, ? > same = ArrayImgs.unsignedBytes( 8, 8 );
+		SeparableResampler.resample( new NLinearResamplingKernel(), source, same, 1 );
+		final Cursor< UnsignedByteType > c = same.cursor();
+		for ( final UnsignedByteType t : source )
+			assertEquals( t.get(), c.next().get() );
+	}
+}
@@ -43,7 +43,7 @@ package net.imglib2.algorithm.localization;
  *
  * @author Jean-Yves Tinevez <jeanyves.tinevez@gmail.com> 2012
  */
-public class EllipticGaussianOrtho implements FitFunction {
+public class EllipticGaussianOrtho implements GradientFitFunction {
 
 	/*
 	 * METHODS
@@ -94,6 +94,27 @@ public class EllipticGaussianOrtho implements FitFunction {
 		}
 	}
 
+	@Override
+	public final double valAndGrad(final double[] x, final double[] a, final double[] gradient) {
+		final int ndims = x.length;
+		final double A = a[ndims];
+		double sum = 0;
+		double di;
+		for (int i = 0; i < ndims; i++) {
+			di = x[i] - a[i];
+			sum += a[i+ndims+1] * di * di;
+		}
+		final double E = Math.exp(-sum);
+		final double AE = A * E;
+		for (int i = 0; i < ndims; i++) {
+			di = x[i] - a[i];
+			gradient[i] = - 2 * AE * a[i+ndims+1] * di;
+			gradient[i+ndims+1] = - di * di * AE;
+		}
+		gradient[ndims] = E;
+		return AE;
+	}
+
 	/**
 	 * Returns the hessian value of this function, with respect to the variable
 	 * specified by its index: Partial derivatives indices are ordered as follow:
@@ -42,7 +42,7 @@ package net.imglib2.algorithm.localization;
  *
  * @author Jean-Yves Tinevez <jeanyves.tinevez@gmail.com> - 2013
  */
-public class Gaussian implements FitFunction {
+public class Gaussian implements GradientFitFunction {
 
 	/*
 	 * METHODS
@@ -87,6 +87,26 @@ public class Gaussian implements FitFunction {
 		}
 	}
 
+	@Override
+	public final double valAndGrad(final double[] x, final double[] a, final double[] gradient) {
+		final int ndims = x.length;
+		final double A = a[a.length-2];
+		final double b = a[a.length-1];
+		double d = 0, si;
+		for (int i = 0; i < ndims; i++) {
+			si = x[i] - a[i];
+			d += si * si;
+		}
+		final double E = Math.exp(- b * d);
+		final double AE = A * E;
+		for (int i = 0; i < ndims; i++) {
+			gradient[i] = 2 * b * (x[i] - a[i]) * AE;
+		}
+		gradient[a.length-2] = E;
+		gradient[a.length-1] = - d * AE;
+		return AE;
+	}
+
 	@Override
 	public final double hessian(final double[] x, final double[] a, int r, int c) {
 		if (c < r) {
@@ -0,0 +1,55 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+package net.imglib2.algorithm.localization;
+
+/**
+ * Interface for fitting-target functions that can evaluate their value and
+ * their full gradient in a single pass.
+ * <p>
+ * Most functions share an expensive term between the value and all the
+ * partial derivatives (the exponential of a gaussian, for instance). Calling
+ * {@link #grad(double[], double[], int)} once per parameter recomputes it every
+ * time; this method lets curve fitters such as the
+ * {@link LevenbergMarquardtSolver} build a Jacobian row with a single
+ * evaluation.
+ */
+public interface GradientFitFunction extends FitFunction {
+
+	/**
+	 * Evaluates this function and all its partial derivatives at point
+	 * <code>x</code>. The derivatives must be identical to the ones returned by
+	 * {@link #grad(double[], double[], int)}, in the same order.
+	 * 
+	 * @param x  the point to evaluate the function at.
+	 * @param a  the set of parameters that defines the function.
+	 * @param gradient  an array of at least <code>a.length</code> elements, in
+	 * which the gradient <code>df(x,a)/da_k</code> is written.
+	 * @return the function evaluated at <code>x</code>.
+	 */
+	public double valAndGrad(double[] x, double[] a, double[] gradient);
+
+}
@@ -26,8 +26,6 @@
 
 package net.imglib2.algorithm.localization;
 
-import Jama.Matrix;
-
 /**
  * A plain implementation of Levenberg-Marquardt least-square curve fitting algorithm.
  * This solver makes use of only the function value and its gradient. That is:
@@ -37,6 +35,14 @@ import Jama.Matrix;
  * <p>
  * It was adapted and stripped from jplewis (www.idiom.com/~zilla) and released under 
  * the GPL. There are various small tweaks for robustness and speed.
+ * <p>
+ * The Jacobian of the fit function is evaluated once per iteration and stored
+ * in a {@link Workspace}, together with the hessian approximation and the
+ * step vector, so that no allocation happens inside the iteration loop. When
+ * the fit function is a {@link GradientFitFunction}, each Jacobian row is
+ * computed in a single call. Instances of this class keep one workspace per
+ * calling thread, so a single solver can be shared by several fitting
+ * threads.
  *
  * @author Jean-Yves Tinevez <jeanyves.tinevez@gmail.com> 2011 - 2013
  */
@@ -45,6 +51,12 @@ public class LevenbergMarquardtSolver implements FunctionFitter {
 	private final int maxIteration;
 	private final double lambda;
 	private final double termEpsilon;
+	private final ThreadLocal<Workspace> workspaces = new ThreadLocal<Workspace>() {
+		@Override
+		protected Workspace initialValue() {
+			return new Workspace();
+		}
+	};
 	
 	/**
 	 * Creates a new Levenberg-Marquardt solver for least-square curve fitting problems. 
@@ -88,7 +100,7 @@ public class LevenbergMarquardtSolver implements FunctionFitter {
 	
 	@Override
 	public void fit(double[][] x, double[] y, double[] a, FitFunction f) throws Exception {
-		solve(x, a, y, f, lambda, termEpsilon, maxIteration);
+		solve(x, a, y, f, lambda, termEpsilon, maxIteration, workspaces.get());
 	}
 	
 	
@@ -129,57 +141,87 @@ public class LevenbergMarquardtSolver implements FunctionFitter {
 	 */
 	public static final int solve(double[][] x, double[] a, double[] y, FitFunction f,
 			double lambda, double termepsilon, int maxiter) throws Exception  {
+		return solve(x, a, y, f, lambda, termepsilon, maxiter, new Workspace());
+	}
+
+	/**
+	 * Minimize E = sum {(y[k] - f(x[k],a)) }^2, using the specified workspace
+	 * for all the intermediate arrays. The workspace is grown as needed and can
+	 * be reused across successive calls made from the same thread.
+	 * 
+	 * @param x array of domain points, each may be multidimensional
+	 * @param y corresponding array of values
+	 * @param a the parameters/state of the model
+	 * @param lambda blend between steepest descent (lambda high) and
+	 *	jump to bottom of quadratic (lambda zero). Start with 0.001.
+	 * @param termepsilon termination accuracy (0.01)
+	 * @param maxiter	stop and return after this many iterations if not done
+	 * @param workspace the scratch space to use.
+	 *
+	 * @return the number of iteration used by minimization
+	 */
+	public static final int solve(double[][] x, double[] a, double[] y, FitFunction f,
+			double lambda, double termepsilon, int maxiter, Workspace workspace) throws Exception  {
 		int npts = y.length;
 		int nparm = a.length;
-	
+		workspace.ensureCapacity(npts, nparm);
+
+		// J = jacobian, r = residuals, g = gradient, H = hessian, d = step to minimum
+		// H d = g, solve for d
+		final double[] J = workspace.jacobian;
+		final double[] res = workspace.residuals;
+		final double[] H = workspace.hessian;
+		final double[] g = workspace.gradient;
+		final double[] d = workspace.step;
+		final double[] na = workspace.candidate;
+
 		double e0 = chiSquared(x, a, y, f);
 		boolean done = false;
 
-		// g = gradient, H = hessian, d = step to minimum
-		// H d = -g, solve for d
-		double[][] H = new double[nparm][nparm];
-		double[] g = new double[nparm];
-
 		int iter = 0;
 		int term = 0;	// termination count test
 
 		do {
 			++iter;
 
+			// jacobian and residuals, evaluated once per iteration
+			jacobian(x, a, y, f, J, res, workspace.row);
+
 			// hessian approximation
 			for( int r = 0; r < nparm; r++ ) {
-				for( int c = 0; c < nparm; c++ ) {
-					H[r][c] = 0.;
+				for( int c = r; c < nparm; c++ ) {
+					double sum = 0.;
 					for( int i = 0; i < npts; i++ ) {
-						double[] xi = x[i];
-						H[r][c] += f.grad(xi, a, r) * f.grad(xi, a, c);
+						sum += J[i*nparm+r] * J[i*nparm+c];
 					}  //npts
+					H[r*nparm+c] = sum;
+					H[c*nparm+r] = sum;
 				} //c
 			} //r
 
 			// boost diagonal towards gradient descent
 			for( int r = 0; r < nparm; r++ )
-				H[r][r] *= (1. + lambda);
+				H[r*nparm+r] *= (1. + lambda);
 
 			// gradient
 			for( int r = 0; r < nparm; r++ ) {
-				g[r] = 0.;
+				double sum = 0.;
 				for( int i = 0; i < npts; i++ ) {
-					double[] xi = x[i];
-					g[r] += (y[i]-f.val(xi,a)) * f.grad(xi, a, r);
+					sum += res[i] * J[i*nparm+r];
 				}
+				g[r] = sum;
 			} //npts
-			
-			double[] d = null;
-            try {
-                    d = (new Matrix(H)).lu().solve(new Matrix(g, nparm)).getRowPackedCopy();
-            } catch (RuntimeException re) {
-                    // Matrix is singular
-                    lambda *= 10.;
-                    continue;
-            }
-            double[] na = (new Matrix(a, nparm)).plus(new Matrix(d,nparm)).getRowPackedCopy();
-            double e1 = chiSquared(x, na, y, f);
+
+			if (!solveInPlace(H, g, d, workspace.pivots, nparm)) {
+				// Matrix is singular
+				lambda *= 10.;
+				if (iter >= maxiter) break;
+				continue;
+			}
+			for( int i = 0; i < nparm; i++ ) {
+				na[i] = a[i] + d[i];
+			}
+			double e1 = chiSquared(x, na, y, f);
 			
 			// termination test (slightly different than NR)
 			if (Math.abs(e1-e0) > termepsilon) {
@@ -213,5 +255,135 @@ public class LevenbergMarquardtSolver implements FunctionFitter {
 		return iter;
 	} //solve
 
-	
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	/**
+	 * Fills the row-major Jacobian <code>J</code> and the residual vector for
+	 * the current parameters.
+	 */
+	private static final void jacobian(final double[][] x, final double[] a, final double[] y, final FitFunction f,
+			final double[] J, final double[] res, final double[] row) {
+		final int npts = y.length;
+		final int nparm = a.length;
+		if (f instanceof GradientFitFunction) {
+			final GradientFitFunction gf = (GradientFitFunction) f;
+			for( int i = 0; i < npts; i++ ) {
+				res[i] = y[i] - gf.valAndGrad(x[i], a, row);
+				System.arraycopy(row, 0, J, i*nparm, nparm);
+			}
+		} else {
+			for( int i = 0; i < npts; i++ ) {
+				final double[] xi = x[i];
+				res[i] = y[i] - f.val(xi, a);
+				for( int k = 0; k < nparm; k++ ) {
+					J[i*nparm+k] = f.grad(xi, a, k);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Solves <code>H d = g</code> by LU decomposition with partial pivoting,
+	 * overwriting <code>H</code>. Returns <code>false</code> if the matrix is
+	 * singular.
+	 */
+	private static final boolean solveInPlace(final double[] H, final double[] g, final double[] d, final int[] piv, final int n) {
+		for (int i = 0; i < n; i++) {
+			piv[i] = i;
+			d[i] = g[i];
+		}
+		for (int k = 0; k < n; k++) {
+			// find pivot
+			int p = k;
+			double max = Math.abs(H[k*n+k]);
+			for (int i = k+1; i < n; i++) {
+				final double v = Math.abs(H[i*n+k]);
+				if (v > max) {
+					max = v;
+					p = i;
+				}
+			}
+			if (max == 0) {
+				return false;
+			}
+			if (p != k) {
+				for (int j = 0; j < n; j++) {
+					final double t = H[p*n+j];
+					H[p*n+j] = H[k*n+j];
+					H[k*n+j] = t;
+				}
+				final double t = d[p];
+				d[p] = d[k];
+				d[k] = t;
+			}
+			// eliminate below
+			final double pivot = H[k*n+k];
+			for (int i = k+1; i < n; i++) {
+				final double factor = H[i*n+k] / pivot;
+				if (factor == 0) {
+					continue;
+				}
+				for (int j = k+1; j < n; j++) {
+					H[i*n+j] -= factor * H[k*n+j];
+				}
+				d[i] -= factor * d[k];
+			}
+		}
+		// back substitution
+		for (int k = n-1; k >= 0; k--) {
+			double sum = d[k];
+			for (int j = k+1; j < n; j++) {
+				sum -= H[k*n+j] * d[j];
+			}
+			d[k] = sum / H[k*n+k];
+		}
+		return true;
+	}
+
+	/*
+	 * INNER CLASSES
+	 */
+
+	/**
+	 * Scratch arrays used by the solver: Jacobian, residuals, hessian
+	 * approximation, gradient and step. They are allocated lazily and only
+	 * grown, so a workspace can be reused for problems of varying size. The
+	 * candidate parameter array is the exception: it always has exactly as 
+	 * many elements as the current problem has parameters.
+	 * A workspace must not be shared between threads.
+	 */
+	public static final class Workspace {
+		private double[] jacobian = new double[0];
+		private double[] residuals = new double[0];
+		private double[] hessian = new double[0];
+		private double[] gradient = new double[0];
+		private double[] step = new double[0];
+		private double[] candidate = new double[0];
+		private double[] row = new double[0];
+		private int[] pivots = new int[0];
+
+		private void ensureCapacity(final int npts, final int nparm) {
+			if (jacobian.length < npts * nparm) {
+				jacobian = new double[npts * nparm];
+			}
+			if (residuals.length < npts) {
+				residuals = new double[npts];
+			}
+			if (gradient.length < nparm) {
+				hessian = new double[nparm * nparm];
+				gradient = new double[nparm];
+				step = new double[nparm];
+				row = new double[nparm];
+				pivots = new int[nparm];
+			}
+			// The candidate parameters are passed to the fit function, which
+			// infers the number of parameters from the array length.
+			if (candidate.length != nparm) {
+				candidate = new double[nparm];
+			}
+		}
+	}
+
 }
@@ -29,7 +29,9 @@ package net.imglib2.algorithm.localization;
 import java.util.Random;
 
 import net.imglib2.Cursor;
+import net.imglib2.Interval;
 import net.imglib2.Localizable;
+import net.imglib2.RandomAccess;
 import net.imglib2.algorithm.region.localneighborhood.RectangleCursor;
 import net.imglib2.algorithm.region.localneighborhood.RectangleNeighborhoodGPL;
 import net.imglib2.img.Img;
@@ -150,4 +152,81 @@ public class LocalizationUtils {
 	}
 
 
+	/**
+	 * Collects the points to build the observation array, by iterating in a hypercube
+	 * around the given location, clipped to the specified bounds. 
+	 * <p>
+	 * The samples are read line by line with the specified {@link RandomAccess}, 
+	 * which is much cheaper than a neighborhood cursor on array-backed images.
+	 * The arrays of the specified {@link Observation} are reused if they have
+	 * the right size, and reallocated otherwise. This allows a single thread to
+	 * process many peaks without allocating, as long as they are far enough 
+	 * from the image border.
+	 * 
+	 * @param ra  the random access to sample the image with.
+	 * @param bounds  the interval out of which samples are not included.
+	 * @param point  the location around which to collect the samples
+	 * @param span  the span size of the hypercube to sample, such that in dimension
+	 * <code>d</code>, the cube sampled if a of size <code>2 x span[d] + 1</code>.
+	 * @param data  the {@link Observation} object to fill.
+	 * @return  the specified {@link Observation} object.
+	 */
+	public static final <T extends RealType<T>> Observation gatherObservationData(final RandomAccess<T> ra, final Interval bounds, 
+			final Localizable point, final long[] span, final Observation data) {
+		
+		final int ndims = bounds.numDimensions();
+		final long[] min = new long[ndims];
+		final long[] max = new long[ndims];
+		int n_pixels = 1;
+		for (int d = 0; d < ndims; d++) {
+			min[d] = Math.max(bounds.min(d), point.getLongPosition(d) - span[d]);
+			max[d] = Math.min(bounds.max(d), point.getLongPosition(d) + span[d]);
+			n_pixels *= Math.max(0, max[d] - min[d] + 1);
+		}
+		
+		if (null == data.I || data.I.length != n_pixels) {
+			data.I = new double[n_pixels];
+		}
+		if (null == data.X || data.X.length != n_pixels || (n_pixels > 0 && data.X[0].length != ndims)) {
+			data.X = new double[n_pixels][ndims];
+		}
+		if (n_pixels == 0) {
+			return data;
+		}
+		
+		final double[] I = data.I;
+		final double[][] X = data.X;
+		final long[] pos = min.clone();
+		final int lineLength = (int) (max[0] - min[0] + 1);
+		int index = 0;
+		while (true) {
+			
+			ra.setPosition(pos);
+			for (int i = 0; i < lineLength; i++) {
+				final double[] x = X[index];
+				x[0] = pos[0] + i;
+				for (int d = 1; d < ndims; d++) {
+					x[d] = pos[d];
+				}
+				I[index] = ra.get().getRealDouble();
+				ra.fwd(0);
+				index++;
+			}
+			
+			// Move to the next line
+			int d = 1;
+			for (; d < ndims; d++) {
+				if (pos[d] < max[d]) {
+					pos[d]++;
+					break;
+				}
+				pos[d] = min[d];
+			}
+			if (d >= ndims) {
+				break;
+			}
+		}
+		return data;
+	}
+
 }
@@ -32,8 +32,10 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import net.imglib2.Localizable;
+import net.imglib2.RandomAccess;
 import net.imglib2.algorithm.Benchmark;
 import net.imglib2.algorithm.MultiThreaded;
 import net.imglib2.algorithm.OutputAlgorithm;
@@ -41,11 +43,23 @@ import net.imglib2.img.Img;
 import net.imglib2.type.numeric.RealType;
 
 /**
+ * Fits a peak function around a collection of peaks in an image.
+ * <p>
+ * Peaks are processed in batches: each worker thread repeatedly takes the
+ * next {@link #BATCH_SIZE} peaks from the collection, and reuses its own
+ * {@link RandomAccess} and observation arrays to sample the image around
+ * each of them. Combined with a {@link LevenbergMarquardtSolver}, which keeps
+ * its scratch space per thread, the fitting loop does not allocate beyond the
+ * parameter arrays returned for each peak.
+ * 
  * @author Jean-Yves Tinevez (tinevez@pasteur.fr) - 2013
  */
 public class PeakFitter <T extends RealType<T>> implements MultiThreaded, OutputAlgorithm<Map<Localizable, double[]>>, Benchmark {
 
 	private static final String BASE_ERROR_MESSAGE = "PeakFitter: ";
+	
+	/** The number of peaks a worker thread takes from the queue at once. */
+	public static final int BATCH_SIZE = 16;
 
 	private final Img<T> image;
 	private final Collection<Localizable> peaks;
@@ -116,24 +130,37 @@ public class PeakFitter <T extends RealType<T>> implements MultiThreaded, Output
 		results = new ConcurrentHashMap<Localizable, double[]>(peaks.size());
 		final long[] padSize = estimator.getDomainSpan();
 
-		ExecutorService workers = Executors.newFixedThreadPool(numThreads);
-		for (final Localizable peak : peaks) {
+		final Localizable[] peakArray = peaks.toArray(new Localizable[peaks.size()]);
+		final AtomicInteger nextBatch = new AtomicInteger(0);
+		final int nTasks = Math.max(1, Math.min(numThreads, (peakArray.length + BATCH_SIZE - 1) / BATCH_SIZE));
+
+		ExecutorService workers = Executors.newFixedThreadPool(nTasks);
+		for (int t = 0; t < nTasks; t++) {
 			Runnable task = new Runnable() {
 
 				@Override
 				public void run() {
-					Observation data = LocalizationUtils.gatherObservationData(image, peak, padSize);
-					double[] params = estimator.initializeFit(peak, data);
-					try {
-						double[][] X = data.X;
-						double[] I = data.I;
-						fitter.fit(X, I, params, peakFunction);
-					} catch (Exception e) {
-						errorHolder.append(BASE_ERROR_MESSAGE + 
-								"Problem fitting around " + peak +
-								": " + e.getMessage() + ".\n");
+					final RandomAccess<T> ra = image.randomAccess();
+					final Observation data = new Observation();
+					int from;
+					while ((from = nextBatch.getAndAdd(BATCH_SIZE)) < peakArray.length) {
+						final int to = Math.min(peakArray.length, from + BATCH_SIZE);
+						for (int p = from; p < to; p++) {
+							final Localizable peak = peakArray[p];
+							LocalizationUtils.gatherObservationData(ra, image, peak, padSize, data);
+							double[] params = estimator.initializeFit(peak, data);
+							try {
+								double[][] X = data.X;
+								double[] I = data.I;
+								fitter.fit(X, I, params, peakFunction);
+							} catch (Exception e) {
+								errorHolder.append(BASE_ERROR_MESSAGE + 
+										"Problem fitting around " + peak +
+										": " + e.getMessage() + ".\n");
+							}
+							results.put(peak, params);
+						}
 					}
-					results.put(peak, params);
 				}
 
 			};
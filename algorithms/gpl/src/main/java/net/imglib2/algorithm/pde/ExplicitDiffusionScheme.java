@@ -26,11 +26,16 @@
 
 package net.imglib2.algorithm.pde;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Vector;
 
 import net.imglib2.Cursor;
 import net.imglib2.ExtendedRandomAccessibleInterval;
+import net.imglib2.Interval;
 import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.algorithm.MultiThreadedBenchmarkAlgorithm;
 import net.imglib2.exception.IncompatibleTypeException;
@@ -65,6 +70,8 @@ public abstract class ExplicitDiffusionScheme<T extends RealType<T>> extends Mul
 	private final float minVal;
 	/** The dimension to iterate over to retrieve the tensor components. */
 	protected final int tensorComponentDimension;
+	/** The target number of pixels in a tile of the stencil engine. */
+	private static final int TILE_SIZE = 64 * 1024;
 
 	/*
 	 * PROTECTED CONSTRUCTOR
@@ -96,13 +103,295 @@ public abstract class ExplicitDiffusionScheme<T extends RealType<T>> extends Mul
 	protected abstract float[][] initDiffusionTensorArray();
 	
 
+	/**
+	 * Returns the offsets, relative to the current pixel, at which
+	 * {@link #yieldDensity(RandomAccess, float[])} collects the density values:
+	 * element <code>k</code> of the density array is read at offset
+	 * <code>stencil[k]</code>, an array of <code>N</code> coordinates.
+	 * <p>
+	 * Concrete schemes that can describe their neighborhood this way are
+	 * processed by the tiled stencil engine. The default returns
+	 * <code>null</code>, in which case {@link #process()} falls back on the
+	 * per-pixel {@link #yieldDensity(RandomAccess, float[])} and
+	 * {@link #yieldDiffusionTensor(RandomAccess, float[][])} methods.
+	 */
+	protected int[][] densityStencil() {
+		return null;
+	}
+
+	/**
+	 * Returns the offsets at which
+	 * {@link #yieldDiffusionTensor(RandomAccess, float[][])} collects the
+	 * diffusion tensor values: element <code>[i][j]</code> of the tensor array
+	 * is read at <code>stencil[i][j]</code>, an array of <code>N</code>
+	 * coordinates relative to the current pixel followed by the tensor
+	 * component index.
+	 * @see #densityStencil()
+	 */
+	protected int[][][] diffusionTensorStencil() {
+		return null;
+	}
+
 	/**
 	 * Execute one iteration of explicit scheme of the diffusion equation.
+	 * <p>
+	 * If the concrete scheme provides its {@link #densityStencil()} and
+	 * {@link #diffusionTensorStencil()}, the image is split along its last
+	 * dimension in tiles of {@value #TILE_SIZE} pixels, copied with a 1-pixel
+	 * mirrored halo into <code>float[]</code> buffers, and the stencils are
+	 * applied by fixed linear offsets. Since the halo slabs each thread shares
+	 * with its neighbors are saved before any pixel is written, the new values
+	 * are written to the input in the same pass that computes the increment.
 	 */
 	@Override
 	public boolean process() {
 
 		long start = System.currentTimeMillis();
+
+		final int[][] densityStencil = densityStencil();
+		final int[][][] tensorStencil = diffusionTensorStencil();
+		if (null == densityStencil || null == tensorStencil || !processTiled(densityStencil, tensorStencil)) {
+			processPerPixel();
+		}
+
+		long end = System.currentTimeMillis();
+		processingTime += (end - start);
+		return true;
+	}
+
+	/**
+	 * Tiled, single pass version of the explicit scheme.
+	 * @return <code>false</code> if the tiles of this image do not fit in a
+	 * <code>float[]</code>, in which case nothing was done.
+	 */
+	private boolean processTiled(final int[][] densityStencil, final int[][][] tensorStencil) {
+
+		final int n = input.numDimensions();
+		final int last = n - 1;
+
+		// Strides of a tile with a 1-pixel halo in all dimensions
+		final int[] strides = new int[n];
+		long stride = 1;
+		for (int d = 0; d < n; d++) {
+			strides[d] = (int) stride;
+			if (d < last) {
+				stride *= input.dimension(d) + 2;
+			}
+		}
+		if (stride * 3 > Integer.MAX_VALUE) {
+			return false;
+		}
+		final int slabSize = (int) stride;
+		final int depth = Math.max(1, Math.min(TILE_SIZE / slabSize, (Integer.MAX_VALUE / slabSize) - 2));
+
+		// Linear offsets of the stencils in the tile buffers
+		final int[] densityOffsets = new int[densityStencil.length];
+		for (int k = 0; k < densityStencil.length; k++) {
+			densityOffsets[k] = linearOffset(densityStencil[k], strides);
+		}
+		final int[][] tensorOffsets = new int[tensorStencil.length][];
+		final int[][] tensorComponents = new int[tensorStencil.length][];
+		for (int i = 0; i < tensorStencil.length; i++) {
+			tensorOffsets[i] = new int[tensorStencil[i].length];
+			tensorComponents[i] = new int[tensorStencil[i].length];
+			for (int k = 0; k < tensorStencil[i].length; k++) {
+				tensorOffsets[i][k] = linearOffset(tensorStencil[i][k], strides);
+				tensorComponents[i][k] = tensorStencil[i][k][n];
+			}
+		}
+
+		// HACK: Explicit assignment is needed for OpenJDK javac.
+		final ExtendedRandomAccessibleInterval<T, Img<T>> extendedInput = Views.extendMirrorDouble(input);
+		final int nComponents = (int) D.dimension(tensorComponentDimension);
+		final List<RandomAccessible<FloatType>> extendedD = new ArrayList<RandomAccessible<FloatType>>(nComponents);
+		for (int c = 0; c < nComponents; c++) {
+			final RandomAccessibleInterval<FloatType> component = Views.hyperSlice(D, tensorComponentDimension, D.min(tensorComponentDimension) + c);
+			extendedD.add(Views.extendMirrorDouble(Views.zeroMin(component)));
+		}
+
+		final long extent = input.dimension(last);
+		final int nThreads = (int) Math.min(numThreads, extent);
+		final Vector<Chunk> chunks = SimpleMultiThreading.divideIntoChunks(extent, nThreads);
+
+		/*
+		 * Save the halo slabs just outside of each thread range before any of
+		 * them is overwritten.
+		 */
+
+		final float[][] topHalos = new float[nThreads][slabSize];
+		final float[][] bottomHalos = new float[nThreads][slabSize];
+		Thread[] threads = SimpleMultiThreading.newThreads(nThreads);
+		for (int i = 0; i < threads.length; i++) {
+
+			final int ithread = i;
+			final Chunk chunk = chunks.get(i);
+
+			threads[i] = new Thread(""+BASE_ERROR_MESSAGE+"thread "+i) {
+
+				@Override
+				public void run() {
+					final long first = input.min(last) + chunk.getStartPosition();
+					final long end = first + chunk.getLoopSize();
+					loadSlabs(extendedInput, input, first - 1, first - 1, topHalos[ithread], 0);
+					loadSlabs(extendedInput, input, end, end, bottomHalos[ithread], 0);
+				}
+			};
+		}
+		SimpleMultiThreading.startAndJoin(threads);
+
+		/*
+		 * Apply the stencils tile by tile, and write the result at once.
+		 */
+
+		threads = SimpleMultiThreading.newThreads(nThreads);
+		for (int i = 0; i < threads.length; i++) {
+
+			final int ithread = i;
+			final Chunk chunk = chunks.get(i);
+
+			threads[i] = new Thread(""+BASE_ERROR_MESSAGE+"thread "+i) {
+
+				@Override
+				public void run() {
+
+					final float[] u = new float[(depth + 2) * slabSize];
+					final float[][] dt = new float[nComponents][(depth + 2) * slabSize];
+
+					final float[][] D = initDiffusionTensorArray();
+					final float[] U = initDensityArray();
+
+					final long[] min = new long[n];
+					final long[] max = new long[n];
+					input.min(min);
+					input.max(max);
+					final int[] tileDims = new int[n];
+					for (int d = 0; d < last; d++) {
+						tileDims[d] = (int) input.dimension(d);
+					}
+					final int[] position = new int[n];
+					int base = 0;
+					for (int d = 0; d < n; d++) {
+						base += strides[d];
+					}
+
+					final long first = input.min(last) + chunk.getStartPosition();
+					final long end = first + chunk.getLoopSize();
+					int previousCount = 0;
+					for (long t0 = first; t0 < end; t0 += depth) {
+
+						final int count = (int) Math.min(depth, end - t0);
+
+						// Density tile. The top halo is the last slab of the previous
+						// tile, as it was before being written.
+						if (t0 == first) {
+							System.arraycopy(topHalos[ithread], 0, u, 0, slabSize);
+						} else {
+							System.arraycopy(u, previousCount * slabSize, u, 0, slabSize);
+						}
+						loadSlabs(extendedInput, input, t0, t0 + count - 1, u, slabSize);
+						if (t0 + count == end) {
+							System.arraycopy(bottomHalos[ithread], 0, u, (count + 1) * slabSize, slabSize);
+						} else {
+							loadSlabs(extendedInput, input, t0 + count, t0 + count, u, (count + 1) * slabSize);
+						}
+						previousCount = count;
+
+						// Diffusion tensor tile
+						for (int c = 0; c < nComponents; c++) {
+							loadSlabs(extendedD.get(c), input, t0 - 1, t0 + count, dt[c], 0);
+						}
+
+						min[last] = t0;
+						max[last] = t0 + count - 1;
+						tileDims[last] = count;
+						final Cursor<T> inputCursor = Views.flatIterable(Views.interval(input, min, max)).cursor();
+						final Cursor<FloatType> incrementCursor = Views.flatIterable(Views.interval(increment, min, max)).cursor();
+
+						Arrays.fill(position, 0);
+						int index = base;
+						while (inputCursor.hasNext()) {
+
+							for (int k = 0; k < densityOffsets.length; k++) {
+								U[k] = u[index + densityOffsets[k]];
+							}
+							for (int j = 0; j < tensorOffsets.length; j++) {
+								final int[] offsets = tensorOffsets[j];
+								final int[] components = tensorComponents[j];
+								for (int k = 0; k < offsets.length; k++) {
+									D[j][k] = dt[components[k]][index + offsets[k]];
+								}
+							}
+
+							final float inc = diffusionScheme(U, D);
+							incrementCursor.next().set(inc);
+
+							// Over/Underflow protection
+							float sum = u[index] + inc;
+							if (sum > maxVal) {
+								sum = maxVal;
+							}
+							if (sum < minVal) {
+								sum = minVal;
+							}
+							inputCursor.next().setReal(sum);
+
+							// Move to the next pixel in the tile, skipping halos
+							++index;
+							if (++position[0] == tileDims[0]) {
+								for (int d = 0; d < last && position[d] == tileDims[d]; d++) {
+									position[d] = 0;
+									++position[d + 1];
+								}
+								index = base;
+								for (int d = 0; d < n; d++) {
+									index += position[d] * strides[d];
+								}
+							}
+						}
+					}
+				}
+			};
+		}
+		SimpleMultiThreading.startAndJoin(threads);
+		return true;
+	}
+
+	/**
+	 * Copy the slabs <code>from</code> to <code>to</code> along the last
+	 * dimension of the given extended source, with a 1-pixel halo in the other
+	 * dimensions of the interval, in the target array.
+	 */
+	private static <R extends RealType<R>> void loadSlabs(final RandomAccessible<R> source, final Interval interval, final long from, final long to, final float[] target, final int offset) {
+		final int n = interval.numDimensions();
+		final long[] min = new long[n];
+		final long[] max = new long[n];
+		for (int d = 0; d < n - 1; d++) {
+			min[d] = interval.min(d) - 1;
+			max[d] = interval.max(d) + 1;
+		}
+		min[n - 1] = from;
+		max[n - 1] = to;
+		final Cursor<R> cursor = Views.flatIterable(Views.interval(source, min, max)).cursor();
+		int index = offset;
+		while (cursor.hasNext()) {
+			target[index++] = cursor.next().getRealFloat();
+		}
+	}
+
+	private static int linearOffset(final int[] offset, final int[] strides) {
+		int index = 0;
+		for (int d = 0; d < strides.length; d++) {
+			index += offset[d] * strides[d];
+		}
+		return index;
+	}
+
+	/**
+	 * Per-pixel version of the explicit scheme, used when the concrete scheme
+	 * does not provide its stencils.
+	 */
+	private void processPerPixel() {
+
 		final Vector<Chunk> chunks = SimpleMultiThreading.divideIntoChunks(input.size(), numThreads);
 		Thread[] threads = SimpleMultiThreading.newThreads(numThreads);
 
@@ -201,10 +490,6 @@ public abstract class ExplicitDiffusionScheme<T extends RealType<T>> extends Mul
 		}
  
 		SimpleMultiThreading.startAndJoin(threads);
-
-		long end = System.currentTimeMillis();
-		processingTime += (end - start);
-		return true;
 	}
 
 	/**
@@ -106,6 +106,29 @@ public abstract class ExplicitDiffusionScheme2D<T extends RealType<T>> extends E
 	}
 
 	
+	/** The 3x3 neighborhood, in the order used by {@link #yieldDensity(RandomAccess, float[])}. */
+	private static final int[][] NEIGHBORHOOD = new int[][] {
+		{ 0, 0 }, { 0, -1 }, { 1, -1 }, { 1, 0 }, { 1, 1 }, { 0, 1 }, { -1, 1 }, { -1, 0 }, { -1, -1 } 
+	};
+
+	@Override
+	protected int[][] densityStencil() {
+		return NEIGHBORHOOD;
+	}
+
+	@Override
+	protected int[][][] diffusionTensorStencil() {
+		final int[][] B = new int[NEIGHBORHOOD.length][];
+		for (int k = 0; k < B.length; k++) {
+			B[k] = new int[] { NEIGHBORHOOD[k][0], NEIGHBORHOOD[k][1], 1 };
+		}
+		return new int[][][] {
+				{ { 0, 0, 0 }, { 1, 0, 0 }, { -1, 0, 0 } },
+				B,
+				{ { 0, 0, 2 }, { 0, -1, 2 }, { 0, 1, 2 } }
+		};
+	}
+
 	/**
 	 * Iterate over a 3x3 XY neighborhood around the current {@link RandomAccess} location 
 	 * for the input image, and store the 9 values as float in an array, in the following order:
@@ -159,6 +159,41 @@ public abstract class ExplicitDiffusionScheme3D<T extends RealType<T>> extends E
 		
 	}
 
+	@Override
+	protected int[][] densityStencil() {
+		return new int[][] {
+				// ccc
+				{ 0, 0, 0 },
+				// ccm, cmm, mcm, cpm, pcm
+				{ 0, 0, -1 }, { 0, -1, -1 }, { -1, 0, -1 }, { 0, 1, -1 }, { 1, 0, -1 },
+				// pmc, cmc, mmc, mcc, mpc, cpc, ppc, pcc
+				{ 1, -1, 0 }, { 0, -1, 0 }, { -1, -1, 0 }, { -1, 0, 0 }, { -1, 1, 0 }, { 0, 1, 0 }, { 1, 1, 0 }, { 1, 0, 0 },
+				// pcp, cmp, mcp, cpp, ccp
+				{ 1, 0, 1 }, { 0, -1, 1 }, { -1, 0, 1 }, { 0, 1, 1 }, { 0, 0, 1 }
+		};
+	}
+
+	@Override
+	protected int[][][] diffusionTensorStencil() {
+		return new int[][][] {
+				// A: ccc mcc pcc
+				{ { 0, 0, 0, 0 }, { -1, 0, 0, 0 }, { 1, 0, 0, 0 } },
+				// B: ccc cmc cpc
+				{ { 0, 0, 0, 1 }, { 0, -1, 0, 1 }, { 0, 1, 0, 1 } },
+				// C: ccc ccm ccp
+				{ { 0, 0, 0, 2 }, { 0, 0, -1, 2 }, { 0, 0, 1, 2 } },
+				// D: ccc pmc cmc mmc mcc mpc cpc ppc pcc
+				{ { 0, 0, 0, 3 }, { 1, -1, 0, 3 }, { 0, -1, 0, 3 }, { -1, -1, 0, 3 }, { -1, 0, 0, 3 }, 
+					{ -1, 1, 0, 3 }, { 0, 1, 0, 3 }, { 1, 1, 0, 3 }, { 1, 0, 0, 3 } },
+				// E: ccc ccm mcm pcm mcc pcc pcp mcp ccp
+				{ { 0, 0, 0, 4 }, { 0, 0, -1, 4 }, { -1, 0, -1, 4 }, { 1, 0, -1, 4 }, { -1, 0, 0, 4 }, 
+					{ 1, 0, 0, 4 }, { 1, 0, 1, 4 }, { -1, 0, 1, 4 }, { 0, 0, 1, 4 } },
+				// F: ccc ccm cmm cpm cmc cpc cmp cpp ccp
+				{ { 0, 0, 0, 5 }, { 0, 0, -1, 5 }, { 0, -1, -1, 5 }, { 0, 1, -1, 5 }, { 0, -1, 0, 5 }, 
+					{ 0, 1, 0, 5 }, { 0, -1, 1, 5 }, { 0, 1, 1, 5 }, { 0, 0, 1, 5 } }
+		};
+	}
+
 	/**
 	 * Real, symmetric diffusion tensor for 3D structures. The following notations are used, 
 	 * exploiting the symmetry of the tensor:
@@ -371,13 +406,7 @@ public abstract class ExplicitDiffusionScheme3D<T extends RealType<T>> extends E
 		// 23. cpp
 		dra.fwd(X);
 		
-		dra.setPosition(C, tensorComponentDimension);
-		target[C][2] = dra.get().get();
-		
-		dra.setPosition(E, tensorComponentDimension);
-		target[E][8] = dra.get().get();
-		
-		dra.fwd(2);
+		dra.setPosition(F, tensorComponentDimension);
 		target[F][7] = dra.get().get();
 		
 		// 24. ppp - unsued, not even traversed
@@ -385,7 +414,13 @@ public abstract class ExplicitDiffusionScheme3D<T extends RealType<T>> extends E
 		// 25. ccp
 		dra.bck(Y);
 		
-		dra.setPosition(F, tensorComponentDimension);
+		dra.setPosition(C, tensorComponentDimension);
+		target[C][2] = dra.get().get();
+		
+		dra.setPosition(E, tensorComponentDimension);
+		target[E][8] = dra.get().get();
+		
+		dra.fwd(tensorComponentDimension);
 		target[F][8] = dra.get().get();
 	
 	}
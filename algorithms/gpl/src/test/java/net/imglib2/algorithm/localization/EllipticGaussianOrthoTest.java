@@ -190,6 +190,20 @@ public class EllipticGaussianOrthoTest {
 
 	}
 
+	@Test
+	public final void testValAndGrad() {
+		double[] pos = new double[2];
+		double[] gradient = new double[params.length];
+		for (int i = 0; i < X.length; i++) {
+			pos[0] = X[i];
+			pos[1] = Y[i];
+			assertEquals("Bad accuracy for x=" + pos[0]+", y="+pos[1]+" in gaussian value.", g.val(pos, params), g.valAndGrad(pos, params, gradient), TOLERANCE);
+			for (int k = 0; k < params.length; k++) {
+				assertEquals("Bad accuracy for x=" + pos[0]+", y="+pos[1]+" in gradient component " + k + ".", g.grad(pos, params, k), gradient[k], TOLERANCE);
+			}
+		}
+	}
+
 	@Test 
 	public final void testHessian() {
 		double[] pos = new double[2];
@@ -0,0 +1,63 @@
+package net.imglib2.algorithm.localization;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import net.imglib2.Localizable;
+import net.imglib2.Point;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.ByteArray;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+
+import org.junit.Test;
+
+/**
+ * Checks that a {@link LevenbergMarquardtSolver} reused across fits of
+ * varying size gives the same results as a fresh solver for each fit.
+ */
+public class LevenbergMarquardtSolverTest {
+
+	@Test
+	public void testReuseAcrossProblemSizes() throws Exception {
+
+		long[] dimensions = new long[] { 40, 40 };
+		ArrayImg<UnsignedByteType,ByteArray> img = ArrayImgs.unsignedBytes(dimensions);
+		LocalizationUtils.addEllipticGaussianSpotToImage(img, new double[] { 20.3d, 19.6d, 150, 1 / 2.5d / 2.5d, 1 / 1.5d / 1.5d });
+		Localizable peak = new Point(20, 20);
+
+		// Grow, shrink and grow again the number of observations and of parameters
+		StartPointEstimator[] estimators = new StartPointEstimator[] {
+				new MLGaussianEstimator(1d, 2),
+				new MLEllipticGaussianEstimator(new double[] { 3d, 2d }),
+				new MLGaussianEstimator(0.5d, 2),
+				new MLGaussianEstimator(4d, 2),
+				new MLEllipticGaussianEstimator(new double[] { 1d, 1d }),
+		};
+		FitFunction[] functions = new FitFunction[] {
+				new Gaussian(),
+				new EllipticGaussianOrtho(),
+				new Gaussian(),
+				new Gaussian(),
+				new EllipticGaussianOrtho(),
+		};
+
+		LevenbergMarquardtSolver reused = new LevenbergMarquardtSolver();
+		LevenbergMarquardtSolver.Workspace workspace = new LevenbergMarquardtSolver.Workspace();
+		for (int i = 0; i < estimators.length; i++) {
+			Observation data = LocalizationUtils.gatherObservationData(img, peak, estimators[i].getDomainSpan());
+			double[] start = estimators[i].initializeFit(peak, data);
+
+			double[] expected = start.clone();
+			new LevenbergMarquardtSolver().fit(data.X, data.I, expected, functions[i]);
+
+			double[] actual = start.clone();
+			reused.fit(data.X, data.I, actual, functions[i]);
+			assertArrayEquals("Reused solver differs from a fresh one on fit " + i + ": ", expected, actual, 0d);
+
+			double[] explicit = start.clone();
+			LevenbergMarquardtSolver.solve(data.X, explicit, data.I, functions[i], 1e-3d, 1e-1d, 300, workspace);
+			assertArrayEquals("Reused workspace differs from a fresh one on fit " + i + ": ", expected, explicit, 0d);
+		}
+	}
+
+}
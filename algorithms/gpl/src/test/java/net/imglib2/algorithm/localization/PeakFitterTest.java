@@ -1,15 +1,20 @@
 package net.imglib2.algorithm.localization;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 
 import net.imglib2.Localizable;
 import net.imglib2.Point;
+import net.imglib2.RandomAccess;
 import net.imglib2.img.array.ArrayImg;
 import net.imglib2.img.array.ArrayImgs;
 import net.imglib2.img.basictypeaccess.array.ByteArray;
@@ -150,4 +155,80 @@ public class PeakFitterTest {
 		}
 	}
 
+	@Test
+	public void testBatchedFitMatchesIndividualFits() {
+		
+		int width = 100;
+		int height = 60;
+
+		long[] dimensions = new long[] { width, height };
+		ArrayImg<UnsignedByteType,ByteArray> img = ArrayImgs.unsignedBytes(dimensions);
+		
+		// Several batches worth of peaks, some of them close enough to the border 
+		// for their neighborhood to be clipped.
+		List<Localizable> peaks = new ArrayList<Localizable>();
+		for (int x = 1; x < width; x += 12) {
+			for (int y = 1; y < height; y += 12) {
+				double[] params = new double[] { x + 0.3d, y - 0.2d, 100, 1 / 1.5d / 1.5d };
+				LocalizationUtils.addGaussianSpotToImage(img, params);
+				peaks.add(new Point(x, y));
+			}
+		}
+		assertTrue(peaks.size() > 2 * PeakFitter.BATCH_SIZE);
+		
+		MLGaussianEstimator estimator = new MLGaussianEstimator(1.5d, 2);
+		PeakFitter<UnsignedByteType> fitter = new PeakFitter<UnsignedByteType>(img, peaks, 
+				new LevenbergMarquardtSolver(), new Gaussian(), estimator);
+		fitter.setNumThreads(3);
+		
+		if ( !fitter.checkInput() || !fitter.process()) {
+			fail("Problem with peak fitting: " + fitter.getErrorMessage());
+			return;
+		}
+		
+		Map<Localizable, double[]> results = fitter.getResult();
+		assertEquals(peaks.size(), results.size());
+		
+		for (Localizable peak : peaks) {
+			// Fit the peak on its own, with a fresh solver and freshly sampled data
+			Observation data = LocalizationUtils.gatherObservationData(img, peak, estimator.getDomainSpan());
+			double[] expected = estimator.initializeFit(peak, data);
+			try {
+				new LevenbergMarquardtSolver().fit(data.X, data.I, expected, new Gaussian());
+			} catch (Exception e) {
+				fail("Problem fitting around " + peak + ": " + e.getMessage());
+			}
+			
+			assertArrayEquals("Batched fit differs from individual fit around " + peak + ": ", 
+					expected, results.get(peak), 1e-9);
+		}
+	}
+	
+	@Test
+	public void testGatherObservationData() {
+		
+		long[] dimensions = new long[] { 20, 15 };
+		ArrayImg<UnsignedByteType,ByteArray> img = ArrayImgs.unsignedBytes(dimensions);
+		LocalizationUtils.addEllipticGaussianSpotToImage(img, new double[] { 8.4d, 6.7d, 200, 0.3d, 0.1d });
+		
+		long[] span = new long[] { 3, 2 };
+		Observation data = new Observation();
+		RandomAccess<UnsignedByteType> ra = img.randomAccess();
+		
+		// Centered, on the border, in a corner, and back to centered to reuse the arrays 
+		long[][] points = new long[][] { { 8, 7 }, { 0, 7 }, { 19, 14 }, { 10, 5 } };
+		for (long[] point : points) {
+			Localizable peak = new Point(point);
+			Observation expected = LocalizationUtils.gatherObservationData(img, peak, span);
+			LocalizationUtils.gatherObservationData(ra, img, peak, span, data);
+			
+			assertEquals(expected.I.length, data.I.length);
+			assertEquals(expected.X.length, data.X.length);
+			assertArrayEquals(expected.I, data.I, 0d);
+			for (int i = 0; i < expected.X.length; i++) {
+				assertArrayEquals(expected.X[i], data.X[i], 0d);
+			}
+		}
+	}
+
 }
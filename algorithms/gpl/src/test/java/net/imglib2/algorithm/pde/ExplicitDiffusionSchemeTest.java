@@ -0,0 +1,203 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 2 of the 
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public 
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-2.0.html>.
+ * #L%
+ */
+
+
+package net.imglib2.algorithm.pde;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.type.numeric.real.FloatType;
+
+import org.junit.Test;
+
+/**
+ * Checks that the tiled stencil engine of {@link ExplicitDiffusionScheme}
+ * yields the same result as the per-pixel path, and that the 3D scheme reads
+ * the diffusion tensor where its documentation says.
+ */
+public class ExplicitDiffusionSchemeTest {
+
+	private static Img<FloatType> createRandom(final long[] dims, final long seed) {
+		final Img<FloatType> img = new ArrayImgFactory<FloatType>().create(dims, new FloatType());
+		final Random random = new Random(seed);
+		for (final FloatType t : img) {
+			t.set(random.nextFloat());
+		}
+		return img;
+	}
+
+	private static long[] tensorDimensions(final long[] dims, final int nComponents) {
+		final long[] tensorDims = new long[dims.length + 1];
+		System.arraycopy(dims, 0, tensorDims, 0, dims.length);
+		tensorDims[dims.length] = nComponents;
+		return tensorDims;
+	}
+
+	private static void assertSameImages(final Img<FloatType> expected, final Img<FloatType> actual) {
+		final Cursor<FloatType> e = expected.cursor();
+		final Cursor<FloatType> a = actual.cursor();
+		while (e.hasNext()) {
+			assertEquals(e.next().get(), a.next().get(), 1e-6f);
+		}
+	}
+
+	/**
+	 * Runs one iteration of both schemes and compares the results. The first
+	 * one uses the tiled path, the second one overrides its stencils and
+	 * falls back on the per-pixel path.
+	 */
+	private static void assertSamePaths(final ExplicitDiffusionScheme<FloatType> tiled, final Img<FloatType> tiledInput,
+			final ExplicitDiffusionScheme<FloatType> perPixel, final Img<FloatType> perPixelInput) {
+		tiled.setNumThreads(3);
+		perPixel.setNumThreads(3);
+		tiled.process();
+		perPixel.process();
+		assertSameImages((Img<FloatType>) perPixel.getIncrement(), (Img<FloatType>) tiled.getIncrement());
+		assertSameImages(perPixelInput, tiledInput);
+	}
+
+	@Test
+	public void testTiledMatchesPerPixel2D() {
+		// tall enough for several tiles per thread
+		final long[] dims = new long[] { 200, 2000 };
+		final Img<FloatType> D = createRandom(tensorDimensions(dims, 3), 2);
+
+		Img<FloatType> tiledInput = createRandom(dims, 1);
+		Img<FloatType> perPixelInput = tiledInput.copy();
+		assertSamePaths(new StandardDiffusionScheme2D<FloatType>(tiledInput, D),
+				tiledInput,
+				new StandardDiffusionScheme2D<FloatType>(perPixelInput, D) {
+					@Override
+					protected int[][] densityStencil() {
+						return null;
+					}
+				},
+				perPixelInput);
+
+		tiledInput = createRandom(dims, 3);
+		perPixelInput = tiledInput.copy();
+		assertSamePaths(new NonNegativityDiffusionScheme2D<FloatType>(tiledInput, D),
+				tiledInput,
+				new NonNegativityDiffusionScheme2D<FloatType>(perPixelInput, D) {
+					@Override
+					protected int[][] densityStencil() {
+						return null;
+					}
+				},
+				perPixelInput);
+	}
+
+	@Test
+	public void testTiledMatchesPerPixel3D() {
+		// deep enough for several tiles per thread
+		final long[] dims = new long[] { 40, 37, 150 };
+		final Img<FloatType> D = createRandom(tensorDimensions(dims, 6), 5);
+
+		Img<FloatType> tiledInput = createRandom(dims, 4);
+		Img<FloatType> perPixelInput = tiledInput.copy();
+		assertSamePaths(new StandardDiffusionScheme3D<FloatType>(tiledInput, D),
+				tiledInput,
+				new StandardDiffusionScheme3D<FloatType>(perPixelInput, D) {
+					@Override
+					protected int[][] densityStencil() {
+						return null;
+					}
+				},
+				perPixelInput);
+
+		tiledInput = createRandom(dims, 6);
+		perPixelInput = tiledInput.copy();
+		assertSamePaths(new NonNegativityDiffusionScheme3D<FloatType>(tiledInput, D),
+				tiledInput,
+				new NonNegativityDiffusionScheme3D<FloatType>(perPixelInput, D) {
+					@Override
+					protected int[][] densityStencil() {
+						return null;
+					}
+				},
+				perPixelInput);
+	}
+
+	/**
+	 * The content of the tensor array documented in
+	 * {@link ExplicitDiffusionScheme3D#yieldDiffusionTensor(RandomAccess, float[][])}:
+	 * the component letter followed by the X, Y and Z offsets (m, c or p).
+	 */
+	private static final String[][] TENSOR_TABLE_3D = new String[][] {
+		{ "Accc", "Amcc", "Apcc" },
+		{ "Bccc", "Bcmc", "Bcpc" },
+		{ "Cccc", "Cccm", "Cccp" },
+		{ "Dccc", "Dpmc", "Dcmc", "Dmmc", "Dmcc", "Dmpc", "Dcpc", "Dppc", "Dpcc" },
+		{ "Eccc", "Eccm", "Emcm", "Epcm", "Emcc", "Epcc", "Epcp", "Emcp", "Eccp" },
+		{ "Fccc", "Fccm", "Fcmm", "Fcpm", "Fcmc", "Fcpc", "Fcmp", "Fcpp", "Fccp" }
+	};
+
+	/** A unique value for each voxel and tensor component. */
+	private static float code(final long x, final long y, final long z, final long component) {
+		return x + 10 * y + 100 * z + 1000 * component;
+	}
+
+	@Test
+	public void testDiffusionTensorReads3D() {
+		final long[] dims = new long[] { 5, 5, 5 };
+		final Img<FloatType> D = new ArrayImgFactory<FloatType>().create(tensorDimensions(dims, 6), new FloatType());
+		final Cursor<FloatType> cursor = D.localizingCursor();
+		while (cursor.hasNext()) {
+			cursor.fwd();
+			cursor.get().set(code(cursor.getLongPosition(0), cursor.getLongPosition(1), cursor.getLongPosition(2), cursor.getLongPosition(3)));
+		}
+		final Img<FloatType> input = createRandom(dims, 7);
+		final ExplicitDiffusionScheme3D<FloatType> scheme = new StandardDiffusionScheme3D<FloatType>(input, D);
+
+		final RandomAccess<FloatType> dra = D.randomAccess();
+		dra.setPosition(new long[] { 2, 2, 2, 0 });
+		final float[][] target = scheme.initDiffusionTensorArray();
+		scheme.yieldDiffusionTensor(dra, target);
+
+		final int[][][] stencil = scheme.diffusionTensorStencil();
+		for (int i = 0; i < TENSOR_TABLE_3D.length; i++) {
+			for (int j = 0; j < TENSOR_TABLE_3D[i].length; j++) {
+				final String entry = TENSOR_TABLE_3D[i][j];
+				final int component = entry.charAt(0) - 'A';
+				final int[] offset = new int[3];
+				for (int d = 0; d < 3; d++) {
+					offset[d] = "mcp".indexOf(entry.charAt(d + 1)) - 1;
+				}
+				assertEquals(entry, code(2 + offset[0], 2 + offset[1], 2 + offset[2], component), target[i][j], 0);
+				assertEquals(entry, offset[0], stencil[i][j][0]);
+				assertEquals(entry, offset[1], stencil[i][j][1]);
+				assertEquals(entry, offset[2], stencil[i][j][2]);
+				assertEquals(entry, component, stencil[i][j][3]);
+			}
+		}
+	}
+}
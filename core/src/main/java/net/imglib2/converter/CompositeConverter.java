@@ -0,0 +1,109 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.converter;
+
+import net.imglib2.type.Type;
+
+/**
+ * A {@link Converter} that applies two converters in sequence, converting
+ * <em>A</em> to the intermediate <em>B</em> and <em>B</em> to <em>C</em>.
+ * Longer chains are composed by nesting.
+ * 
+ * The intermediate sample is held by the converter, so a
+ * {@link CompositeConverter} must not be used by several threads at once.
+ * Converted accesses and cursors take their own {@link #copy()}.
+ */
+public class CompositeConverter< A, B extends Type< B >, C > implements Converter< A, C >
+{
+	final protected Converter< A, B > first;
+
+	final protected Converter< B, C > second;
+
+	final protected B intermediate;
+
+	/**
+	 * Creates a copy of b to hold the intermediate sample.
+	 * 
+	 * @param first
+	 * @param second
+	 * @param b
+	 */
+	public CompositeConverter( final Converter< A, B > first, final Converter< B, C > second, final B b )
+	{
+		this.first = copyOf( first );
+		this.second = copyOf( second );
+		this.intermediate = b.copy();
+	}
+
+	@Override
+	public void convert( final A input, final C output )
+	{
+		first.convert( input, intermediate );
+		second.convert( intermediate, output );
+	}
+
+	public Converter< A, B > getFirst()
+	{
+		return first;
+	}
+
+	public Converter< B, C > getSecond()
+	{
+		return second;
+	}
+
+	/**
+	 * Create a copy with its own intermediate samples.
+	 */
+	public CompositeConverter< A, B, C > copy()
+	{
+		return new CompositeConverter< A, B, C >( first, second, intermediate );
+	}
+
+	/**
+	 * Returns a {@link #copy()} of the given converter if it is a
+	 * {@link CompositeConverter}, otherwise the converter itself.
+	 */
+	@SuppressWarnings( { "unchecked", "rawtypes" } )
+	public static < A, B > Converter< A, B > copyOf( final Converter< A, B > converter )
+	{
+		if ( converter instanceof CompositeConverter )
+			return ( ( CompositeConverter ) converter ).copy();
+		return converter;
+	}
+}
@@ -56,6 +56,11 @@ import net.imglib2.type.Type;
 /**
  * Convenience factory methods for sample conversion.
  *
+ * Converting a read-only converted source again does not stack another
+ * converted view on top of it. Instead, the converters are fused into a
+ * {@link CompositeConverter} on the original source, such that each
+ * {@link RandomAccess} or {@link Cursor} is a single converted access.
+ *
  * @author Stephan Saalfeld <saalfeld@mpi-cbg.de>
  * @author Tobias Pietzsch <tobias.pietzsch@gmail.com>
  */
@@ -74,7 +79,7 @@ public class Converters
 	 *         RandomAccesses} perform on-the-fly value conversion using the
 	 *         provided converter.
 	 */
-	@SuppressWarnings( "unchecked" )
+	@SuppressWarnings( { "unchecked", "rawtypes" } )
 	final static public < A, B extends Type< B > > RandomAccessible< B > convert(
 			final RandomAccessible< A > source,
 			final Converter< A, B > converter,
@@ -82,6 +87,8 @@ public class Converters
 	{
 		if ( TypeIdentity.class.isInstance( converter ) )
 			return ( RandomAccessible< B > )source;
+		if ( source instanceof ConvertedRandomAccessible )
+			return fuse( ( ConvertedRandomAccessible ) source, ( Converter ) converter, b );
 		return new ConvertedRandomAccessible< A, B >( source, converter, b );
 	}
 
@@ -116,7 +123,7 @@ public class Converters
 	 *         {@link RandomAccess RandomAccesses} perform on-the-fly value
 	 *         conversion using the provided converter.
 	 */
-	@SuppressWarnings( "unchecked" )
+	@SuppressWarnings( { "unchecked", "rawtypes" } )
 	final static public < A, B extends Type< B > > RandomAccessibleInterval< B > convert(
 			final RandomAccessibleInterval< A > source,
 			final Converter< A, B > converter,
@@ -124,6 +131,8 @@ public class Converters
 	{
 		if ( TypeIdentity.class.isInstance( converter ) )
 			return ( RandomAccessibleInterval< B > )source;
+		if ( source instanceof ConvertedRandomAccessibleInterval )
+			return fuse( ( ConvertedRandomAccessibleInterval ) source, ( Converter ) converter, b );
 		return new ConvertedRandomAccessibleInterval< A, B >( source, converter, b );
 	}
 
@@ -157,7 +166,7 @@ public class Converters
 	 * @return a converted {@link IterableInterval} whose {@link Cursor Cursors}
 	 *         perform on-the-fly value conversion using the provided converter.
 	 */
-	@SuppressWarnings( "unchecked" )
+	@SuppressWarnings( { "unchecked", "rawtypes" } )
 	final static public < A, B extends Type< B > > IterableInterval< B > convert(
 			final IterableInterval< A > source,
 			final Converter< A, B > converter,
@@ -165,6 +174,8 @@ public class Converters
 	{
 		if ( TypeIdentity.class.isInstance( converter ) )
 			return ( IterableInterval< B > )source;
+		if ( source instanceof ConvertedIterableInterval )
+			return fuse( ( ConvertedIterableInterval ) source, ( Converter ) converter, b );
 		return new ConvertedIterableInterval< A, B >( source, converter, b );
 	}
 
@@ -204,4 +215,36 @@ public class Converters
 	{
 		return new WriteConvertedIterableRandomAccessibleInterval< A, B, S >( source, converter );
 	}
+
+	/**
+	 * Collapse a converter applied on top of a converted
+	 * {@link RandomAccessible} into one converted {@link RandomAccessible} of
+	 * the original source.
+	 */
+	private static < X, A extends Type< A >, B extends Type< B > > ConvertedRandomAccessible< X, B > fuse(
+			final ConvertedRandomAccessible< X, A > source,
+			final Converter< A, B > converter,
+			final B b )
+	{
+		final CompositeConverter< X, A, B > composite = new CompositeConverter< X, A, B >( source.getConverter(), converter, source.getDestinationType() );
+		return new ConvertedRandomAccessible< X, B >( source.getSource(), composite, b );
+	}
+
+	private static < X, A extends Type< A >, B extends Type< B > > ConvertedRandomAccessibleInterval< X, B > fuse(
+			final ConvertedRandomAccessibleInterval< X, A > source,
+			final Converter< A, B > converter,
+			final B b )
+	{
+		final CompositeConverter< X, A, B > composite = new CompositeConverter< X, A, B >( source.getConverter(), converter, source.getDestinationType() );
+		return new ConvertedRandomAccessibleInterval< X, B >( source.getSource(), composite, b );
+	}
+
+	private static < X, A extends Type< A >, B extends Type< B > > ConvertedIterableInterval< X, B > fuse(
+			final ConvertedIterableInterval< X, A > source,
+			final Converter< A, B > converter,
+			final B b )
+	{
+		final CompositeConverter< X, A, B > composite = new CompositeConverter< X, A, B >( source.getConverter(), converter, source.getDestinationType() );
+		return new ConvertedIterableInterval< X, B >( source.getSource(), composite, b );
+	}
 }
@@ -39,6 +39,7 @@ package net.imglib2.converter.read;
 
 import net.imglib2.Cursor;
 import net.imglib2.converter.AbstractConvertedCursor;
+import net.imglib2.converter.CompositeConverter;
 import net.imglib2.converter.Converter;
 import net.imglib2.type.Type;
 
@@ -53,6 +54,8 @@ public class ConvertedCursor< A, B extends Type< B > > extends AbstractConverted
 
 	/**
 	 * Creates a copy of b for conversion that can be accessed through {@link #get()}.
+	 * A {@link CompositeConverter} is copied as well,
+	 * such that each cursor has its own intermediate samples.
 	 * 
 	 * @param source
 	 * @param converter
@@ -61,7 +64,7 @@ public class ConvertedCursor< A, B extends Type< B > > extends AbstractConverted
 	public ConvertedCursor( final Cursor< A > source, final Converter< A, B > converter, final B b )
 	{
 		super( source );
-		this.converter = converter;
+		this.converter = CompositeConverter.copyOf( converter );
 		this.converted = b.copy();
 	}
 
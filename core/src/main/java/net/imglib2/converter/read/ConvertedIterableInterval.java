@@ -76,4 +76,25 @@ public class ConvertedIterableInterval< A, B extends Type< B > > extends Abstrac
 	{
 		return new ConvertedCursor< A, B >( sourceInterval.localizingCursor(), converter, converted );
 	}
+
+	/**
+	 * @return the source that is converted.
+	 */
+	public IterableInterval< A > getSource()
+	{
+		return sourceInterval;
+	}
+
+	public Converter< A, B > getConverter()
+	{
+		return converter;
+	}
+
+	/**
+	 * @return an instance of the converted type.
+	 */
+	public B getDestinationType()
+	{
+		return converted;
+	}
 }
@@ -39,6 +39,7 @@ package net.imglib2.converter.read;
 
 import net.imglib2.RandomAccess;
 import net.imglib2.converter.AbstractConvertedRandomAccess;
+import net.imglib2.converter.CompositeConverter;
 import net.imglib2.converter.Converter;
 import net.imglib2.type.Type;
 
@@ -54,7 +55,7 @@ final public class ConvertedRandomAccess< A, B extends Type< B > > extends Abstr
 	public ConvertedRandomAccess( final RandomAccess< A > source, final Converter< A, B > converter, final B b )
 	{
 		super( source );
-		this.converter = converter;
+		this.converter = CompositeConverter.copyOf( converter );
 		this.converted = b.copy();
 	}
 
@@ -70,4 +70,25 @@ public class ConvertedRandomAccessible< A, B extends Type< B > > extends Abstrac
 	{
 		return new ConvertedRandomAccess< A, B >( source.randomAccess( interval ), converter, converted );
 	}
+
+	/**
+	 * @return the source that is converted.
+	 */
+	public RandomAccessible< A > getSource()
+	{
+		return source;
+	}
+
+	public Converter< A, B > getConverter()
+	{
+		return converter;
+	}
+
+	/**
+	 * @return an instance of the converted type.
+	 */
+	public B getDestinationType()
+	{
+		return converted;
+	}
 }
@@ -70,4 +70,25 @@ public class ConvertedRandomAccessibleInterval< A, B extends Type< B > > extends
 	{
 		return new ConvertedRandomAccess< A, B >( sourceInterval.randomAccess( interval ), converter, converted );
 	}
+
+	/**
+	 * @return the source that is converted.
+	 */
+	public RandomAccessibleInterval< A > getSource()
+	{
+		return sourceInterval;
+	}
+
+	public Converter< A, B > getConverter()
+	{
+		return converter;
+	}
+
+	/**
+	 * @return an instance of the converted type.
+	 */
+	public B getDestinationType()
+	{
+		return converted;
+	}
 }
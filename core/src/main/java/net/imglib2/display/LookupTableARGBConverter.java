@@ -0,0 +1,112 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.display;
+
+import net.imglib2.converter.Converter;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.IntegerType;
+
+/**
+ * Converts integer samples of at most 16 bits to {@link ARGBType} by a single
+ * lookup in a table precomputed from another {@link Converter}, for example a
+ * {@link RealARGBConverter}, a {@link RealLUTConverter}, or a
+ * {@link net.imglib2.converter.CompositeConverter} chain ending in ARGB.
+ * 
+ * The table has one entry for every value of the source type. If the wrapped
+ * converter changes, for example when the display range of a
+ * {@link LinearRange} is set, {@link #update()} must be called.
+ */
+public class LookupTableARGBConverter< R extends IntegerType< R > > implements Converter< R, ARGBType >
+{
+	/**
+	 * The largest number of table entries, that is, values of a 16 bit type.
+	 */
+	public static final int MAX_TABLE_SIZE = 1 << 16;
+
+	final protected Converter< R, ARGBType > converter;
+
+	final protected R type;
+
+	final protected int offset;
+
+	final protected int[] table;
+
+	/**
+	 * @param converter
+	 *            the converter whose results are tabulated
+	 * @param type
+	 *            an instance of the source type
+	 */
+	public LookupTableARGBConverter( final Converter< R, ARGBType > converter, final R type )
+	{
+		final long min = ( long ) type.getMinValue();
+		final long max = ( long ) type.getMaxValue();
+		if ( max - min + 1 > MAX_TABLE_SIZE )
+			throw new IllegalArgumentException( "Lookup tables are only supported for types of at most 16 bits." );
+		this.converter = converter;
+		this.type = type.createVariable();
+		this.offset = ( int ) -min;
+		this.table = new int[ ( int ) ( max - min + 1 ) ];
+		update();
+	}
+
+	/**
+	 * Recompute the table from the wrapped converter.
+	 */
+	public void update()
+	{
+		final ARGBType argb = new ARGBType();
+		for ( int i = 0; i < table.length; ++i )
+		{
+			type.setInteger( i - offset );
+			converter.convert( type, argb );
+			table[ i ] = argb.get();
+		}
+	}
+
+	public Converter< R, ARGBType > getConverter()
+	{
+		return converter;
+	}
+
+	@Override
+	public void convert( final R input, final ARGBType output )
+	{
+		output.set( table[ input.getInteger() + offset ] );
+	}
+}
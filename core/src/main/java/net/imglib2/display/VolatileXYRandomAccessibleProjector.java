@@ -27,17 +27,76 @@ import net.imglib2.converter.Converter;
  * {@link #map()} call, the projector has a {@link #isValid() state} that
  * signalizes whether all projected pixels were valid.
  *
+ * <p>The target is split into square screen tiles and the projector
+ * remembers which tiles contained invalid pixels.  {@link #mapInvalid()}
+ * re-maps only those tiles, so repeated passes while a cache-backed source
+ * is loading cost time proportional to the pending data rather than to the
+ * size of the target.  {@link #map()} re-maps everything and has to be
+ * used whenever the source, its transformation or the projector position
+ * changed.</p>
+ *
+ * <p>Optionally, a placeholder source, e.g. a lower resolution version of
+ * the same data in the same coordinate frame, is used for pixels whose
+ * source value is not yet valid.  Placeholder pixels do not count as
+ * valid, the respective tiles will be re-mapped by the next
+ * {@link #mapInvalid()}.</p>
+ *
  * @author Stephan Saalfeld <saalfeld@mpi-cbg.de>
  */
 public class VolatileXYRandomAccessibleProjector< T, A extends Volatile< T >, B > extends XYRandomAccessibleProjector< A, B >
 {
+	final static public int DEFAULT_TILE_SIZE = 64;
+
 	protected boolean valid = false;
-	
-	public VolatileXYRandomAccessibleProjector( final RandomAccessible< A > source, final RandomAccessibleInterval< B > target, final Converter< ? super A, B > converter )
+
+	/**
+	 * Used for pixels whose {@link #source} value is invalid, may be null.
+	 */
+	final protected RandomAccessible< A > placeholder;
+
+	final protected int tileSize;
+
+	final protected int numTilesX;
+
+	final protected int numTilesY;
+
+	/**
+	 * Flags for tiles that contained invalid pixels after the last pass,
+	 * tile ( x, y ) is at index y * {@link #numTilesX} + x.
+	 */
+	final protected boolean[] invalidTiles;
+
+	protected int numInvalidTiles;
+
+	public VolatileXYRandomAccessibleProjector(
+			final RandomAccessible< A > source,
+			final RandomAccessible< A > placeholder,
+			final RandomAccessibleInterval< B > target,
+			final Converter< ? super A, B > converter,
+			final int tileSize )
 	{
 		super( source, target, converter );
+		if ( tileSize < 1 )
+			throw new IllegalArgumentException( "Tile size must be positive." );
+
+		this.placeholder = placeholder;
+		this.tileSize = tileSize;
+		numTilesX = ( int )( ( target.dimension( 0 ) + tileSize - 1 ) / tileSize );
+		numTilesY = ( int )( ( target.dimension( 1 ) + tileSize - 1 ) / tileSize );
+		invalidTiles = new boolean[ numTilesX * numTilesY ];
+		invalidateAll();
 	}
-	
+
+	public VolatileXYRandomAccessibleProjector( final RandomAccessible< A > source, final RandomAccessible< A > placeholder, final RandomAccessibleInterval< B > target, final Converter< ? super A, B > converter )
+	{
+		this( source, placeholder, target, converter, DEFAULT_TILE_SIZE );
+	}
+
+	public VolatileXYRandomAccessibleProjector( final RandomAccessible< A > source, final RandomAccessibleInterval< B > target, final Converter< ? super A, B > converter )
+	{
+		this( source, null, target, converter, DEFAULT_TILE_SIZE );
+	}
+
 	/**
 	 * @return true if all mapped pixels were {@link Volatile#isValid() valid}.
 	 */
@@ -45,10 +104,54 @@ public class VolatileXYRandomAccessibleProjector< T, A extends Volatile< T >, B
 	{
 		return valid;
 	}
-	
+
+	public int getTileSize()
+	{
+		return tileSize;
+	}
+
+	/**
+	 * @return the number of tiles that will be re-mapped by the next
+	 *         {@link #mapInvalid()}.
+	 */
+	public int numInvalidTiles()
+	{
+		return numInvalidTiles;
+	}
+
+	/**
+	 * Mark all tiles for re-mapping by the next {@link #mapInvalid()}.
+	 */
+	public void invalidateAll()
+	{
+		for ( int i = 0; i < invalidTiles.length; ++i )
+			invalidTiles[ i ] = true;
+		numInvalidTiles = invalidTiles.length;
+		valid = numInvalidTiles == 0;
+	}
+
+	/**
+	 * Re-map all tiles.
+	 */
 	@Override
 	public void map()
 	{
+		invalidateAll();
+		mapInvalid();
+	}
+
+	/**
+	 * Re-map only the tiles that contained invalid pixels after the previous
+	 * pass (or all tiles after {@link #invalidateAll()}).
+	 */
+	public void mapInvalid()
+	{
+		if ( numInvalidTiles == 0 )
+		{
+			valid = true;
+			return;
+		}
+
 		for ( int d = 2; d < position.length; ++d )
 			min[ d ] = max[ d ] = position[ d ];
 
@@ -58,32 +161,91 @@ public class VolatileXYRandomAccessibleProjector< T, A extends Volatile< T >, B
 		max[ 1 ] = target.max( 1 );
 		final FinalInterval sourceInterval = new FinalInterval( min, max );
 
-		final long cr = -target.dimension( 0 );
-
 		final RandomAccess< B > targetRandomAccess = target.randomAccess( target );
 		final RandomAccess< A > sourceRandomAccess = source.randomAccess( sourceInterval );
+		final RandomAccess< A > placeholderRandomAccess = placeholder == null ? null : placeholder.randomAccess( sourceInterval );
 
 		final long width = target.dimension( 0 );
 		final long height = target.dimension( 1 );
+		final long minX = min[ 0 ];
+		final long minY = min[ 1 ];
+
+		numInvalidTiles = 0;
+		for ( int ty = 0, i = 0; ty < numTilesY; ++ty )
+		{
+			final long y0 = ( long )ty * tileSize;
+			final long h = Math.min( tileSize, height - y0 );
+			for ( int tx = 0; tx < numTilesX; ++tx, ++i )
+			{
+				if ( !invalidTiles[ i ] )
+					continue;
+
+				final long x0 = ( long )tx * tileSize;
+				final long w = Math.min( tileSize, width - x0 );
+				final boolean tileValid = mapTile( sourceRandomAccess, placeholderRandomAccess, targetRandomAccess, minX + x0, minY + y0, w, h );
+				invalidTiles[ i ] = !tileValid;
+				if ( !tileValid )
+					++numInvalidTiles;
+			}
+		}
+		valid = numInvalidTiles == 0;
+	}
 
+	/**
+	 * Map a w&times;h tile starting at ( x0, y0 ).
+	 *
+	 * @return true if all source pixels of the tile were valid.
+	 */
+	protected boolean mapTile(
+			final RandomAccess< A > sourceRandomAccess,
+			final RandomAccess< A > placeholderRandomAccess,
+			final RandomAccess< B > targetRandomAccess,
+			final long x0,
+			final long y0,
+			final long w,
+			final long h )
+	{
+		final long cr = -w;
+
+		min[ 0 ] = x0;
+		min[ 1 ] = y0;
 		sourceRandomAccess.setPosition( min );
-		targetRandomAccess.setPosition( min[ 0 ], 0 );
-		targetRandomAccess.setPosition( min[ 1 ], 1 );
-		valid = true;
-		for ( long y = 0; y < height; ++y )
+		targetRandomAccess.setPosition( x0, 0 );
+		targetRandomAccess.setPosition( y0, 1 );
+		if ( placeholderRandomAccess != null )
+			placeholderRandomAccess.setPosition( min );
+
+		boolean tileValid = true;
+		for ( long y = 0; y < h; ++y )
 		{
-			for ( long x = 0; x < width; ++x )
+			for ( long x = 0; x < w; ++x )
 			{
 				final A a = sourceRandomAccess.get();
-				converter.convert( a, targetRandomAccess.get() );
-				valid &= a.isValid();
+				if ( a.isValid() )
+					converter.convert( a, targetRandomAccess.get() );
+				else
+				{
+					tileValid = false;
+					if ( placeholderRandomAccess == null )
+						converter.convert( a, targetRandomAccess.get() );
+					else
+						converter.convert( placeholderRandomAccess.get(), targetRandomAccess.get() );
+				}
 				sourceRandomAccess.fwd( 0 );
 				targetRandomAccess.fwd( 0 );
+				if ( placeholderRandomAccess != null )
+					placeholderRandomAccess.fwd( 0 );
 			}
 			sourceRandomAccess.move( cr, 0 );
 			targetRandomAccess.move( cr, 0 );
 			sourceRandomAccess.fwd( 1 );
 			targetRandomAccess.fwd( 1 );
+			if ( placeholderRandomAccess != null )
+			{
+				placeholderRandomAccess.move( cr, 0 );
+				placeholderRandomAccess.fwd( 1 );
+			}
 		}
+		return tileValid;
 	}
 }
@@ -145,6 +145,59 @@ public class DiscreteFrequencyDistribution implements Img<LongType> {
 		totalValues--;
 	}
 
+	/**
+	 * Adds a set of counts to the frequency counts of all bins. The counts are
+	 * given in flat order with the first dimension varying fastest.
+	 */
+	public void addCounts(long[] flatCounts) {
+		if (flatCounts.length != counts.size()) {
+			throw new IllegalArgumentException(
+				"number of counts does not match number of bins");
+		}
+		long[] position = new long[counts.numDimensions()];
+		Cursor<LongType> cursor = counts.localizingCursor();
+		while (cursor.hasNext()) {
+			LongType count = cursor.next();
+			cursor.localize(position);
+			long index = 0;
+			for (int i = position.length - 1; i >= 0; i--) {
+				index = index * counts.dimension(i) + position[i] - counts.min(i);
+			}
+			long value = flatCounts[(int) index];
+			count.set(count.get() + value);
+			totalValues += value;
+		}
+	}
+
+	/**
+	 * Adds the frequency counts of another distribution with identical bin
+	 * dimensions to the counts of this distribution.
+	 */
+	public void merge(DiscreteFrequencyDistribution other) {
+		if (other.numDimensions() != numDimensions()) {
+			throw new IllegalArgumentException(
+				"distributions differ in dimensionality");
+		}
+		for (int i = 0; i < numDimensions(); i++) {
+			if (other.dimension(i) != dimension(i)) {
+				throw new IllegalArgumentException(
+					"distributions differ in bin dimensions");
+			}
+		}
+		long[] position = new long[numDimensions()];
+		Cursor<LongType> cursor = other.counts.localizingCursor();
+		while (cursor.hasNext()) {
+			long value = cursor.next().get();
+			cursor.localize(position);
+			for (int i = 0; i < position.length; i++) {
+				position[i] += counts.min(i) - other.counts.min(i);
+			}
+			accessor.setPosition(position);
+			accessor.get().set(accessor.get().get() + value);
+		}
+		totalValues += other.totalValues;
+	}
+
 	/**
 	 * Returns the total number of values counted by this distribution.
 	 */
@@ -37,10 +37,12 @@
 
 package net.imglib2.histogram;
 
+import java.util.Collections;
 import java.util.Iterator;
 
 import net.imglib2.Cursor;
 import net.imglib2.Interval;
+import net.imglib2.IterableInterval;
 import net.imglib2.IterableRealInterval;
 import net.imglib2.Positionable;
 import net.imglib2.RandomAccess;
@@ -370,6 +372,46 @@ public class Histogram1d<T> implements Img<LongType> {
 		add(data);
 	}
 
+	/**
+	 * Counts the data contained in the given data source using the underlying bin
+	 * distribution. The data is split into one chunk per thread and each thread
+	 * counts its chunk into its own set of counters before all counts are merged.
+	 * 
+	 * @param data The total data to count
+	 * @param numThreads The number of threads to count with
+	 */
+	public void countData(IterableInterval<T> data, int numThreads) {
+		reset();
+		add(data, numThreads);
+	}
+
+	/**
+	 * Counts additional data contained in a given interval using multiple
+	 * threads. One can use this to update an existing histogram with a subset of
+	 * values.
+	 * 
+	 * @param data The new data to count
+	 * @param numThreads The number of threads to count with
+	 */
+	public void addData(IterableInterval<T> data, int numThreads) {
+		add(data, numThreads);
+	}
+
+	/**
+	 * Adds the counts of another histogram to the counts of this histogram. The
+	 * other histogram must use the same bin mapping. One can use this to combine
+	 * histograms of separately counted subsets of data.
+	 * 
+	 * @param other The histogram whose counts are added
+	 */
+	public void merge(Histogram1d<T> other) {
+		if (other.getBinCount() != getBinCount()) {
+			throw new IllegalArgumentException("histograms differ in bin count");
+		}
+		distrib.merge(other.distrib);
+		ignoredCount += other.ignoredCount;
+	}
+
 	/**
 	 * Uncounts some original data contained in a given iterable collection. One
 	 * can use this to update an existing histogram with a subset of values.
@@ -631,6 +673,14 @@ public class Histogram1d<T> implements Img<LongType> {
 		}
 	}
 
+	private void add(IterableInterval<T> data, int numThreads) {
+		ParallelHistogramCounter<T> counter =
+			new ParallelHistogramCounter<T>(Collections.singletonList(mapper));
+		counter.count(Collections.singletonList(data), numThreads);
+		distrib.addCounts(counter.counts());
+		ignoredCount += counter.ignoredCount();
+	}
+
 	private void subtract(Iterable<T> data) {
 		for (T value : data) {
 			decrement(value);
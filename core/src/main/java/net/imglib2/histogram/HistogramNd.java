@@ -43,6 +43,7 @@ import java.util.List;
 
 import net.imglib2.Cursor;
 import net.imglib2.Interval;
+import net.imglib2.IterableInterval;
 import net.imglib2.IterableRealInterval;
 import net.imglib2.Positionable;
 import net.imglib2.RandomAccess;
@@ -597,6 +598,48 @@ public class HistogramNd<T> implements Img<LongType> {
 		init(data);
 	}
 
+	/**
+	 * Counts the data contained in the given data sources using the underlying
+	 * bin distribution. The data sources must share the same size and iteration
+	 * order. The data is split into one chunk per thread and each thread counts
+	 * its chunk into its own set of counters before all counts are merged.
+	 * 
+	 * @param data The total data to count
+	 * @param numThreads The number of threads to count with
+	 */
+	public void countData(List<? extends IterableInterval<T>> data,
+		int numThreads)
+	{
+		reset();
+		add(data, numThreads);
+	}
+
+	/**
+	 * Counts additional data contained in the given data sources using multiple
+	 * threads. One can use this to update an existing histogram with a subset of
+	 * values.
+	 * 
+	 * @param data The new data to count
+	 * @param numThreads The number of threads to count with
+	 */
+	public void addData(List<? extends IterableInterval<T>> data,
+		int numThreads)
+	{
+		add(data, numThreads);
+	}
+
+	/**
+	 * Adds the counts of another histogram to the counts of this histogram. The
+	 * other histogram must use the same bin mappings. One can use this to combine
+	 * histograms of separately counted subsets of data.
+	 * 
+	 * @param other The histogram whose counts are added
+	 */
+	public void merge(HistogramNd<T> other) {
+		distrib.merge(other.distrib);
+		ignoredCount += other.ignoredCount;
+	}
+
 	/**
 	 * Counts additional data contained in a given iterable collection. One can
 	 * use this to update an existing histogram with a subset of values.
@@ -850,6 +893,14 @@ public class HistogramNd<T> implements Img<LongType> {
 		modifyCounts(data, incrementer);
 	}
 
+	private void add(List<? extends IterableInterval<T>> data, int numThreads) {
+		ParallelHistogramCounter<T> counter =
+			new ParallelHistogramCounter<T>(mappers);
+		counter.count(data, numThreads);
+		distrib.addCounts(counter.counts());
+		ignoredCount += counter.ignoredCount();
+	}
+
 	private void subtract(Iterable<List<T>> data) {
 		modifyCounts(data, decrementer);
 	}
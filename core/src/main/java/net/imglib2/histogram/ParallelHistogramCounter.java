@@ -0,0 +1,277 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.histogram;
+
+import java.util.List;
+import java.util.Vector;
+
+import net.imglib2.Cursor;
+import net.imglib2.IterableInterval;
+import net.imglib2.multithreading.Chunk;
+import net.imglib2.multithreading.SimpleMultiThreading;
+import net.imglib2.type.numeric.IntegerType;
+
+/**
+ * Counts data into a flat array of bins using multiple threads. Each thread
+ * counts one chunk of the input into its own primitive long[] and the per
+ * thread arrays are summed once all threads are done. The flat bin index is
+ * laid out with the first dimension varying fastest which matches the
+ * iteration order of the {@link DiscreteFrequencyDistribution} of a histogram.
+ * <p>
+ * When the input values are of an {@link IntegerType} whose range is at most
+ * 65536 values (i.e. 8 and 16 bit types) each bin mapper is evaluated once per
+ * possible value up front and the per value work reduces to a table lookup.
+ */
+class ParallelHistogramCounter<T> {
+
+	// -- constants --
+
+	/**
+	 * The largest value range for which a direct lookup table is built.
+	 */
+	static final long DIRECT_RANGE_LIMIT = 1 << 16;
+
+	// -- instance variables --
+
+	private final List<BinMapper1d<T>> mappers;
+	private final long[] strides;
+	private final int binCount;
+	private long[] counts;
+	private long ignoredCount;
+
+	// -- constructor --
+
+	/**
+	 * Construct a counter for the bins defined by a list of bin mappers.
+	 * 
+	 * @param mappers The algorithms used to map values to bins
+	 */
+	ParallelHistogramCounter(List<BinMapper1d<T>> mappers) {
+		this.mappers = mappers;
+		strides = new long[mappers.size()];
+		long total = 1;
+		for (int i = 0; i < mappers.size(); i++) {
+			strides[i] = total;
+			total *= mappers.get(i).getBinCount();
+			if (total > Integer.MAX_VALUE) {
+				throw new IllegalArgumentException(
+					"too many bins for parallel counting");
+			}
+		}
+		binCount = (int) total;
+	}
+
+	// -- package api --
+
+	/**
+	 * Counts the given data. There must be one data source per bin mapper and
+	 * all sources must share the same size and iteration order.
+	 * 
+	 * @param data The data sources to count
+	 * @param numThreads The number of threads to count with
+	 */
+	void count(final List<? extends IterableInterval<T>> data, int numThreads) {
+		if (data.size() != mappers.size()) {
+			throw new IllegalArgumentException(
+				"number of data sources does not match number of bin mappers");
+		}
+		if (numThreads < 1) {
+			throw new IllegalArgumentException("invalid number of threads (< 1)");
+		}
+		final IterableInterval<T> first = data.get(0);
+		for (int i = 1; i < data.size(); i++) {
+			IterableInterval<T> other = data.get(i);
+			if (other.size() != first.size() || !first.iterationOrder().equals(other.iterationOrder())) {
+				throw new IllegalArgumentException(
+					"data sources differ in size or iteration order");
+			}
+		}
+
+		counts = new long[binCount];
+		ignoredCount = 0;
+
+		final long size = first.size();
+		if (size == 0) return;
+
+		final long[][] tables = new long[mappers.size()][];
+		final long[] tableMins = new long[mappers.size()];
+		for (int i = 0; i < mappers.size(); i++) {
+			tables[i] =
+				directTable(mappers.get(i), data.get(i).firstElement(), strides[i]);
+			if (tables[i] != null) {
+				tableMins[i] =
+					(long) ((IntegerType<?>) data.get(i).firstElement()).getMinValue();
+			}
+		}
+
+		final int threads = (int) Math.min(numThreads, size);
+		final Vector<Chunk> chunks =
+			SimpleMultiThreading.divideIntoChunks(size, threads);
+		final long[][] threadCounts = new long[threads][];
+		final long[] threadIgnored = new long[threads];
+		final Thread[] workers = SimpleMultiThreading.newThreads(threads);
+		for (int t = 0; t < threads; t++) {
+			final int index = t;
+			workers[t] = new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					long[] local = new long[binCount];
+					threadIgnored[index] =
+						countChunk(data, chunks.get(index), tables, tableMins, local);
+					threadCounts[index] = local;
+				}
+			});
+		}
+		SimpleMultiThreading.startAndJoin(workers);
+
+		for (int t = 0; t < threads; t++) {
+			long[] local = threadCounts[t];
+			for (int b = 0; b < binCount; b++) {
+				counts[b] += local[b];
+			}
+			ignoredCount += threadIgnored[t];
+		}
+	}
+
+	/**
+	 * Returns the bin counts of the last call to count() in flat order.
+	 */
+	long[] counts() {
+		return counts;
+	}
+
+	/**
+	 * Returns the number of values of the last call to count() that did not map
+	 * to any bin.
+	 */
+	long ignoredCount() {
+		return ignoredCount;
+	}
+
+	// -- helpers --
+
+	private long countChunk(List<? extends IterableInterval<T>> data,
+		Chunk chunk, long[][] tables, long[] tableMins, long[] local)
+	{
+		final int n = data.size();
+		final long loopSize = chunk.getLoopSize();
+		long ignored = 0;
+
+		// fast path: a single integer source of limited range
+
+		if (n == 1 && tables[0] != null) {
+			final long[] table = tables[0];
+			final long min = tableMins[0];
+			final Cursor<T> cursor = data.get(0).cursor();
+			cursor.jumpFwd(chunk.getStartPosition());
+			for (long l = 0; l < loopSize; l++) {
+				IntegerType<?> value = (IntegerType<?>) cursor.next();
+				long bin = table[(int) (value.getIntegerLong() - min)];
+				if (bin < 0) ignored++;
+				else local[(int) bin]++;
+			}
+			return ignored;
+		}
+
+		// general path
+
+		final Cursor<T>[] cursors = createCursors(data);
+		for (int i = 0; i < n; i++) {
+			cursors[i].jumpFwd(chunk.getStartPosition());
+		}
+		for (long l = 0; l < loopSize; l++) {
+			long index = 0;
+			boolean outside = false;
+			for (int i = 0; i < n; i++) {
+				T value = cursors[i].next();
+				long offset;
+				if (tables[i] != null) {
+					long v = ((IntegerType<?>) value).getIntegerLong();
+					offset = tables[i][(int) (v - tableMins[i])];
+				}
+				else {
+					long bin = mappers.get(i).map(value);
+					if (bin == Long.MIN_VALUE || bin == Long.MAX_VALUE) offset = -1;
+					else offset = bin * strides[i];
+				}
+				if (offset < 0) outside = true;
+				else index += offset;
+			}
+			if (outside) ignored++;
+			else local[(int) index]++;
+		}
+		return ignored;
+	}
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private Cursor<T>[] createCursors(List<? extends IterableInterval<T>> data) {
+		Cursor<T>[] cursors = new Cursor[data.size()];
+		for (int i = 0; i < cursors.length; i++) {
+			cursors[i] = data.get(i).cursor();
+		}
+		return cursors;
+	}
+
+	/**
+	 * Returns a table mapping every value of an integer type of limited range to
+	 * its bin offset (bin * stride) or -1 for values that fall outside all
+	 * bins. Returns null if the given sample value does not allow a table.
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private static <T> long[] directTable(BinMapper1d<T> mapper, T sample,
+		long stride)
+	{
+		if (!(sample instanceof IntegerType)) return null;
+		IntegerType type = (IntegerType) sample;
+		if (type.getMaxValue() - type.getMinValue() + 1 > DIRECT_RANGE_LIMIT) {
+			return null;
+		}
+		long min = (long) type.getMinValue();
+		long max = (long) type.getMaxValue();
+		long[] table = new long[(int) (max - min + 1)];
+		IntegerType tmp = (IntegerType) type.createVariable();
+		for (int i = 0; i < table.length; i++) {
+			tmp.setInteger(min + i);
+			long bin = mapper.map((T) tmp);
+			if (bin == Long.MIN_VALUE || bin == Long.MAX_VALUE) table[i] = -1;
+			else table[i] = bin * stride;
+		}
+		return table;
+	}
+}
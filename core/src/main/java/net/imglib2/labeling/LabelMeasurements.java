@@ -0,0 +1,582 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.labeling;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+
+import net.imglib2.Cursor;
+import net.imglib2.IterableInterval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.multithreading.Chunk;
+import net.imglib2.multithreading.SimpleMultiThreading;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * A table of per-label measurements of a {@link Labeling}, optionally together
+ * with a number of intensity images (channels). The table is columnar: every
+ * measurement is a primitive array indexed by the label index, i.e. the
+ * position of the label in {@link #getLabels()}.
+ * <p>
+ * The measurements are computed by {@link #measure} in one sweep over the
+ * labeling rather than by iterating a region of interest per label. The sweep
+ * is split into chunks that are measured in parallel and merged afterwards.
+ * <p>
+ * Geometric columns are the area (number of pixels), bounding box, centroid
+ * and the second order central moments of the pixel positions. Intensity
+ * columns per channel are sum, mean, variance, minimum and maximum.
+ * 
+ * @param <T>
+ *            - the type used to label the space
+ */
+public class LabelMeasurements< T extends Comparable< T >>
+{
+	final protected List< T > labels;
+
+	final protected Map< T, Integer > labelIndices;
+
+	final protected int numDimensions;
+
+	final protected int numChannels;
+
+	final protected long[] area;
+
+	final protected long[][] min;
+
+	final protected long[][] max;
+
+	final protected double[][] centroid;
+
+	final protected double[][] centralMoments;
+
+	final protected double[][] sum;
+
+	final protected double[][] mean;
+
+	final protected double[][] variance;
+
+	final protected double[][] minIntensity;
+
+	final protected double[][] maxIntensity;
+
+	/**
+	 * Measure the geometry of all labels of a labeling.
+	 * 
+	 * @param labeling
+	 *            - the labeling to measure
+	 * @param numThreads
+	 *            - the number of threads to measure with
+	 */
+	public static < T extends Comparable< T >> LabelMeasurements< T > measure( final Labeling< T > labeling, final int numThreads )
+	{
+		return measure( labeling, Collections.< RandomAccessible< ? extends RealType< ? >>> emptyList(), numThreads );
+	}
+
+	/**
+	 * Measure the geometry of all labels of a labeling and the intensities of
+	 * the labeled pixels in a number of images.
+	 * 
+	 * @param labeling
+	 *            - the labeling to measure
+	 * @param images
+	 *            - the intensity images, one per channel. Images that are
+	 *            iterable in the same order as the labeling are traversed by
+	 *            cursor, all others by random access.
+	 * @param numThreads
+	 *            - the number of threads to measure with
+	 */
+	public static < T extends Comparable< T >> LabelMeasurements< T > measure( final Labeling< T > labeling, final List< ? extends RandomAccessible< ? extends RealType< ? >>> images, final int numThreads )
+	{
+		if ( numThreads < 1 )
+			throw new IllegalArgumentException( "Number of threads must be at least 1" );
+		for ( final RandomAccessible< ? > image : images )
+		{
+			if ( image.numDimensions() != labeling.numDimensions() )
+				throw new IllegalArgumentException( "Images must have the dimensionality of the labeling" );
+		}
+
+		if ( labeling.size() == 0 )
+			return new LabelMeasurements< T >( new ArrayList< T >(), new Accumulator( 0, labeling.numDimensions(), images.size() ) );
+
+		/*
+		 * Resolve every labeling list of the mapping to the label indices once
+		 * so that the sweep does not need to look up labels per pixel.
+		 */
+		final LabelingMapping< T > mapping = labeling.firstElement().getMapping();
+		final List< T > allLabels = mapping.getLabels();
+		Collections.sort( allLabels );
+		final Map< T, Integer > allIndices = new HashMap< T, Integer >();
+		for ( int i = 0; i < allLabels.size(); i++ )
+			allIndices.put( allLabels.get( i ), i );
+		final IdentityHashMap< List< T >, int[] > listIndices = new IdentityHashMap< List< T >, int[] >();
+		for ( int i = 0; i < mapping.numLists(); i++ )
+		{
+			final List< T > list = mapping.listAtIndex( i );
+			final int[] indices = new int[ list.size() ];
+			for ( int j = 0; j < indices.length; j++ )
+				indices[ j ] = allIndices.get( list.get( j ) );
+			listIndices.put( list, indices );
+		}
+
+		final long size = labeling.size();
+		final int threads = ( int ) Math.max( 1, Math.min( numThreads, size ) );
+		final Vector< Chunk > chunks = SimpleMultiThreading.divideIntoChunks( size, threads );
+		final List< Accumulator > accumulators = new ArrayList< Accumulator >();
+		final Thread[] workers = SimpleMultiThreading.newThreads( threads );
+		for ( int t = 0; t < threads; t++ )
+		{
+			final Accumulator accumulator = new Accumulator( allLabels.size(), labeling.numDimensions(), images.size() );
+			accumulators.add( accumulator );
+			final Chunk chunk = chunks.get( t );
+			workers[ t ] = new Thread( new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					accumulator.sweep( labeling, images, listIndices, chunk.getStartPosition(), chunk.getLoopSize() );
+				}
+			} );
+		}
+		SimpleMultiThreading.startAndJoin( workers );
+
+		final Accumulator result = accumulators.get( 0 );
+		for ( int t = 1; t < threads; t++ )
+			result.merge( accumulators.get( t ) );
+
+		return new LabelMeasurements< T >( allLabels, result );
+	}
+
+	protected LabelMeasurements( final List< T > allLabels, final Accumulator a )
+	{
+		numDimensions = a.min.length;
+		numChannels = a.sum.length;
+
+		/*
+		 * Labels of the mapping that are not present in the labeling any more
+		 * are dropped.
+		 */
+		labels = new ArrayList< T >();
+		final int[] rows = new int[ allLabels.size() ];
+		for ( int i = 0; i < allLabels.size(); i++ )
+		{
+			if ( a.area[ i ] > 0 )
+			{
+				rows[ labels.size() ] = i;
+				labels.add( allLabels.get( i ) );
+			}
+		}
+		final int n = labels.size();
+		labelIndices = new HashMap< T, Integer >();
+		for ( int i = 0; i < n; i++ )
+			labelIndices.put( labels.get( i ), i );
+
+		area = new long[ n ];
+		for ( int i = 0; i < n; i++ )
+			area[ i ] = a.area[ rows[ i ] ];
+
+		min = new long[ numDimensions ][ n ];
+		max = new long[ numDimensions ][ n ];
+		centroid = new double[ numDimensions ][ n ];
+		for ( int d = 0; d < numDimensions; d++ )
+		{
+			for ( int i = 0; i < n; i++ )
+			{
+				final int r = rows[ i ];
+				min[ d ][ i ] = a.min[ d ][ r ];
+				max[ d ][ i ] = a.max[ d ][ r ];
+				centroid[ d ][ i ] = a.meanPosition[ d ][ r ];
+			}
+		}
+
+		centralMoments = new double[ a.comoments.length ][ n ];
+		for ( int p = 0; p < centralMoments.length; p++ )
+		{
+			for ( int i = 0; i < n; i++ )
+				centralMoments[ p ][ i ] = a.comoments[ p ][ rows[ i ] ];
+		}
+
+		sum = new double[ numChannels ][ n ];
+		mean = new double[ numChannels ][ n ];
+		variance = new double[ numChannels ][ n ];
+		minIntensity = new double[ numChannels ][ n ];
+		maxIntensity = new double[ numChannels ][ n ];
+		for ( int c = 0; c < numChannels; c++ )
+		{
+			for ( int i = 0; i < n; i++ )
+			{
+				final int r = rows[ i ];
+				sum[ c ][ i ] = a.sum[ c ][ r ];
+				mean[ c ][ i ] = a.mean[ c ][ r ];
+				variance[ c ][ i ] = a.area[ r ] > 1 ? a.m2[ c ][ r ] / ( a.area[ r ] - 1 ) : 0;
+				minIntensity[ c ][ i ] = a.minIntensity[ c ][ r ];
+				maxIntensity[ c ][ i ] = a.maxIntensity[ c ][ r ];
+			}
+		}
+	}
+
+	/**
+	 * @return the measured labels in ascending order. The position of a label
+	 *         in this list is its index into the measurement columns.
+	 */
+	public List< T > getLabels()
+	{
+		return Collections.unmodifiableList( labels );
+	}
+
+	/**
+	 * @return the index of the label into the measurement columns or -1 if the
+	 *         label is not present in the labeling.
+	 */
+	public int indexOf( final T label )
+	{
+		final Integer index = labelIndices.get( label );
+		return index == null ? -1 : index;
+	}
+
+	public int numLabels()
+	{
+		return labels.size();
+	}
+
+	public int numDimensions()
+	{
+		return numDimensions;
+	}
+
+	public int numChannels()
+	{
+		return numChannels;
+	}
+
+	/*
+	 * The column accessors return the columns themselves, not copies.
+	 */
+
+	/**
+	 * @return the number of pixels of each label.
+	 */
+	public long[] area()
+	{
+		return area;
+	}
+
+	/**
+	 * @return the minimum coordinate in dimension d of each label.
+	 */
+	public long[] min( final int d )
+	{
+		return min[ d ];
+	}
+
+	/**
+	 * @return the maximum coordinate in dimension d of each label.
+	 */
+	public long[] max( final int d )
+	{
+		return max[ d ];
+	}
+
+	/**
+	 * @return the mean coordinate in dimension d of each label.
+	 */
+	public double[] centroid( final int d )
+	{
+		return centroid[ d ];
+	}
+
+	/**
+	 * @return the second order central moment of the pixel positions in
+	 *         dimensions d1 and d2 of each label, i.e. the sum of (x_d1 -
+	 *         c_d1) * (x_d2 - c_d2) over all pixels x of the label with
+	 *         centroid c.
+	 */
+	public double[] centralMoment( final int d1, final int d2 )
+	{
+		final int a = Math.min( d1, d2 );
+		final int b = Math.max( d1, d2 );
+		// index of (a, b) in the upper triangle enumerated row by row
+		final int p = a * numDimensions - a * ( a - 1 ) / 2 + b - a;
+		return centralMoments[ p ];
+	}
+
+	/**
+	 * @return the sum of the intensities of each label in a channel.
+	 */
+	public double[] sum( final int channel )
+	{
+		return sum[ channel ];
+	}
+
+	/**
+	 * @return the mean intensity of each label in a channel.
+	 */
+	public double[] mean( final int channel )
+	{
+		return mean[ channel ];
+	}
+
+	/**
+	 * @return the sample variance of the intensities of each label in a
+	 *         channel.
+	 */
+	public double[] variance( final int channel )
+	{
+		return variance[ channel ];
+	}
+
+	/**
+	 * @return the minimum intensity of each label in a channel.
+	 */
+	public double[] minIntensity( final int channel )
+	{
+		return minIntensity[ channel ];
+	}
+
+	/**
+	 * @return the maximum intensity of each label in a channel.
+	 */
+	public double[] maxIntensity( final int channel )
+	{
+		return maxIntensity[ channel ];
+	}
+
+	/**
+	 * Per-thread accumulator, indexed by label. Means, variances and central
+	 * moments are updated incrementally (Welford) rather than derived from raw
+	 * sums, which would cancel badly at large coordinates or intensities.
+	 */
+	protected static class Accumulator
+	{
+		final long[] area;
+
+		final long[][] min;
+
+		final long[][] max;
+
+		final double[][] meanPosition;
+
+		final double[][] comoments;
+
+		final double[][] sum;
+
+		final double[][] mean;
+
+		final double[][] m2;
+
+		final double[][] minIntensity;
+
+		final double[][] maxIntensity;
+
+		final double[] positionDelta;
+
+		Accumulator( final int numLabels, final int numDimensions, final int numChannels )
+		{
+			area = new long[ numLabels ];
+			min = new long[ numDimensions ][ numLabels ];
+			max = new long[ numDimensions ][ numLabels ];
+			for ( int d = 0; d < numDimensions; d++ )
+			{
+				Arrays.fill( min[ d ], Long.MAX_VALUE );
+				Arrays.fill( max[ d ], Long.MIN_VALUE );
+			}
+			meanPosition = new double[ numDimensions ][ numLabels ];
+			comoments = new double[ numDimensions * ( numDimensions + 1 ) / 2 ][ numLabels ];
+			positionDelta = new double[ numDimensions ];
+			sum = new double[ numChannels ][ numLabels ];
+			mean = new double[ numChannels ][ numLabels ];
+			m2 = new double[ numChannels ][ numLabels ];
+			minIntensity = new double[ numChannels ][ numLabels ];
+			maxIntensity = new double[ numChannels ][ numLabels ];
+			for ( int c = 0; c < numChannels; c++ )
+			{
+				Arrays.fill( minIntensity[ c ], Double.POSITIVE_INFINITY );
+				Arrays.fill( maxIntensity[ c ], Double.NEGATIVE_INFINITY );
+			}
+		}
+
+		< T extends Comparable< T >> void sweep( final Labeling< T > labeling, final List< ? extends RandomAccessible< ? extends RealType< ? >>> images, final Map< List< T >, int[] > listIndices, final long start, final long length )
+		{
+			final int n = labeling.numDimensions();
+			final int numChannels = images.size();
+			final long[] position = new long[ n ];
+			final double[] values = new double[ numChannels ];
+
+			final Cursor< LabelingType< T >> c = labeling.localizingCursor();
+			c.jumpFwd( start );
+
+			final Cursor< ? extends RealType< ? >>[] cursors = createCursors( labeling, images, start );
+			final RandomAccess< ? extends RealType< ? >>[] accesses = createRandomAccesses( images, cursors );
+
+			List< T > lastList = null;
+			int[] indices = null;
+			for ( long l = 0; l < length; ++l )
+			{
+				final List< T > list = c.next().getLabeling();
+				for ( int ch = 0; ch < numChannels; ch++ )
+				{
+					if ( cursors[ ch ] != null )
+						cursors[ ch ].fwd();
+				}
+				if ( list.isEmpty() )
+					continue;
+				if ( list != lastList )
+				{
+					indices = listIndices.get( list );
+					lastList = list;
+				}
+
+				c.localize( position );
+				for ( int ch = 0; ch < numChannels; ch++ )
+				{
+					if ( cursors[ ch ] != null )
+						values[ ch ] = cursors[ ch ].get().getRealDouble();
+					else
+					{
+						accesses[ ch ].setPosition( position );
+						values[ ch ] = accesses[ ch ].get().getRealDouble();
+					}
+				}
+
+				for ( final int i : indices )
+					add( i, position, values );
+			}
+		}
+
+		private void add( final int i, final long[] position, final double[] values )
+		{
+			final long count = ++area[ i ];
+			for ( int d = 0; d < position.length; d++ )
+			{
+				final long x = position[ d ];
+				if ( x < min[ d ][ i ] )
+					min[ d ][ i ] = x;
+				if ( x > max[ d ][ i ] )
+					max[ d ][ i ] = x;
+				positionDelta[ d ] = x - meanPosition[ d ][ i ];
+				meanPosition[ d ][ i ] += positionDelta[ d ] / count;
+			}
+			for ( int d = 0, p = 0; d < position.length; d++ )
+			{
+				for ( int d2 = d; d2 < position.length; d2++, p++ )
+					comoments[ p ][ i ] += positionDelta[ d ] * ( position[ d2 ] - meanPosition[ d2 ][ i ] );
+			}
+			for ( int c = 0; c < values.length; c++ )
+			{
+				final double v = values[ c ];
+				sum[ c ][ i ] += v;
+				final double delta = v - mean[ c ][ i ];
+				mean[ c ][ i ] += delta / count;
+				m2[ c ][ i ] += delta * ( v - mean[ c ][ i ] );
+				if ( v < minIntensity[ c ][ i ] )
+					minIntensity[ c ][ i ] = v;
+				if ( v > maxIntensity[ c ][ i ] )
+					maxIntensity[ c ][ i ] = v;
+			}
+		}
+
+		void merge( final Accumulator other )
+		{
+			for ( int i = 0; i < area.length; i++ )
+			{
+				final long n2 = other.area[ i ];
+				if ( n2 == 0 )
+					continue;
+				final long n1 = area[ i ];
+				final long count = n1 + n2;
+				area[ i ] = count;
+				final double weight = ( double ) n1 * n2 / count;
+				for ( int d = 0; d < min.length; d++ )
+				{
+					min[ d ][ i ] = Math.min( min[ d ][ i ], other.min[ d ][ i ] );
+					max[ d ][ i ] = Math.max( max[ d ][ i ], other.max[ d ][ i ] );
+					positionDelta[ d ] = other.meanPosition[ d ][ i ] - meanPosition[ d ][ i ];
+					meanPosition[ d ][ i ] += positionDelta[ d ] * n2 / count;
+				}
+				for ( int d = 0, p = 0; d < min.length; d++ )
+				{
+					for ( int d2 = d; d2 < min.length; d2++, p++ )
+						comoments[ p ][ i ] += other.comoments[ p ][ i ] + positionDelta[ d ] * positionDelta[ d2 ] * weight;
+				}
+				for ( int c = 0; c < sum.length; c++ )
+				{
+					sum[ c ][ i ] += other.sum[ c ][ i ];
+					final double delta = other.mean[ c ][ i ] - mean[ c ][ i ];
+					mean[ c ][ i ] += delta * n2 / count;
+					m2[ c ][ i ] += other.m2[ c ][ i ] + delta * delta * weight;
+					minIntensity[ c ][ i ] = Math.min( minIntensity[ c ][ i ], other.minIntensity[ c ][ i ] );
+					maxIntensity[ c ][ i ] = Math.max( maxIntensity[ c ][ i ], other.maxIntensity[ c ][ i ] );
+				}
+			}
+		}
+
+		@SuppressWarnings( { "rawtypes", "unchecked" } )
+		private static Cursor< ? extends RealType< ? >>[] createCursors( final Labeling< ? > labeling, final List< ? extends RandomAccessible< ? extends RealType< ? >>> images, final long start )
+		{
+			final Cursor< ? extends RealType< ? >>[] cursors = new Cursor[ images.size() ];
+			for ( int i = 0; i < cursors.length; i++ )
+			{
+				final RandomAccessible< ? extends RealType< ? >> image = images.get( i );
+				if ( image instanceof IterableInterval && ( ( IterableInterval< ? > ) image ).iterationOrder().equals( labeling.iterationOrder() ) )
+				{
+					cursors[ i ] = ( ( IterableInterval< ? extends RealType< ? >> ) image ).cursor();
+					cursors[ i ].jumpFwd( start );
+				}
+			}
+			return cursors;
+		}
+
+		@SuppressWarnings( { "rawtypes", "unchecked" } )
+		private static RandomAccess< ? extends RealType< ? >>[] createRandomAccesses( final List< ? extends RandomAccessible< ? extends RealType< ? >>> images, final Cursor< ? >[] cursors )
+		{
+			final RandomAccess< ? extends RealType< ? >>[] accesses = new RandomAccess[ images.size() ];
+			for ( int i = 0; i < accesses.length; i++ )
+			{
+				if ( cursors[ i ] == null )
+					accesses[ i ] = images.get( i ).randomAccess();
+			}
+			return accesses;
+		}
+	}
+}
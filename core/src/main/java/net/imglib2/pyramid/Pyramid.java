@@ -0,0 +1,423 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.pyramid;
+
+import java.util.ArrayList;
+
+import net.imglib2.AbstractInterval;
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.Point;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.ImgFactory;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * A scale pyramid over a {@link RandomAccessibleInterval}.  Level 0 is the
+ * source itself, each following level halves the resolution in all
+ * dimensions.  Pixel p of level k summarizes the source pixels
+ * [p*2<sup>k</sup>, (p+1)*2<sup>k</sup>-1] using a {@link Reducer}, i.e.
+ * levels are aligned to the origin of the source coordinate frame,
+ * independent of the source interval's min.
+ *
+ * <p>Levels are computed lazily from the next finer level in blocks of
+ * {@link #getBlockSize()}<sup>n</sup> pixels the first time a pixel of a
+ * block is accessed, and are kept in memory afterwards.  Consumers that
+ * display or process data at reduced resolution should pick the
+ * {@link #bestLevel(double) matching level} instead of reducing the full
+ * resolution data themselves.</p>
+ *
+ * <p>Level access is thread-safe.  Blocks of one level are computed one at a
+ * time.</p>
+ */
+public class Pyramid< T extends RealType< T > >
+{
+	final static public int DEFAULT_BLOCK_SIZE = 32;
+
+	final protected RandomAccessibleInterval< T > source;
+
+	final protected ImgFactory< T > factory;
+
+	final protected T type;
+
+	final protected Reducer reducer;
+
+	final protected int blockSize;
+
+	final protected int n;
+
+	final protected ArrayList< RandomAccessibleInterval< T > > levels;
+
+	/**
+	 * @param source
+	 *            the full resolution data.
+	 * @param factory
+	 *            used to create the blocks of the coarser levels.
+	 * @param reducer
+	 *            combines 2<sup>n</sup> pixels into one.
+	 * @param numLevels
+	 *            number of levels including the source.
+	 * @param blockSize
+	 *            size of the lazily computed blocks in each dimension.
+	 */
+	public Pyramid( final RandomAccessibleInterval< T > source, final ImgFactory< T > factory, final Reducer reducer, final int numLevels, final int blockSize )
+	{
+		if ( numLevels < 1 )
+			throw new IllegalArgumentException( "A pyramid needs at least one level." );
+		if ( blockSize < 1 )
+			throw new IllegalArgumentException( "Block size must be positive." );
+
+		this.source = source;
+		this.factory = factory;
+		this.reducer = reducer;
+		this.blockSize = blockSize;
+		n = source.numDimensions();
+		type = source.randomAccess().get().createVariable();
+
+		levels = new ArrayList< RandomAccessibleInterval< T > >( numLevels );
+		levels.add( source );
+		for ( int l = 1; l < numLevels; ++l )
+			levels.add( new Level( levels.get( l - 1 ) ) );
+	}
+
+	/**
+	 * Create a pyramid with levels down to a single pixel.
+	 */
+	public Pyramid( final RandomAccessibleInterval< T > source, final ImgFactory< T > factory, final Reducer reducer )
+	{
+		this( source, factory, reducer, maxNumLevels( source ), DEFAULT_BLOCK_SIZE );
+	}
+
+	/**
+	 * @return the number of levels required to reduce interval to a single
+	 *         pixel, including the full resolution level.
+	 */
+	public static int maxNumLevels( final Interval interval )
+	{
+		final int n = interval.numDimensions();
+		final long[] min = new long[ n ];
+		final long[] max = new long[ n ];
+		interval.min( min );
+		interval.max( max );
+		int numLevels = 1;
+		boolean single = false;
+		while ( !single )
+		{
+			single = true;
+			for ( int d = 0; d < n; ++d )
+			{
+				if ( max[ d ] > min[ d ] )
+				{
+					single = false;
+					min[ d ] = floorDiv( min[ d ], 2 );
+					max[ d ] = floorDiv( max[ d ], 2 );
+				}
+			}
+			if ( !single )
+				++numLevels;
+		}
+		return numLevels;
+	}
+
+	final static protected long floorDiv( final long a, final long b )
+	{
+		final long q = a / b;
+		return ( a % b != 0 && ( a < 0 ) != ( b < 0 ) ) ? q - 1 : q;
+	}
+
+	public int numDimensions()
+	{
+		return n;
+	}
+
+	public int numLevels()
+	{
+		return levels.size();
+	}
+
+	public int getBlockSize()
+	{
+		return blockSize;
+	}
+
+	public Reducer getReducer()
+	{
+		return reducer;
+	}
+
+	/**
+	 * @return the number of source pixels per level pixel in each dimension.
+	 */
+	public long getFactor( final int level )
+	{
+		return 1l << level;
+	}
+
+	/**
+	 * @return the data of a level, level 0 is the source.
+	 */
+	public RandomAccessibleInterval< T > getLevel( final int level )
+	{
+		return levels.get( level );
+	}
+
+	/**
+	 * @return the interval of a level in level coordinates.
+	 */
+	public Interval levelInterval( final int level )
+	{
+		return levels.get( level );
+	}
+
+	/**
+	 * Get the interval of level pixels that cover an interval of source
+	 * pixels, clipped to the bounds of the level.
+	 *
+	 * @param level
+	 * @param sourceInterval
+	 *            interval in source coordinates.
+	 * @return interval in level coordinates, may be empty (max &lt; min) if
+	 *         sourceInterval does not intersect the source.
+	 */
+	public FinalInterval levelInterval( final int level, final Interval sourceInterval )
+	{
+		final long f = getFactor( level );
+		final Interval bounds = levels.get( level );
+		final long[] min = new long[ n ];
+		final long[] max = new long[ n ];
+		for ( int d = 0; d < n; ++d )
+		{
+			min[ d ] = Math.max( bounds.min( d ), floorDiv( sourceInterval.min( d ), f ) );
+			max[ d ] = Math.min( bounds.max( d ), floorDiv( sourceInterval.max( d ), f ) );
+		}
+		return new FinalInterval( min, max );
+	}
+
+	/**
+	 * Select the coarsest level that has at least the resolution required to
+	 * display the source at the given scale.
+	 *
+	 * @param scale
+	 *            output pixels per source pixel, e.g. 0.25 if four source
+	 *            pixels map to one screen pixel.
+	 */
+	public int bestLevel( final double scale )
+	{
+		if ( !( scale < 1.0 ) )
+			return 0;
+		final int level = ( int )Math.floor( Math.log( 1.0 / scale ) / Math.log( 2 ) + 1e-9 );
+		return Math.max( 0, Math.min( levels.size() - 1, level ) );
+	}
+
+	/**
+	 * @return the number of blocks of a level that have been computed so
+	 *         far, 0 for the source level.
+	 */
+	public int numComputedBlocks( final int level )
+	{
+		if ( level == 0 )
+			return 0;
+		return ( ( Level )levels.get( level ) ).numComputedBlocks();
+	}
+
+	/**
+	 * A lazily computed level.
+	 */
+	protected class Level extends AbstractInterval implements RandomAccessibleInterval< T >
+	{
+		final protected RandomAccessibleInterval< T > parent;
+
+		final protected long[] gridDimensions;
+
+		final protected Img< T >[] blocks;
+
+		protected int numComputedBlocks = 0;
+
+		@SuppressWarnings( { "unchecked", "rawtypes" } )
+		protected Level( final RandomAccessibleInterval< T > parent )
+		{
+			super( parent.numDimensions() );
+			this.parent = parent;
+			gridDimensions = new long[ n ];
+			long numBlocks = 1;
+			for ( int d = 0; d < n; ++d )
+			{
+				min[ d ] = floorDiv( parent.min( d ), 2 );
+				max[ d ] = floorDiv( parent.max( d ), 2 );
+				gridDimensions[ d ] = ( max[ d ] - min[ d ] + blockSize ) / blockSize;
+				numBlocks *= gridDimensions[ d ];
+			}
+			if ( numBlocks > Integer.MAX_VALUE )
+				throw new IllegalArgumentException( "Too many blocks, use a larger block size." );
+			blocks = new Img[ ( int )numBlocks ];
+		}
+
+		protected synchronized int numComputedBlocks()
+		{
+			return numComputedBlocks;
+		}
+
+		/**
+		 * Get a block, compute it if it does not exist yet.
+		 *
+		 * @param index
+		 *            index of the block in the grid.
+		 * @param blockMin
+		 *            set to the min of the block.
+		 */
+		protected synchronized Img< T > getBlock( final int index, final long[] blockMin )
+		{
+			final long[] blockDimensions = new long[ n ];
+			for ( int d = 0, i = index; d < n; ++d )
+			{
+				final long g = i % gridDimensions[ d ];
+				i /= gridDimensions[ d ];
+				blockMin[ d ] = min[ d ] + g * blockSize;
+				blockDimensions[ d ] = Math.min( blockSize, max[ d ] - blockMin[ d ] + 1 );
+			}
+			Img< T > block = blocks[ index ];
+			if ( block == null )
+			{
+				block = factory.create( blockDimensions, type );
+				reduce( block, blockMin );
+				blocks[ index ] = block;
+				++numComputedBlocks;
+			}
+			return block;
+		}
+
+		protected void reduce( final Img< T > block, final long[] blockMin )
+		{
+			final int numChildren = 1 << n;
+			final double[] values = new double[ numChildren ];
+			final long[] position = new long[ n ];
+			final long[] child = new long[ n ];
+			final RandomAccess< T > parentAccess = parent.randomAccess();
+			final Cursor< T > cursor = block.localizingCursor();
+			while ( cursor.hasNext() )
+			{
+				cursor.fwd();
+				cursor.localize( position );
+				int numValues = 0;
+				children:
+				for ( int c = 0; c < numChildren; ++c )
+				{
+					for ( int d = 0; d < n; ++d )
+					{
+						child[ d ] = 2 * ( blockMin[ d ] + position[ d ] ) + ( ( c >> d ) & 1 );
+						if ( child[ d ] < parent.min( d ) || child[ d ] > parent.max( d ) )
+							continue children;
+					}
+					parentAccess.setPosition( child );
+					values[ numValues++ ] = parentAccess.get().getRealDouble();
+				}
+				cursor.get().setReal( reducer.reduce( values, numValues ) );
+			}
+		}
+
+		@Override
+		public RandomAccess< T > randomAccess()
+		{
+			return new LevelRandomAccess( this );
+		}
+
+		@Override
+		public RandomAccess< T > randomAccess( final Interval interval )
+		{
+			return randomAccess();
+		}
+	}
+
+	/**
+	 * Accesses a {@link Level} block by block.
+	 */
+	protected class LevelRandomAccess extends Point implements RandomAccess< T >
+	{
+		final protected Level level;
+
+		final protected long[] levelMin;
+
+		final protected long[] blockMin;
+
+		protected int blockIndex = -1;
+
+		protected RandomAccess< T > blockAccess = null;
+
+		protected LevelRandomAccess( final Level level )
+		{
+			super( level.numDimensions() );
+			this.level = level;
+			levelMin = new long[ n ];
+			level.min( levelMin );
+			blockMin = new long[ n ];
+		}
+
+		@Override
+		public T get()
+		{
+			int index = 0;
+			for ( int d = n - 1; d >= 0; --d )
+				index = index * ( int )level.gridDimensions[ d ] + ( int )( ( position[ d ] - levelMin[ d ] ) / blockSize );
+			if ( index != blockIndex )
+			{
+				blockAccess = level.getBlock( index, blockMin ).randomAccess();
+				blockIndex = index;
+			}
+			for ( int d = 0; d < n; ++d )
+				blockAccess.setPosition( position[ d ] - blockMin[ d ], d );
+			return blockAccess.get();
+		}
+
+		@Override
+		public LevelRandomAccess copy()
+		{
+			final LevelRandomAccess copy = new LevelRandomAccess( level );
+			copy.setPosition( this );
+			return copy;
+		}
+
+		@Override
+		public LevelRandomAccess copyRandomAccess()
+		{
+			return copy();
+		}
+	}
+}
@@ -66,11 +66,60 @@ public abstract class AbstractIterableRegionOfInterest extends AbstractRegionOfI
 
 	private long[] cached_max;
 
+	private ScanlineSpans cached_spans;
+
 	protected AbstractIterableRegionOfInterest( int nDimensions )
 	{
 		super( nDimensions );
 	}
 
+	/**
+	 * Whether iteration should use the cached {@link ScanlineSpans} instead
+	 * of calling {@link #nextRaster(long[], long[])}.  ROIs with expensive
+	 * geometry should return true; the spans are then compiled once from
+	 * nextRaster and recompiled only after {@link #invalidateCachedState()}.
+	 */
+	protected boolean useScanlineSpans()
+	{
+		return false;
+	}
+
+	/**
+	 * Get the pixels of this ROI as {@link ScanlineSpans}, compiled on first
+	 * use and cached until the ROI changes.
+	 */
+	public ScanlineSpans getScanlineSpans()
+	{
+		ScanlineSpans spans = cached_spans;
+		if ( spans == null )
+		{
+			spans = compileScanlineSpans();
+			cached_spans = spans;
+		}
+		return spans;
+	}
+
+	/**
+	 * Rasterize the ROI.  The default sweeps
+	 * {@link #nextRaster(long[], long[])}, override if the ROI can be
+	 * rasterized more efficiently.
+	 */
+	protected ScanlineSpans compileScanlineSpans()
+	{
+		return ScanlineSpans.compile( this );
+	}
+
+	/**
+	 * {@link #nextRaster(long[], long[])} from the cached spans if
+	 * {@link #useScanlineSpans()}.
+	 */
+	private boolean nextCachedRaster( final long[] position, final long[] end )
+	{
+		if ( useScanlineSpans() )
+			return getScanlineSpans().nextRaster( position, end );
+		return nextRaster( position, end );
+	}
+
 	/**
 	 * Advance the position to the next raster.
 	 * 
@@ -119,6 +168,8 @@ public abstract class AbstractIterableRegionOfInterest extends AbstractRegionOfI
 	 * @return true if there is a raster after this one.
 	 */
 	protected boolean nextRaster( long [] position, long [] end, Interval interval) {
+		if ( useScanlineSpans() )
+			return getScanlineSpans().nextRaster( position, end, interval );
 		loop:
 		while(nextRaster(position, end)) {
 			
@@ -177,7 +228,7 @@ public abstract class AbstractIterableRegionOfInterest extends AbstractRegionOfI
 			if (interval != null) {
 				if ( !nextRaster( position, end, interval))
 					return false;
-			} else if ( !nextRaster( position, end ) )
+			} else if ( !nextCachedRaster( position, end ) )
 				return false;
 		}
 	}
@@ -321,6 +372,7 @@ public abstract class AbstractIterableRegionOfInterest extends AbstractRegionOfI
 				if ( !src_is_valid )
 				{
 					randomAccess.setPosition( position );
+					src_is_valid = true;
 				}
 				return randomAccess.get();
 			}
@@ -339,12 +391,24 @@ public abstract class AbstractIterableRegionOfInterest extends AbstractRegionOfI
 			public void fwd()
 			{
 				if ( !hasNext() ) { throw new IllegalAccessError( "fwd called at end of sequence" ); }
+				/*
+				 * within a raster, sweep the source access along dimension 0
+				 * instead of positioning it from scratch
+				 */
+				boolean sameRaster = src_is_valid && next_position[ 0 ] == position[ 0 ] + 1;
 				for ( int i = 0; i < position.length; i++ )
 				{
+					if ( i > 0 && position[ i ] != next_position[ i ] )
+						sameRaster = false;
 					position[ i ] = next_position[ i ];
 					raster_end[ i ] = next_raster_end[ i ];
 				}
 				mark_dirty();
+				if ( sameRaster )
+				{
+					randomAccess.fwd( 0 );
+					src_is_valid = true;
+				}
 			}
 
 			@Override
@@ -417,7 +481,7 @@ public abstract class AbstractIterableRegionOfInterest extends AbstractRegionOfI
 				if (src instanceof Interval) {
 					hasNext = nextRaster( position, raster_end, (Interval) src );
 				} else {
-					hasNext = nextRaster( position, raster_end );
+					hasNext = nextCachedRaster( position, raster_end );
 				}
 				if (! hasNext) { 
 					throw new IllegalAccessError( "Tried to get first element, but ROI has no elements" ); 
@@ -698,6 +762,8 @@ public abstract class AbstractIterableRegionOfInterest extends AbstractRegionOfI
 	 */
 	protected long size()
 	{
+		if ( useScanlineSpans() )
+			return getScanlineSpans().size();
 		long[] position = new long[ numDimensions() ];
 		long[] end = new long[ numDimensions() ];
 		Arrays.fill( position, Long.MIN_VALUE );
@@ -724,6 +790,21 @@ public abstract class AbstractIterableRegionOfInterest extends AbstractRegionOfI
 	 */
 	protected void getExtrema( long[] minima, long[] maxima )
 	{
+		if ( useScanlineSpans() )
+		{
+			final ScanlineSpans spans = getScanlineSpans();
+			if ( spans.isEmpty() )
+			{
+				Arrays.fill( minima, Long.MAX_VALUE );
+				Arrays.fill( maxima, Long.MIN_VALUE );
+			}
+			else
+			{
+				spans.min( minima );
+				spans.max( maxima );
+			}
+			return;
+		}
 		long[] position = new long[ numDimensions() ];
 		long[] end = new long[ numDimensions() ];
 		Arrays.fill( position, Long.MIN_VALUE );
@@ -755,6 +836,7 @@ public abstract class AbstractIterableRegionOfInterest extends AbstractRegionOfI
 		cached_min = null;
 		cached_max = null;
 		cached_size = SIZE_NOT_CACHED;
+		cached_spans = null;
 	}
 
 	/**
@@ -40,11 +40,6 @@ package net.imglib2.roi;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
-
-import net.imglib2.RealRandomAccess;
-import net.imglib2.type.logic.BitType;
 
 /**
  * A composite region of interest contains all points in its member regions of
@@ -67,9 +62,10 @@ public class CompositeRegionOfInterest extends AbstractRegionOfInterest
 
 	final private ArrayList< RegionOfInterest > rois = new ArrayList< RegionOfInterest >();
 
-	final private Map< RegionOfInterest, Operation > operations = new HashMap< RegionOfInterest, Operation >();
-
-	final private ThreadLocal< Map< RegionOfInterest, RealRandomAccess< BitType >>> randomAccess = new ThreadLocal< Map< RegionOfInterest, RealRandomAccess< BitType >>>();
+	/**
+	 * The operation of each roi in {@link #rois}, same order.
+	 */
+	final private ArrayList< Operation > operations = new ArrayList< Operation >();
 
 	/**
 	 * Initialize an empty composite region of interest.
@@ -90,7 +86,7 @@ public class CompositeRegionOfInterest extends AbstractRegionOfInterest
 	{
 		super( roi.numDimensions() );
 		rois.add( roi );
-		operations.put( roi, Operation.OR );
+		operations.add( Operation.OR );
 	}
 
 	public CompositeRegionOfInterest( Collection< RegionOfInterest > rois )
@@ -99,7 +95,7 @@ public class CompositeRegionOfInterest extends AbstractRegionOfInterest
 		for ( RegionOfInterest roi : rois )
 		{
 			this.rois.add( roi );
-			operations.put( roi, Operation.OR );
+			operations.add( Operation.OR );
 		}
 	}
 
@@ -112,7 +108,7 @@ public class CompositeRegionOfInterest extends AbstractRegionOfInterest
 	public void or( RegionOfInterest roi )
 	{
 		rois.add( roi );
-		operations.put( roi, Operation.OR );
+		operations.add( Operation.OR );
 	}
 
 	/**
@@ -122,8 +118,12 @@ public class CompositeRegionOfInterest extends AbstractRegionOfInterest
 	 */
 	public void remove( RegionOfInterest roi )
 	{
-		rois.remove( roi );
-		operations.remove( roi );
+		final int i = rois.indexOf( roi );
+		if ( i >= 0 )
+		{
+			rois.remove( i );
+			operations.remove( i );
+		}
 	}
 
 	/**
@@ -134,7 +134,7 @@ public class CompositeRegionOfInterest extends AbstractRegionOfInterest
 	public void and( RegionOfInterest roi )
 	{
 		rois.add( roi );
-		operations.put( roi, Operation.AND );
+		operations.add( Operation.AND );
 	}
 
 	/**
@@ -145,7 +145,7 @@ public class CompositeRegionOfInterest extends AbstractRegionOfInterest
 	public void xor( RegionOfInterest roi )
 	{
 		rois.add( roi );
-		operations.put( roi, Operation.XOR );
+		operations.add( Operation.XOR );
 	}
 
 	/**
@@ -156,7 +156,7 @@ public class CompositeRegionOfInterest extends AbstractRegionOfInterest
 	public void not( RegionOfInterest roi )
 	{
 		rois.add( roi );
-		operations.put( roi, Operation.NOT );
+		operations.add( Operation.NOT );
 	}
 
 	@Override
@@ -174,10 +174,10 @@ public class CompositeRegionOfInterest extends AbstractRegionOfInterest
 	public boolean contains( double[] position )
 	{
 		boolean result = false;
-		for ( RegionOfInterest roi : rois )
+		for ( int i = 0; i < rois.size(); ++i )
 		{
-			Operation operation = operations.get( roi );
-			switch ( operation )
+			final RegionOfInterest roi = rois.get( i );
+			switch ( operations.get( i ) )
 			{
 			case AND:
 				if ( result == true )
@@ -207,17 +207,49 @@ public class CompositeRegionOfInterest extends AbstractRegionOfInterest
 
 	private boolean isMember( RegionOfInterest roi, double[] position )
 	{
-		if ( randomAccess.get() == null )
-		{
-			randomAccess.set( new HashMap< RegionOfInterest, RealRandomAccess< BitType >>() );
-		}
-		if ( !randomAccess.get().containsKey( roi ) )
+		return roi.contains( position );
+	}
+
+	/**
+	 * Rasterize the composite by combining the {@link ScanlineSpans} of its
+	 * members with the respective set operations.  Members must be
+	 * {@link AbstractIterableRegionOfInterest AbstractIterableRegionOfInterests}
+	 * or {@link CompositeRegionOfInterest CompositeRegionOfInterests}.  The
+	 * result is not cached because members can change without notice.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if a member cannot be rasterized.
+	 */
+	public ScanlineSpans getScanlineSpans()
+	{
+		ScanlineSpans result = new ScanlineSpans( numDimensions() );
+		for ( int i = 0; i < rois.size(); ++i )
 		{
-			randomAccess.get().put( roi, roi.realRandomAccess() );
+			final RegionOfInterest roi = rois.get( i );
+			final ScanlineSpans spans;
+			if ( roi instanceof AbstractIterableRegionOfInterest )
+				spans = ( ( AbstractIterableRegionOfInterest ) roi ).getScanlineSpans();
+			else if ( roi instanceof CompositeRegionOfInterest )
+				spans = ( ( CompositeRegionOfInterest ) roi ).getScanlineSpans();
+			else
+				throw new IllegalArgumentException( "Cannot rasterize " + roi.getClass().getName() );
+			switch ( operations.get( i ) )
+			{
+			case AND:
+				result = result.intersection( spans );
+				break;
+			case OR:
+				result = result.union( spans );
+				break;
+			case NOT:
+				result = result.difference( spans );
+				break;
+			case XOR:
+				result = result.xor( spans );
+				break;
+			}
 		}
-		final RealRandomAccess< BitType > ra = randomAccess.get().get( roi );
-		ra.setPosition( position );
-		return ra.get().get();
+		return result;
 	}
 
 	/*
@@ -66,8 +66,6 @@ public class GeneralPathRegionOfInterest extends
 {
 
 	private GeneralPath path;
-	private long[] stripes; // one-dimensional array for efficiency; these are really { xStart, xEnd, y } triplets
-	private int index;
 
 	public GeneralPathRegionOfInterest() {
 		super(2);
@@ -77,36 +75,42 @@ public class GeneralPathRegionOfInterest extends
 	@Override
 	public void moveTo(double x, double y) {
 		path.moveTo(x, y);
+		invalidateCachedState();
 	}
 
 	@Override
 	public void lineTo(double x, double y) {
 		path.lineTo(x, y);
+		invalidateCachedState();
 	}
 
 	@Override
 	public void quadTo(double x1, double y1, double x, double y) {
 		path.quadTo(x1, y1, x, y);
+		invalidateCachedState();
 	}
 
 	@Override
 	public void cubicTo(double x1, double y1, double x2, double y2, double x, double y) {
 		path.curveTo(x1, y1, x2, y2, x, y);
+		invalidateCachedState();
 	}
 
 	@Override
 	public void close() {
 		path.closePath();
+		invalidateCachedState();
 	}
 
 	public void reset() {
 		path.reset();
+		invalidateCachedState();
 	}
 
 	// TODO: remove
 	public void setGeneralPath(final GeneralPath path) {
 		this.path = path;
-		this.stripes = null;
+		invalidateCachedState();
 	}
 
 	// TODO: remove
@@ -142,27 +146,25 @@ public class GeneralPathRegionOfInterest extends
 	}
 
 	@Override
-	protected boolean nextRaster(long[] position, long[] end) {
-		ensureStripes();
-		if (index >= stripes.length) {
-			index = 0;
-			return false;
-		}
-		position[0] = stripes[index];
-		end[0] = stripes[index + 1];
-		position[1] = end[1] = stripes[index + 2];
-		index += 3;
+	protected boolean useScanlineSpans() {
 		return true;
 	}
 
+	@Override
+	protected boolean nextRaster(long[] position, long[] end) {
+		return getScanlineSpans().nextRaster(position, end);
+	}
+
 	@Override
 	public boolean contains(double[] position) {
 		return path.contains(position[0], position[1]);
 	}
 
-	private void ensureStripes() {
-		if (stripes != null) return;
-
+	/**
+	 * Rasterize the path with AWT.
+	 */
+	@Override
+	protected ScanlineSpans compileScanlineSpans() {
 		Rectangle2D bounds = path.getBounds2D();
 		int left = (int)Math.floor(bounds.getMinX());
 		int top = (int)Math.floor(bounds.getMinY());
@@ -182,34 +184,25 @@ public class GeneralPathRegionOfInterest extends
 		g2d.setStroke(new BasicStroke(0));
 		g2d.fill(transformed);
 
-		long[] strps = new long[3 * width * height / 2]; // avoid re-allocation
-		int i = 0;
+		final ScanlineSpans.RunBuffer runs = new ScanlineSpans.RunBuffer(2);
+		final long[] row = new long[1];
 		for (int y = 0; y < height; y++) {
+			row[0] = y + top;
 			long start = -1;
 			for (int x = 0; x < width; x++) {
 				boolean inside = pixels[x + width * y] != 0;
 				if (start < 0) {
-					if (inside) {
+					if (inside)
 						start = x;
-						strps[i] = x + left;
-						strps[i + 2] = y + top;
-					}
 				} else if (!inside) {
+					runs.add(start + left, x + left, row, 0);
 					start = -1;
-					strps[i + 1] = x + left;
-					i += 3;
 				}
 			}
-			if (start >= 0) {
-				start = -1;
-				strps[i + 1] = width + left;
-				i += 3;
-			}
+			if (start >= 0)
+				runs.add(start + left, width + left, row, 0);
 		}
-
-		this.stripes = new long[i];
-		System.arraycopy(strps, 0, this.stripes, 0, i);
-		this.index = 0;
+		return runs.build();
 	}
 
 	@Override
@@ -218,6 +211,7 @@ public class GeneralPathRegionOfInterest extends
 			throw new IllegalArgumentException("Cannot move 2D ROI in dimension " + d);
 		AffineTransform transform = AffineTransform.getTranslateInstance(d == 0 ? displacement : 0, d == 1 ? displacement : 0);
 		path.transform(transform);
+		invalidateCachedState();
 	}
 
 	@Override
@@ -226,6 +220,7 @@ public class GeneralPathRegionOfInterest extends
 			throw new IllegalArgumentException("Cannot move 2D ROI in " + displacement.length + " dimensions");
 		AffineTransform transform = AffineTransform.getTranslateInstance(displacement[0], displacement[1]);
 		path.transform(transform);
+		invalidateCachedState();
 	}
 
 }
@@ -529,6 +529,16 @@ public class PolygonRegionOfInterest extends AbstractIterableRegionOfInterest
 		}
 	}
 
+	/**
+	 * Rasters are computed from the stripes once and then served from the
+	 * cached {@link ScanlineSpans}.
+	 */
+	@Override
+	protected boolean useScanlineSpans()
+	{
+		return true;
+	}
+
 	/**
 	 * Given an interpolated value, assign a ceiling accounting for roundoff
 	 * error.
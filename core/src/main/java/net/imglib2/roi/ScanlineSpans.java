@@ -0,0 +1,562 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.roi;
+
+import java.util.Arrays;
+
+import net.imglib2.Interval;
+
+/**
+ * An immutable set of integer pixel positions stored as runs along dimension
+ * 0.  Each run covers the pixels [start, end) of one row, where a row is
+ * identified by the coordinates in dimensions 1 to n-1.  Runs are sorted in
+ * raster order (dimension 0 fastest, the last dimension slowest), do not
+ * overlap and do not touch, i.e. adjacent runs of a row are merged.
+ *
+ * <p>{@link AbstractIterableRegionOfInterest AbstractIterableRegionOfInterests}
+ * compile their pixels into {@link ScanlineSpans} once and iterate the runs
+ * instead of evaluating their geometry again.  Spans of different regions
+ * can be combined with {@link #union(ScanlineSpans) union},
+ * {@link #intersection(ScanlineSpans) intersection},
+ * {@link #difference(ScanlineSpans) difference} and
+ * {@link #xor(ScanlineSpans) xor} in time linear in the number of runs.</p>
+ */
+public class ScanlineSpans
+{
+	final static private int OR = 0;
+
+	final static private int AND = 1;
+
+	final static private int NOT = 2;
+
+	final static private int XOR = 3;
+
+	final protected int n;
+
+	/**
+	 * Number of longs per run: start, end and the n-1 row coordinates.
+	 */
+	final protected int stride;
+
+	final protected long[] runs;
+
+	final protected int numRuns;
+
+	final protected long size;
+
+	final protected long[] min;
+
+	final protected long[] max;
+
+	/**
+	 * Collects runs in raster order and merges touching runs.
+	 */
+	static protected class RunBuffer
+	{
+		final int n;
+
+		final int stride;
+
+		long[] runs;
+
+		int numRuns = 0;
+
+		RunBuffer( final int n )
+		{
+			this.n = n;
+			stride = n + 1;
+			runs = new long[ 16 * stride ];
+		}
+
+		/**
+		 * Append the run [start, end) in the row given by row[ rowOffset ...
+		 * rowOffset + n - 2 ].  Runs must be appended in raster order.
+		 */
+		void add( final long start, final long end, final long[] row, final int rowOffset )
+		{
+			if ( start >= end )
+				return;
+			if ( numRuns > 0 )
+			{
+				final int last = ( numRuns - 1 ) * stride;
+				if ( runs[ last + 1 ] >= start && sameRow( runs, last + 2, row, rowOffset, n - 1 ) )
+				{
+					runs[ last + 1 ] = Math.max( runs[ last + 1 ], end );
+					return;
+				}
+			}
+			if ( ( numRuns + 1 ) * stride > runs.length )
+				runs = Arrays.copyOf( runs, runs.length * 2 );
+			final int o = numRuns * stride;
+			runs[ o ] = start;
+			runs[ o + 1 ] = end;
+			System.arraycopy( row, rowOffset, runs, o + 2, n - 1 );
+			++numRuns;
+		}
+
+		ScanlineSpans build()
+		{
+			return new ScanlineSpans( n, Arrays.copyOf( runs, numRuns * stride ), numRuns );
+		}
+	}
+
+	/**
+	 * @param n
+	 *            number of dimensions, at least 1.
+	 * @param runs
+	 *            runs in raster order, n+1 longs per run: start, end
+	 *            (exclusive) and the coordinates of dimensions 1 to n-1.
+	 *            Touching runs must have been merged.
+	 * @param numRuns
+	 */
+	protected ScanlineSpans( final int n, final long[] runs, final int numRuns )
+	{
+		this.n = n;
+		stride = n + 1;
+		this.runs = runs;
+		this.numRuns = numRuns;
+		min = new long[ n ];
+		max = new long[ n ];
+		Arrays.fill( min, Long.MAX_VALUE );
+		Arrays.fill( max, Long.MIN_VALUE );
+		long s = 0;
+		for ( int i = 0, o = 0; i < numRuns; ++i, o += stride )
+		{
+			s += runs[ o + 1 ] - runs[ o ];
+			min[ 0 ] = Math.min( min[ 0 ], runs[ o ] );
+			max[ 0 ] = Math.max( max[ 0 ], runs[ o + 1 ] - 1 );
+			for ( int d = 1; d < n; ++d )
+			{
+				min[ d ] = Math.min( min[ d ], runs[ o + 1 + d ] );
+				max[ d ] = Math.max( max[ d ], runs[ o + 1 + d ] );
+			}
+		}
+		size = s;
+	}
+
+	/**
+	 * Create empty spans.
+	 */
+	public ScanlineSpans( final int n )
+	{
+		this( n, new long[ 0 ], 0 );
+	}
+
+	/**
+	 * Compile the rasters of a region of interest into spans by sweeping its
+	 * {@link AbstractIterableRegionOfInterest#nextRaster(long[], long[])
+	 * nextRaster} once.
+	 */
+	public static ScanlineSpans compile( final AbstractIterableRegionOfInterest roi )
+	{
+		final int n = roi.numDimensions();
+		final long[] position = new long[ n ];
+		final long[] end = new long[ n ];
+		Arrays.fill( position, Long.MIN_VALUE );
+		final RunBuffer buffer = new RunBuffer( n );
+		boolean sorted = true;
+		while ( roi.nextRaster( position, end ) )
+		{
+			if ( sorted && buffer.numRuns > 0 )
+			{
+				final int last = ( buffer.numRuns - 1 ) * buffer.stride;
+				final int c = compareRows( buffer.runs, last + 2, position, 1, n - 1 );
+				sorted = c < 0 || ( c == 0 && buffer.runs[ last ] <= position[ 0 ] );
+			}
+			if ( sorted )
+				buffer.add( position[ 0 ], end[ 0 ], position, 1 );
+			else
+				buffer.runs = appendUnsorted( buffer, position[ 0 ], end[ 0 ], position );
+			position[ 0 ] = end[ 0 ];
+		}
+		if ( sorted )
+			return buffer.build();
+		return normalize( n, buffer.runs, buffer.numRuns );
+	}
+
+	/**
+	 * Append without merging, used once a sweep turned out not to be in
+	 * raster order.
+	 */
+	private static long[] appendUnsorted( final RunBuffer buffer, final long start, final long end, final long[] row )
+	{
+		long[] runs = buffer.runs;
+		if ( ( buffer.numRuns + 1 ) * buffer.stride > runs.length )
+			runs = Arrays.copyOf( runs, runs.length * 2 );
+		final int o = buffer.numRuns * buffer.stride;
+		runs[ o ] = start;
+		runs[ o + 1 ] = end;
+		System.arraycopy( row, 1, runs, o + 2, buffer.n - 1 );
+		++buffer.numRuns;
+		return runs;
+	}
+
+	/**
+	 * Sort and merge arbitrary runs.
+	 */
+	protected static ScanlineSpans normalize( final int n, final long[] runs, final int numRuns )
+	{
+		final int stride = n + 1;
+		final Integer[] order = new Integer[ numRuns ];
+		for ( int i = 0; i < numRuns; ++i )
+			order[ i ] = i;
+		Arrays.sort( order, new java.util.Comparator< Integer >()
+		{
+			@Override
+			public int compare( final Integer a, final Integer b )
+			{
+				final int oa = a * stride;
+				final int ob = b * stride;
+				final int c = compareRows( runs, oa + 2, runs, ob + 2, n - 1 );
+				if ( c != 0 )
+					return c;
+				return runs[ oa ] < runs[ ob ] ? -1 : runs[ oa ] == runs[ ob ] ? 0 : 1;
+			}
+		} );
+		final RunBuffer buffer = new RunBuffer( n );
+		for ( final Integer i : order )
+		{
+			final int o = i * stride;
+			buffer.add( runs[ o ], runs[ o + 1 ], runs, o + 2 );
+		}
+		return buffer.build();
+	}
+
+	/**
+	 * Compare two rows, the last dimension being the most significant.
+	 */
+	final static protected int compareRows( final long[] a, final int aOffset, final long[] b, final int bOffset, final int rowLength )
+	{
+		for ( int d = rowLength - 1; d >= 0; --d )
+		{
+			final long ad = a[ aOffset + d ];
+			final long bd = b[ bOffset + d ];
+			if ( ad < bd )
+				return -1;
+			if ( ad > bd )
+				return 1;
+		}
+		return 0;
+	}
+
+	final static protected boolean sameRow( final long[] a, final int aOffset, final long[] b, final int bOffset, final int rowLength )
+	{
+		for ( int d = 0; d < rowLength; ++d )
+			if ( a[ aOffset + d ] != b[ bOffset + d ] )
+				return false;
+		return true;
+	}
+
+	public int numDimensions()
+	{
+		return n;
+	}
+
+	public int numRuns()
+	{
+		return numRuns;
+	}
+
+	/**
+	 * @return the number of pixels.
+	 */
+	public long size()
+	{
+		return size;
+	}
+
+	public boolean isEmpty()
+	{
+		return numRuns == 0;
+	}
+
+	/**
+	 * Get the bounding box of all pixels.  Undefined for empty spans.
+	 */
+	public void min( final long[] minimum )
+	{
+		System.arraycopy( min, 0, minimum, 0, n );
+	}
+
+	/**
+	 * Get the bounding box of all pixels.  Undefined for empty spans.
+	 */
+	public void max( final long[] maximum )
+	{
+		System.arraycopy( max, 0, maximum, 0, n );
+	}
+
+	/**
+	 * @return the first pixel of run i.
+	 */
+	public long getStart( final int i )
+	{
+		return runs[ i * stride ];
+	}
+
+	/**
+	 * @return the pixel after the last pixel of run i.
+	 */
+	public long getEnd( final int i )
+	{
+		return runs[ i * stride + 1 ];
+	}
+
+	/**
+	 * @return coordinate d &gt; 0 of run i.
+	 */
+	public long getPosition( final int i, final int d )
+	{
+		return runs[ i * stride + 1 + d ];
+	}
+
+	/**
+	 * Find the index of the first run that ends after position in raster
+	 * order.
+	 */
+	protected int search( final long[] position )
+	{
+		int lo = 0;
+		int hi = numRuns;
+		while ( lo < hi )
+		{
+			final int mid = ( lo + hi ) >>> 1;
+			final int o = mid * stride;
+			final int c = compareRows( runs, o + 2, position, 1, n - 1 );
+			if ( c < 0 || ( c == 0 && runs[ o + 1 ] <= position[ 0 ] ) )
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	public boolean contains( final long[] position )
+	{
+		final int i = search( position );
+		if ( i == numRuns )
+			return false;
+		final int o = i * stride;
+		return runs[ o ] <= position[ 0 ] && sameRow( runs, o + 2, position, 1, n - 1 );
+	}
+
+	/**
+	 * Find the next raster at or after position, with the same contract as
+	 * {@link AbstractIterableRegionOfInterest#nextRaster(long[], long[])}.
+	 * If position is inside a run, the raster starts at position.
+	 */
+	public boolean nextRaster( final long[] position, final long[] end )
+	{
+		final int i = search( position );
+		if ( i == numRuns )
+			return false;
+		setRaster( i, position, end, Long.MIN_VALUE, Long.MAX_VALUE );
+		return true;
+	}
+
+	/**
+	 * Find the next raster at or after position that intersects interval,
+	 * clipped to the interval.
+	 */
+	public boolean nextRaster( final long[] position, final long[] end, final Interval interval )
+	{
+		if ( n > 1 )
+		{
+			/* skip all rows before the first row of the interval */
+			final long[] first = new long[ n ];
+			for ( int d = 1; d < n; ++d )
+				first[ d ] = interval.min( d );
+			first[ 0 ] = Long.MIN_VALUE;
+			if ( compareRows( position, 1, first, 1, n - 1 ) < 0 )
+				System.arraycopy( first, 0, position, 0, n );
+		}
+		final long xMin = interval.min( 0 );
+		final long xMax = interval.max( 0 );
+		final int lastDimension = n - 1;
+		runs:
+		for ( int i = search( position ); i < numRuns; ++i )
+		{
+			final int o = i * stride;
+			for ( int d = 1; d < n; ++d )
+			{
+				final long p = runs[ o + 1 + d ];
+				if ( p > interval.max( d ) )
+				{
+					if ( d == lastDimension )
+						return false;
+					continue runs;
+				}
+				if ( p < interval.min( d ) )
+					continue runs;
+			}
+			final boolean sameRow = sameRow( runs, o + 2, position, 1, n - 1 );
+			final long start = Math.max( runs[ o ], Math.max( xMin, sameRow ? position[ 0 ] : Long.MIN_VALUE ) );
+			final long stop = Math.min( runs[ o + 1 ], xMax + 1 );
+			if ( start < stop )
+			{
+				setRaster( i, position, end, start, stop );
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void setRaster( final int i, final long[] position, final long[] end, final long clipStart, final long clipEnd )
+	{
+		final int o = i * stride;
+		final boolean sameRow = sameRow( runs, o + 2, position, 1, n - 1 );
+		position[ 0 ] = Math.max( Math.max( runs[ o ], clipStart ), sameRow ? position[ 0 ] : Long.MIN_VALUE );
+		end[ 0 ] = Math.min( runs[ o + 1 ], clipEnd );
+		for ( int d = 1; d < n; ++d )
+			position[ d ] = end[ d ] = runs[ o + 1 + d ];
+	}
+
+	public ScanlineSpans union( final ScanlineSpans other )
+	{
+		return combine( this, other, OR );
+	}
+
+	public ScanlineSpans intersection( final ScanlineSpans other )
+	{
+		return combine( this, other, AND );
+	}
+
+	/**
+	 * @return the pixels of this that are not in other.
+	 */
+	public ScanlineSpans difference( final ScanlineSpans other )
+	{
+		return combine( this, other, NOT );
+	}
+
+	public ScanlineSpans xor( final ScanlineSpans other )
+	{
+		return combine( this, other, XOR );
+	}
+
+	/**
+	 * @return the spans shifted by offset.
+	 */
+	public ScanlineSpans translate( final long[] offset )
+	{
+		final long[] shifted = runs.clone();
+		for ( int i = 0, o = 0; i < numRuns; ++i, o += stride )
+		{
+			shifted[ o ] += offset[ 0 ];
+			shifted[ o + 1 ] += offset[ 0 ];
+			for ( int d = 1; d < n; ++d )
+				shifted[ o + 1 + d ] += offset[ d ];
+		}
+		return new ScanlineSpans( n, shifted, numRuns );
+	}
+
+	final static private boolean apply( final int operation, final boolean inA, final boolean inB )
+	{
+		switch ( operation )
+		{
+		case OR:
+			return inA || inB;
+		case AND:
+			return inA && inB;
+		case NOT:
+			return inA && !inB;
+		default:
+			return inA ^ inB;
+		}
+	}
+
+	/**
+	 * Merge two sorted run lists row by row.
+	 */
+	static protected ScanlineSpans combine( final ScanlineSpans a, final ScanlineSpans b, final int operation )
+	{
+		if ( a.n != b.n )
+			throw new IllegalArgumentException( "Spans must have the same number of dimensions." );
+
+		final int n = a.n;
+		final int stride = a.stride;
+		final RunBuffer buffer = new RunBuffer( n );
+		int i = 0;
+		int j = 0;
+		while ( i < a.numRuns || j < b.numRuns )
+		{
+			/* runs of the current row are [ i, ea ) and [ j, eb ) */
+			final int c;
+			if ( i == a.numRuns )
+				c = 1;
+			else if ( j == b.numRuns )
+				c = -1;
+			else
+				c = compareRows( a.runs, i * stride + 2, b.runs, j * stride + 2, n - 1 );
+			final long[] row = c <= 0 ? a.runs : b.runs;
+			final int rowOffset = ( c <= 0 ? i : j ) * stride + 2;
+			int ea = i;
+			if ( c <= 0 )
+				while ( ea < a.numRuns && sameRow( a.runs, ea * stride + 2, row, rowOffset, n - 1 ) )
+					++ea;
+			int eb = j;
+			if ( c >= 0 )
+				while ( eb < b.numRuns && sameRow( b.runs, eb * stride + 2, row, rowOffset, n - 1 ) )
+					++eb;
+
+			long x = Long.MAX_VALUE;
+			if ( i < ea )
+				x = a.runs[ i * stride ];
+			if ( j < eb )
+				x = Math.min( x, b.runs[ j * stride ] );
+			while ( i < ea || j < eb )
+			{
+				final boolean inA = i < ea && a.runs[ i * stride ] <= x;
+				final boolean inB = j < eb && b.runs[ j * stride ] <= x;
+				long next = Long.MAX_VALUE;
+				if ( i < ea )
+					next = inA ? a.runs[ i * stride + 1 ] : a.runs[ i * stride ];
+				if ( j < eb )
+					next = Math.min( next, inB ? b.runs[ j * stride + 1 ] : b.runs[ j * stride ] );
+				if ( apply( operation, inA, inB ) )
+					buffer.add( x, next, row, rowOffset );
+				x = next;
+				if ( i < ea && a.runs[ i * stride + 1 ] <= x )
+					++i;
+				if ( j < eb && b.runs[ j * stride + 1 ] <= x )
+					++j;
+			}
+		}
+		return buffer.build();
+	}
+}
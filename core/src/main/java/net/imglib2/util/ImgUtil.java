@@ -37,9 +37,31 @@
 
 package net.imglib2.util;
 
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import net.imglib2.Cursor;
+import net.imglib2.Interval;
 import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.basictypeaccess.array.BitArray;
+import net.imglib2.img.cell.AbstractCell;
+import net.imglib2.img.cell.AbstractCellImg;
+import net.imglib2.img.planar.PlanarImg;
+import net.imglib2.multithreading.SimpleMultiThreading;
 import net.imglib2.type.BooleanType;
+import net.imglib2.type.NativeType;
 import net.imglib2.type.numeric.IntegerType;
 import net.imglib2.type.numeric.RealType;
 
@@ -49,6 +71,13 @@ import net.imglib2.type.numeric.RealType;
  * from applications that can't rely on JIT compilation and that access
  * imglib via the JVM or through JNI (specifically CellProfiler).
  *
+ * The element-wise copy methods work for any Img. The bulk methods
+ * ({@link #copyToArray(Img, Interval, Object, int, int)},
+ * {@link #copyToBuffer(Img, Interval, ByteBuffer, ByteOrder, int)} and
+ * their counterparts) move whole rows of the primitive storage of
+ * ArrayImg, PlanarImg and CellImg instances at a time and can work on
+ * several planes or cells in parallel.
+ *
  *
  * @author Tobias Pietzsch
  * @author Stephan Preibisch
@@ -239,4 +268,398 @@ public class ImgUtil {
 			dest[this_offset] = t.get();
 		}
 	}
+
+	/**
+	 * Get the primitive array that stores all pixels of an Img, if there
+	 * is exactly one. This is the case for ArrayImg instances and for
+	 * PlanarImg or CellImg instances that consist of a single plane or
+	 * cell. The array is shared with the image, writing to it changes the
+	 * image. The pixels are stored with the first dimension varying fastest;
+	 * types that use several entities per pixel (for instance complex
+	 * types) store them interleaved.
+	 *
+	 * To go the other way, wrap an existing array using one of the
+	 * {@link net.imglib2.img.array.ArrayImgs} methods.
+	 *
+	 * @param img - the image whose storage is requested
+	 * @return the storage array or null if the image is not backed by a
+	 *         single primitive array
+	 */
+	public static Object getStorageArray(final Img<?> img) {
+		if (!(img instanceof ArrayImg) && !(img instanceof PlanarImg) && !(img instanceof AbstractCellImg))
+			return null;
+		final List<Block> blocks = getBlocks(img);
+		if (blocks.size() != 1)
+			return null;
+		return blocks.get(0).data;
+	}
+
+	/**
+	 * Copy an interval of an image into a primitive array in bulk.
+	 *
+	 * The interval is stored densely in the destination, starting at the
+	 * given offset, with the first dimension varying fastest. Types that use
+	 * several entities per pixel (for instance complex types) are stored
+	 * interleaved. The array must have the same element type as the storage
+	 * of the image, for instance float[] for a FloatType image.
+	 *
+	 * Only ArrayImg, PlanarImg and CellImg instances backed by primitive
+	 * arrays are supported. The data is moved with System.arraycopy, one
+	 * contiguous row at a time, and planes or cells are distributed over
+	 * the given number of threads.
+	 *
+	 * @param <T> - the type of the source image data
+	 * @param src - the image to copy from
+	 * @param interval - the part of the image to copy, must lie within the image
+	 * @param dest - the primitive array to copy to
+	 * @param offset - the index in dest of the first entity of the interval
+	 * @param numThreads - the number of threads to use
+	 */
+	public static <T extends NativeType<T>> void copyToArray(final Img<T> src, final Interval interval, final Object dest, final int offset, final int numThreads) {
+		final List<Block> blocks = getBlocks(src);
+		final int entitiesPerPixel = src.firstElement().getEntitiesPerPixel();
+		checkArray(blocks, checkInterval(src, interval, entitiesPerPixel), dest, offset);
+		copyRegion(blocks, interval, entitiesPerPixel, offset, new ArrayCopier(dest, true), numThreads);
+	}
+
+	/**
+	 * Copy a whole image into a primitive array in bulk.
+	 *
+	 * @see ImgUtil#copyToArray(Img, Interval, Object, int, int)
+	 */
+	public static <T extends NativeType<T>> void copyToArray(final Img<T> src, final Object dest) {
+		copyToArray(src, src, dest, 0, 1);
+	}
+
+	/**
+	 * Copy a primitive array into an interval of an image in bulk.
+	 *
+	 * @see ImgUtil#copyToArray(Img, Interval, Object, int, int)
+	 */
+	public static <T extends NativeType<T>> void copyFromArray(final Object src, final int offset, final Interval interval, final Img<T> dest, final int numThreads) {
+		final List<Block> blocks = getBlocks(dest);
+		final int entitiesPerPixel = dest.firstElement().getEntitiesPerPixel();
+		checkArray(blocks, checkInterval(dest, interval, entitiesPerPixel), src, offset);
+		copyRegion(blocks, interval, entitiesPerPixel, offset, new ArrayCopier(src, false), numThreads);
+	}
+
+	/**
+	 * Copy a primitive array into a whole image in bulk.
+	 *
+	 * @see ImgUtil#copyToArray(Img, Interval, Object, int, int)
+	 */
+	public static <T extends NativeType<T>> void copyFromArray(final Object src, final Img<T> dest) {
+		copyFromArray(src, 0, dest, dest, 1);
+	}
+
+	/**
+	 * Copy an interval of an image into a byte buffer in bulk.
+	 *
+	 * The interval is stored densely, starting at the current position of
+	 * the buffer, with the first dimension varying fastest. Each entity is
+	 * written with the size of the storage element type of the image (for
+	 * instance 4 bytes for a FloatType image) in the given byte order. The
+	 * position and byte order of the buffer are not changed. Direct buffers
+	 * are supported, which makes this suitable for handing data to native
+	 * code.
+	 *
+	 * @param <T> - the type of the source image data
+	 * @param src - the image to copy from
+	 * @param interval - the part of the image to copy, must lie within the image
+	 * @param dest - the buffer to copy to
+	 * @param order - the byte order of the data in the buffer
+	 * @param numThreads - the number of threads to use
+	 * @see ImgUtil#copyToArray(Img, Interval, Object, int, int)
+	 */
+	public static <T extends NativeType<T>> void copyToBuffer(final Img<T> src, final Interval interval, final ByteBuffer dest, final ByteOrder order, final int numThreads) {
+		final List<Block> blocks = getBlocks(src);
+		final int entitiesPerPixel = src.firstElement().getEntitiesPerPixel();
+		checkBuffer(blocks, checkInterval(src, interval, entitiesPerPixel), dest);
+		copyRegion(blocks, interval, entitiesPerPixel, 0, new BufferCopier(dest, order, blocks.get(0).data, true), numThreads);
+	}
+
+	/**
+	 * Copy the contents of a byte buffer into an interval of an image in bulk.
+	 *
+	 * @see ImgUtil#copyToBuffer(Img, Interval, ByteBuffer, ByteOrder, int)
+	 */
+	public static <T extends NativeType<T>> void copyFromBuffer(final ByteBuffer src, final ByteOrder order, final Interval interval, final Img<T> dest, final int numThreads) {
+		final List<Block> blocks = getBlocks(dest);
+		final int entitiesPerPixel = dest.firstElement().getEntitiesPerPixel();
+		checkBuffer(blocks, checkInterval(dest, interval, entitiesPerPixel), src);
+		copyRegion(blocks, interval, entitiesPerPixel, 0, new BufferCopier(src, order, blocks.get(0).data, false), numThreads);
+	}
+
+	/**
+	 * A primitive storage array together with the part of the image it holds.
+	 */
+	private static class Block {
+		final Object data;
+		final long [] min;
+		final int [] dimensions;
+
+		Block(final Object data, final long [] min, final int [] dimensions) {
+			this.data = data;
+			this.min = min;
+			this.dimensions = dimensions;
+		}
+	}
+
+	private static Object getStorage(final Object access) {
+		if (!(access instanceof ArrayDataAccess) || (access instanceof BitArray))
+			throw new IllegalArgumentException("Bulk copies need an image stored in byte, char, short, int, long, float or double arrays.");
+		return ((ArrayDataAccess<?>) access).getCurrentStorageArray();
+	}
+
+	private static List<Block> getBlocks(final Img<?> img) {
+		final int n = img.numDimensions();
+		final List<Block> blocks = new ArrayList<Block>();
+		if (img instanceof ArrayImg) {
+			final int [] dimensions = new int[n];
+			for (int d = 0; d < n; d++)
+				dimensions[d] = (int) img.dimension(d);
+			blocks.add(new Block(getStorage(((ArrayImg<?, ?>) img).update(null)), new long[n], dimensions));
+		} else if (img instanceof PlanarImg) {
+			final PlanarImg<?, ?> planar = (PlanarImg<?, ?>) img;
+			final int [] dimensions = new int[n];
+			for (int d = 0; d < n; d++)
+				dimensions[d] = (d < 2) ? (int) img.dimension(d) : 1;
+			for (int i = 0; i < planar.numSlices(); i++) {
+				final long [] min = new long[n];
+				int slice = i;
+				for (int d = 2; d < n; d++) {
+					min[d] = slice % img.dimension(d);
+					slice /= img.dimension(d);
+				}
+				blocks.add(new Block(getStorage(planar.getPlane(i)), min, dimensions));
+			}
+		} else if (img instanceof AbstractCellImg) {
+			final Cursor<? extends AbstractCell<?>> c = ((AbstractCellImg<?, ?, ?, ?>) img).getCells().cursor();
+			while (c.hasNext()) {
+				final AbstractCell<?> cell = c.next();
+				final long [] min = new long[n];
+				final int [] dimensions = new int[n];
+				cell.min(min);
+				cell.dimensions(dimensions);
+				blocks.add(new Block(getStorage(cell.getData()), min, dimensions));
+			}
+		} else {
+			throw new IllegalArgumentException("Bulk copies are only supported for ArrayImg, PlanarImg and CellImg instances.");
+		}
+		return blocks;
+	}
+
+	/**
+	 * @return the number of entities in the interval
+	 */
+	private static long checkInterval(final Img<?> img, final Interval interval, final int entitiesPerPixel) {
+		if (interval.numDimensions() != img.numDimensions())
+			throw new IllegalArgumentException("The interval must have the same number of dimensions as the image.");
+		long size = entitiesPerPixel;
+		for (int d = 0; d < img.numDimensions(); d++) {
+			if (interval.min(d) < img.min(d) || interval.max(d) > img.max(d))
+				throw new IllegalArgumentException("The interval must lie within the image.");
+			size *= interval.dimension(d);
+		}
+		if (size > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("The interval holds more entities than fit into one array or buffer.");
+		return size;
+	}
+
+	private static void checkArray(final List<Block> blocks, final long size, final Object array, final int offset) {
+		if (array.getClass() != blocks.get(0).data.getClass())
+			throw new IllegalArgumentException("The array type " + array.getClass().getSimpleName() + " does not match the image storage type " + blocks.get(0).data.getClass().getSimpleName() + ".");
+		if (offset < 0 || offset + size > java.lang.reflect.Array.getLength(array))
+			throw new IllegalArgumentException("The array is too small for the interval.");
+	}
+
+	private static void checkBuffer(final List<Block> blocks, final long size, final ByteBuffer buffer) {
+		final long bytes = size * elementSize(blocks.get(0).data);
+		if (bytes > buffer.remaining())
+			throw new IllegalArgumentException("The buffer has " + buffer.remaining() + " bytes remaining but the interval needs " + bytes + ".");
+	}
+
+	private static int elementSize(final Object array) {
+		if (array instanceof byte [])
+			return 1;
+		if ((array instanceof short []) || (array instanceof char []))
+			return 2;
+		if ((array instanceof int []) || (array instanceof float []))
+			return 4;
+		return 8;
+	}
+
+	/**
+	 * Moves a run of entities between a storage array and the external
+	 * array or buffer.
+	 */
+	private static interface RowCopier {
+		public void copy(final Object data, final int dataIndex, final int index, final int length);
+
+		/**
+		 * @return a copier that can be used concurrently with this one
+		 */
+		public RowCopier duplicate();
+	}
+
+	private static class ArrayCopier implements RowCopier {
+		final Object array;
+		final boolean toArray;
+
+		ArrayCopier(final Object array, final boolean toArray) {
+			this.array = array;
+			this.toArray = toArray;
+		}
+
+		@Override
+		public void copy(final Object data, final int dataIndex, final int index, final int length) {
+			if (toArray)
+				System.arraycopy(data, dataIndex, array, index, length);
+			else
+				System.arraycopy(array, index, data, dataIndex, length);
+		}
+
+		@Override
+		public RowCopier duplicate() {
+			return this;
+		}
+	}
+
+	private static class BufferCopier implements RowCopier {
+		final ByteBuffer buffer;
+		final ByteOrder order;
+		final Object sample;
+		final boolean toBuffer;
+		final Buffer view;
+
+		BufferCopier(final ByteBuffer buffer, final ByteOrder order, final Object sample, final boolean toBuffer) {
+			this.buffer = buffer;
+			this.order = order;
+			this.sample = sample;
+			this.toBuffer = toBuffer;
+			// each copier works on its own view so that positions are not shared
+			final ByteBuffer bytes = buffer.duplicate().order(order);
+			if (sample instanceof byte [])
+				view = bytes.slice();
+			else if (sample instanceof short [])
+				view = bytes.asShortBuffer();
+			else if (sample instanceof char [])
+				view = bytes.asCharBuffer();
+			else if (sample instanceof int [])
+				view = bytes.asIntBuffer();
+			else if (sample instanceof long [])
+				view = bytes.asLongBuffer();
+			else if (sample instanceof float [])
+				view = bytes.asFloatBuffer();
+			else
+				view = bytes.asDoubleBuffer();
+		}
+
+		@Override
+		public void copy(final Object data, final int dataIndex, final int index, final int length) {
+			view.position(index);
+			if (data instanceof byte []) {
+				if (toBuffer) ((ByteBuffer) view).put((byte []) data, dataIndex, length);
+				else ((ByteBuffer) view).get((byte []) data, dataIndex, length);
+			} else if (data instanceof short []) {
+				if (toBuffer) ((ShortBuffer) view).put((short []) data, dataIndex, length);
+				else ((ShortBuffer) view).get((short []) data, dataIndex, length);
+			} else if (data instanceof char []) {
+				if (toBuffer) ((CharBuffer) view).put((char []) data, dataIndex, length);
+				else ((CharBuffer) view).get((char []) data, dataIndex, length);
+			} else if (data instanceof int []) {
+				if (toBuffer) ((IntBuffer) view).put((int []) data, dataIndex, length);
+				else ((IntBuffer) view).get((int []) data, dataIndex, length);
+			} else if (data instanceof long []) {
+				if (toBuffer) ((LongBuffer) view).put((long []) data, dataIndex, length);
+				else ((LongBuffer) view).get((long []) data, dataIndex, length);
+			} else if (data instanceof float []) {
+				if (toBuffer) ((FloatBuffer) view).put((float []) data, dataIndex, length);
+				else ((FloatBuffer) view).get((float []) data, dataIndex, length);
+			} else {
+				if (toBuffer) ((DoubleBuffer) view).put((double []) data, dataIndex, length);
+				else ((DoubleBuffer) view).get((double []) data, dataIndex, length);
+			}
+		}
+
+		@Override
+		public RowCopier duplicate() {
+			return new BufferCopier(buffer, order, sample, toBuffer);
+		}
+	}
+
+	/**
+	 * Copy the part of each block that lies within the interval. The blocks
+	 * are disjoint, so they can be handed out to several threads.
+	 */
+	private static void copyRegion(final List<Block> blocks, final Interval interval, final int entitiesPerPixel, final int offset, final RowCopier copier, final int numThreads) {
+		final int n = interval.numDimensions();
+		final long [] min = new long[n];
+		final long [] max = new long[n];
+		final int [] steps = new int[n];
+		interval.min(min);
+		interval.max(max);
+		for (int d = 0; d < n; d++)
+			steps[d] = (d == 0) ? entitiesPerPixel : steps[d - 1] * (int) interval.dimension(d - 1);
+		if (numThreads <= 1 || blocks.size() == 1) {
+			for (final Block block : blocks)
+				copyBlock(block, min, max, steps, entitiesPerPixel, offset, copier);
+			return;
+		}
+		final AtomicInteger ai = new AtomicInteger(0);
+		final Thread [] threads = SimpleMultiThreading.newThreads(Math.min(numThreads, blocks.size()));
+		for (int t = 0; t < threads.length; t++) {
+			final RowCopier threadCopier = copier.duplicate();
+			threads[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = ai.getAndIncrement(); i < blocks.size(); i = ai.getAndIncrement())
+						copyBlock(blocks.get(i), min, max, steps, entitiesPerPixel, offset, threadCopier);
+				}
+			});
+		}
+		SimpleMultiThreading.startAndJoin(threads);
+	}
+
+	private static void copyBlock(final Block block, final long [] min, final long [] max, final int [] steps, final int entitiesPerPixel, final int offset, final RowCopier copier) {
+		final int n = min.length;
+		final long [] lo = new long[n];
+		final long [] hi = new long[n];
+		final int [] blockSteps = new int[n];
+		for (int d = 0; d < n; d++) {
+			lo[d] = Math.max(min[d], block.min[d]);
+			hi[d] = Math.min(max[d], block.min[d] + block.dimensions[d] - 1);
+			if (lo[d] > hi[d])
+				return;
+			blockSteps[d] = (d == 0) ? entitiesPerPixel : blockSteps[d - 1] * block.dimensions[d - 1];
+		}
+		// rows that span both the block and the interval are contiguous on
+		// both sides and are merged with the following dimension
+		int rowDims = 1;
+		int rowLength = (int) (hi[0] - lo[0] + 1) * entitiesPerPixel;
+		while (rowDims < n && hi[rowDims - 1] - lo[rowDims - 1] + 1 == block.dimensions[rowDims - 1] && hi[rowDims - 1] - lo[rowDims - 1] == max[rowDims - 1] - min[rowDims - 1]) {
+			rowLength *= (int) (hi[rowDims] - lo[rowDims] + 1);
+			rowDims++;
+		}
+		final long [] position = lo.clone();
+		while (true) {
+			int dataIndex = 0;
+			int index = offset;
+			for (int d = 0; d < n; d++) {
+				dataIndex += (int) (position[d] - block.min[d]) * blockSteps[d];
+				index += (int) (position[d] - min[d]) * steps[d];
+			}
+			copier.copy(block.data, dataIndex, index, rowLength);
+			int d = rowDims;
+			for (; d < n; d++) {
+				if (position[d] < hi[d]) {
+					position[d]++;
+					break;
+				}
+				position[d] = lo[d];
+			}
+			if (d >= n)
+				return;
+		}
+	}
 }
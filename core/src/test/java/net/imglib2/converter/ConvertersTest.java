@@ -0,0 +1,159 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.converter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import net.imglib2.Cursor;
+import net.imglib2.IterableInterval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.converter.read.ConvertedIterableInterval;
+import net.imglib2.converter.read.ConvertedRandomAccessible;
+import net.imglib2.converter.read.ConvertedRandomAccessibleInterval;
+import net.imglib2.display.RealARGBConverter;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.ShortArray;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.FloatType;
+
+import org.junit.Test;
+
+public class ConvertersTest
+{
+	/**
+	 * Doubles the value.
+	 */
+	private static class Twice implements Converter< FloatType, FloatType >
+	{
+		@Override
+		public void convert( final FloatType input, final FloatType output )
+		{
+			output.set( 2 * input.get() );
+		}
+	}
+
+	private static class ToFloat implements Converter< UnsignedShortType, FloatType >
+	{
+		@Override
+		public void convert( final UnsignedShortType input, final FloatType output )
+		{
+			output.set( input.get() );
+		}
+	}
+
+	private static ArrayImg< UnsignedShortType, ShortArray > ramp()
+	{
+		final ArrayImg< UnsignedShortType, ShortArray > img = ArrayImgs.unsignedShorts( 16, 8 );
+		int i = 0;
+		for ( final UnsignedShortType t : img )
+			t.set( 100 * i++ );
+		return img;
+	}
+
+	private static int expected( final RealARGBConverter< FloatType > argb, final int value )
+	{
+		final ARGBType out = new ARGBType();
+		argb.convert( new FloatType( 2 * value ), out );
+		return out.get();
+	}
+
+	@Test
+	public void testFusedRandomAccessibleInterval()
+	{
+		final ArrayImg< UnsignedShortType, ShortArray > img = ramp();
+		final RealARGBConverter< FloatType > argb = new RealARGBConverter< FloatType >( 0, 30000 );
+		final RandomAccessibleInterval< FloatType > floats = Converters.convert( ( RandomAccessibleInterval< UnsignedShortType > ) img, new ToFloat(), new FloatType() );
+		final RandomAccessibleInterval< FloatType > twice = Converters.convert( floats, new Twice(), new FloatType() );
+		final RandomAccessibleInterval< ARGBType > display = Converters.convert( twice, argb, new ARGBType() );
+
+		// one converted view on the original image
+		assertTrue( display instanceof ConvertedRandomAccessibleInterval );
+		assertSame( img, ( ( ConvertedRandomAccessibleInterval< ?, ? > ) display ).getSource() );
+		assertEquals( img.dimension( 0 ), display.dimension( 0 ) );
+
+		final RandomAccess< UnsignedShortType > ra = img.randomAccess();
+		final RandomAccess< ARGBType > a = display.randomAccess();
+		final RandomAccess< ARGBType > b = display.randomAccess();
+		for ( int y = 0; y < 8; ++y )
+		{
+			for ( int x = 0; x < 16; ++x )
+			{
+				ra.setPosition( new int[] { x, y } );
+				a.setPosition( ra );
+				// a second access must not share intermediate samples
+				b.setPosition( new int[] { 15 - x, 7 - y } );
+				final int va = a.get().get();
+				b.get();
+				assertEquals( expected( argb, ra.get().get() ), va );
+			}
+		}
+	}
+
+	@Test
+	public void testFusedRandomAccessible()
+	{
+		final ArrayImg< UnsignedShortType, ShortArray > img = ramp();
+		final RandomAccessible< FloatType > floats = Converters.convert( ( RandomAccessible< UnsignedShortType > ) img, new ToFloat(), new FloatType() );
+		final RandomAccessible< FloatType > twice = Converters.convert( floats, new Twice(), new FloatType() );
+		assertTrue( twice instanceof ConvertedRandomAccessible );
+		assertSame( img, ( ( ConvertedRandomAccessible< ?, ? > ) twice ).getSource() );
+		final RandomAccess< FloatType > ra = twice.randomAccess();
+		ra.setPosition( new int[] { 3, 2 } );
+		assertEquals( 2 * 100 * 35, ra.get().get(), 0 );
+	}
+
+	@Test
+	public void testFusedIterableInterval()
+	{
+		final ArrayImg< UnsignedShortType, ShortArray > img = ramp();
+		final IterableInterval< FloatType > floats = Converters.convert( ( IterableInterval< UnsignedShortType > ) img, new ToFloat(), new FloatType() );
+		final IterableInterval< FloatType > twice = Converters.convert( floats, new Twice(), new FloatType() );
+		assertTrue( twice instanceof ConvertedIterableInterval );
+		assertSame( img, ( ( ConvertedIterableInterval< ?, ? > ) twice ).getSource() );
+		final Cursor< UnsignedShortType > c = img.cursor();
+		final Cursor< FloatType > t = twice.cursor();
+		while ( c.hasNext() )
+			assertEquals( 2 * c.next().get(), t.next().get(), 0 );
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.display;
+
+import static org.junit.Assert.assertEquals;
+import net.imglib2.converter.CompositeConverter;
+import net.imglib2.converter.Converter;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.type.numeric.integer.ByteType;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.type.numeric.integer.ShortType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.FloatType;
+
+import org.junit.Test;
+
+public class LookupTableARGBConverterTest
+{
+	private static < R extends IntegerType< R > > void checkAllValues( final Converter< R, ARGBType > converter, final R type )
+	{
+		final LookupTableARGBConverter< R > lut = new LookupTableARGBConverter< R >( converter, type );
+		final R t = type.createVariable();
+		final ARGBType expected = new ARGBType();
+		final ARGBType actual = new ARGBType();
+		for ( long v = ( long ) type.getMinValue(); v <= ( long ) type.getMaxValue(); ++v )
+		{
+			t.setInteger( v );
+			converter.convert( t, expected );
+			lut.convert( t, actual );
+			assertEquals( expected.get(), actual.get() );
+		}
+	}
+
+	@Test
+	public void testRealARGBConverter()
+	{
+		checkAllValues( new RealARGBConverter< UnsignedByteType >( 10, 200 ), new UnsignedByteType() );
+		checkAllValues( new RealARGBConverter< ByteType >( -100, 50 ), new ByteType() );
+		checkAllValues( new RealARGBConverter< UnsignedShortType >( 0, 4095 ), new UnsignedShortType() );
+		checkAllValues( new RealARGBConverter< ShortType >( -1000, 1000 ), new ShortType() );
+	}
+
+	@Test
+	public void testRealLUTConverter()
+	{
+		checkAllValues( new RealLUTConverter< UnsignedShortType >( 0, 65535, new ColorTable8() ), new UnsignedShortType() );
+	}
+
+	@Test
+	public void testComposite()
+	{
+		final Converter< UnsignedByteType, FloatType > invert = new Converter< UnsignedByteType, FloatType >()
+		{
+			@Override
+			public void convert( final UnsignedByteType input, final FloatType output )
+			{
+				output.set( 255 - input.get() );
+			}
+		};
+		final CompositeConverter< UnsignedByteType, FloatType, ARGBType > chain = new CompositeConverter< UnsignedByteType, FloatType, ARGBType >( invert, new RealARGBConverter< FloatType >( 0, 255 ), new FloatType() );
+		checkAllValues( chain, new UnsignedByteType() );
+	}
+
+	@Test
+	public void testUpdate()
+	{
+		final RealARGBConverter< UnsignedByteType > argb = new RealARGBConverter< UnsignedByteType >( 0, 255 );
+		final LookupTableARGBConverter< UnsignedByteType > lut = new LookupTableARGBConverter< UnsignedByteType >( argb, new UnsignedByteType() );
+		argb.setMax( 100 );
+		lut.update();
+		final ARGBType out = new ARGBType();
+		lut.convert( new UnsignedByteType( 100 ), out );
+		assertEquals( 0xffffffff, out.get() );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testTooManyBits()
+	{
+		new LookupTableARGBConverter< IntType >( new RealARGBConverter< IntType >( 0, 1 ), new IntType() );
+	}
+}
@@ -0,0 +1,233 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.display;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import net.imglib2.Interval;
+import net.imglib2.Point;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.converter.Converter;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.FloatArray;
+import net.imglib2.type.numeric.real.FloatType;
+
+import org.junit.Test;
+
+/**
+ * Tests incremental re-mapping of {@link VolatileXYRandomAccessibleProjector}.
+ */
+public class VolatileXYRandomAccessibleProjectorTest
+{
+	final static int width = 100;
+
+	final static int height = 70;
+
+	final static int tileSize = 16;
+
+	/**
+	 * A 2d source whose pixels become valid once they are marked as loaded.
+	 * Counts the number of accessed pixels.
+	 */
+	static class PendingSource implements RandomAccessible< VolatileRealType< FloatType > >
+	{
+		final boolean[] loaded = new boolean[ width * height ];
+
+		final float offset;
+
+		long numAccessed = 0;
+
+		PendingSource( final float offset )
+		{
+			this.offset = offset;
+		}
+
+		class Access extends Point implements RandomAccess< VolatileRealType< FloatType > >
+		{
+			final VolatileRealType< FloatType > t = new VolatileRealType< FloatType >( new FloatType() );
+
+			Access()
+			{
+				super( 2 );
+			}
+
+			@Override
+			public VolatileRealType< FloatType > get()
+			{
+				++numAccessed;
+				final int x = ( int )position[ 0 ];
+				final int y = ( int )position[ 1 ];
+				t.get().set( offset + x + 1000 * y );
+				t.setValid( loaded[ y * width + x ] );
+				return t;
+			}
+
+			@Override
+			public Access copy()
+			{
+				final Access copy = new Access();
+				copy.setPosition( this );
+				return copy;
+			}
+
+			@Override
+			public Access copyRandomAccess()
+			{
+				return copy();
+			}
+		}
+
+		@Override
+		public int numDimensions()
+		{
+			return 2;
+		}
+
+		@Override
+		public RandomAccess< VolatileRealType< FloatType > > randomAccess()
+		{
+			return new Access();
+		}
+
+		@Override
+		public RandomAccess< VolatileRealType< FloatType > > randomAccess( final Interval interval )
+		{
+			return randomAccess();
+		}
+
+		void load( final int x0, final int y0, final int x1, final int y1 )
+		{
+			for ( int y = y0; y < y1; ++y )
+				for ( int x = x0; x < x1; ++x )
+					loaded[ y * width + x ] = true;
+		}
+	}
+
+	final static Converter< VolatileRealType< FloatType >, FloatType > converter = new Converter< VolatileRealType< FloatType >, FloatType >()
+	{
+		@Override
+		public void convert( final VolatileRealType< FloatType > input, final FloatType output )
+		{
+			output.set( input.get() );
+		}
+	};
+
+	@Test
+	public void testIncrementalMapping()
+	{
+		final PendingSource source = new PendingSource( 0 );
+		final ArrayImg< FloatType, FloatArray > target = ArrayImgs.floats( width, height );
+		final VolatileXYRandomAccessibleProjector< FloatType, VolatileRealType< FloatType >, FloatType > projector =
+				new VolatileXYRandomAccessibleProjector< FloatType, VolatileRealType< FloatType >, FloatType >( source, null, target, converter, tileSize );
+
+		final int numTiles = ( ( width + tileSize - 1 ) / tileSize ) * ( ( height + tileSize - 1 ) / tileSize );
+		assertEquals( numTiles, projector.numInvalidTiles() );
+
+		projector.map();
+		assertFalse( projector.isValid() );
+		assertEquals( numTiles, projector.numInvalidTiles() );
+		assertEquals( width * height, source.numAccessed );
+
+		/* load two complete tiles and part of a third */
+		source.load( 0, 0, 2 * tileSize, tileSize );
+		source.load( 3 * tileSize, 0, 3 * tileSize + 1, 1 );
+		source.numAccessed = 0;
+		projector.mapInvalid();
+		assertEquals( numTiles - 2, projector.numInvalidTiles() );
+		assertEquals( ( long )width * height, source.numAccessed );
+
+		source.numAccessed = 0;
+		projector.mapInvalid();
+		assertEquals( ( long )width * height - 2 * tileSize * tileSize, source.numAccessed );
+
+		/* load everything, only the remaining tiles are re-mapped */
+		source.load( 0, 0, width, height );
+		source.numAccessed = 0;
+		projector.mapInvalid();
+		assertTrue( projector.isValid() );
+		assertEquals( 0, projector.numInvalidTiles() );
+		assertEquals( ( long )width * height - 2 * tileSize * tileSize, source.numAccessed );
+
+		/* nothing left to do */
+		source.numAccessed = 0;
+		projector.mapInvalid();
+		assertTrue( projector.isValid() );
+		assertEquals( 0, source.numAccessed );
+
+		final RandomAccess< FloatType > access = target.randomAccess();
+		for ( int y = 0; y < height; ++y )
+			for ( int x = 0; x < width; ++x )
+			{
+				access.setPosition( x, 0 );
+				access.setPosition( y, 1 );
+				assertEquals( x + 1000 * y, access.get().get(), 0 );
+			}
+
+		/* map() starts from scratch */
+		source.numAccessed = 0;
+		projector.map();
+		assertEquals( ( long )width * height, source.numAccessed );
+	}
+
+	@Test
+	public void testPlaceholder()
+	{
+		final PendingSource source = new PendingSource( 0 );
+		final PendingSource placeholder = new PendingSource( 0.5f );
+		final ArrayImg< FloatType, FloatArray > target = ArrayImgs.floats( width, height );
+		final VolatileXYRandomAccessibleProjector< FloatType, VolatileRealType< FloatType >, FloatType > projector =
+				new VolatileXYRandomAccessibleProjector< FloatType, VolatileRealType< FloatType >, FloatType >( source, placeholder, target, converter, tileSize );
+
+		source.load( 0, 0, width / 2, height );
+		projector.map();
+		assertFalse( projector.isValid() );
+
+		final RandomAccess< FloatType > access = target.randomAccess();
+		for ( int y = 0; y < height; ++y )
+			for ( int x = 0; x < width; ++x )
+			{
+				access.setPosition( x, 0 );
+				access.setPosition( y, 1 );
+				final float expected = x < width / 2 ? x + 1000 * y : 0.5f + x + 1000 * y;
+				assertEquals( expected, access.get().get(), 0 );
+			}
+	}
+}
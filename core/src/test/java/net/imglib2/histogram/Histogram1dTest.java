@@ -41,11 +41,19 @@ import static org.junit.Assert.assertEquals;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 import net.imglib2.histogram.BinMapper1d;
 import net.imglib2.histogram.Histogram1d;
 import net.imglib2.histogram.Integer1dBinMapper;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.type.numeric.integer.ShortType;
 import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.real.FloatType;
 
 import org.junit.Test;
 
@@ -105,6 +113,80 @@ public class Histogram1dTest {
 		assertEquals(0, hist.upperTailCount());
 	}
 
+	@Test
+	public void testParallelCount() {
+		Img<UnsignedByteType> bytes =
+			randomImg(new UnsignedByteType(), 0, 256);
+		assertParallelCountMatches(bytes,
+			new Integer1dBinMapper<UnsignedByteType>(0, 256, false));
+		assertParallelCountMatches(bytes,
+			new Integer1dBinMapper<UnsignedByteType>(40, 100, true));
+		assertParallelCountMatches(bytes,
+			new Integer1dBinMapper<UnsignedByteType>(40, 100, false));
+		assertParallelCountMatches(bytes,
+			new Real1dBinMapper<UnsignedByteType>(10, 200, 16, false));
+
+		Img<ShortType> shorts = randomImg(new ShortType(), -1000, 2000);
+		assertParallelCountMatches(shorts,
+			new Integer1dBinMapper<ShortType>(-500, 1000, true));
+
+		Img<IntType> ints = randomImg(new IntType(), -1000, 2000);
+		assertParallelCountMatches(ints,
+			new Integer1dBinMapper<IntType>(-500, 1000, false));
+
+		Img<FloatType> floats = randomImg(new FloatType(), -10, 20);
+		assertParallelCountMatches(floats,
+			new Real1dBinMapper<FloatType>(-5, 5, 7, true));
+	}
+
+	@Test
+	public void testMerge() {
+		List<UnsignedByteType> data = getData1();
+		BinMapper1d<UnsignedByteType> binMapper =
+			new Integer1dBinMapper<UnsignedByteType>(5, 5, false);
+		Histogram1d<UnsignedByteType> hist1 =
+			new Histogram1d<UnsignedByteType>(data.subList(0, 4), binMapper);
+		Histogram1d<UnsignedByteType> hist2 =
+			new Histogram1d<UnsignedByteType>(data.subList(4, data.size()),
+				binMapper);
+		hist1.merge(hist2);
+		Histogram1d<UnsignedByteType> expected =
+			new Histogram1d<UnsignedByteType>(data, binMapper);
+		assertEquals(expected.totalCount(), hist1.totalCount());
+		assertEquals(expected.ignoredCount(), hist1.ignoredCount());
+		for (long i = 0; i < expected.getBinCount(); i++) {
+			assertEquals(expected.frequency(i), hist1.frequency(i));
+		}
+	}
+
+	private <T extends RealType<T>> void assertParallelCountMatches(
+		Img<T> img, BinMapper1d<T> binMapper)
+	{
+		Histogram1d<T> expected = new Histogram1d<T>(img, binMapper);
+		for (int numThreads = 1; numThreads <= 3; numThreads++) {
+			Histogram1d<T> hist = new Histogram1d<T>(binMapper);
+			hist.countData(img, numThreads);
+			assertEquals(expected.totalCount(), hist.totalCount());
+			assertEquals(expected.ignoredCount(), hist.ignoredCount());
+			assertEquals(expected.distributionCount(), hist.distributionCount());
+			for (long i = 0; i < expected.getBinCount(); i++) {
+				assertEquals(expected.frequency(i), hist.frequency(i));
+			}
+		}
+	}
+
+	private <T extends RealType<T> & NativeType<T>> Img<T> randomImg(T type, int min,
+		int range)
+	{
+		Random rng = new Random(42);
+		Img<T> img =
+			new ArrayImgFactory<T>().create(new long[] { 37, 23 }, type);
+		for (T value : img) {
+			value.setReal(min + rng.nextInt(range));
+		}
+		return img;
+	}
+
 	private List<UnsignedByteType> getData1() {
 		List<UnsignedByteType> data = new ArrayList<UnsignedByteType>();
 		data.add(new UnsignedByteType(5));
@@ -43,15 +43,20 @@ import static org.junit.Assert.assertNotNull;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
 
 import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
 import net.imglib2.histogram.HistogramNd;
 import net.imglib2.histogram.Integer1dBinMapper;
 import net.imglib2.histogram.Real1dBinMapper;
 import net.imglib2.img.Img;
 import net.imglib2.img.array.ArrayImgFactory;
 import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.IntegerType;
 import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.type.numeric.integer.LongType;
 import net.imglib2.type.numeric.integer.UnsignedByteType;
 
 import org.junit.Test;
@@ -290,6 +295,50 @@ public class HistogramNdTest {
 		assertEquals(20000, hist.distributionCount());
 	}
 
+	@Test
+	public void testParallelCount() {
+		assertParallelCountMatches(new UnsignedByteType());
+		assertParallelCountMatches(new IntType());
+	}
+
+	private <T extends IntegerType<T> & NativeType<T>> void
+		assertParallelCountMatches(T type)
+	{
+		Random rng = new Random(7);
+		ArrayImgFactory<T> factory = new ArrayImgFactory<T>();
+		List<Img<T>> imgs = new ArrayList<Img<T>>();
+		List<Iterable<T>> iterables = new ArrayList<Iterable<T>>();
+		for (int i = 0; i < 3; i++) {
+			Img<T> img = factory.create(new long[] { 29, 31 }, type);
+			for (T value : img) {
+				value.setInteger(rng.nextInt(200));
+			}
+			imgs.add(img);
+			iterables.add(img);
+		}
+
+		HistogramNd<T> expected =
+			Integer1dBinMapper.histogramNd(new long[] { 0, 20, 50 }, new long[] {
+				200, 100, 80 }, new boolean[] { false, true, false });
+		expected.countData(iterables);
+
+		for (int numThreads = 1; numThreads <= 3; numThreads++) {
+			HistogramNd<T> hist =
+				Integer1dBinMapper.histogramNd(new long[] { 0, 20, 50 }, new long[] {
+					200, 100, 80 }, new boolean[] { false, true, false });
+			hist.countData(imgs, numThreads);
+			assertEquals(expected.totalCount(), hist.totalCount());
+			assertEquals(expected.ignoredCount(), hist.ignoredCount());
+			Cursor<LongType> e = expected.localizingCursor();
+			RandomAccess<LongType> h = hist.randomAccess();
+			while (e.hasNext()) {
+				e.fwd();
+				h.setPosition(e);
+				assertEquals(e.get().get(), h.get().get());
+			}
+		}
+	}
+
 	private List<UnsignedByteType> getData1() {
 		List<UnsignedByteType> data = new ArrayList<UnsignedByteType>();
 		data.add(new UnsignedByteType(5));
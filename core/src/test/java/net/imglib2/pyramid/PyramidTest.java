@@ -0,0 +1,183 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.pyramid;
+
+import static org.junit.Assert.assertEquals;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.FloatArray;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.Views;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link Pyramid}.
+ */
+public class PyramidTest
+{
+	final static int width = 37;
+
+	final static int height = 21;
+
+	final static ArrayImg< FloatType, FloatArray > createImg()
+	{
+		final float[] data = new float[ width * height ];
+		for ( int i = 0; i < data.length; ++i )
+			data[ i ] = ( i * 7919 ) % 101;
+		return ArrayImgs.floats( data, width, height );
+	}
+
+	final static float get( final RandomAccessibleInterval< FloatType > img, final long x, final long y )
+	{
+		final RandomAccess< FloatType > a = img.randomAccess();
+		a.setPosition( x, 0 );
+		a.setPosition( y, 1 );
+		return a.get().get();
+	}
+
+	/**
+	 * Reduce the source pixels covered by level pixel ( x, y ) directly.
+	 */
+	final static double expected( final RandomAccessibleInterval< FloatType > source, final Reducer reducer, final long f, final long x, final long y )
+	{
+		final double[] values = new double[ ( int )( f * f ) ];
+		int numValues = 0;
+		for ( long yy = y * f; yy < ( y + 1 ) * f; ++yy )
+			for ( long xx = x * f; xx < ( x + 1 ) * f; ++xx )
+				if ( xx >= source.min( 0 ) && xx <= source.max( 0 ) && yy >= source.min( 1 ) && yy <= source.max( 1 ) )
+					values[ numValues++ ] = get( source, xx, yy );
+		return reducer.reduce( values, numValues );
+	}
+
+	@Test
+	public void testMaxLevels()
+	{
+		final ArrayImg< FloatType, FloatArray > img = createImg();
+		final Pyramid< FloatType > pyramid = new Pyramid< FloatType >( img, new ArrayImgFactory< FloatType >(), new MeanReducer() );
+		assertEquals( 7, pyramid.numLevels() );
+		final Interval last = pyramid.levelInterval( pyramid.numLevels() - 1 );
+		assertEquals( 1, last.dimension( 0 ) );
+		assertEquals( 1, last.dimension( 1 ) );
+		final Interval level1 = pyramid.levelInterval( 1 );
+		assertEquals( 19, level1.dimension( 0 ) );
+		assertEquals( 11, level1.dimension( 1 ) );
+	}
+
+	@Test
+	public void testMaxAndMode()
+	{
+		final ArrayImg< FloatType, FloatArray > img = createImg();
+		final Reducer[] reducers = new Reducer[] { new MaxReducer(), new ModeReducer() };
+		for ( final Reducer reducer : reducers )
+		{
+			final Pyramid< FloatType > pyramid = new Pyramid< FloatType >( img, new ArrayImgFactory< FloatType >(), reducer, 3, 4 );
+			final RandomAccessibleInterval< FloatType > level1 = pyramid.getLevel( 1 );
+			for ( long y = level1.min( 1 ); y <= level1.max( 1 ); ++y )
+				for ( long x = level1.min( 0 ); x <= level1.max( 0 ); ++x )
+					assertEquals( expected( img, reducer, 2, x, y ), get( level1, x, y ), 0 );
+		}
+	}
+
+	@Test
+	public void testMeanWithOffset()
+	{
+		/* source interval with negative, odd min */
+		final RandomAccessibleInterval< FloatType > source = Views.translate( createImg(), -5, 3 );
+		final MeanReducer reducer = new MeanReducer();
+		final Pyramid< FloatType > pyramid = new Pyramid< FloatType >( source, new ArrayImgFactory< FloatType >(), reducer, 3, 4 );
+
+		final RandomAccessibleInterval< FloatType > level1 = pyramid.getLevel( 1 );
+		assertEquals( -3, level1.min( 0 ) );
+		assertEquals( 1, level1.min( 1 ) );
+		for ( long y = level1.min( 1 ); y <= level1.max( 1 ); ++y )
+			for ( long x = level1.min( 0 ); x <= level1.max( 0 ); ++x )
+				assertEquals( expected( source, reducer, 2, x, y ), get( level1, x, y ), 1e-5 );
+
+		/* level 2 interior pixels are means of 16 source pixels */
+		final RandomAccessibleInterval< FloatType > level2 = pyramid.getLevel( 2 );
+		for ( long y = level2.min( 1 ) + 1; y < level2.max( 1 ); ++y )
+			for ( long x = level2.min( 0 ) + 1; x < level2.max( 0 ); ++x )
+				assertEquals( expected( source, reducer, 4, x, y ), get( level2, x, y ), 1e-4 );
+	}
+
+	@Test
+	public void testLazyBlocks()
+	{
+		final ArrayImg< FloatType, FloatArray > img = createImg();
+		final Pyramid< FloatType > pyramid = new Pyramid< FloatType >( img, new ArrayImgFactory< FloatType >(), new MeanReducer(), 3, 4 );
+		assertEquals( 0, pyramid.numComputedBlocks( 1 ) );
+		assertEquals( 0, pyramid.numComputedBlocks( 2 ) );
+
+		get( pyramid.getLevel( 2 ), 0, 0 );
+		assertEquals( 1, pyramid.numComputedBlocks( 2 ) );
+		/* one level 2 block of 4x4 needs 8x8 level 1 pixels, i.e. 2x2 blocks */
+		assertEquals( 4, pyramid.numComputedBlocks( 1 ) );
+
+		get( pyramid.getLevel( 2 ), 1, 1 );
+		assertEquals( 1, pyramid.numComputedBlocks( 2 ) );
+	}
+
+	@Test
+	public void testLevelInterval()
+	{
+		final ArrayImg< FloatType, FloatArray > img = createImg();
+		final Pyramid< FloatType > pyramid = new Pyramid< FloatType >( img, new ArrayImgFactory< FloatType >(), new MeanReducer() );
+		final Interval interval = pyramid.levelInterval( 2, new net.imglib2.FinalInterval( new long[] { 5, -10 }, new long[] { 17, 9 } ) );
+		assertEquals( 1, interval.min( 0 ) );
+		assertEquals( 0, interval.min( 1 ) );
+		assertEquals( 4, interval.max( 0 ) );
+		assertEquals( 2, interval.max( 1 ) );
+	}
+
+	@Test
+	public void testBestLevel()
+	{
+		final ArrayImg< FloatType, FloatArray > img = createImg();
+		final Pyramid< FloatType > pyramid = new Pyramid< FloatType >( img, new ArrayImgFactory< FloatType >(), new MeanReducer() );
+		assertEquals( 0, pyramid.bestLevel( 2.0 ) );
+		assertEquals( 0, pyramid.bestLevel( 0.7 ) );
+		assertEquals( 1, pyramid.bestLevel( 0.5 ) );
+		assertEquals( 3, pyramid.bestLevel( 0.125 ) );
+		assertEquals( 6, pyramid.bestLevel( 1e-6 ) );
+	}
+}
@@ -0,0 +1,287 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.roi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import net.imglib2.Cursor;
+import net.imglib2.RealPoint;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.view.Views;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link ScanlineSpans} and their use by the ROIs.
+ */
+public class ScanlineSpansTest
+{
+	final static int width = 23;
+
+	final static int height = 7;
+
+	final static int depth = 3;
+
+	/**
+	 * Build 3d spans from a mask indexed x + width * ( y + height * z ).
+	 */
+	private static ScanlineSpans fromMask( final boolean[] mask )
+	{
+		final ScanlineSpans.RunBuffer buffer = new ScanlineSpans.RunBuffer( 3 );
+		final long[] row = new long[ 2 ];
+		for ( int z = 0; z < depth; ++z )
+			for ( int y = 0; y < height; ++y )
+			{
+				row[ 0 ] = y;
+				row[ 1 ] = z;
+				for ( int x = 0; x < width; ++x )
+					if ( mask[ x + width * ( y + height * z ) ] )
+						buffer.add( x, x + 1, row, 0 );
+			}
+		return buffer.build();
+	}
+
+	private static boolean[] randomMask( final Random random )
+	{
+		final boolean[] mask = new boolean[ width * height * depth ];
+		for ( int i = 0; i < mask.length; ++i )
+			mask[ i ] = random.nextInt( 3 ) == 0;
+		return mask;
+	}
+
+	private static void assertSpansEqualMask( final boolean[] mask, final ScanlineSpans spans )
+	{
+		final long[] position = new long[ 3 ];
+		long size = 0;
+		for ( int z = 0; z < depth; ++z )
+			for ( int y = 0; y < height; ++y )
+				for ( int x = 0; x < width; ++x )
+				{
+					position[ 0 ] = x;
+					position[ 1 ] = y;
+					position[ 2 ] = z;
+					final boolean expected = mask[ x + width * ( y + height * z ) ];
+					assertEquals( expected, spans.contains( position ) );
+					if ( expected )
+						++size;
+				}
+		assertEquals( size, spans.size() );
+	}
+
+	@Test
+	public void testMergeRuns()
+	{
+		final boolean[] mask = new boolean[ width * height * depth ];
+		for ( int x = 3; x < 10; ++x )
+			mask[ x + width * ( 2 + height ) ] = true;
+		final ScanlineSpans spans = fromMask( mask );
+		assertEquals( 1, spans.numRuns() );
+		assertEquals( 3, spans.getStart( 0 ) );
+		assertEquals( 10, spans.getEnd( 0 ) );
+		assertEquals( 2, spans.getPosition( 0, 1 ) );
+		assertEquals( 1, spans.getPosition( 0, 2 ) );
+	}
+
+	@Test
+	public void testSetAlgebra()
+	{
+		final Random random = new Random( 4321 );
+		for ( int trial = 0; trial < 10; ++trial )
+		{
+			final boolean[] a = randomMask( random );
+			final boolean[] b = randomMask( random );
+			final ScanlineSpans sa = fromMask( a );
+			final ScanlineSpans sb = fromMask( b );
+			assertSpansEqualMask( a, sa );
+
+			final boolean[] or = new boolean[ a.length ];
+			final boolean[] and = new boolean[ a.length ];
+			final boolean[] not = new boolean[ a.length ];
+			final boolean[] xor = new boolean[ a.length ];
+			for ( int i = 0; i < a.length; ++i )
+			{
+				or[ i ] = a[ i ] || b[ i ];
+				and[ i ] = a[ i ] && b[ i ];
+				not[ i ] = a[ i ] && !b[ i ];
+				xor[ i ] = a[ i ] ^ b[ i ];
+			}
+			assertSpansEqualMask( or, sa.union( sb ) );
+			assertSpansEqualMask( and, sa.intersection( sb ) );
+			assertSpansEqualMask( not, sa.difference( sb ) );
+			assertSpansEqualMask( xor, sa.xor( sb ) );
+		}
+	}
+
+	@Test
+	public void testNextRasterWithInterval()
+	{
+		final Random random = new Random( 1234 );
+		final boolean[] mask = randomMask( random );
+		final ScanlineSpans spans = fromMask( mask );
+		final net.imglib2.FinalInterval interval = new net.imglib2.FinalInterval( new long[] { 4, 1, 1 }, new long[] { 15, 5, 2 } );
+		final long[] position = new long[] { Long.MIN_VALUE, Long.MIN_VALUE, Long.MIN_VALUE };
+		final long[] end = new long[ 3 ];
+		final boolean[] found = new boolean[ mask.length ];
+		while ( spans.nextRaster( position, end, interval ) )
+		{
+			for ( long x = position[ 0 ]; x < end[ 0 ]; ++x )
+			{
+				assertTrue( x >= 4 && x <= 15 );
+				final int i = ( int )( x + width * ( position[ 1 ] + height * position[ 2 ] ) );
+				assertFalse( found[ i ] );
+				found[ i ] = true;
+			}
+			position[ 0 ] = end[ 0 ];
+		}
+		for ( int z = 0; z < depth; ++z )
+			for ( int y = 0; y < height; ++y )
+				for ( int x = 0; x < width; ++x )
+				{
+					final boolean inside = x >= 4 && x <= 15 && y >= 1 && y <= 5 && z >= 1 && z <= 2;
+					final int i = x + width * ( y + height * z );
+					assertEquals( inside && mask[ i ], found[ i ] );
+				}
+	}
+
+	@Test
+	public void testPolygonSpans()
+	{
+		final PolygonRegionOfInterest polygon = new PolygonRegionOfInterest();
+		final double[][] vertices = { { 2.5, 1.2 }, { 30.3, 5.5 }, { 12.1, 9.9 }, { 18.2, 25.7 }, { 1.1, 20.3 } };
+		for ( int i = 0; i < vertices.length; ++i )
+			polygon.addVertex( i, new RealPoint( vertices[ i ] ) );
+
+		final ScanlineSpans spans = polygon.getScanlineSpans();
+		assertTrue( spans == polygon.getScanlineSpans() );
+		final long[] position = new long[ 2 ];
+		for ( int i = 0; i < spans.numRuns(); ++i )
+		{
+			position[ 1 ] = spans.getPosition( i, 1 );
+			for ( position[ 0 ] = spans.getStart( i ); position[ 0 ] < spans.getEnd( i ); ++position[ 0 ] )
+				assertTrue( polygon.contains( new double[] { position[ 0 ], position[ 1 ] } ) );
+		}
+
+		/* iterate over an image, values are x + 100 * y */
+		final Img< IntType > img = new ArrayImgFactory< IntType >().create( new long[] { 40, 40 }, new IntType() );
+		final Cursor< IntType > c = img.localizingCursor();
+		while ( c.hasNext() )
+		{
+			c.fwd();
+			c.get().set( c.getIntPosition( 0 ) + 100 * c.getIntPosition( 1 ) );
+		}
+		long expected = 0;
+		for ( int i = 0; i < spans.numRuns(); ++i )
+			for ( long x = spans.getStart( i ); x < spans.getEnd( i ); ++x )
+				expected += x + 100 * spans.getPosition( i, 1 );
+		long sum = 0;
+		long count = 0;
+		for ( final IntType t : polygon.getIterableIntervalOverROI( img ) )
+		{
+			sum += t.get();
+			++count;
+		}
+		assertEquals( spans.size(), count );
+		assertEquals( expected, sum );
+
+		/* moving invalidates the spans */
+		polygon.move( 3, 0 );
+		final ScanlineSpans moved = polygon.getScanlineSpans();
+		assertTrue( moved != spans );
+		assertEquals( spans.size(), moved.size() );
+		assertEquals( spans.getStart( 0 ) + 3, moved.getStart( 0 ) );
+	}
+
+	@Test
+	@SuppressWarnings( "deprecation" )
+	public void testCompositeSpans()
+	{
+		final RectangleRegionOfInterest a = new RectangleRegionOfInterest( new double[] { 0, 0 }, new double[] { 10, 10 } );
+		final RectangleRegionOfInterest b = new RectangleRegionOfInterest( new double[] { 5, 5 }, new double[] { 10, 10 } );
+		final CompositeRegionOfInterest composite = new CompositeRegionOfInterest( a );
+		composite.not( b );
+		final ScanlineSpans spans = composite.getScanlineSpans();
+		assertEquals( a.getScanlineSpans().size() - a.getScanlineSpans().intersection( b.getScanlineSpans() ).size(), spans.size() );
+		final long[] position = new long[ 2 ];
+		for ( position[ 1 ] = -2; position[ 1 ] < 20; ++position[ 1 ] )
+			for ( position[ 0 ] = -2; position[ 0 ] < 20; ++position[ 0 ] )
+				assertEquals( composite.contains( new double[] { position[ 0 ], position[ 1 ] } ), spans.contains( position ) );
+	}
+
+	@Test
+	public void testGeneralPathSpans()
+	{
+		final GeneralPathRegionOfInterest path = new GeneralPathRegionOfInterest();
+		path.moveTo( 2, 2 );
+		path.lineTo( 12, 2 );
+		path.lineTo( 12, 8 );
+		path.lineTo( 2, 8 );
+		path.close();
+		assertEquals( 60, path.getScanlineSpans().size() );
+
+		/* two cursors iterate independently */
+		final Img< IntType > img = new ArrayImgFactory< IntType >().create( new long[] { 20, 20 }, new IntType() );
+		final Cursor< IntType > c1 = path.getIterableIntervalOverROI( img ).cursor();
+		final Cursor< IntType > c2 = path.getIterableIntervalOverROI( Views.extendZero( img ) ).cursor();
+		int n = 0;
+		while ( c1.hasNext() )
+		{
+			c1.fwd();
+			c2.fwd();
+			assertEquals( c1.getLongPosition( 0 ), c2.getLongPosition( 0 ) );
+			assertEquals( c1.getLongPosition( 1 ), c2.getLongPosition( 1 ) );
+			++n;
+		}
+		assertFalse( c2.hasNext() );
+		assertEquals( 60, n );
+
+		/* modifying the path invalidates the spans */
+		path.reset();
+		path.moveTo( 0, 0 );
+		path.lineTo( 4, 0 );
+		path.lineTo( 4, 4 );
+		path.lineTo( 0, 4 );
+		path.close();
+		assertEquals( 16, path.getScanlineSpans().size() );
+	}
+}
@@ -39,10 +39,24 @@ package net.imglib2.util;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
 import net.imglib2.RandomAccess;
 import net.imglib2.img.Img;
+import net.imglib2.img.ImgFactory;
 import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.img.planar.PlanarImgFactory;
+import net.imglib2.type.numeric.complex.ComplexFloatType;
 import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
 import net.imglib2.type.numeric.integer.LongType;
 import net.imglib2.type.numeric.real.DoubleType;
 import net.imglib2.type.numeric.real.FloatType;
@@ -303,4 +317,146 @@ public class ImgUtilTest {
 		}
 	}
 
+	@SuppressWarnings("unchecked")
+	private static ImgFactory<FloatType> [] floatFactories() {
+		return new ImgFactory[] { new ArrayImgFactory<FloatType>(), new PlanarImgFactory<FloatType>(), new CellImgFactory<FloatType>(2) };
+	}
+
+	private static Img<FloatType> createRamp(final ImgFactory<FloatType> factory, final long [] dimensions) {
+		final Img<FloatType> img = factory.create(dimensions, new FloatType());
+		final Cursor<FloatType> c = img.localizingCursor();
+		while (c.hasNext()) {
+			c.fwd();
+			float value = 0;
+			for (int d = dimensions.length - 1; d >= 0; d--) {
+				value = value * dimensions[d] + c.getIntPosition(d);
+			}
+			c.get().set(value);
+		}
+		return img;
+	}
+
+	@Test
+	public void testCopyToArrayInterval() {
+		final long [] dimensions = { 7, 5, 3 };
+		final FinalInterval interval = new FinalInterval(new long [] { 1, 1, 0 }, new long [] { 5, 3, 2 });
+		final float [] expected = new float[2 + 5 * 3 * 3];
+		int i = 2;
+		for (int z = 0; z <= 2; z++)
+			for (int y = 1; y <= 3; y++)
+				for (int x = 1; x <= 5; x++)
+					expected[i++] = x + 7 * (y + 5 * z);
+		for (final ImgFactory<FloatType> factory : floatFactories()) {
+			for (int numThreads = 1; numThreads <= 3; numThreads++) {
+				final Img<FloatType> img = createRamp(factory, dimensions);
+				final float [] dest = new float[expected.length];
+				ImgUtil.copyToArray(img, interval, dest, 2, numThreads);
+				assertArrayEquals(expected, dest, 0);
+			}
+		}
+	}
+
+	@Test
+	public void testCopyFromArrayInterval() {
+		final long [] dimensions = { 6, 4, 3 };
+		final FinalInterval interval = new FinalInterval(new long [] { 2, 0, 1 }, new long [] { 4, 3, 2 });
+		final float [] src = new float[3 * 4 * 2];
+		for (int i = 0; i < src.length; i++)
+			src[i] = -1 - i;
+		for (final ImgFactory<FloatType> factory : floatFactories()) {
+			final Img<FloatType> img = createRamp(factory, dimensions);
+			ImgUtil.copyFromArray(src, 0, interval, img, 2);
+			final Cursor<FloatType> c = img.localizingCursor();
+			final long [] position = new long[3];
+			while (c.hasNext()) {
+				c.fwd();
+				c.localize(position);
+				if (position[0] >= 2 && position[0] <= 4 && position[2] >= 1)
+					assertEquals(src[(int) (position[0] - 2 + 3 * (position[1] + 4 * (position[2] - 1)))], c.get().get(), 0);
+				else
+					assertEquals(position[0] + 6 * (position[1] + 4 * position[2]), c.get().get(), 0);
+			}
+		}
+	}
+
+	@Test
+	public void testCopyWholeImageRoundTrip() {
+		final long [] dimensions = { 5, 4, 3 };
+		for (final ImgFactory<FloatType> factory : floatFactories()) {
+			final float [] data = new float[5 * 4 * 3];
+			ImgUtil.copyToArray(createRamp(factory, dimensions), data);
+			for (int i = 0; i < data.length; i++)
+				assertEquals(i, data[i], 0);
+			final Img<FloatType> img = factory.create(dimensions, new FloatType());
+			ImgUtil.copyFromArray(data, img);
+			final float [] copy = new float[data.length];
+			ImgUtil.copyToArray(img, copy);
+			assertArrayEquals(data, copy, 0);
+		}
+	}
+
+	@Test
+	public void testCopyBufferByteOrder() {
+		final short [] values = { 1, 0x102, (short) 0xff00, 7, 8, 9 };
+		final Img<UnsignedShortType> img = ArrayImgs.unsignedShorts(values.clone(), 3, 2);
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(1 + 2 * values.length);
+		buffer.position(1);
+		ImgUtil.copyToBuffer(img, img, buffer, ByteOrder.BIG_ENDIAN, 1);
+		assertEquals(1, buffer.position());
+		assertEquals(0x01, buffer.get(3));
+		assertEquals(0x02, buffer.get(4));
+		assertEquals((byte) 0xff, buffer.get(5));
+		assertEquals(0x00, buffer.get(6));
+		final Img<UnsignedShortType> planar = new PlanarImgFactory<UnsignedShortType>().create(new long [] { 3, 2 }, new UnsignedShortType());
+		ImgUtil.copyFromBuffer(buffer, ByteOrder.LITTLE_ENDIAN, planar, planar, 1);
+		final RandomAccess<UnsignedShortType> ra = planar.randomAccess();
+		for (int i = 0; i < values.length; i++) {
+			ra.setPosition(new long [] { i % 3, i / 3 });
+			final int swapped = ((values[i] & 0xff) << 8) | ((values[i] >> 8) & 0xff);
+			assertEquals(swapped, ra.get().get());
+		}
+	}
+
+	@Test
+	public void testCopyComplexInterleaved() {
+		final Img<ComplexFloatType> img = new CellImgFactory<ComplexFloatType>(2).create(new long [] { 3, 3 }, new ComplexFloatType());
+		final float [] src = new float[2 * 9];
+		for (int i = 0; i < src.length; i++)
+			src[i] = i;
+		ImgUtil.copyFromArray(src, img);
+		final RandomAccess<ComplexFloatType> ra = img.randomAccess();
+		ra.setPosition(new long [] { 2, 1 });
+		assertEquals(10, ra.get().getRealFloat(), 0);
+		assertEquals(11, ra.get().getImaginaryFloat(), 0);
+	}
+
+	@Test
+	public void testGetStorageArray() {
+		final float [] data = new float[12];
+		assertSame(data, ImgUtil.getStorageArray(ArrayImgs.floats(data, 3, 4)));
+		assertEquals(null, ImgUtil.getStorageArray(new PlanarImgFactory<FloatType>().create(new long [] { 3, 4, 2 }, new FloatType())));
+	}
+
+	@Test
+	public void testCopyToArrayMismatch() {
+		final Img<FloatType> img = new ArrayImgFactory<FloatType>().create(new long [] { 3, 4 }, new FloatType());
+		try {
+			ImgUtil.copyToArray(img, new double[12]);
+			fail("copying into an array of the wrong type should fail");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			ImgUtil.copyToArray(img, new float[11]);
+			fail("copying into a too small array should fail");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			ImgUtil.copyToArray(img, new FinalInterval(new long [] { 0, 0 }, new long [] { 3, 3 }), new float[16], 0, 1);
+			fail("copying an interval outside of the image should fail");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
 }
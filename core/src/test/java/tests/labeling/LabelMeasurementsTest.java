@@ -0,0 +1,239 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package tests.labeling;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.labeling.LabelMeasurements;
+import net.imglib2.labeling.Labeling;
+import net.imglib2.labeling.LabelingType;
+import net.imglib2.labeling.NativeImgLabeling;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.type.numeric.real.FloatType;
+
+import org.junit.Test;
+
+/**
+ * Checks {@link LabelMeasurements} against per label brute force measurements.
+ */
+public class LabelMeasurementsTest
+{
+	private final long[] dimensions = new long[] { 23, 17, 5 };
+
+	private Labeling< Integer > makeLabeling()
+	{
+		final Labeling< Integer > labeling = new NativeImgLabeling< Integer, IntType >( new ArrayImgFactory< IntType >().create( dimensions, new IntType() ) );
+		final Cursor< LabelingType< Integer >> c = labeling.localizingCursor();
+		final Random random = new Random( 7 );
+		while ( c.hasNext() )
+		{
+			final LabelingType< Integer > t = c.next();
+			final int r = random.nextInt( 10 );
+			if ( r == 0 )
+				continue;
+			final List< Integer > labels = new ArrayList< Integer >();
+			// labels 1-3 are blocks along x, every fifth pixel also gets 5
+			labels.add( 1 + c.getIntPosition( 0 ) / 8 );
+			if ( r == 5 )
+				labels.add( 5 );
+			t.setLabeling( labels );
+		}
+		return labeling;
+	}
+
+	private Img< FloatType > makeImage( final boolean cells )
+	{
+		final Img< FloatType > img = cells ? new CellImgFactory< FloatType >( 4 ).create( dimensions, new FloatType() ) : new ArrayImgFactory< FloatType >().create( dimensions, new FloatType() );
+		final Random random = new Random( 11 );
+		for ( final FloatType t : img )
+			t.set( random.nextFloat() * 100 );
+		return img;
+	}
+
+	@Test
+	public void testMatchesBruteForce()
+	{
+		final Labeling< Integer > labeling = makeLabeling();
+		final List< RandomAccessible< ? extends RealType< ? >>> images = new ArrayList< RandomAccessible< ? extends RealType< ? >>>();
+		images.add( makeImage( false ) );
+		images.add( makeImage( true ) );
+
+		final LabelMeasurements< Integer > expected = LabelMeasurements.measure( labeling, images, 1 );
+		assertEquals( Arrays.asList( 1, 2, 3, 5 ), expected.getLabels() );
+
+		for ( final Integer label : expected.getLabels() )
+		{
+			final int i = expected.indexOf( label );
+			long area = 0;
+			final long[] min = new long[] { Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE };
+			final long[] max = new long[] { Long.MIN_VALUE, Long.MIN_VALUE, Long.MIN_VALUE };
+			final double[] sumPos = new double[ 3 ];
+			final List< long[] > positions = new ArrayList< long[] >();
+			final List< double[] > values = new ArrayList< double[] >();
+			final Cursor< LabelingType< Integer >> c = labeling.localizingCursor();
+			// channel 0 is iterated along, channel 1 is a cell image read by
+			// random access
+			final Cursor< ? extends RealType< ? >> c0 = ( ( Img< FloatType > ) images.get( 0 ) ).localizingCursor();
+			final RandomAccess< ? extends RealType< ? >> ra1 = images.get( 1 ).randomAccess();
+			while ( c.hasNext() )
+			{
+				c0.fwd();
+				if ( !c.next().getLabeling().contains( label ) )
+					continue;
+				area++;
+				final long[] pos = new long[ 3 ];
+				c.localize( pos );
+				positions.add( pos );
+				for ( int d = 0; d < 3; d++ )
+				{
+					min[ d ] = Math.min( min[ d ], pos[ d ] );
+					max[ d ] = Math.max( max[ d ], pos[ d ] );
+					sumPos[ d ] += pos[ d ];
+				}
+				ra1.setPosition( pos );
+				values.add( new double[] { c0.get().getRealDouble(), ra1.get().getRealDouble() } );
+			}
+			assertEquals( area, expected.area()[ i ] );
+			for ( int d = 0; d < 3; d++ )
+			{
+				assertEquals( min[ d ], expected.min( d )[ i ] );
+				assertEquals( max[ d ], expected.max( d )[ i ] );
+				assertEquals( sumPos[ d ] / area, expected.centroid( d )[ i ], 1e-9 );
+			}
+			for ( int d1 = 0; d1 < 3; d1++ )
+			{
+				for ( int d2 = 0; d2 < 3; d2++ )
+				{
+					double moment = 0;
+					for ( final long[] pos : positions )
+						moment += ( pos[ d1 ] - sumPos[ d1 ] / area ) * ( pos[ d2 ] - sumPos[ d2 ] / area );
+					assertEquals( moment, expected.centralMoment( d1, d2 )[ i ], 1e-6 );
+				}
+			}
+			for ( int ch = 0; ch < 2; ch++ )
+			{
+				double sum = 0;
+				double minValue = Double.POSITIVE_INFINITY;
+				double maxValue = Double.NEGATIVE_INFINITY;
+				for ( final double[] v : values )
+				{
+					sum += v[ ch ];
+					minValue = Math.min( minValue, v[ ch ] );
+					maxValue = Math.max( maxValue, v[ ch ] );
+				}
+				double squares = 0;
+				for ( final double[] v : values )
+					squares += ( v[ ch ] - sum / area ) * ( v[ ch ] - sum / area );
+				assertEquals( sum, expected.sum( ch )[ i ], 1e-3 );
+				assertEquals( sum / area, expected.mean( ch )[ i ], 1e-6 );
+				assertEquals( squares / ( area - 1 ), expected.variance( ch )[ i ], 1e-6 );
+				assertEquals( minValue, expected.minIntensity( ch )[ i ], 0 );
+				assertEquals( maxValue, expected.maxIntensity( ch )[ i ], 0 );
+			}
+		}
+
+		for ( int numThreads = 2; numThreads <= 5; numThreads++ )
+		{
+			final LabelMeasurements< Integer > m = LabelMeasurements.measure( labeling, images, numThreads );
+			assertEquals( expected.getLabels(), m.getLabels() );
+			assertEquals( 2, m.numChannels() );
+			for ( int i = 0; i < m.numLabels(); i++ )
+			{
+				assertEquals( expected.area()[ i ], m.area()[ i ] );
+				for ( int d1 = 0; d1 < 3; d1++ )
+				{
+					assertEquals( expected.min( d1 )[ i ], m.min( d1 )[ i ] );
+					assertEquals( expected.max( d1 )[ i ], m.max( d1 )[ i ] );
+					assertEquals( expected.centroid( d1 )[ i ], m.centroid( d1 )[ i ], 1e-9 );
+					for ( int d2 = 0; d2 < 3; d2++ )
+						assertEquals( expected.centralMoment( d1, d2 )[ i ], m.centralMoment( d1, d2 )[ i ], 1e-6 );
+				}
+				for ( int ch = 0; ch < 2; ch++ )
+				{
+					assertEquals( expected.sum( ch )[ i ], m.sum( ch )[ i ], 1e-3 );
+					assertEquals( expected.mean( ch )[ i ], m.mean( ch )[ i ], 1e-6 );
+					assertEquals( expected.variance( ch )[ i ], m.variance( ch )[ i ], 1e-6 );
+					assertEquals( expected.minIntensity( ch )[ i ], m.minIntensity( ch )[ i ], 0 );
+					assertEquals( expected.maxIntensity( ch )[ i ], m.maxIntensity( ch )[ i ], 0 );
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testEmptyLabeling()
+	{
+		final Labeling< Integer > labeling = new NativeImgLabeling< Integer, IntType >( new ArrayImgFactory< IntType >().create( new long[] { 0, 4 }, new IntType() ) );
+		final LabelMeasurements< Integer > m = LabelMeasurements.measure( labeling, 2 );
+		assertEquals( 0, m.numLabels() );
+		assertEquals( 2, m.numDimensions() );
+	}
+
+	@Test
+	public void testCentralMoments()
+	{
+		final Labeling< Integer > labeling = new NativeImgLabeling< Integer, IntType >( new ArrayImgFactory< IntType >().create( new long[] { 10, 10 }, new IntType() ) );
+		final Cursor< LabelingType< Integer >> c = labeling.localizingCursor();
+		while ( c.hasNext() )
+		{
+			final LabelingType< Integer > t = c.next();
+			// a diagonal line
+			if ( c.getIntPosition( 0 ) == c.getIntPosition( 1 ) )
+				t.setLabel( 1 );
+		}
+		final LabelMeasurements< Integer > m = LabelMeasurements.measure( labeling, 3 );
+		assertEquals( 10, m.area()[ 0 ] );
+		assertEquals( 4.5, m.centroid( 0 )[ 0 ], 1e-12 );
+		// sum of (i - 4.5)^2 for i = 0..9
+		assertEquals( 82.5, m.centralMoment( 0, 0 )[ 0 ], 1e-9 );
+		assertEquals( 82.5, m.centralMoment( 1, 0 )[ 0 ], 1e-9 );
+		assertEquals( 82.5, m.centralMoment( 1, 1 )[ 0 ], 1e-9 );
+	}
+}
@@ -0,0 +1,277 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.ops.data;
+
+import java.util.Arrays;
+
+/**
+ * A mergeable, bounded memory summary of a stream of values that answers
+ * approximate quantile queries.
+ * <p>
+ * Values are collected in a hierarchy of buffers. Each value in buffer level
+ * <em>l</em> stands for 2^<em>l</em> original values. As soon as a buffer
+ * holds <em>capacity</em> values it is sorted and every second value is passed
+ * on to the next level. Quantiles are exact as long as fewer than
+ * <em>capacity</em> values have been added; beyond that the rank error grows
+ * with the number of levels, i.e. logarithmically with the number of values.
+ * Two sketches can be merged, which allows to summarize parts of the data in
+ * parallel.
+ */
+public final class QuantileSketch
+{
+
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	private final int m_capacity;
+
+	private double[][] m_levels;
+
+	private int[] m_sizes;
+
+	private long m_count;
+
+	private boolean m_keepOdd;
+
+	public QuantileSketch()
+	{
+		this( DEFAULT_CAPACITY );
+	}
+
+	/**
+	 * @param capacity
+	 *            number of values a buffer level may hold before it is
+	 *            compacted. Larger capacities give more accurate quantiles.
+	 */
+	public QuantileSketch( final int capacity )
+	{
+		if ( capacity < 2 ) { throw new IllegalArgumentException( "Capacity of a quantile sketch must be at least 2" ); }
+		m_capacity = capacity;
+		m_levels = new double[ 0 ][];
+		m_sizes = new int[ 0 ];
+		m_count = 0;
+	}
+
+	public final int capacity()
+	{
+		return m_capacity;
+	}
+
+	/**
+	 * @return the number of values summarized by this sketch
+	 */
+	public final long count()
+	{
+		return m_count;
+	}
+
+	public final void clear()
+	{
+		m_levels = new double[ 0 ][];
+		m_sizes = new int[ 0 ];
+		m_count = 0;
+		m_keepOdd = false;
+	}
+
+	public final void add( final double value )
+	{
+		ensureLevel( 0 );
+		m_levels[ 0 ][ m_sizes[ 0 ]++ ] = value;
+		++m_count;
+		if ( m_sizes[ 0 ] >= m_capacity )
+			compact( 0 );
+	}
+
+	/**
+	 * Adds all values summarized by another sketch to this sketch.
+	 */
+	public final void merge( final QuantileSketch other )
+	{
+		for ( int l = 0; l < other.m_sizes.length; l++ )
+		{
+			ensureLevel( l );
+			final int n = other.m_sizes[ l ];
+			ensureLevelSize( l, m_sizes[ l ] + n );
+			System.arraycopy( other.m_levels[ l ], 0, m_levels[ l ], m_sizes[ l ], n );
+			m_sizes[ l ] += n;
+		}
+		m_count += other.m_count;
+		for ( int l = 0; l < m_sizes.length; l++ )
+		{
+			if ( m_sizes[ l ] >= m_capacity )
+				compact( l );
+		}
+	}
+
+	/**
+	 * @param q
+	 *            the quantile, between 0 and 1
+	 * @return the value at rank floor(q * count) of the summarized values,
+	 *         NaN if the sketch is empty
+	 */
+	public final double quantile( final double q )
+	{
+		if ( q < 0 || q > 1 ) { throw new IllegalArgumentException( "Quantile must be between 0 and 1" ); }
+		if ( m_count == 0 )
+			return Double.NaN;
+
+		int total = 0;
+		for ( int l = 0; l < m_sizes.length; l++ )
+			total += m_sizes[ l ];
+
+		// the weight of each value is 2^level
+		final double[] values = new double[ total ];
+		final int[] levels = new int[ total ];
+		int i = 0;
+		for ( int l = 0; l < m_sizes.length; l++ )
+		{
+			final double[] level = m_levels[ l ];
+			for ( int j = 0; j < m_sizes[ l ]; j++ )
+			{
+				values[ i ] = level[ j ];
+				levels[ i++ ] = l;
+			}
+		}
+		sortByValue( values, levels );
+
+		final double rank = Math.min( Math.floor( q * m_count ), m_count - 1 );
+		long cumulative = 0;
+		for ( int j = 0; j < total; j++ )
+		{
+			cumulative += 1l << levels[ j ];
+			if ( cumulative > rank )
+				return values[ j ];
+		}
+		return values[ total - 1 ];
+	}
+
+	public final QuantileSketch copy()
+	{
+		final QuantileSketch copy = new QuantileSketch( m_capacity );
+		copy.merge( this );
+		copy.m_keepOdd = m_keepOdd;
+		return copy;
+	}
+
+	private void compact( final int level )
+	{
+		final double[] values = m_levels[ level ];
+		int n = m_sizes[ level ];
+		Arrays.sort( values, 0, n );
+
+		// an odd value stays on this level so no weight is lost
+		double leftOver = 0;
+		final boolean odd = ( n & 1 ) == 1;
+		if ( odd )
+			leftOver = values[ --n ];
+
+		ensureLevel( level + 1 );
+		ensureLevelSize( level + 1, m_sizes[ level + 1 ] + n / 2 );
+		final double[] next = m_levels[ level + 1 ];
+
+		// alternate between keeping the odd and even values to avoid biasing
+		// the result towards either end
+		int k = m_sizes[ level + 1 ];
+		for ( int j = m_keepOdd ? 1 : 0; j < n; j += 2 )
+			next[ k++ ] = values[ j ];
+		m_sizes[ level + 1 ] = k;
+		m_keepOdd = !m_keepOdd;
+
+		m_sizes[ level ] = 0;
+		if ( odd )
+			values[ m_sizes[ level ]++ ] = leftOver;
+
+		if ( m_sizes[ level + 1 ] >= m_capacity )
+			compact( level + 1 );
+	}
+
+	private void ensureLevel( final int level )
+	{
+		if ( level < m_levels.length )
+			return;
+		m_levels = Arrays.copyOf( m_levels, level + 1 );
+		m_sizes = Arrays.copyOf( m_sizes, level + 1 );
+		m_levels[ level ] = new double[ m_capacity ];
+	}
+
+	private void ensureLevelSize( final int level, final int size )
+	{
+		if ( m_levels[ level ].length < size )
+			m_levels[ level ] = Arrays.copyOf( m_levels[ level ], Math.max( size, 2 * m_levels[ level ].length ) );
+	}
+
+	/** Bottom-up merge sort of the values, moving the levels along */
+	private static void sortByValue( final double[] values, final int[] levels )
+	{
+		final double[] tmpValues = new double[ values.length ];
+		final int[] tmpLevels = new int[ levels.length ];
+		for ( int width = 1; width < values.length; width *= 2 )
+		{
+			for ( int lo = 0; lo < values.length - width; lo += 2 * width )
+			{
+				final int mid = lo + width;
+				final int hi = Math.min( lo + 2 * width, values.length );
+				int a = lo, b = mid, k = lo;
+				while ( a < mid && b < hi )
+				{
+					if ( values[ b ] < values[ a ] )
+					{
+						tmpValues[ k ] = values[ b ];
+						tmpLevels[ k++ ] = levels[ b++ ];
+					}
+					else
+					{
+						tmpValues[ k ] = values[ a ];
+						tmpLevels[ k++ ] = levels[ a++ ];
+					}
+				}
+				while ( a < mid )
+				{
+					tmpValues[ k ] = values[ a ];
+					tmpLevels[ k++ ] = levels[ a++ ];
+				}
+				while ( b < hi )
+				{
+					tmpValues[ k ] = values[ b ];
+					tmpLevels[ k++ ] = levels[ b++ ];
+				}
+				System.arraycopy( tmpValues, lo, values, lo, hi - lo );
+				System.arraycopy( tmpLevels, lo, levels, lo, hi - lo );
+			}
+		}
+	}
+}
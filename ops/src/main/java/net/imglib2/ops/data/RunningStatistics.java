@@ -0,0 +1,249 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.ops.data;
+
+/**
+ * Single pass, mergeable accumulator of descriptive statistics. Count, sum,
+ * mean, variance, minimum and maximum are all updated with each added value so
+ * any combination of them can be computed in one traversal of the data.
+ * <p>
+ * The mean and variance are updated with Welford's algorithm and the sum with
+ * Kahan summation, which keeps them accurate for large numbers of values.
+ * Optionally the values are summarized in a {@link QuantileSketch} for
+ * (approximate) median and quantile queries. Accumulators of disjoint parts of
+ * the data can be merged, e.g. after accumulating the parts in parallel.
+ */
+public final class RunningStatistics
+{
+
+	private long m_count;
+
+	private double m_mean;
+
+	private double m_m2;
+
+	private double m_sum;
+
+	private double m_compensation;
+
+	private double m_min;
+
+	private double m_max;
+
+	private final QuantileSketch m_sketch;
+
+	/**
+	 * Creates an accumulator which does not track quantiles.
+	 */
+	public RunningStatistics()
+	{
+		this( null );
+	}
+
+	/**
+	 * @param sketch
+	 *            sketch used to summarize the values for quantile queries,
+	 *            null if quantiles are not of interest
+	 */
+	public RunningStatistics( final QuantileSketch sketch )
+	{
+		m_sketch = sketch;
+		clear();
+	}
+
+	public final void clear()
+	{
+		m_count = 0;
+		m_mean = 0;
+		m_m2 = 0;
+		m_sum = 0;
+		m_compensation = 0;
+		m_min = Double.POSITIVE_INFINITY;
+		m_max = Double.NEGATIVE_INFINITY;
+		if ( m_sketch != null )
+			m_sketch.clear();
+	}
+
+	public final void add( final double value )
+	{
+		++m_count;
+		final double delta = value - m_mean;
+		m_mean += delta / m_count;
+		m_m2 += delta * ( value - m_mean );
+
+		addToSum( value );
+
+		if ( value < m_min )
+			m_min = value;
+		if ( value > m_max )
+			m_max = value;
+
+		if ( m_sketch != null )
+			m_sketch.add( value );
+	}
+
+	/**
+	 * Adds the values accumulated by another accumulator to this one. If only
+	 * one of them tracks quantiles the result of {@link #quantile(double)} is
+	 * undefined.
+	 */
+	public final void merge( final RunningStatistics other )
+	{
+		if ( other.m_count == 0 )
+			return;
+
+		final long count = m_count + other.m_count;
+		final double delta = other.m_mean - m_mean;
+		m_mean += delta * other.m_count / count;
+		m_m2 += other.m_m2 + delta * delta * ( ( double ) m_count * other.m_count / count );
+		m_count = count;
+
+		addToSum( other.m_sum );
+		m_compensation += other.m_compensation;
+
+		if ( other.m_min < m_min )
+			m_min = other.m_min;
+		if ( other.m_max > m_max )
+			m_max = other.m_max;
+
+		if ( m_sketch != null && other.m_sketch != null )
+			m_sketch.merge( other.m_sketch );
+	}
+
+	public final long count()
+	{
+		return m_count;
+	}
+
+	public final double sum()
+	{
+		return m_sum - m_compensation;
+	}
+
+	/**
+	 * @return the arithmetic mean, NaN if no values were added
+	 */
+	public final double mean()
+	{
+		return m_count == 0 ? Double.NaN : m_mean;
+	}
+
+	/**
+	 * @return the sample variance (normalized by count - 1), NaN if less than
+	 *         two values were added
+	 */
+	public final double variance()
+	{
+		return m_count < 2 ? Double.NaN : m_m2 / ( m_count - 1 );
+	}
+
+	/**
+	 * @return the population variance (normalized by count), NaN if no values
+	 *         were added
+	 */
+	public final double populationVariance()
+	{
+		return m_count == 0 ? Double.NaN : m_m2 / m_count;
+	}
+
+	/**
+	 * @return the sample standard deviation
+	 */
+	public final double stdDeviation()
+	{
+		return Math.sqrt( variance() );
+	}
+
+	/**
+	 * @return the smallest value, positive infinity if no values were added
+	 */
+	public final double min()
+	{
+		return m_min;
+	}
+
+	/**
+	 * @return the largest value, negative infinity if no values were added
+	 */
+	public final double max()
+	{
+		return m_max;
+	}
+
+	public final boolean hasQuantiles()
+	{
+		return m_sketch != null;
+	}
+
+	/**
+	 * @see QuantileSketch#quantile(double)
+	 */
+	public final double quantile( final double q )
+	{
+		if ( m_sketch == null ) { throw new IllegalArgumentException( "Quantiles are not tracked by this accumulator" ); }
+		return m_sketch.quantile( q );
+	}
+
+	public final double median()
+	{
+		return quantile( 0.5 );
+	}
+
+	/**
+	 * @return an empty accumulator with the same configuration as this one
+	 */
+	public final RunningStatistics createEmpty()
+	{
+		return new RunningStatistics( m_sketch == null ? null : new QuantileSketch( m_sketch.capacity() ) );
+	}
+
+	public final RunningStatistics copy()
+	{
+		final RunningStatistics copy = createEmpty();
+		copy.merge( this );
+		return copy;
+	}
+
+	private void addToSum( final double value )
+	{
+		final double y = value - m_compensation;
+		final double t = m_sum + y;
+		m_compensation = ( t - m_sum ) - y;
+		m_sum = t;
+	}
+}
@@ -0,0 +1,316 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.ops.function.general;
+
+import net.imglib2.ops.function.Function;
+import net.imglib2.ops.util.LongIntHashMap;
+import net.imglib2.type.Type;
+
+/**
+ * A BoundedCachingFunction remembers the values of up to a fixed number of
+ * recently computed points. Where {@link CachingFunction} only avoids
+ * recomputation when the same point is evaluated twice in a row, this class
+ * serves overlapping neighborhood style access patterns in which every point
+ * is evaluated several times in close succession. It is worthwhile when the
+ * wrapped function is expensive (convolutions, parsed equations, etc.).
+ * <p>
+ * Points are keyed by their linearized position within a bounding region
+ * given at construction time. Points outside of that region are passed to
+ * the wrapped function uncached. When the cache is full the least recently
+ * used entries are evicted using the CLOCK approximation of LRU.
+ * <p>
+ * By default copies of a BoundedCachingFunction each get their own cache, so
+ * they can be used by different threads without synchronization. A shared
+ * BoundedCachingFunction instead hands the same cache to all of its copies
+ * so that values computed by one thread are reused by the others; access to
+ * the cache is then synchronized. Hit and miss counters are available via
+ * {@link #getHits()} and {@link #getMisses()} to judge the effectiveness of
+ * the cache.
+ * <p>
+ * Unlike CachingFunction the cached values are {@link Type}s, so that any
+ * real or complex valued function can be wrapped.
+ */
+public class BoundedCachingFunction<T extends Type<T>> implements
+	Function<long[], T>
+{
+
+	// -- instance variables --
+
+	private final Function<long[], T> otherFunc;
+	private final ValueCache<T> cache;
+	private final boolean shared;
+
+	// -- constructors --
+
+	/**
+	 * Creates a BoundedCachingFunction whose copies each own their cache.
+	 * 
+	 * @param otherFunc The function whose values are cached.
+	 * @param min The minimum corner of the region of points to cache.
+	 * @param max The maximum corner of the region of points to cache.
+	 * @param capacity The maximum number of values held in the cache.
+	 */
+	public BoundedCachingFunction(Function<long[], T> otherFunc, long[] min,
+		long[] max, int capacity)
+	{
+		this(otherFunc, min, max, capacity, false);
+	}
+
+	/**
+	 * Creates a BoundedCachingFunction.
+	 * 
+	 * @param otherFunc The function whose values are cached.
+	 * @param min The minimum corner of the region of points to cache.
+	 * @param max The maximum corner of the region of points to cache.
+	 * @param capacity The maximum number of values held in the cache.
+	 * @param shared If true all copies of this function share one
+	 *          (synchronized) cache. Otherwise each copy owns its cache.
+	 */
+	public BoundedCachingFunction(Function<long[], T> otherFunc, long[] min,
+		long[] max, int capacity, boolean shared)
+	{
+		this(otherFunc, new ValueCache<T>(min, max, capacity), shared);
+	}
+
+	private BoundedCachingFunction(Function<long[], T> otherFunc,
+		ValueCache<T> cache, boolean shared)
+	{
+		this.otherFunc = otherFunc;
+		this.cache = cache;
+		this.shared = shared;
+	}
+
+	// -- Function methods --
+
+	@Override
+	public void compute(long[] point, T output) {
+		final long key = cache.linearize(point);
+		if (key < 0) {
+			otherFunc.compute(point, output);
+			return;
+		}
+		if (!shared) {
+			if (cache.lookup(key, output)) return;
+			otherFunc.compute(point, output);
+			cache.store(key, output);
+			return;
+		}
+		synchronized (cache) {
+			if (cache.lookup(key, output)) return;
+		}
+		// compute outside the lock so other threads can keep reading the cache
+		otherFunc.compute(point, output);
+		synchronized (cache) {
+			cache.store(key, output);
+		}
+	}
+
+	@Override
+	public T createOutput() {
+		return otherFunc.createOutput();
+	}
+
+	@Override
+	public BoundedCachingFunction<T> copy() {
+		if (shared) {
+			return new BoundedCachingFunction<T>(otherFunc.copy(), cache, true);
+		}
+		return new BoundedCachingFunction<T>(otherFunc.copy(), cache.emptyCopy(),
+			false);
+	}
+
+	// -- BoundedCachingFunction methods --
+
+	/**
+	 * Returns true if this function shares its cache with its copies.
+	 */
+	public boolean isShared() {
+		return shared;
+	}
+
+	/**
+	 * Returns the maximum number of values held in the cache.
+	 */
+	public int getCapacity() {
+		return cache.capacity;
+	}
+
+	/**
+	 * Returns the number of evaluations answered from the cache.
+	 */
+	public long getHits() {
+		synchronized (cache) {
+			return cache.hits;
+		}
+	}
+
+	/**
+	 * Returns the number of evaluations of cacheable points that required the
+	 * wrapped function to be computed.
+	 */
+	public long getMisses() {
+		synchronized (cache) {
+			return cache.misses;
+		}
+	}
+
+	/**
+	 * Removes all values from the cache and resets the hit and miss counters.
+	 * This should be called if the wrapped function's values change.
+	 */
+	public void clearCache() {
+		synchronized (cache) {
+			cache.clear();
+		}
+	}
+
+	// -- private helpers --
+
+	/**
+	 * A fixed capacity map from linearized positions to values. Values are held
+	 * in preallocated slots. Evictions follow the CLOCK algorithm: each slot
+	 * has a reference flag that is set on access and the clock hand evicts the
+	 * first slot whose flag is clear, clearing the flags it passes by.
+	 */
+	private static class ValueCache<T extends Type<T>> {
+
+		private final long[] min;
+		private final long[] max;
+		private final long[] strides;
+		private final int capacity;
+		private final LongIntHashMap slots;
+		private final long[] keys;
+		private final Object[] values;
+		private final boolean[] referenced;
+		private int count;
+		private int hand;
+		private long hits;
+		private long misses;
+
+		public ValueCache(long[] min, long[] max, int capacity) {
+			if (min.length != max.length)
+				throw new IllegalArgumentException("region bounds differ in size");
+			if (capacity <= 0)
+				throw new IllegalArgumentException("capacity must be > 0");
+			this.min = min.clone();
+			this.max = max.clone();
+			this.strides = new long[min.length];
+			long stride = 1;
+			for (int i = 0; i < min.length; i++) {
+				final long dim = max[i] - min[i] + 1;
+				if (dim <= 0)
+					throw new IllegalArgumentException("max must be >= min");
+				if (stride > Long.MAX_VALUE / dim)
+					throw new IllegalArgumentException("region is too large");
+				strides[i] = stride;
+				stride *= dim;
+			}
+			this.capacity = capacity;
+			this.slots = new LongIntHashMap(capacity, -1);
+			this.keys = new long[capacity];
+			this.values = new Object[capacity];
+			this.referenced = new boolean[capacity];
+		}
+
+		public ValueCache<T> emptyCopy() {
+			return new ValueCache<T>(min, max, capacity);
+		}
+
+		public long linearize(long[] point) {
+			long key = 0;
+			for (int i = 0; i < min.length; i++) {
+				final long p = point[i];
+				if (p < min[i] || p > max[i]) return -1;
+				key += (p - min[i]) * strides[i];
+			}
+			return key;
+		}
+
+		@SuppressWarnings("unchecked")
+		public boolean lookup(long key, T output) {
+			final int slot = slots.get(key);
+			if (slot < 0) {
+				misses++;
+				return false;
+			}
+			hits++;
+			referenced[slot] = true;
+			output.set((T) values[slot]);
+			return true;
+		}
+
+		@SuppressWarnings("unchecked")
+		public void store(long key, T value) {
+			int slot = slots.get(key);
+			if (slot < 0) {
+				if (count < capacity) {
+					slot = count++;
+					if (values[slot] == null) values[slot] = value.createVariable();
+				}
+				else {
+					slot = evict();
+				}
+				keys[slot] = key;
+				slots.put(key, slot);
+			}
+			referenced[slot] = true;
+			((T) values[slot]).set(value);
+		}
+
+		public void clear() {
+			slots.clear();
+			for (int i = 0; i < count; i++)
+				referenced[i] = false;
+			count = 0;
+			hand = 0;
+			hits = 0;
+			misses = 0;
+		}
+
+		private int evict() {
+			while (referenced[hand]) {
+				referenced[hand] = false;
+				hand = (hand + 1) % capacity;
+			}
+			final int victim = hand;
+			hand = (hand + 1) % capacity;
+			slots.remove(keys[victim]);
+			return victim;
+		}
+	}
+}
@@ -49,7 +49,9 @@ import net.imglib2.ops.util.DataCopier;
  * of the condition test and once as part of the assignment of value). This
  * class can be used to improve the performance of function evaluation if the
  * cost of computing the function is high. (The test for input equality is
- * relatively expensive in its own right)
+ * relatively expensive in its own right) For access patterns that revisit
+ * points less directly (such as overlapping neighborhoods) use a
+ * {@link BoundedCachingFunction} instead.
  *  
  * @author Barry DeZonia
  */
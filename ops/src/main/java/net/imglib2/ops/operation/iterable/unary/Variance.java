@@ -39,6 +39,7 @@ package net.imglib2.ops.operation.iterable.unary;
 
 import java.util.Iterator;
 
+import net.imglib2.ops.data.RunningStatistics;
 import net.imglib2.ops.operation.UnaryOperation;
 import net.imglib2.type.numeric.RealType;
 
@@ -48,22 +49,18 @@ import net.imglib2.type.numeric.RealType;
 public class Variance< T extends RealType< T >, V extends RealType< V >> implements UnaryOperation< Iterator< T >, V >
 {
 
+	private final RunningStatistics m_statistics = new RunningStatistics();
+
 	@Override
 	public V compute( Iterator< T > input, V output )
 	{
-		double sum = 0;
-		double sumSqr = 0;
-		int n = 0;
-
+		m_statistics.clear();
 		while ( input.hasNext() )
 		{
-			double px = input.next().getRealDouble();
-			n++;
-			sum += px;
-			sumSqr += px * px;
+			m_statistics.add( input.next().getRealDouble() );
 		}
 
-		output.setReal( ( sumSqr - ( sum * sum / n ) ) / ( n - 1 ) );
+		output.setReal( m_statistics.variance() );
 		return output;
 	}
 
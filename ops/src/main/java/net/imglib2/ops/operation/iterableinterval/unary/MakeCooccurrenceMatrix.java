@@ -161,6 +161,36 @@ public class MakeCooccurrenceMatrix< T extends RealType< T >> implements UnaryOp
 	}
 
 	private void computeFeatures( final CooccurrenceMatrix matrix )
+	{
+		final double[] values = new double[ m_nrGrayLevels * m_nrGrayLevels ];
+		for ( int i = 0; i < m_nrGrayLevels; i++ )
+		{
+			for ( int j = 0; j < m_nrGrayLevels; j++ )
+			{
+				values[ i * m_nrGrayLevels + j ] = matrix.getValueAt( i, j );
+			}
+		}
+		double[] h = new double[ HaralickFeature.values().length ];
+		computeFeatures( values, m_nrGrayLevels, m_enabledFeatures, h );
+		matrix.setFeatures( h );
+	}
+
+	/**
+	 * Computes the {@link HaralickFeature}s of a normalized co-occurrence
+	 * matrix.
+	 * 
+	 * @param matrix
+	 *            the normalized, symmetric co-occurrence matrix, row by row
+	 * @param nrGrayLevels
+	 *            number of gray levels (size of co-occurrence matrix)
+	 * @param enabledFeatures
+	 *            {@link BitSet} with enabled {@link HaralickFeature}
+	 * @param h
+	 *            array of at least {@code HaralickFeature.values().length}
+	 *            entries the features are written to, ordered according to
+	 *            {@link HaralickFeature}
+	 */
+	public static void computeFeatures( final double[] matrix, final int nrGrayLevels, final BitSet enabledFeatures, final double[] h )
 	{
 
 		// There is one big difference between cellprofiler
@@ -175,26 +205,24 @@ public class MakeCooccurrenceMatrix< T extends RealType< T >> implements UnaryOp
 		// and
 		// https://github.com/CellProfiler/CellProfiler/blob/master/cellprofiler/cpmath/haralick.py
 
-		double[] h = new double[ HaralickFeature.values().length ];
-
 		// precalc
 
 		// p_x only for 3, 4[std_x], HXY1 [12], HXY2[13]
-		double[] px = new double[ m_nrGrayLevels ];
-		if ( m_enabledFeatures.get( 2 ) || m_enabledFeatures.get( 3 ) || m_enabledFeatures.get( 11 ) || m_enabledFeatures.get( 12 ) )
+		double[] px = new double[ nrGrayLevels ];
+		if ( enabledFeatures.get( 2 ) || enabledFeatures.get( 3 ) || enabledFeatures.get( 11 ) || enabledFeatures.get( 12 ) )
 		{
-			for ( int i = 0; i < m_nrGrayLevels; i++ )
+			for ( int i = 0; i < nrGrayLevels; i++ )
 			{
-				for ( int j = 0; j < m_nrGrayLevels; j++ )
+				for ( int j = 0; j < nrGrayLevels; j++ )
 				{
-					px[ i ] += matrix.getValueAt( i, j );
+					px[ i ] += matrix[ i * nrGrayLevels + j ];
 				}
 			}
 		}
 		// mean and stddev from tutorial
 		double meanx = 0.0f;
 		double stdx = 0.0f;
-		if ( m_enabledFeatures.get( 2 ) || m_enabledFeatures.get( 3 ) )
+		if ( enabledFeatures.get( 2 ) || enabledFeatures.get( 3 ) )
 		{
 			for ( int i = 0; i < px.length; i++ )
 			{
@@ -213,8 +241,8 @@ public class MakeCooccurrenceMatrix< T extends RealType< T >> implements UnaryOp
 		double[] py = px;
 		// if (enabledFeatures.get(2) || enabledFeatures.get(11)
 		// || enabledFeatures.get(12)) {
-		// for (int j = 0; j < m_nrGrayLevels; j++) {
-		// for (int i = 0; i < m_nrGrayLevels; i++) {
+		// for (int j = 0; j < nrGrayLevels; j++) {
+		// for (int i = 0; i < nrGrayLevels; i++) {
 		// p_y[j] += matrix.getValueAt(i, j);
 		// }
 		// }
@@ -233,38 +261,26 @@ public class MakeCooccurrenceMatrix< T extends RealType< T >> implements UnaryOp
 		// }
 
 		// p_x+y only for 6,7,8
-		double[] pxplusy = new double[ 2 * m_nrGrayLevels + 1 ];
-		if ( m_enabledFeatures.get( 5 ) || m_enabledFeatures.get( 6 ) || m_enabledFeatures.get( 7 ) )
+		double[] pxplusy = new double[ 2 * nrGrayLevels + 1 ];
+		if ( enabledFeatures.get( 5 ) || enabledFeatures.get( 6 ) || enabledFeatures.get( 7 ) )
 		{
-			for ( int k = 2; k <= 2 * m_nrGrayLevels; k++ )
+			for ( int i = 0; i < nrGrayLevels; i++ )
 			{
-				for ( int i = 0; i < m_nrGrayLevels; i++ )
+				for ( int j = 0; j < nrGrayLevels; j++ )
 				{
-					for ( int j = 0; j < m_nrGrayLevels; j++ )
-					{
-						if ( ( i + 1 ) + ( j + 1 ) == k )
-						{
-							pxplusy[ k ] += matrix.getValueAt( i, j );
-						}
-					}
+					pxplusy[ ( i + 1 ) + ( j + 1 ) ] += matrix[ i * nrGrayLevels + j ];
 				}
 			}
 		}
 		// p_x-y only for 2,10,11
-		double[] pxminusy = new double[ m_nrGrayLevels ];
-		if ( m_enabledFeatures.get( 1 ) || m_enabledFeatures.get( 9 ) || m_enabledFeatures.get( 10 ) )
+		double[] pxminusy = new double[ nrGrayLevels ];
+		if ( enabledFeatures.get( 1 ) || enabledFeatures.get( 9 ) || enabledFeatures.get( 10 ) )
 		{
-			for ( int k = 0; k < m_nrGrayLevels; k++ )
+			for ( int i = 0; i < nrGrayLevels; i++ )
 			{
-				for ( int i = 0; i < m_nrGrayLevels; i++ )
+				for ( int j = 0; j < nrGrayLevels; j++ )
 				{
-					for ( int j = 0; j < m_nrGrayLevels; j++ )
-					{
-						if ( Math.abs( i - j ) == k )
-						{
-							pxminusy[ k ] += matrix.getValueAt( i, j );
-						}
-					}
+					pxminusy[ Math.abs( i - j ) ] += matrix[ i * nrGrayLevels + j ];
 				}
 			}
 		}
@@ -274,9 +290,9 @@ public class MakeCooccurrenceMatrix< T extends RealType< T >> implements UnaryOp
 		double hxy1 = 0.0f;
 		double hxy2 = 0.0f;
 		// h12 and h13 need h9, so enable it
-		if ( m_enabledFeatures.get( 11 ) || m_enabledFeatures.get( 12 ) )
+		final boolean entropy = enabledFeatures.get( 8 ) || enabledFeatures.get( 11 ) || enabledFeatures.get( 12 );
+		if ( enabledFeatures.get( 11 ) || enabledFeatures.get( 12 ) )
 		{
-			m_enabledFeatures.set( 8 );
 
 			for ( int i = 0; i < px.length; i++ )
 			{
@@ -289,11 +305,11 @@ public class MakeCooccurrenceMatrix< T extends RealType< T >> implements UnaryOp
 				hy += py[ j ] * Math.log( py[ j ] + EPSILON );
 			}
 			hy = -hy;
-			for ( int i = 0; i < m_nrGrayLevels; i++ )
+			for ( int i = 0; i < nrGrayLevels; i++ )
 			{
-				for ( int j = 0; j < m_nrGrayLevels; j++ )
+				for ( int j = 0; j < nrGrayLevels; j++ )
 				{
-					hxy1 += matrix.getValueAt( i, j ) * Math.log( px[ i ] * py[ j ] + EPSILON );
+					hxy1 += matrix[ i * nrGrayLevels + j ] * Math.log( px[ i ] * py[ j ] + EPSILON );
 					hxy2 += px[ i ] * py[ j ] * Math.log( px[ i ] * py[ j ] + EPSILON );
 				}
 			}
@@ -306,29 +322,29 @@ public class MakeCooccurrenceMatrix< T extends RealType< T >> implements UnaryOp
 		h[ 3 ] = 0.0f; // Variance
 		h[ 4 ] = 0.0f; // ID(F)M
 		h[ 8 ] = 0.0f; // Entropy
-		if ( m_enabledFeatures.get( 0 ) || m_enabledFeatures.get( 2 ) || m_enabledFeatures.get( 3 ) || m_enabledFeatures.get( 4 ) || m_enabledFeatures.get( 8 ) )
+		if ( enabledFeatures.get( 0 ) || enabledFeatures.get( 2 ) || enabledFeatures.get( 3 ) || enabledFeatures.get( 4 ) || entropy )
 		{
-			for ( int i = 0; i < m_nrGrayLevels; i++ )
+			for ( int i = 0; i < nrGrayLevels; i++ )
 			{
 				// 2*sum_i=1^N*sum_j=i^N instead of i=1 to N and
 				// j=1 to N
-				for ( int j = 0; j < m_nrGrayLevels; j++ )
+				for ( int j = 0; j < nrGrayLevels; j++ )
 				{
-					if ( m_enabledFeatures.get( 0 ) )
+					if ( enabledFeatures.get( 0 ) )
 					{
-						h[ 0 ] += matrix.getValueAt( i, j ) * matrix.getValueAt( i, j );
+						h[ 0 ] += matrix[ i * nrGrayLevels + j ] * matrix[ i * nrGrayLevels + j ];
 					}
-					if ( m_enabledFeatures.get( 2 ) )
+					if ( enabledFeatures.get( 2 ) )
 					{
-						h[ 2 ] += ( ( i - meanx ) * ( j - meany ) ) * matrix.getValueAt( i, j ) / ( stdx * stdy );
+						h[ 2 ] += ( ( i - meanx ) * ( j - meany ) ) * matrix[ i * nrGrayLevels + j ] / ( stdx * stdy );
 					}
-					if ( m_enabledFeatures.get( 4 ) )
+					if ( enabledFeatures.get( 4 ) )
 					{
-						h[ 4 ] += 1.0 / ( 1 + ( i - j ) * ( i - j ) ) * matrix.getValueAt( i, j );
+						h[ 4 ] += 1.0 / ( 1 + ( i - j ) * ( i - j ) ) * matrix[ i * nrGrayLevels + j ];
 					}
-					if ( m_enabledFeatures.get( 8 ) )
+					if ( entropy )
 					{
-						h[ 8 ] += matrix.getValueAt( i, j ) * Math.log( matrix.getValueAt( i, j ) + EPSILON );
+						h[ 8 ] += matrix[ i * nrGrayLevels + j ] * Math.log( matrix[ i * nrGrayLevels + j ] + EPSILON );
 					}
 				}
 			}
@@ -344,22 +360,22 @@ public class MakeCooccurrenceMatrix< T extends RealType< T >> implements UnaryOp
 		// if (enabledFeatures.get(2)) {
 		// h[2] = (h[2] - mean_x * mean_y) / (std_x * std_y);
 		// }
-		if ( m_enabledFeatures.get( 3 ) )
+		if ( enabledFeatures.get( 3 ) )
 		{
 			h[ 3 ] = stdx * stdx;
 		}
 
 		h[ 1 ] = 0.0f; // Contrast
 		h[ 10 ] = 0.0f; // Difference Entropy
-		if ( m_enabledFeatures.get( 1 ) || m_enabledFeatures.get( 10 ) )
+		if ( enabledFeatures.get( 1 ) || enabledFeatures.get( 10 ) )
 		{
-			for ( int k = 0; k <= m_nrGrayLevels - 1; k++ )
+			for ( int k = 0; k <= nrGrayLevels - 1; k++ )
 			{
-				if ( m_enabledFeatures.get( 1 ) )
+				if ( enabledFeatures.get( 1 ) )
 				{
 					h[ 1 ] += k * k * pxminusy[ k ];
 				}
-				if ( m_enabledFeatures.get( 10 ) )
+				if ( enabledFeatures.get( 10 ) )
 				{
 					h[ 10 ] += pxminusy[ k ] * Math.log( pxminusy[ k ] + EPSILON );
 				}
@@ -369,9 +385,9 @@ public class MakeCooccurrenceMatrix< T extends RealType< T >> implements UnaryOp
 
 		h[ 5 ] = 0.0f; // Sum Average
 		// h6 depends on h5
-		if ( m_enabledFeatures.get( 6 ) && m_enabledFeatures.get( 5 ) )
+		if ( enabledFeatures.get( 6 ) && enabledFeatures.get( 5 ) )
 		{
-			for ( int i = 2; i <= 2 * m_nrGrayLevels; i++ )
+			for ( int i = 2; i <= 2 * nrGrayLevels; i++ )
 			{
 				h[ 5 ] += i * pxplusy[ i ];
 			}
@@ -379,33 +395,33 @@ public class MakeCooccurrenceMatrix< T extends RealType< T >> implements UnaryOp
 
 		h[ 6 ] = 0.0f; // Sum Variance
 		h[ 7 ] = 0.0f; // Sum Entropy
-		if ( m_enabledFeatures.get( 5 ) || m_enabledFeatures.get( 6 ) || m_enabledFeatures.get( 7 ) )
+		if ( enabledFeatures.get( 5 ) || enabledFeatures.get( 6 ) || enabledFeatures.get( 7 ) )
 		{
-			for ( int i = 2; i <= 2 * m_nrGrayLevels; i++ )
+			for ( int i = 2; i <= 2 * nrGrayLevels; i++ )
 			{
 				// not already calculated
-				if ( m_enabledFeatures.get( 5 ) && !m_enabledFeatures.get( 6 ) )
+				if ( enabledFeatures.get( 5 ) && !enabledFeatures.get( 6 ) )
 				{
 					h[ 5 ] += i * pxplusy[ i ];
 				}
 				// h5 <- h6
-				if ( m_enabledFeatures.get( 6 ) )
+				if ( enabledFeatures.get( 6 ) )
 				{
 					h[ 6 ] += ( i - h[ 5 ] ) * ( i - h[ 5 ] ) * pxplusy[ i ];
 				}
-				if ( m_enabledFeatures.get( 7 ) )
+				if ( enabledFeatures.get( 7 ) )
 				{
 					h[ 7 ] += pxplusy[ i ] * Math.log( pxplusy[ i ] + EPSILON );
 				}
 			}
-			if ( m_enabledFeatures.get( 7 ) )
+			if ( enabledFeatures.get( 7 ) )
 			{
 				h[ 7 ] = -h[ 7 ];
 			}
 		}
 
 		h[ 9 ] = 0.0f; // Difference Variance
-		if ( m_enabledFeatures.get( 9 ) )
+		if ( enabledFeatures.get( 9 ) )
 		{
 			double sum = 0.0f;
 			for ( int k = 0; k < pxminusy.length; k++ )
@@ -419,12 +435,12 @@ public class MakeCooccurrenceMatrix< T extends RealType< T >> implements UnaryOp
 		}
 
 		h[ 11 ] = 0.0f;
-		if ( m_enabledFeatures.get( 11 ) )
+		if ( enabledFeatures.get( 11 ) )
 		{
 			h[ 11 ] = ( h[ 8 ] - hxy1 ) / Math.max( hx, hy );
 		}
 		h[ 12 ] = 0.0f;
-		if ( m_enabledFeatures.get( 12 ) )
+		if ( enabledFeatures.get( 12 ) )
 		{
 			h[ 12 ] = Math.sqrt( 1 - Math.exp( -2 * ( hxy2 - h[ 8 ] ) ) );
 		}
@@ -432,14 +448,14 @@ public class MakeCooccurrenceMatrix< T extends RealType< T >> implements UnaryOp
 		// cluster shade (from cellcognition)
 		// https://github.com/CellCognition/cecog/blob/master/csrc/include/cecog/features.hxx#L495
 		h[ 13 ] = 0.0f;
-		if ( m_enabledFeatures.get( 13 ) )
+		if ( enabledFeatures.get( 13 ) )
 		{
-			for ( int j = 0; j < m_nrGrayLevels; j++ )
+			for ( int j = 0; j < nrGrayLevels; j++ )
 			{
-				h[ 13 ] += Math.pow( 2 * j - 2 * stdx, 3 ) * matrix.getValueAt( j, j );
-				for ( int i = j + 1; i < m_nrGrayLevels; i++ )
+				h[ 13 ] += Math.pow( 2 * j - 2 * stdx, 3 ) * matrix[ j * nrGrayLevels + j ];
+				for ( int i = j + 1; i < nrGrayLevels; i++ )
 				{
-					h[ 13 ] += 2 * Math.pow( ( i + j - 2 * stdx ), 3 ) * matrix.getValueAt( i, j );
+					h[ 13 ] += 2 * Math.pow( ( i + j - 2 * stdx ), 3 ) * matrix[ i * nrGrayLevels + j ];
 				}
 			}
 		}
@@ -447,20 +463,18 @@ public class MakeCooccurrenceMatrix< T extends RealType< T >> implements UnaryOp
 		// cluster promenence (from cellcognition)
 		// https://github.com/CellCognition/cecog/blob/master/csrc/include/cecog/features.hxx#L479
 		h[ 14 ] = 0.0;
-		if ( m_enabledFeatures.get( 14 ) )
+		if ( enabledFeatures.get( 14 ) )
 		{
-			for ( int j = 0; j < m_nrGrayLevels; j++ )
+			for ( int j = 0; j < nrGrayLevels; j++ )
 			{
-				h[ 14 ] += Math.pow( 2 * j - 2 * stdx, 4 ) * matrix.getValueAt( j, j );
-				for ( int i = j + 1; i < m_nrGrayLevels; i++ )
+				h[ 14 ] += Math.pow( 2 * j - 2 * stdx, 4 ) * matrix[ j * nrGrayLevels + j ];
+				for ( int i = j + 1; i < nrGrayLevels; i++ )
 				{
-					h[ 14 ] += 2 * Math.pow( ( i + j - 2 * stdx ), 4 ) * matrix.getValueAt( i, j );
+					h[ 14 ] += 2 * Math.pow( ( i + j - 2 * stdx ), 4 ) * matrix[ i * nrGrayLevels + j ];
 				}
 			}
 		}
 
-		matrix.setFeatures( h );
-
 		// comparison to cellprofiler 5x5.tif
 		// OK: 1,2, 5, 6, 8, 9, 11, 12, 13
 
@@ -0,0 +1,181 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.ops.operation.iterableinterval.unary;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import net.imglib2.Cursor;
+import net.imglib2.IterableInterval;
+import net.imglib2.ops.data.QuantileSketch;
+import net.imglib2.ops.data.RunningStatistics;
+import net.imglib2.ops.operation.UnaryOutputOperation;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * Accumulates count, sum, mean, variance, min, max and optionally quantiles of
+ * an {@link IterableInterval} in a single pass. If an {@link ExecutorService}
+ * is given the interval is split into chunks which are accumulated in parallel
+ * and merged afterwards.
+ * 
+ * @param <T>
+ */
+public final class MakeRunningStatistics< T extends RealType< T >> implements UnaryOutputOperation< IterableInterval< T >, RunningStatistics >
+{
+
+	private final boolean m_trackQuantiles;
+
+	private final ExecutorService m_service;
+
+	private final int m_numTasks;
+
+	public MakeRunningStatistics()
+	{
+		this( false );
+	}
+
+	/**
+	 * @param trackQuantiles
+	 *            summarize the values in a {@link QuantileSketch} to allow
+	 *            median and quantile queries
+	 */
+	public MakeRunningStatistics( boolean trackQuantiles )
+	{
+		this( trackQuantiles, null, 1 );
+	}
+
+	/**
+	 * @param trackQuantiles
+	 *            summarize the values in a {@link QuantileSketch} to allow
+	 *            median and quantile queries
+	 * @param service
+	 *            service used to accumulate chunks in parallel, null to
+	 *            accumulate in the calling thread
+	 * @param numTasks
+	 *            number of chunks the interval is split into
+	 */
+	public MakeRunningStatistics( boolean trackQuantiles, ExecutorService service, int numTasks )
+	{
+		if ( numTasks < 1 ) { throw new IllegalArgumentException( "Number of tasks must be at least 1" ); }
+		m_trackQuantiles = trackQuantiles;
+		m_service = service;
+		m_numTasks = numTasks;
+	}
+
+	@Override
+	public final RunningStatistics createEmptyOutput( IterableInterval< T > op )
+	{
+		return new RunningStatistics( m_trackQuantiles ? new QuantileSketch() : null );
+	}
+
+	@Override
+	public final RunningStatistics compute( final IterableInterval< T > op, final RunningStatistics r )
+	{
+		r.clear();
+
+		final long size = op.size();
+		final int numTasks = ( int ) Math.min( m_numTasks, Math.max( size, 1 ) );
+		if ( m_service == null || numTasks == 1 )
+		{
+			accumulate( op, 0, size, r );
+			return r;
+		}
+
+		final long chunkSize = size / numTasks;
+		final List< Future< RunningStatistics >> futures = new ArrayList< Future< RunningStatistics >>( numTasks );
+		for ( int i = 0; i < numTasks; i++ )
+		{
+			final long start = i * chunkSize;
+			final long length = ( i == numTasks - 1 ) ? size - start : chunkSize;
+			futures.add( m_service.submit( new Callable< RunningStatistics >()
+			{
+				@Override
+				public RunningStatistics call()
+				{
+					final RunningStatistics partial = r.createEmpty();
+					accumulate( op, start, length, partial );
+					return partial;
+				}
+			} ) );
+		}
+
+		try
+		{
+			for ( Future< RunningStatistics > f : futures )
+			{
+				r.merge( f.get() );
+			}
+		}
+		catch ( InterruptedException e )
+		{
+			throw new RuntimeException( e );
+		}
+		catch ( ExecutionException e )
+		{
+			throw new RuntimeException( e.getCause() );
+		}
+
+		return r;
+	}
+
+	@Override
+	public RunningStatistics compute( IterableInterval< T > op )
+	{
+		return compute( op, createEmptyOutput( op ) );
+	}
+
+	@Override
+	public UnaryOutputOperation< IterableInterval< T >, RunningStatistics > copy()
+	{
+		return new MakeRunningStatistics< T >( m_trackQuantiles, m_service, m_numTasks );
+	}
+
+	private static < T extends RealType< T >> void accumulate( final IterableInterval< T > op, final long start, final long length, final RunningStatistics r )
+	{
+		final Cursor< T > c = op.cursor();
+		c.jumpFwd( start );
+		for ( long i = 0; i < length; i++ )
+		{
+			r.add( c.next().getRealDouble() );
+		}
+	}
+}
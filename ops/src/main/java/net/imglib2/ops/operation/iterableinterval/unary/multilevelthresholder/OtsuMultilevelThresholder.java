@@ -37,6 +37,13 @@
 
 package net.imglib2.ops.operation.iterableinterval.unary.multilevelthresholder;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
 import net.imglib2.IterableInterval;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.histogram.Histogram1d;
@@ -45,18 +52,25 @@ import net.imglib2.ops.operation.iterableinterval.unary.MakeHistogram;
 import net.imglib2.type.numeric.RealType;
 
 /**
+ * Multilevel Otsu thresholding. The thresholds maximizing the between class
+ * variance are found by dynamic programming over the number of classes, which
+ * takes O(numLevels * numBins^2) instead of O(numBins^numLevels) operations.
+ * If an {@link ExecutorService} is given, the histogram is counted, and the
+ * class variance table and every level of the dynamic program are computed in
+ * parallel.
+ * 
  * @author Markus Friedrich (University of Konstanz)
  */
 public class OtsuMultilevelThresholder< T extends RealType< T >, IN extends IterableInterval< T > & RandomAccessibleInterval< T >> implements UnaryOutputOperation< IN, ThresholdValueCollection >
 {
 
-	private int m_numberOfLevels;
+	private final int m_numberOfLevels;
 
-	private double m_maxValue;
+	private final int m_numBins;
 
-	private double[][] m_p, m_s, m_h;
+	private final ExecutorService m_service;
 
-	private int m_numBins;
+	private final int m_numTasks;
 
 	public OtsuMultilevelThresholder()
 	{
@@ -69,10 +83,29 @@ public class OtsuMultilevelThresholder< T extends RealType< T >, IN extends Iter
 	}
 
 	public OtsuMultilevelThresholder( int numLevels, int numBins )
+	{
+		this( numLevels, numBins, null, 1 );
+	}
+
+	/**
+	 * @param numLevels
+	 *            number of classes, one more than the number of thresholds
+	 * @param numBins
+	 *            number of histogram bins
+	 * @param service
+	 *            service used to compute in parallel, null to compute in the
+	 *            calling thread
+	 * @param numTasks
+	 *            number of tasks each parallel step is split into
+	 */
+	public OtsuMultilevelThresholder( int numLevels, int numBins, ExecutorService service, int numTasks )
 	{
 		if ( numLevels < 2 ) { throw new IllegalArgumentException( "Number of levels must be greater than 1" ); }
+		if ( numTasks < 1 ) { throw new IllegalArgumentException( "Number of tasks must be at least 1" ); }
 		m_numberOfLevels = numLevels;
 		m_numBins = numBins;
+		m_service = service;
+		m_numTasks = numTasks;
 	}
 
 	@Override
@@ -82,97 +115,179 @@ public class OtsuMultilevelThresholder< T extends RealType< T >, IN extends Iter
 		// Thresholds must be scaled
 		T inVar = input.firstElement().createVariable();
 
-		Histogram1d<T> histogram = new MakeHistogram< T >( ( int ) Math.min( m_numBins, inVar.getMinValue() - inVar.getMaxValue() ) ).compute( input );
-
-		m_maxValue = 0.0;
+		// integer types do not need more bins than values
+		Histogram1d< T > histogram = new MakeHistogram< T >( ( int ) Math.min( m_numBins, inVar.getMaxValue() - inVar.getMinValue() + 1 ) ).createEmptyOutput( input );
+		histogram.countData( input, m_service == null ? 1 : m_numTasks );
 
-		m_p = new double[ m_numBins + 1 ][ m_numBins + 1 ];
-		m_s = new double[ m_numBins + 1 ][ m_numBins + 1 ];
-		m_h = new double[ m_numBins + 1 ][ m_numBins + 1 ];
+		final int numBins = ( int ) histogram.getBinCount();
+		if ( numBins < m_numberOfLevels ) { throw new IllegalArgumentException( "Number of levels must not exceed the number of bins" ); }
 
-		calculatePLookup( histogram );
-		calculateSLookup( histogram );
-		calculateHLookup();
-
-		int[] tempThresholdList = new int[ m_numberOfLevels ];
-		calculateThresholdValues( thresholdValues, 1, m_numBins - m_numberOfLevels + 1, 0.0, 0, tempThresholdList );
+		final double[] h = calculateHLookup( histogram, numBins );
+		final int[] thresholds = calculateThresholdValues( h, numBins );
+		for ( int j = 0; j < thresholds.length; j++ )
+		{
+			thresholdValues.set( j, thresholds[ j ] );
+		}
 
 		// Threshold values must be scaled according to the number of
 		// bins.
-		thresholdValues.scale( m_numBins, inVar.getMinValue(), inVar.getMaxValue() );
+		thresholdValues.scale( numBins, inVar.getMinValue(), inVar.getMaxValue() );
 
 		return thresholdValues;
 	}
 
-	private void calculateThresholdValues( ThresholdValueCollection thresholdValues, int start, int end, double curValue, int curIndex, int[] tList )
+	/**
+	 * Computes the flat (numBins + 1) x (numBins + 1) table of S(u,v)^2 /
+	 * P(u,v), where P and S are the zeroth and first moment of the histogram
+	 * bins u to v (1-based). Empty classes contribute 0.
+	 */
+	private double[] calculateHLookup( Histogram1d< T > histogram, final int numBins )
 	{
-
-		for ( int i = start; i < end; i++ )
+		final double[] p = new double[ numBins + 1 ];
+		final double[] s = new double[ numBins + 1 ];
+		for ( int v = 1; v <= numBins; v++ )
 		{
-			double h1 = m_h[ start ][ i ];
-			double h2 = m_h[ i + 1 ][ end + 1 ];
-			double h = curValue + h1 + h2;
-			tList[ curIndex ] = i;
+			final long frequency = histogram.frequency( v - 1 );
+			p[ v ] = p[ v - 1 ] + frequency;
+			s[ v ] = s[ v - 1 ] + v * frequency;
+		}
 
-			if ( curIndex == m_numberOfLevels - 2 )
+		final int stride = numBins + 1;
+		final double[] h = new double[ stride * stride ];
+		invoke( new Task()
+		{
+			@Override
+			void run( int task, int numTasks )
 			{
-				if ( h > m_maxValue )
+				// rows are interleaved as they get shorter with increasing u
+				for ( int u = 1 + task; u <= numBins; u += numTasks )
 				{
-					for ( int j = 0; j < m_numberOfLevels - 1; j++ )
+					for ( int v = u; v <= numBins; v++ )
 					{
-						thresholdValues.set( j, tList[ j ] );
+						final double pUV = p[ v ] - p[ u - 1 ];
+						final double sUV = s[ v ] - s[ u - 1 ];
+						h[ u * stride + v ] = pUV == 0 ? 0 : sUV * sUV / pUV;
 					}
-					m_maxValue = h;
 				}
 			}
-			else
-			{
-				calculateThresholdValues( thresholdValues, i + 1, end + 1, curValue + h1, curIndex + 1, tList );
-			}
-		}
+		} );
+		return h;
 	}
 
-	private void calculatePLookup( Histogram1d<T> histogram )
+	/**
+	 * Finds the thresholds by dynamic programming: f[k][v] is the best sum of
+	 * H over k classes covering the bins 1 to v, and split[k][v] the last bin
+	 * of the first k - 1 of these classes.
+	 */
+	private int[] calculateThresholdValues( final double[] h, final int numBins )
 	{
-		m_p[ 1 ][ 0 ] = 0;
-		for ( int v = 1; v <= m_numBins; v++ )
+		final int stride = numBins + 1;
+		final int numLevels = m_numberOfLevels;
+		final double[][] f = new double[ numLevels + 1 ][ numBins + 1 ];
+		final int[][] split = new int[ numLevels + 1 ][ numBins + 1 ];
+
+		for ( int v = 1; v <= numBins; v++ )
 		{
-			m_p[ 1 ][ v ] = m_p[ 1 ][ v - 1 ] + histogram.frequency( v - 1 );
+			f[ 1 ][ v ] = h[ stride + v ];
 		}
-		for ( int u = 2; u <= m_numBins; u++ )
+
+		for ( int level = 2; level <= numLevels; level++ )
 		{
-			for ( int v = 1; v <= m_numBins; v++ )
+			final int k = level;
+			final double[] previous = f[ k - 1 ];
+			final double[] current = f[ k ];
+			final int[] currentSplit = split[ k ];
+
+			// all classes end at the last bin, so only v = numBins is needed
+			// for the last level
+			final int first = k == numLevels ? numBins : k;
+			final Task step = new Task()
 			{
-				m_p[ u ][ v ] = m_p[ 1 ][ v ] - m_p[ 1 ][ u - 1 ];
+				@Override
+				void run( int task, int numTasks )
+				{
+					// rows are interleaved as they get longer with increasing v
+					for ( int v = first + task; v <= numBins; v += numTasks )
+					{
+						double best = Double.NEGATIVE_INFINITY;
+						int bestT = k - 1;
+						for ( int t = k - 1; t < v; t++ )
+						{
+							final double value = previous[ t ] + h[ ( t + 1 ) * stride + v ];
+							if ( value > best )
+							{
+								best = value;
+								bestT = t;
+							}
+						}
+						current[ v ] = best;
+						currentSplit[ v ] = bestT;
+					}
+				}
+			};
+			if ( k == numLevels )
+			{
+				step.run( 0, 1 );
+			}
+			else
+			{
+				invoke( step );
 			}
 		}
+
+		final int[] thresholds = new int[ numLevels - 1 ];
+		int v = numBins;
+		for ( int k = numLevels; k >= 2; k-- )
+		{
+			v = split[ k ][ v ];
+			thresholds[ k - 2 ] = v;
+		}
+		return thresholds;
+	}
+
+	private abstract static class Task
+	{
+		abstract void run( int task, int numTasks );
 	}
 
-	private void calculateSLookup( Histogram1d<T> histogram )
+	private void invoke( final Task task )
 	{
-		m_s[ 1 ][ 0 ] = 0;
-		for ( int v = 1; v <= m_numBins; v++ )
+		if ( m_service == null || m_numTasks == 1 )
 		{
-			m_s[ 1 ][ v ] = m_s[ 1 ][ v - 1 ] + v * histogram.frequency( v - 1 );
+			task.run( 0, 1 );
+			return;
 		}
-		for ( int u = 2; u <= m_numBins; u++ )
+
+		final List< Future< Void >> futures = new ArrayList< Future< Void >>( m_numTasks );
+		for ( int i = 0; i < m_numTasks; i++ )
 		{
-			for ( int v = 1; v <= m_numBins; v++ )
+			final int index = i;
+			futures.add( m_service.submit( new Callable< Void >()
 			{
-				m_s[ u ][ v ] = m_s[ 1 ][ v ] - m_s[ 1 ][ u - 1 ];
-			}
+				@Override
+				public Void call()
+				{
+					task.run( index, m_numTasks );
+					return null;
+				}
+			} ) );
 		}
-	}
 
-	private void calculateHLookup()
-	{
-		for ( int u = 1; u <= m_numBins; u++ )
+		try
 		{
-			for ( int v = 1; v <= m_numBins; v++ )
+			for ( Future< Void > f : futures )
 			{
-				m_h[ u ][ v ] = ( m_s[ u ][ v ] * m_s[ u ][ v ] ) / m_p[ u ][ v ];
+				f.get();
 			}
 		}
+		catch ( InterruptedException e )
+		{
+			throw new RuntimeException( e );
+		}
+		catch ( ExecutionException e )
+		{
+			throw new RuntimeException( e.getCause() );
+		}
 	}
 
 	@Override
@@ -184,7 +299,7 @@ public class OtsuMultilevelThresholder< T extends RealType< T >, IN extends Iter
 	@Override
 	public UnaryOutputOperation< IN, ThresholdValueCollection > copy()
 	{
-		return new OtsuMultilevelThresholder< T, IN >( m_numberOfLevels, m_numBins );
+		return new OtsuMultilevelThresholder< T, IN >( m_numberOfLevels, m_numBins, m_service, m_numTasks );
 	}
 
 	@Override
@@ -126,7 +126,7 @@ public class GrowLabeling< L extends Comparable< L >> extends AbstractRegionGrow
 	@Override
 	protected boolean includeInRegion( int[] oldPos, int[] nextPos, L label )
 	{
-		m_seedingPoints.add( new ValuePair< int[], L >( nextPos, label ) );
+		m_seedingPoints.add( new ValuePair< int[], L >( nextPos.clone(), label ) );
 		return false;
 	}
 
@@ -0,0 +1,571 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.ops.operation.randomaccessibleinterval.unary;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.ops.operation.UnaryOperation;
+import net.imglib2.ops.operation.iterableinterval.unary.MakeCooccurrenceMatrix;
+import net.imglib2.ops.operation.iterableinterval.unary.MakeCooccurrenceMatrix.HaralickFeature;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.view.Views;
+
+/**
+ * Haralick texture features of a sliding window around each pixel, computed
+ * from the co-occurrence matrix of all given offsets in the window. Offsets and
+ * windows may have any dimensionality, e.g. the 13 directions of a 3d
+ * neighborhood can be used with a 3d window.
+ * <p>
+ * The co-occurrence counts are updated incrementally while the window slides
+ * through a tile in serpentine order, one step in one dimension at a time:
+ * only pairs leaving or entering the window are counted, so the cost per pixel
+ * depends on the cross-section of the window rather than on its volume. Only
+ * the first window of a tile is counted as a whole. As in {@link MakeCooccurrenceMatrix}, each pair is counted
+ * in both directions and gray levels are quantized from the minimum and
+ * maximum of the input. The window is clipped to the input image.
+ * <p>
+ * The output has one more dimension than the input, holding the enabled
+ * {@link HaralickFeature}s in their order. The input is split into tiles
+ * along all dimensions, each tile is loaded together with a halo of the window
+ * span. If an {@link ExecutorService} is given, the tiles are processed in
+ * parallel.
+ */
+public class HaralickFeatureMaps< T extends RealType< T >, O extends RealType< O >> implements UnaryOperation< RandomAccessibleInterval< T >, RandomAccessibleInterval< O >>
+{
+
+	/**
+	 * Default edge length of a tile of a two dimensional input. Tiles of
+	 * inputs with more dimensions get a shorter edge such that they hold about
+	 * as many pixels.
+	 */
+	public static final int DEFAULT_TILE_SIZE = 128;
+
+	private final int[][] m_offsets;
+
+	private final long[] m_span;
+
+	private final int m_nrGrayLevels;
+
+	private final BitSet m_enabledFeatures;
+
+	private final int m_tileSize;
+
+	private final ExecutorService m_service;
+
+	/**
+	 * @param offsets
+	 *            offsets to the neighbor pixel, a pair and its opposite are
+	 *            the same offset
+	 * @param span
+	 *            the half size of the window in each dimension, the window has
+	 *            size 2 * span + 1
+	 * @param nrGrayLevels
+	 *            number of gray levels (size of co-occurrence matrix)
+	 * @param enabledFeatures
+	 *            {@link BitSet} with enabled {@link HaralickFeature}
+	 */
+	public HaralickFeatureMaps( long[][] offsets, long[] span, int nrGrayLevels, BitSet enabledFeatures )
+	{
+		this( offsets, span, nrGrayLevels, enabledFeatures, 0, null );
+	}
+
+	/**
+	 * @param tileSize
+	 *            the edge length of a tile in each dimension, or 0 to derive
+	 *            it from {@link #DEFAULT_TILE_SIZE}
+	 * @param service
+	 *            the service to process tiles in parallel, may be null
+	 */
+	public HaralickFeatureMaps( long[][] offsets, long[] span, int nrGrayLevels, BitSet enabledFeatures, int tileSize, ExecutorService service )
+	{
+		if ( tileSize < 0 ) { throw new IllegalArgumentException( "Tile size must not be negative" ); }
+		if ( nrGrayLevels < 1 ) { throw new IllegalArgumentException( "Number of gray levels must be positive" ); }
+		if ( offsets.length == 0 ) { throw new IllegalArgumentException( "At least one offset is required" ); }
+		for ( long s : span )
+		{
+			if ( s < 0 ) { throw new IllegalArgumentException( "Window span must not be negative" ); }
+		}
+
+		// orient each offset such that its first non zero component is
+		// positive, so it never points backwards in the first dimension
+		m_offsets = new int[ offsets.length ][];
+		for ( int k = 0; k < offsets.length; k++ )
+		{
+			if ( offsets[ k ].length != span.length ) { throw new IllegalArgumentException( "Offsets and window span differ in dimensionality" ); }
+			int sign = 0;
+			for ( int d = 0; d < span.length && sign == 0; d++ )
+			{
+				sign = Long.signum( offsets[ k ][ d ] );
+			}
+			if ( sign == 0 ) { throw new IllegalArgumentException( "Offsets must not be zero" ); }
+			m_offsets[ k ] = new int[ span.length ];
+			for ( int d = 0; d < span.length; d++ )
+			{
+				m_offsets[ k ][ d ] = ( int ) ( sign * offsets[ k ][ d ] );
+			}
+		}
+		m_span = span.clone();
+		m_nrGrayLevels = nrGrayLevels;
+		m_enabledFeatures = enabledFeatures;
+		m_tileSize = tileSize;
+		m_service = service;
+	}
+
+	/**
+	 * Returns one offset of the given distance per direction of the
+	 * 8-connected (or N-d equivalent) neighborhood, i.e. 4 offsets in 2d and
+	 * 13 in 3d.
+	 * 
+	 * @param numDimensions
+	 * @param distance
+	 *            distance to neighbor pixel
+	 * @return the offsets
+	 */
+	public static long[][] getOffsets( int numDimensions, int distance )
+	{
+		int nElements = 1;
+		for ( int i = 0; i < numDimensions; i++ )
+			nElements *= 3;
+		nElements = ( nElements - 1 ) / 2;
+
+		long[][] result = new long[ nElements ][ numDimensions ];
+		long[] direction = new long[ numDimensions ];
+		int i = 0;
+		for ( int e = 0; i < nElements; e++ )
+		{
+			int rest = e;
+			int first = 0;
+			for ( int d = 0; d < numDimensions; d++ )
+			{
+				direction[ d ] = rest % 3 - 1;
+				rest /= 3;
+				if ( first == 0 )
+					first = ( int ) direction[ d ];
+			}
+			// keep one of each pair of opposite directions
+			if ( first > 0 )
+			{
+				for ( int d = 0; d < numDimensions; d++ )
+					result[ i ][ d ] = direction[ d ] * distance;
+				i++;
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public RandomAccessibleInterval< O > compute( final RandomAccessibleInterval< T > input, final RandomAccessibleInterval< O > output )
+	{
+		final int n = input.numDimensions();
+		if ( m_span.length != n ) { throw new IllegalArgumentException( "Window span does not match the dimensionality of the input" ); }
+		if ( output.numDimensions() != n + 1 ) { throw new IllegalArgumentException( "Output must have one dimension more than the input" ); }
+		for ( int d = 0; d < n; d++ )
+		{
+			if ( input.dimension( d ) != output.dimension( d ) ) { throw new IllegalArgumentException( "Input and output differ in dimensions" ); }
+		}
+		if ( output.dimension( n ) != m_enabledFeatures.cardinality() ) { throw new IllegalArgumentException( "Last output dimension must match the number of enabled features" ); }
+
+		final long tileSize = m_tileSize > 0 ? m_tileSize : Math.max( 1, ( long ) Math.pow( ( double ) DEFAULT_TILE_SIZE * DEFAULT_TILE_SIZE, 1.0 / n ) );
+
+		// the buffer of a tile is indexed by int
+		long bufferSize = 1;
+		for ( int d = 0; d < n; d++ )
+			bufferSize *= Math.min( input.dimension( d ), tileSize + 2 * m_span[ d ] );
+		if ( bufferSize > Integer.MAX_VALUE ) { throw new IllegalArgumentException( "A tile including the window span holds " + bufferSize + " pixels, reduce the tile size or the window span" ); }
+
+		// get min/max
+		final Cursor< T > cursor = Views.iterable( input ).cursor();
+		if ( !cursor.hasNext() )
+			return output;
+		double min = cursor.next().getRealDouble();
+		double max = min;
+		while ( cursor.hasNext() )
+		{
+			final double v = cursor.next().getRealDouble();
+			min = Math.min( min, v );
+			max = Math.max( max, v );
+		}
+
+		final ArrayList< Runnable > tasks = new ArrayList< Runnable >();
+		final long[] start = new long[ n ];
+		input.min( start );
+		while ( true )
+		{
+			final long[] tileMin = start.clone();
+			final long[] tileMax = new long[ n ];
+			for ( int d = 0; d < n; d++ )
+				tileMax[ d ] = Math.min( start[ d ] + tileSize - 1, input.max( d ) );
+			tasks.add( new TileTask( input, output, tileMin, tileMax, min, max ) );
+
+			int d = 0;
+			for ( ; d < n; d++ )
+			{
+				start[ d ] += tileSize;
+				if ( start[ d ] <= input.max( d ) )
+					break;
+				start[ d ] = input.min( d );
+			}
+			if ( d == n )
+				break;
+		}
+
+		if ( m_service == null )
+		{
+			for ( Runnable t : tasks )
+				t.run();
+			return output;
+		}
+
+		ArrayList< Future< ? >> futures = new ArrayList< Future< ? >>();
+		for ( Runnable t : tasks )
+			futures.add( m_service.submit( t ) );
+		try
+		{
+			for ( Future< ? > f : futures )
+				f.get();
+		}
+		catch ( InterruptedException e )
+		{
+			throw new RuntimeException( e );
+		}
+		catch ( ExecutionException e )
+		{
+			throw new RuntimeException( e.getCause() );
+		}
+		return output;
+	}
+
+	@Override
+	public UnaryOperation< RandomAccessibleInterval< T >, RandomAccessibleInterval< O >> copy()
+	{
+		final long[][] offsets = new long[ m_offsets.length ][ m_span.length ];
+		for ( int k = 0; k < m_offsets.length; k++ )
+			for ( int d = 0; d < m_span.length; d++ )
+				offsets[ k ][ d ] = m_offsets[ k ][ d ];
+		return new HaralickFeatureMaps< T, O >( offsets, m_span, m_nrGrayLevels, m_enabledFeatures, m_tileSize, m_service );
+	}
+
+	/**
+	 * Computes the features of one tile. The gray levels of the tile are
+	 * loaded together with a halo of the window span, clipped to the input
+	 * image.
+	 */
+	private class TileTask implements Runnable
+	{
+
+		private final RandomAccessibleInterval< T > m_in;
+
+		private final RandomAccessibleInterval< O > m_out;
+
+		private final long[] m_tileMin;
+
+		private final long[] m_tileMax;
+
+		private final double m_min;
+
+		private final double m_max;
+
+		// the window in buffer coordinates
+		private int[] m_wMin;
+
+		private int[] m_wMax;
+
+		private int[] m_stride;
+
+		private int[] m_linearOffsets;
+
+		private int[] m_levels;
+
+		private int[] m_counts;
+
+		public TileTask( RandomAccessibleInterval< T > in, RandomAccessibleInterval< O > out, long[] tileMin, long[] tileMax, double min, double max )
+		{
+			m_in = in;
+			m_out = out;
+			m_tileMin = tileMin;
+			m_tileMax = tileMax;
+			m_min = min;
+			m_max = max;
+		}
+
+		@Override
+		public void run()
+		{
+			final int n = m_in.numDimensions();
+
+			// region loaded into the buffer: tile plus halo, clipped
+			final long[] rMin = new long[ n ];
+			final int[] rDim = new int[ n ];
+			m_stride = new int[ n ];
+			int size = 1;
+			for ( int d = 0; d < n; d++ )
+			{
+				rMin[ d ] = Math.max( m_in.min( d ), m_tileMin[ d ] - m_span[ d ] );
+				rDim[ d ] = ( int ) ( Math.min( m_in.max( d ), m_tileMax[ d ] + m_span[ d ] ) - rMin[ d ] + 1 );
+				m_stride[ d ] = size;
+				size *= rDim[ d ];
+			}
+			m_levels = load( rMin, rDim, size );
+
+			m_linearOffsets = new int[ m_offsets.length ];
+			for ( int k = 0; k < m_offsets.length; k++ )
+				for ( int d = 0; d < n; d++ )
+					m_linearOffsets[ k ] += m_offsets[ k ][ d ] * m_stride[ d ];
+
+			final int numFeatures = m_enabledFeatures.cardinality();
+			final int[] features = new int[ numFeatures ];
+			for ( int f = 0, i = m_enabledFeatures.nextSetBit( 0 ); f < numFeatures; f++, i = m_enabledFeatures.nextSetBit( i + 1 ) )
+				features[ f ] = i;
+
+			m_counts = new int[ m_nrGrayLevels * m_nrGrayLevels ];
+			final double[] matrix = new double[ m_counts.length ];
+			final double[] h = new double[ HaralickFeature.values().length ];
+			m_wMin = new int[ n ];
+			m_wMax = new int[ n ];
+
+			final RandomAccess< O > out = m_out.randomAccess();
+			final long[] pos = m_tileMin.clone();
+			final int[] direction = new int[ n ];
+			Arrays.fill( direction, 1 );
+			for ( int d = 0; d < n; d++ )
+			{
+				m_wMin[ d ] = windowMin( pos, d, rMin );
+				m_wMax[ d ] = windowMax( pos, d, rMin );
+				out.setPosition( pos[ d ] - m_in.min( d ) + m_out.min( d ), d );
+			}
+			int pairs = countWindow();
+			while ( true )
+			{
+				// normalize matrix
+				for ( int i = 0; i < matrix.length; i++ )
+					matrix[ i ] = pairs > 0 ? ( double ) m_counts[ i ] / pairs : 0;
+				MakeCooccurrenceMatrix.computeFeatures( matrix, m_nrGrayLevels, m_enabledFeatures, h );
+
+				for ( int f = 0; f < numFeatures; f++ )
+				{
+					out.setPosition( m_out.min( n ) + f, n );
+					out.get().setReal( h[ features[ f ] ] );
+				}
+
+				// step to the next position in serpentine order: along the
+				// first dimension which is not at the end of the tile in its
+				// current direction, and reverse all dimensions before it
+				int d = 0;
+				while ( d < n && pos[ d ] == ( direction[ d ] > 0 ? m_tileMax[ d ] : m_tileMin[ d ] ) )
+					d++;
+				if ( d == n )
+					break;
+				pos[ d ] += direction[ d ];
+				for ( int e = 0; e < d; e++ )
+					direction[ e ] = -direction[ e ];
+				out.setPosition( pos[ d ] - m_in.min( d ) + m_out.min( d ), d );
+
+				// grow the window by its new face, then shrink it
+				final int a = windowMin( pos, d, rMin );
+				final int b = windowMax( pos, d, rMin );
+				if ( b > m_wMax[ d ] )
+				{
+					m_wMax[ d ] = b;
+					pairs += countFace( d, b, true, 1 );
+				}
+				if ( a < m_wMin[ d ] )
+				{
+					m_wMin[ d ] = a;
+					pairs += countFace( d, a, false, 1 );
+				}
+				if ( b < m_wMax[ d ] )
+				{
+					pairs += countFace( d, m_wMax[ d ], true, -1 );
+					m_wMax[ d ] = b;
+				}
+				if ( a > m_wMin[ d ] )
+				{
+					pairs += countFace( d, m_wMin[ d ], false, -1 );
+					m_wMin[ d ] = a;
+				}
+			}
+		}
+
+		private int windowMin( long[] pos, int d, long[] rMin )
+		{
+			return ( int ) ( Math.max( pos[ d ] - m_span[ d ], m_in.min( d ) ) - rMin[ d ] );
+		}
+
+		private int windowMax( long[] pos, int d, long[] rMin )
+		{
+			return ( int ) ( Math.min( pos[ d ] + m_span[ d ], m_in.max( d ) ) - rMin[ d ] );
+		}
+
+		/**
+		 * Clears the counts and counts all pairs of the window, returns the
+		 * number of counted pairs.
+		 */
+		private int countWindow()
+		{
+			final int n = m_wMin.length;
+			Arrays.fill( m_counts, 0 );
+			final int[] p = m_wMin.clone();
+			int pairs = 0;
+			do
+			{
+				int index = 0;
+				for ( int d = 0; d < n; d++ )
+					index += p[ d ] * m_stride[ d ];
+				for ( int k = 0; k < m_offsets.length; k++ )
+				{
+					if ( inWindow( p, m_offsets[ k ], 1 ) )
+					{
+						count( m_levels[ index ], m_levels[ index + m_linearOffsets[ k ] ], 1 );
+						pairs += 2;
+					}
+				}
+			}
+			while ( next( p, -1 ) );
+			return pairs;
+		}
+
+		/**
+		 * Counts (sign 1) or uncounts (sign -1) the pairs of the window with an
+		 * end in the face c of dimension d, which is the maximum or the minimum
+		 * face of the window. Returns the change of the number of counted
+		 * pairs.
+		 */
+		private int countFace( int d, int c, boolean maxFace, int sign )
+		{
+			final int n = m_wMin.length;
+			final int[] p = m_wMin.clone();
+			p[ d ] = c;
+			int pairs = 0;
+			do
+			{
+				int index = 0;
+				for ( int e = 0; e < n; e++ )
+					index += p[ e ] * m_stride[ e ];
+				for ( int k = 0; k < m_offsets.length; k++ )
+				{
+					// the other end lies towards the inside of the window,
+					// pairs within the face are counted from one end only
+					final int o = m_offsets[ k ][ d ];
+					final int towards = o == 0 || ( o > 0 ) == maxFace ? -1 : 1;
+					if ( inWindow( p, m_offsets[ k ], towards ) )
+					{
+						count( m_levels[ index ], m_levels[ index + towards * m_linearOffsets[ k ] ], sign );
+						pairs += 2 * sign;
+					}
+				}
+			}
+			while ( next( p, d ) );
+			return pairs;
+		}
+
+		private boolean inWindow( int[] p, int[] offset, int sign )
+		{
+			for ( int d = 0; d < p.length; d++ )
+			{
+				final int q = p[ d ] + sign * offset[ d ];
+				if ( q < m_wMin[ d ] || q > m_wMax[ d ] )
+					return false;
+			}
+			return true;
+		}
+
+		private void count( int a, int b, int sign )
+		{
+			m_counts[ a * m_nrGrayLevels + b ] += sign;
+			m_counts[ b * m_nrGrayLevels + a ] += sign;
+		}
+
+		/**
+		 * Move p to the next position of the window, iterating all dimensions
+		 * but skip.
+		 */
+		private boolean next( int[] p, int skip )
+		{
+			for ( int d = 0; d < p.length; d++ )
+			{
+				if ( d == skip )
+					continue;
+				if ( p[ d ] < m_wMax[ d ] )
+				{
+					p[ d ]++;
+					return true;
+				}
+				p[ d ] = m_wMin[ d ];
+			}
+			return false;
+		}
+
+		/**
+		 * Loads the quantized gray levels of the region.
+		 */
+		private int[] load( long[] rMin, int[] rDim, int size )
+		{
+			final int[] levels = new int[ size ];
+			final RandomAccess< T > ra = m_in.randomAccess();
+			final long[] pos = rMin.clone();
+			int index = 0;
+			while ( index < size )
+			{
+				ra.setPosition( pos );
+				for ( int x = 0; x < rDim[ 0 ]; x++ )
+				{
+					levels[ index++ ] = ( int ) ( ( ( ra.get().getRealDouble() - m_min ) / ( m_max - m_min + 1 ) ) * m_nrGrayLevels );
+					ra.fwd( 0 );
+				}
+				for ( int d = 1; d < pos.length; d++ )
+				{
+					if ( pos[ d ] < rMin[ d ] + rDim[ d ] - 1 )
+					{
+						pos[ d ]++;
+						break;
+					}
+					pos[ d ] = rMin[ d ];
+				}
+			}
+			return levels;
+		}
+	}
+}
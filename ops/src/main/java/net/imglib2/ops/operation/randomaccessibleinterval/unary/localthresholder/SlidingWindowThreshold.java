@@ -0,0 +1,633 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.ops.operation.randomaccessibleinterval.unary.localthresholder;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.ops.operation.UnaryOperation;
+import net.imglib2.type.logic.BitType;
+import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * Local thresholding over a rectangular window, computed with sliding window
+ * statistics instead of iterating each neighborhood.
+ * <p>
+ * Window sums and sums of squares are computed separably with running sums
+ * along each dimension. Window minima and maxima are computed separably with
+ * a monotonic queue. The median is tracked with a histogram that is updated
+ * incrementally along lines. The cost per pixel of the {@link Method#MEAN},
+ * {@link Method#NIBLACK}, {@link Method#SAUVOLA}, {@link Method#BERNSEN} and
+ * {@link Method#MIDGREY} methods does not depend on the window size.
+ * <p>
+ * The window is clipped to the input image. The input is split into tiles
+ * along all dimensions, each tile is loaded together with a halo of the window
+ * span. If an {@link ExecutorService} is given, the tiles are processed in
+ * parallel.
+ * <p>
+ * The rules are the same as the ones in
+ * {@link net.imglib2.ops.operation.iterable.binary.localthresholder}. The two
+ * parameters of each method are:
+ * <ul>
+ * <li>{@link Method#MEAN}: c</li>
+ * <li>{@link Method#NIBLACK}: k, c</li>
+ * <li>{@link Method#SAUVOLA}: k, r</li>
+ * <li>{@link Method#BERNSEN}: contrast threshold, max value</li>
+ * <li>{@link Method#MIDGREY}: c</li>
+ * <li>{@link Method#MEDIAN}: c (integer types of at most 16 bits only)</li>
+ * </ul>
+ */
+public class SlidingWindowThreshold< T extends RealType< T >> implements UnaryOperation< RandomAccessibleInterval< T >, RandomAccessibleInterval< BitType >>
+{
+
+	public enum Method
+	{
+		MEAN, NIBLACK, SAUVOLA, BERNSEN, MIDGREY, MEDIAN
+	}
+
+	/**
+	 * Default edge length of a tile of a two dimensional input. Tiles of
+	 * inputs with more dimensions get a shorter edge such that they hold about
+	 * as many pixels.
+	 */
+	public static final int DEFAULT_TILE_SIZE = 256;
+
+	private final Method m_method;
+
+	private final long[] m_span;
+
+	private final double m_p1;
+
+	private final double m_p2;
+
+	private final int m_tileSize;
+
+	private final ExecutorService m_service;
+
+	/**
+	 * @param method
+	 *            the thresholding rule
+	 * @param span
+	 *            the half size of the window in each dimension, the window has
+	 *            size 2 * span + 1
+	 * @param p1
+	 *            first parameter of the method
+	 * @param p2
+	 *            second parameter of the method, ignored by methods with one
+	 *            parameter
+	 */
+	public SlidingWindowThreshold( Method method, long[] span, double p1, double p2 )
+	{
+		this( method, span, p1, p2, 0, null );
+	}
+
+	/**
+	 * @param tileSize
+	 *            the edge length of a tile in each dimension, or 0 to derive
+	 *            it from {@link #DEFAULT_TILE_SIZE}
+	 * @param service
+	 *            the service to process tiles in parallel, may be null
+	 */
+	public SlidingWindowThreshold( Method method, long[] span, double p1, double p2, int tileSize, ExecutorService service )
+	{
+		if ( tileSize < 0 ) { throw new IllegalArgumentException( "Tile size must not be negative" ); }
+		for ( long s : span )
+		{
+			if ( s < 0 ) { throw new IllegalArgumentException( "Window span must not be negative" ); }
+		}
+		m_method = method;
+		m_span = span.clone();
+		m_p1 = p1;
+		m_p2 = p2;
+		m_tileSize = tileSize;
+		m_service = service;
+	}
+
+	@Override
+	public RandomAccessibleInterval< BitType > compute( final RandomAccessibleInterval< T > input, final RandomAccessibleInterval< BitType > output )
+	{
+		final int n = input.numDimensions();
+		if ( m_span.length != n ) { throw new IllegalArgumentException( "Window span does not match the dimensionality of the input" ); }
+		if ( output.numDimensions() != n ) { throw new IllegalArgumentException( "Input and output differ in dimensionality" ); }
+		for ( int d = 0; d < n; d++ )
+		{
+			if ( input.dimension( d ) != output.dimension( d ) ) { throw new IllegalArgumentException( "Input and output differ in dimensions" ); }
+		}
+
+		int binOffset = 0;
+		int numBins = 0;
+		if ( m_method == Method.MEDIAN )
+		{
+			T type = input.randomAccess().get();
+			if ( !( type instanceof IntegerType ) || type.getMaxValue() - type.getMinValue() >= 1 << 16 ) { throw new IllegalArgumentException( "Median thresholding requires an integer type of at most 16 bits" ); }
+			binOffset = ( int ) type.getMinValue();
+			numBins = ( int ) ( type.getMaxValue() - type.getMinValue() ) + 1;
+		}
+
+		final long tileSize = m_tileSize > 0 ? m_tileSize : Math.max( 1, ( long ) Math.pow( ( double ) DEFAULT_TILE_SIZE * DEFAULT_TILE_SIZE, 1.0 / n ) );
+
+		// the buffers of a tile are indexed by int
+		long bufferSize = 1;
+		for ( int d = 0; d < n; d++ )
+			bufferSize *= Math.min( input.dimension( d ), tileSize + 2 * m_span[ d ] );
+		if ( bufferSize > Integer.MAX_VALUE ) { throw new IllegalArgumentException( "A tile including the window span holds " + bufferSize + " pixels, reduce the tile size or the window span" ); }
+
+		final ArrayList< Runnable > tasks = new ArrayList< Runnable >();
+		final long[] start = new long[ n ];
+		input.min( start );
+		while ( true )
+		{
+			final long[] tileMin = start.clone();
+			final long[] tileMax = new long[ n ];
+			for ( int d = 0; d < n; d++ )
+				tileMax[ d ] = Math.min( start[ d ] + tileSize - 1, input.max( d ) );
+			tasks.add( new TileTask( input, output, tileMin, tileMax, binOffset, numBins ) );
+
+			int d = 0;
+			for ( ; d < n; d++ )
+			{
+				start[ d ] += tileSize;
+				if ( start[ d ] <= input.max( d ) )
+					break;
+				start[ d ] = input.min( d );
+			}
+			if ( d == n )
+				break;
+		}
+
+		if ( m_service == null )
+		{
+			for ( Runnable t : tasks )
+				t.run();
+			return output;
+		}
+
+		ArrayList< Future< ? >> futures = new ArrayList< Future< ? >>();
+		for ( Runnable t : tasks )
+			futures.add( m_service.submit( t ) );
+		try
+		{
+			for ( Future< ? > f : futures )
+				f.get();
+		}
+		catch ( InterruptedException e )
+		{
+			throw new RuntimeException( e );
+		}
+		catch ( ExecutionException e )
+		{
+			throw new RuntimeException( e.getCause() );
+		}
+		return output;
+	}
+
+	@Override
+	public UnaryOperation< RandomAccessibleInterval< T >, RandomAccessibleInterval< BitType >> copy()
+	{
+		return new SlidingWindowThreshold< T >( m_method, m_span, m_p1, m_p2, m_tileSize, m_service );
+	}
+
+	/**
+	 * Thresholds one tile. The tile is loaded together with a halo of the
+	 * window span, clipped to the input image.
+	 */
+	private class TileTask implements Runnable
+	{
+
+		private final RandomAccessibleInterval< T > m_in;
+
+		private final RandomAccessibleInterval< BitType > m_out;
+
+		private final long[] m_tileMin;
+
+		private final long[] m_tileMax;
+
+		private final int m_binOffset;
+
+		private final int m_numBins;
+
+		public TileTask( RandomAccessibleInterval< T > in, RandomAccessibleInterval< BitType > out, long[] tileMin, long[] tileMax, int binOffset, int numBins )
+		{
+			m_in = in;
+			m_out = out;
+			m_tileMin = tileMin;
+			m_tileMax = tileMax;
+			m_binOffset = binOffset;
+			m_numBins = numBins;
+		}
+
+		@Override
+		public void run()
+		{
+			final int n = m_in.numDimensions();
+
+			// region loaded into the buffer: tile plus halo, clipped
+			final long[] rMin = new long[ n ];
+			final long[] rMax = new long[ n ];
+			final int[] rDim = new int[ n ];
+			final int[] stride = new int[ n ];
+			int size = 1;
+			int maxLine = 0;
+			for ( int d = 0; d < n; d++ )
+			{
+				rMin[ d ] = Math.max( m_in.min( d ), m_tileMin[ d ] - m_span[ d ] );
+				rMax[ d ] = Math.min( m_in.max( d ), m_tileMax[ d ] + m_span[ d ] );
+				rDim[ d ] = ( int ) ( rMax[ d ] - rMin[ d ] + 1 );
+				stride[ d ] = size;
+				size *= rDim[ d ];
+				maxLine = Math.max( maxLine, rDim[ d ] );
+			}
+
+			final double[] values = load( rMin, rDim, size );
+			final double[] line = new double[ maxLine + 1 ];
+			final int[] queue = new int[ maxLine ];
+
+			double[] sum = null;
+			double[] sumSqr = null;
+			double[] min = null;
+			double[] max = null;
+
+			switch ( m_method )
+			{
+			case MEAN:
+			case NIBLACK:
+			case SAUVOLA:
+				sum = values.clone();
+				sumSqr = new double[ size ];
+				for ( int i = 0; i < size; i++ )
+					sumSqr[ i ] = values[ i ] * values[ i ];
+				for ( int d = 0; d < n; d++ )
+				{
+					slidingSums( sum, d, rDim, stride, size, line );
+					if ( m_method != Method.MEAN )
+						slidingSums( sumSqr, d, rDim, stride, size, line );
+				}
+				break;
+			case BERNSEN:
+			case MIDGREY:
+				min = values.clone();
+				max = values.clone();
+				for ( int d = 0; d < n; d++ )
+				{
+					slidingExtrema( min, d, rDim, stride, size, line, queue, true );
+					slidingExtrema( max, d, rDim, stride, size, line, queue, false );
+				}
+				break;
+			case MEDIAN:
+				medianThreshold( values, rMin, rDim, stride );
+				return;
+			}
+
+			final RandomAccess< BitType > out = m_out.randomAccess();
+			final long[] pos = m_tileMin.clone();
+			final long lineLength = m_tileMax[ 0 ] - m_tileMin[ 0 ] + 1;
+			while ( true )
+			{
+				int index = 0;
+				long count = 1;
+				for ( int d = 0; d < n; d++ )
+				{
+					index += ( pos[ d ] - rMin[ d ] ) * stride[ d ];
+					if ( d > 0 )
+						count *= windowSize( pos[ d ], d );
+				}
+				for ( int d = 0; d < n; d++ )
+					out.setPosition( pos[ d ] - m_in.min( d ) + m_out.min( d ), d );
+
+				for ( long x = 0; x < lineLength; x++, index++ )
+				{
+					final double px = values[ index ];
+					final boolean fg;
+					switch ( m_method )
+					{
+					case MEAN:
+					{
+						final double num = count * windowSize( pos[ 0 ] + x, 0 );
+						fg = px > sum[ index ] / num - m_p1;
+						break;
+					}
+					case NIBLACK:
+					{
+						final double num = count * windowSize( pos[ 0 ] + x, 0 );
+						final double mean = sum[ index ] / num;
+						final double variance = ( sumSqr[ index ] - ( sum[ index ] * mean ) ) / ( num - 1 );
+						fg = px > mean + m_p1 * Math.sqrt( variance ) - m_p2;
+						break;
+					}
+					case SAUVOLA:
+					{
+						final double num = count * windowSize( pos[ 0 ] + x, 0 );
+						final double mean = sum[ index ] / num;
+						final double variance = ( sumSqr[ index ] - ( sum[ index ] * mean ) ) / ( num - 1 );
+						fg = px > mean * ( 1 + m_p1 * ( Math.sqrt( variance ) / m_p2 - 1 ) );
+						break;
+					}
+					case BERNSEN:
+					{
+						final double contrast = max[ index ] - min[ index ];
+						final double midGrey = ( max[ index ] + min[ index ] ) / 2;
+						if ( contrast < m_p1 )
+							fg = midGrey >= m_p2;
+						else
+							fg = px >= midGrey;
+						break;
+					}
+					default:
+						fg = px > ( max[ index ] + min[ index ] ) / 2 - m_p1;
+						break;
+					}
+					out.get().set( fg );
+					out.fwd( 0 );
+				}
+
+				if ( !nextLine( pos, 1 ) )
+					break;
+			}
+		}
+
+		/**
+		 * Number of pixels of the window centered at position p in dimension
+		 * d, clipped to the input image.
+		 */
+		private long windowSize( long p, int d )
+		{
+			return Math.min( p + m_span[ d ], m_in.max( d ) ) - Math.max( p - m_span[ d ], m_in.min( d ) ) + 1;
+		}
+
+		/**
+		 * Move pos to the start of the next line of the tile, iterating
+		 * dimensions from first to the last.
+		 */
+		private boolean nextLine( long[] pos, int first )
+		{
+			for ( int d = first; d < pos.length; d++ )
+			{
+				if ( pos[ d ] < m_tileMax[ d ] )
+				{
+					pos[ d ]++;
+					return true;
+				}
+				pos[ d ] = m_tileMin[ d ];
+			}
+			return false;
+		}
+
+		private double[] load( long[] rMin, int[] rDim, int size )
+		{
+			final double[] values = new double[ size ];
+			final RandomAccess< T > ra = m_in.randomAccess();
+			final long[] pos = rMin.clone();
+			int index = 0;
+			while ( index < size )
+			{
+				ra.setPosition( pos );
+				for ( int x = 0; x < rDim[ 0 ]; x++ )
+				{
+					values[ index++ ] = ra.get().getRealDouble();
+					ra.fwd( 0 );
+				}
+				for ( int d = 1; d < pos.length; d++ )
+				{
+					if ( pos[ d ] < rMin[ d ] + rDim[ d ] - 1 )
+					{
+						pos[ d ]++;
+						break;
+					}
+					pos[ d ] = rMin[ d ];
+				}
+			}
+			return values;
+		}
+
+		/**
+		 * Replace each value by the sum over the window along dimension d.
+		 */
+		private void slidingSums( double[] data, int d, int[] rDim, int[] stride, int size, double[] prefix )
+		{
+			final int len = rDim[ d ];
+			final int s = stride[ d ];
+			final int r = ( int ) Math.min( m_span[ d ], len );
+			for ( int outer = 0; outer < size; outer += s * len )
+			{
+				for ( int start = outer; start < outer + s; start++ )
+				{
+					prefix[ 0 ] = 0;
+					for ( int i = 0, j = start; i < len; i++, j += s )
+						prefix[ i + 1 ] = prefix[ i ] + data[ j ];
+					for ( int i = 0, j = start; i < len; i++, j += s )
+						data[ j ] = prefix[ Math.min( i + r, len - 1 ) + 1 ] - prefix[ Math.max( i - r, 0 ) ];
+				}
+			}
+		}
+
+		/**
+		 * Replace each value by the minimum (or maximum) over the window along
+		 * dimension d.
+		 */
+		private void slidingExtrema( double[] data, int d, int[] rDim, int[] stride, int size, double[] line, int[] queue, boolean minimum )
+		{
+			final int len = rDim[ d ];
+			final int s = stride[ d ];
+			final int r = ( int ) Math.min( m_span[ d ], len );
+			for ( int outer = 0; outer < size; outer += s * len )
+			{
+				for ( int start = outer; start < outer + s; start++ )
+				{
+					for ( int i = 0, j = start; i < len; i++, j += s )
+						line[ i ] = data[ j ];
+
+					int head = 0;
+					int tail = 0;
+					int next = 0;
+					for ( int i = 0, j = start; i < len; i++, j += s )
+					{
+						final int hi = Math.min( i + r, len - 1 );
+						for ( ; next <= hi; next++ )
+						{
+							final double v = line[ next ];
+							if ( minimum )
+								while ( tail > head && line[ queue[ tail - 1 ] ] >= v )
+									tail--;
+							else
+								while ( tail > head && line[ queue[ tail - 1 ] ] <= v )
+									tail--;
+							queue[ tail++ ] = next;
+						}
+						while ( queue[ head ] < i - r )
+							head++;
+						data[ j ] = line[ queue[ head ] ];
+					}
+				}
+			}
+		}
+
+		/**
+		 * Threshold against the window median, sliding a histogram along the
+		 * lines of the tile.
+		 */
+		private void medianThreshold( double[] values, long[] rMin, int[] rDim, int[] stride )
+		{
+			final int n = rDim.length;
+			final int[] histogram = new int[ m_numBins ];
+			final RandomAccess< BitType > out = m_out.randomAccess();
+			final long[] pos = m_tileMin.clone();
+			final int span0 = ( int ) m_span[ 0 ];
+
+			// buffer offsets of the window cross section orthogonal to
+			// dimension 0
+			int[] column = new int[ 16 ];
+			final long[] cMin = new long[ n ];
+			final long[] cMax = new long[ n ];
+			final long[] c = new long[ n ];
+
+			while ( true )
+			{
+				int columnSize = 0;
+				int base = 0;
+				for ( int d = 1; d < n; d++ )
+				{
+					cMin[ d ] = Math.max( pos[ d ] - m_span[ d ], rMin[ d ] ) - rMin[ d ];
+					cMax[ d ] = Math.min( pos[ d ] + m_span[ d ], rMin[ d ] + rDim[ d ] - 1 ) - rMin[ d ];
+					c[ d ] = cMin[ d ];
+					base += ( pos[ d ] - rMin[ d ] ) * stride[ d ];
+				}
+				while ( true )
+				{
+					int offset = 0;
+					for ( int d = 1; d < n; d++ )
+						offset += c[ d ] * stride[ d ];
+					if ( columnSize == column.length )
+					{
+						int[] tmp = new int[ 2 * column.length ];
+						System.arraycopy( column, 0, tmp, 0, columnSize );
+						column = tmp;
+					}
+					column[ columnSize++ ] = offset;
+					int d = 1;
+					for ( ; d < n; d++ )
+					{
+						if ( c[ d ] < cMax[ d ] )
+						{
+							c[ d ]++;
+							break;
+						}
+						c[ d ] = cMin[ d ];
+					}
+					if ( d >= n )
+						break;
+				}
+
+				for ( int d = 0; d < n; d++ )
+					out.setPosition( pos[ d ] - m_in.min( d ) + m_out.min( d ), d );
+
+				// fill the window for the first pixel of the line
+				final int x0 = ( int ) ( m_tileMin[ 0 ] - rMin[ 0 ] );
+				final int x1 = ( int ) ( m_tileMax[ 0 ] - rMin[ 0 ] );
+				int lo = Math.max( x0 - span0, 0 );
+				int hi = Math.min( x0 + span0, rDim[ 0 ] - 1 );
+				int count = 0;
+				for ( int x = lo; x <= hi; x++ )
+				{
+					for ( int j = 0; j < columnSize; j++ )
+						histogram[ ( int ) values[ column[ j ] + x ] - m_binOffset ]++;
+					count += columnSize;
+				}
+				int median = 0;
+				int below = 0;
+
+				for ( int x = x0; x <= x1; x++ )
+				{
+					final int newLo = Math.max( x - span0, 0 );
+					final int newHi = Math.min( x + span0, rDim[ 0 ] - 1 );
+					for ( ; lo < newLo; lo++ )
+					{
+						for ( int j = 0; j < columnSize; j++ )
+						{
+							final int bin = ( int ) values[ column[ j ] + lo ] - m_binOffset;
+							histogram[ bin ]--;
+							if ( bin < median )
+								below--;
+						}
+						count -= columnSize;
+					}
+					for ( ; hi < newHi; )
+					{
+						hi++;
+						for ( int j = 0; j < columnSize; j++ )
+						{
+							final int bin = ( int ) values[ column[ j ] + hi ] - m_binOffset;
+							histogram[ bin ]++;
+							if ( bin < median )
+								below++;
+						}
+						count += columnSize;
+					}
+
+					// the median is the value at rank count / 2
+					final int k = count / 2;
+					while ( below > k )
+					{
+						median--;
+						below -= histogram[ median ];
+					}
+					while ( below + histogram[ median ] <= k )
+					{
+						below += histogram[ median ];
+						median++;
+					}
+
+					out.get().set( values[ base + x ] > median + m_binOffset - m_p1 );
+					out.fwd( 0 );
+				}
+
+				// empty the histogram
+				for ( int x = lo; x <= hi; x++ )
+					for ( int j = 0; j < columnSize; j++ )
+						histogram[ ( int ) values[ column[ j ] + x ] - m_binOffset ]--;
+
+				if ( !nextLine( pos, 1 ) )
+					break;
+			}
+		}
+	}
+}
@@ -40,45 +40,83 @@ package net.imglib2.ops.operation.randomaccessibleinterval.unary.regiongrowing;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
-import net.imglib2.Interval;
+import net.imglib2.Cursor;
 import net.imglib2.IterableInterval;
 import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessibleInterval;
-import net.imglib2.exception.IncompatibleTypeException;
-import net.imglib2.img.Img;
-import net.imglib2.img.array.ArrayImgFactory;
 import net.imglib2.labeling.LabelingType;
-import net.imglib2.labeling.NativeImgLabeling;
 import net.imglib2.ops.operation.UnaryOperation;
 import net.imglib2.type.Type;
-import net.imglib2.type.logic.BitType;
-import net.imglib2.type.numeric.integer.IntType;
-import net.imglib2.util.ValuePair;
 
 /**
- * TODO: Efficiency!!!!
+ * Grows labeled regions from seeding points. Positions are queued as linear
+ * indices in a primitive ring buffer, labels are replaced by integer ids while
+ * growing and only the final regions are written to the result labeling.
+ * 
+ * If an {@link ExecutorService} is given, synchronous growing without overlap
+ * processes the queue front by front, each front split into one chunk per
+ * task. A position reached from several positions of a front gets the label of
+ * the first of them, so the result is the same as the one of the sequential
+ * growing. Every task but the first uses a {@link #copy()} of this operation,
+ * and {@link #includeInRegion(int[], int[], Comparable)} must not depend on
+ * state changed by other calls.
  * 
  * @author Martin Horn (University of Konstanz)
  */
 public abstract class AbstractRegionGrowing< T extends Type< T >, L extends Comparable< L >, I extends IterableInterval< T > & RandomAccessibleInterval< T >, LL extends RandomAccessibleInterval< LabelingType< L >> & IterableInterval< LabelingType< L >>> implements UnaryOperation< I, LL >
 {
 
-	private final GrowingMode m_mode;
+	/**
+	 * Fronts smaller than this are grown in the calling thread.
+	 */
+	private static final int MIN_PARALLEL_FRONT = 1024;
 
-	private final Map< L, List< L >> m_labelMap;
+	private final GrowingMode m_mode;
 
 	private final boolean m_allowOverlap;
 
-	private RandomAccess< BitType > m_visitedRA = null;
+	private final ExecutorService m_service;
 
-	private RandomAccess< LabelingType< L >> m_visitedLabRA = null;
+	private final int m_numTasks;
 
 	protected final long[][] m_structuringElement;
 
+	// per compute state
+
+	private int[] m_dims;
+
+	private int[] m_steps;
+
+	// offsets of the structuring element per dimension and as linear index
+	private int[][] m_offsets;
+
+	private int[] m_linearOffsets;
+
+	// maximal absolute offset per dimension
+	private int[] m_reach;
+
+	// label id + 1 per position, 0 if not labeled yet
+	private int[] m_ids;
+
+	// further label ids of positions with overlapping labels
+	private Map< Integer, int[] > m_moreIds;
+
+	private List< L > m_labels;
+
+	private Map< L, Integer > m_labelIds;
+
+	private AbstractRegionGrowing< T, L, I, LL >[] m_workers;
+
+	private AtomicIntegerArray m_claims;
+
 	/**
 	 * 
 	 * @author hornm, University of Konstanz
@@ -106,19 +144,30 @@ public abstract class AbstractRegionGrowing< T extends Type< T >, L extends Comp
 	 */
 	public AbstractRegionGrowing( long[][] structuringElement, GrowingMode mode, boolean allowOverlap )
 	{
+		this( structuringElement, mode, allowOverlap, null, 1 );
+	}
+
+	/**
+	 * @param structuringElement
+	 *            set of offsets defining the neighbourhood
+	 * @param mode
+	 * @param allowOverlap
+	 *            allows overlapping, more memory intensive
+	 * @param service
+	 *            service used to grow synchronously without overlap in
+	 *            parallel, null to grow in the calling thread
+	 * @param numTasks
+	 *            number of chunks each front is split into
+	 */
+	public AbstractRegionGrowing( long[][] structuringElement, GrowingMode mode, boolean allowOverlap, ExecutorService service, int numTasks )
+	{
+		if ( numTasks < 1 ) { throw new IllegalArgumentException( "Number of tasks must be at least 1" ); }
 
 		m_structuringElement = structuringElement;
 		m_mode = mode;
 		m_allowOverlap = allowOverlap;
-		m_labelMap = new HashMap< L, List< L >>();
-
-	}
-
-	private long[] resultDims( Interval src )
-	{
-		long[] dims = new long[ src.numDimensions() ];
-		src.dimensions( dims );
-		return dims;
+		m_service = service;
+		m_numTasks = numTasks;
 	}
 
 	/**
@@ -129,34 +178,9 @@ public abstract class AbstractRegionGrowing< T extends Type< T >, L extends Comp
 	{
 
 		initRegionGrowing( op );
+		initIndexing( op );
 
-		final LinkedList< ValuePair< int[], L >> q = new LinkedList< ValuePair< int[], L >>();
-
-		// image and random access to keep track of the already visited
-		// pixel
-		// positions
-		if ( m_allowOverlap )
-		{
-			NativeImgLabeling< L, IntType > tmp = new NativeImgLabeling< L, IntType >( new ArrayImgFactory< IntType >().create( resultDims( op ), new IntType() ) );
-			m_visitedLabRA = tmp.randomAccess();
-		}
-		else
-		{
-			BitType bt = new BitType();
-			Img< BitType > tmp = null;
-			try
-			{
-				tmp = new ArrayImgFactory< BitType >().imgFactory( bt ).create( op, bt );
-			}
-			catch ( IncompatibleTypeException e )
-			{
-				//
-			}
-			m_visitedRA = tmp.randomAccess();
-		}
-
-		// access to the resulting labeling
-		RandomAccess< LabelingType< L >> resRA = r.randomAccess();
+		final IntQueue q = new IntQueue();
 
 		L label;
 		int[] pos = new int[ op.numDimensions() ];
@@ -164,119 +188,444 @@ public abstract class AbstractRegionGrowing< T extends Type< T >, L extends Comp
 		{
 			while ( ( label = nextSeedPosition( pos ) ) != null )
 			{
+				final int id = labelId( label );
+				final int index = index( pos );
 
 				// already visited?
-				setVisitedPosition( pos );
-				if ( isMarkedAsVisited( label ) )
+				if ( isMarkedAsVisited( index, id ) )
 				{
 					continue;
 				}
-				markAsVisited( label );
+				markAsVisited( index, id );
 
-				q.addLast( new ValuePair< int[], L >( pos.clone(), label ) );
-
-				// set new labeling
-				resRA.setPosition( pos );
-				setLabel( resRA, label );
+				q.addLast( index, id );
 
 				if ( m_mode == GrowingMode.ASYNCHRONOUS )
 				{
-					growProcess( q, resRA, op );
+					growProcess( q, op );
 				}
 			}
 			if ( m_mode == GrowingMode.SYNCHRONOUS )
 			{
-				growProcess( q, resRA, op );
+				growProcess( q, op );
 			}
 		}
 		while ( hasMoreSeedingPoints() );
 
+		writeLabels( r );
+
+		m_ids = null;
+		m_moreIds = null;
+		m_labels = null;
+		m_labelIds = null;
+		m_workers = null;
+		m_claims = null;
+
 		return r;
 	}
 
+	private void initIndexing( I op )
+	{
+		final int n = op.numDimensions();
+		m_dims = new int[ n ];
+		m_steps = new int[ n ];
+		long size = 1;
+		for ( int d = 0; d < n; d++ )
+		{
+			m_dims[ d ] = ( int ) op.dimension( d );
+			m_steps[ d ] = ( int ) size;
+			size *= op.dimension( d );
+		}
+		if ( size > Integer.MAX_VALUE ) { throw new IllegalArgumentException( "Region growing supports at most " + Integer.MAX_VALUE + " pixels" ); }
+
+		m_offsets = new int[ m_structuringElement.length ][ n ];
+		m_linearOffsets = new int[ m_structuringElement.length ];
+		m_reach = new int[ n ];
+		for ( int k = 0; k < m_structuringElement.length; k++ )
+		{
+			for ( int d = 0; d < n; d++ )
+			{
+				m_offsets[ k ][ d ] = ( int ) m_structuringElement[ k ][ d ];
+				m_linearOffsets[ k ] += m_offsets[ k ][ d ] * m_steps[ d ];
+				m_reach[ d ] = Math.max( m_reach[ d ], Math.abs( m_offsets[ k ][ d ] ) );
+			}
+		}
+
+		m_ids = new int[ ( int ) size ];
+		m_moreIds = new HashMap< Integer, int[] >();
+		m_labels = new ArrayList< L >();
+		m_labelIds = new HashMap< L, Integer >();
+	}
+
+	private int index( int[] pos )
+	{
+		int index = 0;
+		for ( int d = 0; d < pos.length; d++ )
+		{
+			index += pos[ d ] * m_steps[ d ];
+		}
+		return index;
+	}
+
+	private void position( int index, int[] pos )
+	{
+		for ( int d = pos.length - 1; d >= 0; d-- )
+		{
+			pos[ d ] = index / m_steps[ d ];
+			index -= pos[ d ] * m_steps[ d ];
+		}
+	}
+
+	/*
+	 * True if all neighbours of the position are inside the image.
+	 */
+	private boolean isInterior( int[] pos )
+	{
+		for ( int d = 0; d < pos.length; d++ )
+		{
+			if ( pos[ d ] < m_reach[ d ] || pos[ d ] >= m_dims[ d ] - m_reach[ d ] ) { return false; }
+		}
+		return true;
+	}
+
+	/*
+	 * Computes the k-th neighbour of pos, returns false if it is outside of
+	 * the image.
+	 */
+	private boolean neighbour( int[] pos, int k, int[] nextPos )
+	{
+		final int[] offset = m_offsets[ k ];
+		for ( int d = 0; d < pos.length; d++ )
+		{
+			nextPos[ d ] = pos[ d ] + offset[ d ];
+			if ( nextPos[ d ] < 0 || nextPos[ d ] >= m_dims[ d ] ) { return false; }
+		}
+		return true;
+	}
+
+	/*
+	 * Returns the id of a label, starting at 1.
+	 */
+	private int labelId( L label )
+	{
+		Integer id = m_labelIds.get( label );
+		if ( id == null )
+		{
+			m_labels.add( label );
+			id = m_labels.size();
+			m_labelIds.put( label, id );
+		}
+		return id;
+	}
+
 	/*
 	 * The actual growing process. Grows a region by iterativevly calling the
 	 * includeInRegion method till the queue is empty.
 	 */
-	private synchronized void growProcess( LinkedList< ValuePair< int[], L >> q, RandomAccess< LabelingType< L >> resLabRA, I src )
+	private void growProcess( IntQueue q, I src )
 	{
-		int[] pos, nextPos;
-		L label;
-		boolean outOfBounds;
+		if ( m_service != null && m_numTasks > 1 && m_mode == GrowingMode.SYNCHRONOUS && !m_allowOverlap )
+		{
+			growFronts( q, src );
+		}
+		else
+		{
+			final int[] pos = new int[ m_dims.length ];
+			final int[] nextPos = new int[ m_dims.length ];
+			while ( !q.isEmpty() )
+			{
+				final int index = q.firstIndex();
+				final int id = q.firstLabel();
+				q.removeFirst();
+				grow( this, index, id, pos, nextPos, q );
+			}
+		}
+		queueProcessed();
+	}
+
+	/*
+	 * Visits the neighbours of a position, i.e. each neighbour not visited yet
+	 * which is included in the region is marked as visited and added to the
+	 * queue.
+	 */
+	private void grow( AbstractRegionGrowing< T, L, I, LL > worker, int index, int id, int[] pos, int[] nextPos, IntQueue q )
+	{
+		final L label = m_labels.get( id - 1 );
+		position( index, pos );
+		final boolean interior = isInterior( pos );
+		for ( int k = 0; k < m_linearOffsets.length; k++ )
+		{
+			final int nextIndex = index + m_linearOffsets[ k ];
+			if ( interior )
+			{
+				final int[] offset = m_offsets[ k ];
+				for ( int d = 0; d < pos.length; d++ )
+				{
+					nextPos[ d ] = pos[ d ] + offset[ d ];
+				}
+			}
+			else if ( !neighbour( pos, k, nextPos ) )
+			{
+				continue;
+			}
+
+			// if already visited, continue
+			if ( isMarkedAsVisited( nextIndex, id ) )
+			{
+				continue;
+			}
+			if ( !worker.includeInRegion( pos, nextPos, label ) )
+			{
+				continue;
+			}
+
+			// mark position as processed
+			markAsVisited( nextIndex, id );
+			q.addLast( nextIndex, id );
+		}
+	}
+
+	/*
+	 * Grows the queue front by front. Each task first claims the neighbours of
+	 * its chunk of the front which are included in the region, keeping the
+	 * smallest index into the front per neighbour, and then labels and queues
+	 * the neighbours it won. Concatenating the queues of the tasks in order
+	 * gives the next front in the order of the sequential growing.
+	 */
+	@SuppressWarnings( { "rawtypes", "unchecked" } )
+	private void growFronts( IntQueue q, I src )
+	{
+		if ( m_workers == null )
+		{
+			m_workers = new AbstractRegionGrowing[ m_numTasks ];
+			m_workers[ 0 ] = this;
+			m_claims = new AtomicIntegerArray( m_ids.length );
+		}
+
+		final int[] pos = new int[ m_dims.length ];
+		final int[] nextPos = new int[ m_dims.length ];
 		while ( !q.isEmpty() )
 		{
-			ValuePair< int[], L > p = q.removeFirst();
-			pos = p.a;
-			label = p.b;
+			final int size = q.size();
+			if ( size < MIN_PARALLEL_FRONT )
+			{
+				for ( int i = 0; i < size; i++ )
+				{
+					final int index = q.firstIndex();
+					final int id = q.firstLabel();
+					q.removeFirst();
+					grow( this, index, id, pos, nextPos, q );
+				}
+				continue;
+			}
+
+			for ( int t = 1; t < m_numTasks; t++ )
+			{
+				if ( m_workers[ t ] == null )
+				{
+					m_workers[ t ] = ( AbstractRegionGrowing< T, L, I, LL > ) copy();
+					m_workers[ t ].initRegionGrowing( src );
+				}
+			}
 
-			// if (resRA.get().getLabeling() == label) {
-			// continue;
-			// }
+			final int[] frontIndices = new int[ size ];
+			final int[] frontIds = new int[ size ];
+			for ( int i = 0; i < size; i++ )
+			{
+				frontIndices[ i ] = q.firstIndex();
+				frontIds[ i ] = q.firstLabel();
+				q.removeFirst();
+			}
 
-			for ( long[] offset : m_structuringElement )
+			final List< Callable< IntQueue >> claim = new ArrayList< Callable< IntQueue >>( m_numTasks );
+			final List< Callable< IntQueue >> take = new ArrayList< Callable< IntQueue >>( m_numTasks );
+			final int chunkSize = ( size + m_numTasks - 1 ) / m_numTasks;
+			for ( int t = 0; t < m_numTasks; t++ )
 			{
-				outOfBounds = false;
-				nextPos = pos.clone();
-				for ( int i = 0; i < pos.length; i++ )
+				final AbstractRegionGrowing< T, L, I, LL > worker = m_workers[ t ];
+				final int start = t * chunkSize;
+				final int end = Math.min( size, start + chunkSize );
+				claim.add( new Callable< IntQueue >()
 				{
-					nextPos[ i ] = pos[ i ] + ( int ) offset[ i ];
-					if ( nextPos[ i ] < 0 || nextPos[ i ] >= src.dimension( i ) )
+					@Override
+					public IntQueue call()
 					{
-						outOfBounds = true;
-						break;
+						final int[] pos = new int[ m_dims.length ];
+						final int[] nextPos = new int[ m_dims.length ];
+						for ( int i = start; i < end; i++ )
+						{
+							claim( worker, i, frontIndices[ i ], frontIds[ i ], pos, nextPos );
+						}
+						return null;
 					}
-				}
-				if ( !outOfBounds )
+				} );
+				take.add( new Callable< IntQueue >()
+				{
+					@Override
+					public IntQueue call()
+					{
+						final IntQueue next = new IntQueue();
+						final int[] pos = new int[ m_dims.length ];
+						final int[] nextPos = new int[ m_dims.length ];
+						for ( int i = start; i < end; i++ )
+						{
+							take( i, frontIndices[ i ], frontIds[ i ], pos, nextPos, next );
+						}
+						return next;
+					}
+				} );
+			}
+
+			invoke( claim );
+			for ( final IntQueue next : invoke( take ) )
+			{
+				q.addAll( next );
+			}
+		}
+	}
+
+	private void claim( AbstractRegionGrowing< T, L, I, LL > worker, int i, int index, int id, int[] pos, int[] nextPos )
+	{
+		final L label = m_labels.get( id - 1 );
+		position( index, pos );
+		for ( int k = 0; k < m_linearOffsets.length; k++ )
+		{
+			if ( !neighbour( pos, k, nextPos ) )
+			{
+				continue;
+			}
+			final int nextIndex = index + m_linearOffsets[ k ];
+			if ( m_ids[ nextIndex ] != 0 || !worker.includeInRegion( pos, nextPos, label ) )
+			{
+				continue;
+			}
+
+			// keep the smallest claim, shifted by one as 0 means unclaimed
+			int current;
+			do
+			{
+				current = m_claims.get( nextIndex );
+				if ( current != 0 && current <= i + 1 )
 				{
-					updatePosition( resLabRA, q, pos, nextPos, label );
+					break;
 				}
+			}
+			while ( !m_claims.compareAndSet( nextIndex, current, i + 1 ) );
+		}
+	}
 
+	private void take( int i, int index, int id, int[] pos, int[] nextPos, IntQueue next )
+	{
+		position( index, pos );
+		for ( int k = 0; k < m_linearOffsets.length; k++ )
+		{
+			if ( !neighbour( pos, k, nextPos ) )
+			{
+				continue;
+			}
+			final int nextIndex = index + m_linearOffsets[ k ];
+			if ( m_claims.get( nextIndex ) == i + 1 )
+			{
+				m_claims.set( nextIndex, 0 );
+				m_ids[ nextIndex ] = id;
+				next.addLast( nextIndex, id );
 			}
+		}
+	}
 
+	private List< IntQueue > invoke( List< Callable< IntQueue >> tasks )
+	{
+		final List< Future< IntQueue >> futures = new ArrayList< Future< IntQueue >>( tasks.size() );
+		for ( Callable< IntQueue > task : tasks )
+		{
+			futures.add( m_service.submit( task ) );
 		}
-		queueProcessed();
 
+		final List< IntQueue > results = new ArrayList< IntQueue >( tasks.size() );
+		try
+		{
+			for ( Future< IntQueue > f : futures )
+			{
+				results.add( f.get() );
+			}
+		}
+		catch ( InterruptedException e )
+		{
+			throw new RuntimeException( e );
+		}
+		catch ( ExecutionException e )
+		{
+			throw new RuntimeException( e.getCause() );
+		}
+		return results;
 	}
 
 	/*
-	 * Updates a position, i.e. if not visited yet, it marks it as visited, sets
-	 * the according label and adds the position to the queue
+	 * Writes the labels of all grown regions to the result labeling.
 	 */
-	private void updatePosition( RandomAccess< LabelingType< L >> resLabRA, LinkedList< ValuePair< int[], L >> queue, int[] pos, int[] nextPos, L label )
+	private void writeLabels( LL r )
 	{
-		setVisitedPosition( nextPos );
-		// if already visited, return
-		if ( isMarkedAsVisited( label ) ) { return; }
-
-		if ( !includeInRegion( pos, nextPos, label ) ) { return; }
-
-		// mark position as processed
-		markAsVisited( label );
+		// interned single label lists per id
+		final List< List< L >> interned = new ArrayList< List< L >>( m_labels.size() );
+		for ( int id = 0; id < m_labels.size(); id++ )
+		{
+			interned.add( null );
+		}
 
-		queue.addLast( new ValuePair< int[], L >( nextPos, label ) );
+		final int[] pos = new int[ m_dims.length ];
+		final Cursor< LabelingType< L >> c = r.localizingCursor();
+		while ( c.hasNext() )
+		{
+			c.fwd();
+			c.localize( pos );
+			final int index = index( pos );
+			final int id = m_ids[ index ];
+			if ( id == 0 )
+			{
+				continue;
+			}
 
-		// update the ra's positions
-		resLabRA.setPosition( nextPos );
-		setLabel( resLabRA, label );
+			final LabelingType< L > type = c.get();
+			final int[] more = m_moreIds.get( index );
+			if ( more == null && type.getLabeling().isEmpty() )
+			{
+				List< L > labeling = interned.get( id - 1 );
+				if ( labeling == null )
+				{
+					labeling = new ArrayList< L >( 1 );
+					labeling.add( m_labels.get( id - 1 ) );
+					labeling = type.getMapping().intern( labeling );
+					interned.set( id - 1, labeling );
+				}
+				type.setLabeling( labeling );
+			}
+			else
+			{
+				final List< L > labeling = new ArrayList< L >( type.getLabeling() );
+				labeling.add( m_labels.get( id - 1 ) );
+				if ( more != null )
+				{
+					for ( int moreId : more )
+					{
+						labeling.add( m_labels.get( moreId - 1 ) );
+					}
+				}
+				type.setLabeling( labeling );
+			}
+		}
 	}
 
 	/**
-	 * Sets the label in the result labeling. To speed up it a bit, a map is
-	 * used to get the already interned list of single labels.
+	 * Adds a label to the labeling at the position of the given random access.
 	 */
 	protected void setLabel( RandomAccess< LabelingType< L >> ra, L label )
 	{
 		List< L > labeling;
 		if ( ra.get().getLabeling().isEmpty() )
 		{
-			if ( ( labeling = m_labelMap.get( label ) ) == null )
-			{
-				// add the label and put the interned list into
-				// the hash map
-				labeling = new ArrayList< L >( 1 );
-				labeling.add( label );
-				labeling = ra.get().getMapping().intern( labeling );
-			}
+			labeling = new ArrayList< L >( 1 );
+			labeling.add( label );
+			labeling = ra.get().getMapping().intern( labeling );
 		}
 		else
 		{
@@ -288,46 +637,50 @@ public abstract class AbstractRegionGrowing< T extends Type< T >, L extends Comp
 
 	}
 
-	private void setVisitedPosition( int[] pos )
-	{
-		if ( m_allowOverlap )
-		{
-			m_visitedLabRA.setPosition( pos );
-		}
-		else
-		{
-			m_visitedRA.setPosition( pos );
-		}
-	}
-
 	/*
-	 * Marks the set position as visited. To keep this, either a bittype image
-	 * or a labeling is used (depending if overlap is allowed or not).
+	 * Checks if a position was already visited, i.e. already carries the given
+	 * label (if overlap is allowed) or any label.
 	 */
-	private boolean isMarkedAsVisited( L label )
+	private boolean isMarkedAsVisited( int index, int id )
 	{
-		if ( m_allowOverlap )
+		final int first = m_ids[ index ];
+		if ( !m_allowOverlap || first == 0 || first == id )
 		{
-			return m_visitedLabRA.get().getLabeling().contains( label );
+			return first != 0;
 		}
-		return m_visitedRA.get().get();
+		final int[] more = m_moreIds.get( index );
+		if ( more != null )
+		{
+			for ( int moreId : more )
+			{
+				if ( moreId == id ) { return true; }
+			}
+		}
+		return false;
 	}
 
 	/*
-	 * Checks if a postion was already visited. To keep this, either a bittype
-	 * image or a labeling is used (depending if overlap is allowed or not).
+	 * Marks a position as visited by assigning the label id.
 	 */
-	private void markAsVisited( L label )
+	private void markAsVisited( int index, int id )
 	{
-		if ( m_allowOverlap )
+		if ( m_ids[ index ] == 0 )
 		{
-			List< L > l = new ArrayList< L >( m_visitedLabRA.get().getLabeling() );
-			l.add( label );
-			m_visitedLabRA.get().setLabeling( l );
+			m_ids[ index ] = id;
 		}
 		else
 		{
-			m_visitedRA.get().set( true );
+			final int[] more = m_moreIds.get( index );
+			if ( more == null )
+			{
+				m_moreIds.put( index, new int[] { id } );
+			}
+			else
+			{
+				final int[] grown = Arrays.copyOf( more, more.length + 1 );
+				grown[ more.length ] = id;
+				m_moreIds.put( index, grown );
+			}
 		}
 	}
 
@@ -353,7 +706,8 @@ public abstract class AbstractRegionGrowing< T extends Type< T >, L extends Comp
 	 * @param nextPos
 	 * @param label
 	 * @return true, if the new position ({@code nextPos}) should get the given
-	 *         label)
+	 *         label). The position arrays are reused between calls and must
+	 *         be copied to be kept.
 	 */
 	protected abstract boolean includeInRegion( int[] oldPos, int[] nextPos, L label );
 
@@ -436,4 +790,81 @@ public abstract class AbstractRegionGrowing< T extends Type< T >, L extends Comp
 		}
 		return result;
 	}
+
+	/**
+	 * Ring buffer of linear indices and label ids.
+	 */
+	private static final class IntQueue
+	{
+
+		private int[] m_indices = new int[ 64 ];
+
+		private int[] m_ids = new int[ 64 ];
+
+		private int m_first = 0;
+
+		private int m_size = 0;
+
+		public boolean isEmpty()
+		{
+			return m_size == 0;
+		}
+
+		public int size()
+		{
+			return m_size;
+		}
+
+		public int firstIndex()
+		{
+			return m_indices[ m_first ];
+		}
+
+		public int firstLabel()
+		{
+			return m_ids[ m_first ];
+		}
+
+		public void removeFirst()
+		{
+			m_first = ( m_first + 1 ) & ( m_indices.length - 1 );
+			m_size--;
+		}
+
+		public void addLast( int index, int id )
+		{
+			if ( m_size == m_indices.length )
+			{
+				grow();
+			}
+			final int last = ( m_first + m_size ) & ( m_indices.length - 1 );
+			m_indices[ last ] = index;
+			m_ids[ last ] = id;
+			m_size++;
+		}
+
+		public void addAll( IntQueue other )
+		{
+			while ( !other.isEmpty() )
+			{
+				addLast( other.firstIndex(), other.firstLabel() );
+				other.removeFirst();
+			}
+		}
+
+		private void grow()
+		{
+			final int capacity = m_indices.length;
+			final int[] indices = new int[ 2 * capacity ];
+			final int[] ids = new int[ 2 * capacity ];
+			final int head = capacity - m_first;
+			System.arraycopy( m_indices, m_first, indices, 0, head );
+			System.arraycopy( m_indices, 0, indices, head, m_first );
+			System.arraycopy( m_ids, m_first, ids, 0, head );
+			System.arraycopy( m_ids, 0, ids, head, m_first );
+			m_indices = indices;
+			m_ids = ids;
+			m_first = 0;
+		}
+	}
 }
@@ -42,6 +42,7 @@ import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.ExecutorService;
 
 import net.imglib2.Cursor;
 import net.imglib2.RandomAccess;
@@ -70,6 +71,10 @@ public class VoronoiLikeRegionGrowing< L extends Comparable< L >, T extends Type
 
 	protected final boolean m_fillHoles;
 
+	private final ExecutorService m_service;
+
+	private final int m_numTasks;
+
 	/**
 	 * TODO
 	 * 
@@ -83,7 +88,31 @@ public class VoronoiLikeRegionGrowing< L extends Comparable< L >, T extends Type
 	 */
 	public VoronoiLikeRegionGrowing( Img< T > srcImg, T threshold, boolean fillHoles )
 	{
-		super( AbstractRegionGrowing.get8ConStructuringElement( srcImg.numDimensions() ), GrowingMode.SYNCHRONOUS, false );
+		this( srcImg, threshold, fillHoles, null, 1 );
+	}
+
+	/**
+	 * @param srcImg
+	 *            the image whose values decide which pixels the seeds grow
+	 *            into, compared against the threshold
+	 * @param threshold
+	 *            stops growing if the pixel value falls below that value
+	 * @param fillHoles
+	 *            fills the wholes in a post-processing step within segments of
+	 *            the same label
+	 * @param service
+	 *            service used to grow each front of the regions in parallel,
+	 *            or null to grow in the calling thread. The result is the same
+	 *            either way.
+	 * @param numTasks
+	 *            number of chunks each front is split into, at least 1. With
+	 *            1 the regions are grown in the calling thread.
+	 */
+	public VoronoiLikeRegionGrowing( Img< T > srcImg, T threshold, boolean fillHoles, ExecutorService service, int numTasks )
+	{
+		super( AbstractRegionGrowing.get8ConStructuringElement( srcImg.numDimensions() ), GrowingMode.SYNCHRONOUS, false, service, numTasks );
+		m_service = service;
+		m_numTasks = numTasks;
 		m_threshold = threshold;
 		m_fillHoles = fillHoles;
 		m_srcImgRA = srcImg.randomAccess();
@@ -278,7 +307,7 @@ public class VoronoiLikeRegionGrowing< L extends Comparable< L >, T extends Type
 	@Override
 	public UnaryOperation< Labeling< L >, Labeling< L >> copy()
 	{
-		return new VoronoiLikeRegionGrowing< L, T >( m_srcImg, m_threshold.copy(), m_fillHoles );
+		return new VoronoiLikeRegionGrowing< L, T >( m_srcImg, m_threshold.copy(), m_fillHoles, m_service, m_numTasks );
 	}
 
 }
@@ -0,0 +1,432 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.ops.pointset;
+
+import net.imglib2.AbstractCursor;
+
+/**
+ * BitmapPointSet is a {@link PointSet} that stores its members as a bitmap
+ * over a rectangular region of space. Membership queries take constant time
+ * and iteration proceeds in flat order through the bitmap, skipping 64
+ * empty positions at a time. It is a compact representation for dense but
+ * irregularly shaped regions and the target of eager set algebra (see
+ * {@link CompactPointSets}).
+ */
+public class BitmapPointSet extends AbstractPointSet {
+
+	// -- instance variables --
+
+	private final int numD;
+	private final long[] origin;
+	private final long[] regionMin;
+	private final long[] regionMax;
+	private final long[] strides;
+	private final long[] bits;
+	private final long volume;
+	private long size;
+	private long[] tightMin;
+	private long[] tightMax;
+
+	// -- constructors --
+
+	/**
+	 * Constructs an empty BitmapPointSet that can hold points in the region
+	 * between and including the given minimum and maximum points. Points are
+	 * added with {@link #add(long[])}.
+	 * 
+	 * @param origin The anchor point of the set.
+	 * @param min The minimum corner of the region.
+	 * @param max The maximum corner of the region.
+	 */
+	public BitmapPointSet(long[] origin, long[] min, long[] max) {
+		if (origin.length != min.length || min.length != max.length)
+			throw new IllegalArgumentException();
+		this.numD = origin.length;
+		this.origin = origin.clone();
+		this.regionMin = min.clone();
+		this.regionMax = max.clone();
+		this.strides = new long[numD];
+		long vol = 1;
+		for (int i = 0; i < numD; i++) {
+			final long dim = max[i] - min[i] + 1;
+			if (dim <= 0)
+				throw new IllegalArgumentException("max must be >= min");
+			strides[i] = vol;
+			if (vol > Long.MAX_VALUE / dim)
+				throw new IllegalArgumentException("region is too large");
+			vol *= dim;
+		}
+		final long numWords = (vol + 63) >>> 6;
+		if (numWords > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("region is too large for a bitmap");
+		this.volume = vol;
+		this.bits = new long[(int) numWords];
+		this.size = 0;
+	}
+
+	/**
+	 * Constructs a BitmapPointSet containing the same points as another
+	 * PointSet. The bitmap spans the bounding box of the other set.
+	 */
+	public BitmapPointSet(PointSet ps) {
+		this(ps.getOrigin(), boundMin(ps), boundMax(ps));
+		final PointSetIterator iter = ps.iterator();
+		while (iter.hasNext()) {
+			add(iter.next());
+		}
+	}
+
+	private BitmapPointSet(BitmapPointSet other) {
+		this.numD = other.numD;
+		this.origin = other.origin.clone();
+		this.regionMin = other.regionMin.clone();
+		this.regionMax = other.regionMax.clone();
+		this.strides = other.strides.clone();
+		this.bits = other.bits.clone();
+		this.volume = other.volume;
+		this.size = other.size;
+	}
+
+	// -- BitmapPointSet methods --
+
+	/**
+	 * Adds a point to the set. The point must lie within the region of the
+	 * bitmap. Returns true if the point was not already a member.
+	 */
+	public boolean add(long[] point) {
+		final long index = linearize(point);
+		if (index < 0)
+			throw new IllegalArgumentException("point lies outside bitmap region");
+		final int word = (int) (index >>> 6);
+		final long mask = 1L << index;
+		if ((bits[word] & mask) != 0) return false;
+		bits[word] |= mask;
+		size++;
+		tightMin = tightMax = null;
+		invalidateBounds();
+		return true;
+	}
+
+	/**
+	 * Removes a point from the set. Returns true if the point was a member.
+	 */
+	public boolean remove(long[] point) {
+		final long index = linearize(point);
+		if (index < 0) return false;
+		final int word = (int) (index >>> 6);
+		final long mask = 1L << index;
+		if ((bits[word] & mask) == 0) return false;
+		bits[word] &= ~mask;
+		size--;
+		tightMin = tightMax = null;
+		invalidateBounds();
+		return true;
+	}
+
+	/**
+	 * Returns true if this set and another BitmapPointSet cover the same region
+	 * of space so that their bitmaps can be combined word by word.
+	 */
+	public boolean sameRegion(BitmapPointSet other) {
+		if (numD != other.numD) return false;
+		for (int i = 0; i < numD; i++) {
+			if (regionMin[i] != other.regionMin[i]) return false;
+			if (regionMax[i] != other.regionMax[i]) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Adds all the members of another BitmapPointSet that covers the same
+	 * region to this set.
+	 */
+	public void or(BitmapPointSet other) {
+		checkRegion(other);
+		for (int i = 0; i < bits.length; i++)
+			bits[i] |= other.bits[i];
+		recount();
+	}
+
+	/**
+	 * Retains only those members of this set that are also members of another
+	 * BitmapPointSet covering the same region.
+	 */
+	public void and(BitmapPointSet other) {
+		checkRegion(other);
+		for (int i = 0; i < bits.length; i++)
+			bits[i] &= other.bits[i];
+		recount();
+	}
+
+	/**
+	 * Removes all the members of another BitmapPointSet covering the same region
+	 * from this set.
+	 */
+	public void andNot(BitmapPointSet other) {
+		checkRegion(other);
+		for (int i = 0; i < bits.length; i++)
+			bits[i] &= ~other.bits[i];
+		recount();
+	}
+
+	// -- PointSet methods --
+
+	@Override
+	public long[] getOrigin() {
+		return origin;
+	}
+
+	@Override
+	public void translate(long[] deltas) {
+		for (int i = 0; i < numD; i++) {
+			final long delta = deltas[i];
+			origin[i] += delta;
+			regionMin[i] += delta;
+			regionMax[i] += delta;
+			if (tightMin != null) {
+				tightMin[i] += delta;
+				tightMax[i] += delta;
+			}
+		}
+		invalidateBounds();
+	}
+
+	@Override
+	public PointSetIterator iterator() {
+		return new BitmapPointSetIterator();
+	}
+
+	@Override
+	public int numDimensions() {
+		return numD;
+	}
+
+	@Override
+	public boolean includes(long[] point) {
+		final long index = linearize(point);
+		if (index < 0) return false;
+		return (bits[(int) (index >>> 6)] & (1L << index)) != 0;
+	}
+
+	@Override
+	protected long[] findBoundMin() {
+		if (tightMin == null) calcTightBounds();
+		return tightMin;
+	}
+
+	@Override
+	protected long[] findBoundMax() {
+		if (tightMax == null) calcTightBounds();
+		return tightMax;
+	}
+
+	@Override
+	public long size() {
+		return size;
+	}
+
+	@Override
+	public BitmapPointSet copy() {
+		return new BitmapPointSet(this);
+	}
+
+	// -- private helpers --
+
+	private static long[] boundMin(PointSet ps) {
+		final long[] min = new long[ps.numDimensions()];
+		ps.min(min);
+		return min;
+	}
+
+	private static long[] boundMax(PointSet ps) {
+		final long[] max = new long[ps.numDimensions()];
+		ps.max(max);
+		return max;
+	}
+
+	private void checkRegion(BitmapPointSet other) {
+		if (!sameRegion(other))
+			throw new IllegalArgumentException("bitmaps cover different regions");
+	}
+
+	private void recount() {
+		long count = 0;
+		for (long word : bits)
+			count += Long.bitCount(word);
+		size = count;
+		tightMin = tightMax = null;
+		invalidateBounds();
+	}
+
+	/**
+	 * Returns the linear index of a point within the bitmap region or -1 if the
+	 * point lies outside of it.
+	 */
+	private long linearize(long[] point) {
+		long index = 0;
+		for (int i = 0; i < numD; i++) {
+			final long p = point[i];
+			if (p < regionMin[i] || p > regionMax[i]) return -1;
+			index += (p - regionMin[i]) * strides[i];
+		}
+		return index;
+	}
+
+	private void delinearize(long index, long[] point) {
+		for (int i = numD - 1; i >= 0; i--) {
+			final long q = index / strides[i];
+			point[i] = regionMin[i] + q;
+			index -= q * strides[i];
+		}
+	}
+
+	private void calcTightBounds() {
+		// an empty set reports the bitmap region as its bounds
+		tightMin = regionMin.clone();
+		tightMax = regionMax.clone();
+		if (size == 0) return;
+		final long[] pos = new long[numD];
+		boolean first = true;
+		for (int w = 0; w < bits.length; w++) {
+			long word = bits[w];
+			while (word != 0) {
+				final int bit = Long.numberOfTrailingZeros(word);
+				word &= word - 1;
+				delinearize(((long) w << 6) + bit, pos);
+				for (int i = 0; i < numD; i++) {
+					if (first || pos[i] < tightMin[i]) tightMin[i] = pos[i];
+					if (first || pos[i] > tightMax[i]) tightMax[i] = pos[i];
+				}
+				first = false;
+			}
+		}
+	}
+
+	private class BitmapPointSetIterator extends AbstractCursor<long[]>
+		implements PointSetIterator
+	{
+		private final long[] curr;
+		private long nextIndex;
+		private boolean positioned;
+		// index of the next member, found once per step
+		private long next;
+		private boolean nextFound;
+
+		public BitmapPointSetIterator() {
+			super(BitmapPointSet.this.numD);
+			curr = new long[numD];
+			reset();
+		}
+
+		@Override
+		public boolean hasNext() {
+			return peek() >= 0;
+		}
+
+		@Override
+		public void reset() {
+			nextIndex = 0;
+			positioned = false;
+			nextFound = false;
+		}
+
+		@Override
+		public long[] get() {
+			if (!positioned) return null;
+			return curr;
+		}
+
+		@Override
+		public void fwd() {
+			final long index = peek();
+			if (index < 0)
+				throw new IllegalArgumentException("fwd() cannot go beyond end");
+			delinearize(index, curr);
+			nextIndex = index + 1;
+			positioned = true;
+			nextFound = false;
+		}
+
+		@Override
+		public void localize(long[] position) {
+			for (int i = 0; i < n; i++)
+				position[i] = curr[i];
+		}
+
+		@Override
+		public long getLongPosition(int d) {
+			return curr[d];
+		}
+
+		@Override
+		public AbstractCursor<long[]> copy() {
+			return new BitmapPointSetIterator();
+		}
+
+		@Override
+		public AbstractCursor<long[]> copyCursor() {
+			return copy();
+		}
+
+		/**
+		 * Returns the linear index of the next member or -1 if there is none.
+		 */
+		private long peek() {
+			if (!nextFound) {
+				next = findNext(nextIndex);
+				nextFound = true;
+			}
+			return next;
+		}
+
+		/**
+		 * Returns the linear index of the first member at or after the given
+		 * index or -1 if there is none.
+		 */
+		private long findNext(long from) {
+			if (from >= volume) return -1;
+			int w = (int) (from >>> 6);
+			long word = bits[w] & (-1L << from);
+			while (word == 0) {
+				if (++w == bits.length) return -1;
+				word = bits[w];
+			}
+			return ((long) w << 6) + Long.numberOfTrailingZeros(word);
+		}
+	}
+}
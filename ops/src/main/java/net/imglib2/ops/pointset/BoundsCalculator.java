@@ -39,7 +39,9 @@ package net.imglib2.ops.pointset;
 
 /**
  * Helper class for tracking bounds of a region. Used by some {@link PointSet}
- * implementations.
+ * implementations. The number of points visited while calculating the bounds
+ * is recorded as well so that such PointSets can report their size without
+ * iterating a second time.
  * 
  * @author Barry DeZonia
  */
@@ -48,6 +50,7 @@ public class BoundsCalculator {
 	// -- instance variables --
 	
 	private long[] min, max;
+	private long count;
 
 	// -- constructor --
 	
@@ -64,11 +67,20 @@ public class BoundsCalculator {
 		return max;
 	}
 	
+	/**
+	 * Returns the number of points visited by the last call to calc().
+	 */
+	public long getCount() {
+		return count;
+	}
+	
 	public void calc(PointSet ps) {
 		PointSetIterator iter = ps.iterator();
 		boolean invalid = true;
+		count = 0;
 		while (iter.hasNext()) {
 			long[] point = iter.next();
+			count++;
 			if (invalid) {
 				invalid = false;
 				setMax(point);
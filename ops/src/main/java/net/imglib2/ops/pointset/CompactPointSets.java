@@ -0,0 +1,211 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.ops.pointset;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * CompactPointSets evaluates {@link PointSet}s and set algebra between them
+ * eagerly into compact representations. The lazy {@link PointSetUnion},
+ * {@link PointSetIntersection} and {@link PointSetDifference} answer each
+ * membership query by recursing into their inputs. When a combined set is
+ * queried or iterated many times it is cheaper to evaluate it once into a
+ * {@link BitmapPointSet} (for dense regions) or a hashed
+ * {@link GeneralPointSet} (for sparse regions), both of which answer
+ * includes() in constant time.
+ */
+public final class CompactPointSets {
+
+	// -- constants --
+
+	/**
+	 * A bitmap is chosen when its region holds at most this many positions per
+	 * member point. At this density the bitmap takes no more than one bit per
+	 * position, i.e. less memory than an explicit list of points.
+	 */
+	private static final long MAX_POSITIONS_PER_POINT = 64;
+
+	private CompactPointSets() {
+		// utility class
+	}
+
+	// -- CompactPointSets methods --
+
+	/**
+	 * Returns true if the given PointSet already answers membership queries in
+	 * constant time and therefore does not benefit from compaction.
+	 */
+	public static boolean isCompact(PointSet ps) {
+		return ps instanceof BitmapPointSet ||
+			ps instanceof GeneralPointSet ||
+			ps instanceof HyperVolumePointSet ||
+			ps instanceof OnePointSet ||
+			ps instanceof EmptyPointSet;
+	}
+
+	/**
+	 * Evaluates a PointSet into a compact representation. The input is
+	 * iterated once. Sets that are already compact are returned unchanged.
+	 */
+	public static PointSet compact(PointSet ps) {
+		if (isCompact(ps)) return ps;
+		final int numD = ps.numDimensions();
+		final List<long[]> points = new ArrayList<long[]>();
+		final long[] min = new long[numD];
+		final long[] max = new long[numD];
+		final PointSetIterator iter = ps.iterator();
+		while (iter.hasNext()) {
+			final long[] p = iter.next();
+			if (points.isEmpty()) {
+				System.arraycopy(p, 0, min, 0, numD);
+				System.arraycopy(p, 0, max, 0, numD);
+			}
+			else {
+				for (int i = 0; i < numD; i++) {
+					if (p[i] < min[i]) min[i] = p[i];
+					if (p[i] > max[i]) max[i] = p[i];
+				}
+			}
+			points.add(p.clone());
+		}
+		if (points.isEmpty()) return new EmptyPointSet(ps.getOrigin());
+		if (bitmapIsProfitable(min, max, points.size())) {
+			final BitmapPointSet bitmap =
+				new BitmapPointSet(ps.getOrigin(), min, max);
+			for (long[] p : points)
+				bitmap.add(p);
+			return bitmap;
+		}
+		return new GeneralPointSet(ps.getOrigin(), points);
+	}
+
+	/**
+	 * Eagerly computes the union of two PointSets.
+	 */
+	public static PointSet union(PointSet a, PointSet b) {
+		checkDimensions(a, b);
+		if (a.size() == 0) return compact(b.copy());
+		if (b.size() == 0) return compact(a.copy());
+		if (a instanceof BitmapPointSet && b instanceof BitmapPointSet &&
+			((BitmapPointSet) a).sameRegion((BitmapPointSet) b))
+		{
+			final BitmapPointSet result = ((BitmapPointSet) a).copy();
+			result.or((BitmapPointSet) b);
+			return result;
+		}
+		final int numD = a.numDimensions();
+		final long[] min = new long[numD];
+		final long[] max = new long[numD];
+		for (int i = 0; i < numD; i++) {
+			min[i] = Math.min(a.min(i), b.min(i));
+			max[i] = Math.max(a.max(i), b.max(i));
+		}
+		if (bitmapIsProfitable(min, max, Math.max(a.size(), b.size()))) {
+			final BitmapPointSet result =
+				new BitmapPointSet(a.getOrigin(), min, max);
+			addAll(result, a);
+			addAll(result, b);
+			return result;
+		}
+		return compact(new PointSetUnion(compact(a), compact(b)));
+	}
+
+	/**
+	 * Eagerly computes the intersection of two PointSets.
+	 */
+	public static PointSet intersection(PointSet a, PointSet b) {
+		checkDimensions(a, b);
+		if (a instanceof BitmapPointSet && b instanceof BitmapPointSet &&
+			((BitmapPointSet) a).sameRegion((BitmapPointSet) b))
+		{
+			final BitmapPointSet result = ((BitmapPointSet) a).copy();
+			result.and((BitmapPointSet) b);
+			return result;
+		}
+		// iterate the smaller set and query the (compacted) larger one
+		PointSet small = a, large = b;
+		if (small.size() > large.size()) {
+			small = b;
+			large = a;
+		}
+		return compact(new PointSetIntersection(small, compact(large)));
+	}
+
+	/**
+	 * Eagerly computes the difference of two PointSets (the points of a that
+	 * are not members of b).
+	 */
+	public static PointSet difference(PointSet a, PointSet b) {
+		checkDimensions(a, b);
+		if (a instanceof BitmapPointSet && b instanceof BitmapPointSet &&
+			((BitmapPointSet) a).sameRegion((BitmapPointSet) b))
+		{
+			final BitmapPointSet result = ((BitmapPointSet) a).copy();
+			result.andNot((BitmapPointSet) b);
+			return result;
+		}
+		return compact(new PointSetDifference(a, compact(b)));
+	}
+
+	// -- private helpers --
+
+	private static boolean bitmapIsProfitable(long[] min, long[] max,
+		long numPoints)
+	{
+		final long limit = numPoints * MAX_POSITIONS_PER_POINT;
+		long volume = 1;
+		for (int i = 0; i < min.length; i++) {
+			final long dim = max[i] - min[i] + 1;
+			if (volume > limit / dim) return false;
+			volume *= dim;
+		}
+		return volume <= limit;
+	}
+
+	private static void addAll(BitmapPointSet bitmap, PointSet ps) {
+		final PointSetIterator iter = ps.iterator();
+		while (iter.hasNext())
+			bitmap.add(iter.next());
+	}
+
+	private static void checkDimensions(PointSet a, PointSet b) {
+		if (a.numDimensions() != b.numDimensions())
+			throw new IllegalArgumentException();
+	}
+}
@@ -56,6 +56,14 @@ public class EmptyPointSet extends AbstractPointSet {
 	public EmptyPointSet() {
 		origin = new long[0];
 	}
+
+	/**
+	 * Creates an empty set with the dimensionality of the given origin, so it
+	 * can be combined with other sets of that dimensionality.
+	 */
+	public EmptyPointSet(long[] origin) {
+		this.origin = origin.clone();
+	}
 	
 	// -- PointSet methods --
 	
@@ -66,6 +74,8 @@ public class EmptyPointSet extends AbstractPointSet {
 
 	@Override
 	public void translate(long[] deltas) {
+		for (int i = 0; i < origin.length; i++)
+			origin[i] += deltas[i];
 		invalidateBounds();
 	}
 
@@ -76,7 +86,7 @@ public class EmptyPointSet extends AbstractPointSet {
 
 	@Override
 	public int numDimensions() {
-		return 0;
+		return origin.length;
 	}
 
 	@Override
@@ -101,7 +111,7 @@ public class EmptyPointSet extends AbstractPointSet {
 	
 	@Override
 	public EmptyPointSet copy() {
-		return new EmptyPointSet();
+		return new EmptyPointSet(origin);
 	}
 	
 	// -- private helpers --
@@ -111,7 +121,7 @@ public class EmptyPointSet extends AbstractPointSet {
 	{
 
 		public EmptyPointSetIterator() {
-			super(0);
+			super(origin.length);
 		}
 
 		@Override
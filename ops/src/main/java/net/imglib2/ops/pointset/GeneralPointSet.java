@@ -42,9 +42,16 @@ import java.util.Arrays;
 import java.util.List;
 
 import net.imglib2.AbstractCursor;
+import net.imglib2.ops.util.LongHashSet;
 
 /**
  * Treats a general collection of points as a PointSet.
+ * <p>
+ * Membership queries are answered in constant time via a hash of the points'
+ * linearized positions within the bounding box of the set. Since translation
+ * moves the points and the bounding box by the same amount the hash remains
+ * valid across calls to translate(). If the bounding box is too large to be
+ * linearized into a long the set falls back to a linear search.
  * 
  * @author Barry DeZonia
  */
@@ -57,6 +64,8 @@ public class GeneralPointSet extends AbstractPointSet {
 	private long[] boundMin;
 	private long[] boundMax;
 	private final List<long[]> points;
+	private final long[] strides;
+	private final LongHashSet index;
 
 	// -- constructor --
 	
@@ -70,6 +79,8 @@ public class GeneralPointSet extends AbstractPointSet {
 		this.points = new ArrayList<long[]>();
 		this.points.addAll(pts);
 		calcBounds(pts);
+		this.strides = calcStrides();
+		this.index = (strides == null) ? null : buildIndex();
 	}
 
 	// -- PointSet methods --
@@ -102,14 +113,17 @@ public class GeneralPointSet extends AbstractPointSet {
 	@Override
 	public int numDimensions() { return numD; }
 	
-	// TODO a spatial data structure would speed this up greatly
-	
 	@Override
 	public boolean includes(long[] point) {
-		for (long[] p : points) {
-			if (Arrays.equals(point, p)) return true;
+		if (index == null) {
+			for (long[] p : points) {
+				if (Arrays.equals(point, p)) return true;
+			}
+			return false;
 		}
-		return false;
+		final long key = linearize(point);
+		if (key < 0) return false;
+		return index.contains(key);
 	}
 
 	@Override
@@ -166,6 +180,45 @@ public class GeneralPointSet extends AbstractPointSet {
 		}
 	}
 	
+	/**
+	 * Calculates the strides used to linearize point positions relative to
+	 * the bounding box. Returns null if the bounding box holds more positions
+	 * than can be addressed by a long.
+	 */
+	private long[] calcStrides() {
+		final long[] s = new long[numD];
+		long stride = 1;
+		for (int i = 0; i < numD; i++) {
+			s[i] = stride;
+			final long dim = boundMax[i] - boundMin[i] + 1;
+			if (dim <= 0 || stride > Long.MAX_VALUE / dim) return null;
+			stride *= dim;
+		}
+		return s;
+	}
+	
+	private LongHashSet buildIndex() {
+		final LongHashSet set = new LongHashSet(points.size());
+		for (long[] p : points) {
+			set.add(linearize(p));
+		}
+		return set;
+	}
+	
+	/**
+	 * Returns the linear index of a point within the bounding box or -1 if the
+	 * point lies outside of it.
+	 */
+	private long linearize(long[] point) {
+		long key = 0;
+		for (int i = 0; i < numD; i++) {
+			final long offset = point[i] - boundMin[i];
+			if (offset < 0 || point[i] > boundMax[i]) return -1;
+			key += offset * strides[i];
+		}
+		return key;
+	}
+
 	private class GeneralPointSetIterator extends AbstractCursor<long[]>
 		implements PointSetIterator
 	{
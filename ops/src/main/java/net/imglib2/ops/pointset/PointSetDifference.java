@@ -114,13 +114,11 @@ public class PointSetDifference extends AbstractPointSet {
 
 	@Override
 	public long size() {
-		long numElements = 0;
-		PointSetIterator iter = iterator();
-		while (iter.hasNext()) {
-			iter.next();
-			numElements++;
+		if (needsCalc) {
+			calculator.calc(this);
+			needsCalc = false;
 		}
-		return numElements;
+		return calculator.getCount();
 	}
 
 	@Override
@@ -52,6 +52,7 @@ public class PointSetUnion extends AbstractPointSet {
 	private final PointSet a, b;
 	private final long[] min, max;
 	private final int numD;
+	private long size;
 	
 	// -- constructor --
 	
@@ -63,6 +64,7 @@ public class PointSetUnion extends AbstractPointSet {
 		this.b = b;
 		min = new long[numD];
 		max = new long[numD];
+		size = -1;
 	}
 	
 	// -- PointSet methods --
@@ -76,6 +78,7 @@ public class PointSetUnion extends AbstractPointSet {
 	public void translate(long[] deltas) {
 		a.translate(deltas);
 		b.translate(deltas);
+		size = -1;
 		invalidateBounds();
 	}
 	
@@ -112,13 +115,16 @@ public class PointSetUnion extends AbstractPointSet {
 	
 	@Override
 	public long size() {
-		long numElements = 0;
-		PointSetIterator iter = iterator();
-		while (iter.hasNext()) {
-			iter.next();
-			numElements++;
+		if (size < 0) {
+			long numElements = 0;
+			PointSetIterator iter = iterator();
+			while (iter.hasNext()) {
+				iter.next();
+				numElements++;
+			}
+			size = numElements;
 		}
-		return numElements;
+		return size;
 	}
 	
 	@Override
@@ -0,0 +1,233 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.ops.util;
+
+import java.util.Arrays;
+
+/**
+ * LongHashSet is a set of primitive long values backed by an open addressing
+ * hash table with linear probing. It avoids the boxing and per entry object
+ * overhead of a HashSet&lt;Long&gt; and is meant for answering membership
+ * queries on large numbers of keys (for instance linearized point indices).
+ */
+public class LongHashSet {
+
+	// -- constants --
+
+	private static final long FREE = Long.MIN_VALUE;
+	private static final int DEFAULT_CAPACITY = 16;
+	private static final double MAX_LOAD = 0.5;
+
+	// -- instance variables --
+
+	private long[] table;
+	private int mask;
+	private int size;
+	private boolean containsFree;
+
+	// -- constructors --
+
+	public LongHashSet() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructs a LongHashSet that can hold the given number of keys without
+	 * needing to grow.
+	 */
+	public LongHashSet(int expectedSize) {
+		if (expectedSize < 0)
+			throw new IllegalArgumentException("size must be >= 0");
+		allocate(tableSizeFor(expectedSize));
+	}
+
+	// -- LongHashSet methods --
+
+	/**
+	 * Adds a key to the set. Returns true if the key was not already present.
+	 */
+	public boolean add(long key) {
+		if (key == FREE) {
+			if (containsFree) return false;
+			containsFree = true;
+			size++;
+			return true;
+		}
+		int i = slot(key);
+		while (true) {
+			final long k = table[i];
+			if (k == FREE) break;
+			if (k == key) return false;
+			i = (i + 1) & mask;
+		}
+		table[i] = key;
+		size++;
+		if (size > MAX_LOAD * table.length) rehash(table.length << 1);
+		return true;
+	}
+
+	/**
+	 * Returns true if the given key is a member of the set.
+	 */
+	public boolean contains(long key) {
+		if (key == FREE) return containsFree;
+		int i = slot(key);
+		while (true) {
+			final long k = table[i];
+			if (k == key) return true;
+			if (k == FREE) return false;
+			i = (i + 1) & mask;
+		}
+	}
+
+	/**
+	 * Removes a key from the set. Returns true if the key was present.
+	 */
+	public boolean remove(long key) {
+		if (key == FREE) {
+			if (!containsFree) return false;
+			containsFree = false;
+			size--;
+			return true;
+		}
+		int i = slot(key);
+		while (true) {
+			final long k = table[i];
+			if (k == FREE) return false;
+			if (k == key) break;
+			i = (i + 1) & mask;
+		}
+		// backward shift deletion keeps probe sequences intact without tombstones
+		int gap = i;
+		int j = (i + 1) & mask;
+		while (true) {
+			final long k = table[j];
+			if (k == FREE) break;
+			final int home = slot(k);
+			if (((j - home) & mask) >= ((j - gap) & mask)) {
+				table[gap] = k;
+				gap = j;
+			}
+			j = (j + 1) & mask;
+		}
+		table[gap] = FREE;
+		size--;
+		return true;
+	}
+
+	/**
+	 * Returns the number of keys in the set.
+	 */
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		Arrays.fill(table, FREE);
+		containsFree = false;
+		size = 0;
+	}
+
+	/**
+	 * Returns the keys of the set in unspecified order.
+	 */
+	public long[] toArray() {
+		final long[] keys = new long[size];
+		int n = 0;
+		if (containsFree) keys[n++] = FREE;
+		for (long k : table) {
+			if (k != FREE) keys[n++] = k;
+		}
+		return keys;
+	}
+
+	public LongHashSet copy() {
+		final LongHashSet other = new LongHashSet(0);
+		other.table = table.clone();
+		other.mask = mask;
+		other.size = size;
+		other.containsFree = containsFree;
+		return other;
+	}
+
+	// -- private helpers --
+
+	private int slot(long key) {
+		// murmur3 finalizer: spreads consecutive keys across the table
+		long h = key;
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return (int) h & mask;
+	}
+
+	private void allocate(int capacity) {
+		table = new long[capacity];
+		Arrays.fill(table, FREE);
+		mask = capacity - 1;
+	}
+
+	private void rehash(int capacity) {
+		final long[] old = table;
+		allocate(capacity);
+		for (long k : old) {
+			if (k == FREE) continue;
+			int i = slot(k);
+			while (table[i] != FREE)
+				i = (i + 1) & mask;
+			table[i] = k;
+		}
+	}
+
+	private static int tableSizeFor(int expectedSize) {
+		final long needed = (long) Math.ceil(expectedSize / MAX_LOAD) + 1;
+		int capacity = DEFAULT_CAPACITY;
+		while (capacity < needed) {
+			if (capacity >= (1 << 30))
+				throw new IllegalArgumentException("too many keys: " + expectedSize);
+			capacity <<= 1;
+		}
+		return capacity;
+	}
+}
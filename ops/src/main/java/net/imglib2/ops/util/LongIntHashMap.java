@@ -0,0 +1,253 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.ops.util;
+
+import java.util.Arrays;
+
+/**
+ * LongIntHashMap maps primitive long keys to primitive int values. It is
+ * backed by an open addressing hash table with linear probing and avoids the
+ * boxing and per entry objects of a HashMap&lt;Long,Integer&gt;.
+ */
+public class LongIntHashMap {
+
+	// -- constants --
+
+	private static final long FREE = Long.MIN_VALUE;
+	private static final int DEFAULT_CAPACITY = 16;
+	private static final double MAX_LOAD = 0.5;
+
+	// -- instance variables --
+
+	private final int noEntryValue;
+	private long[] keys;
+	private int[] values;
+	private int mask;
+	private int size;
+	private boolean hasFreeKey;
+	private int freeKeyValue;
+
+	// -- constructors --
+
+	/**
+	 * Constructs a LongIntHashMap that can hold the given number of entries
+	 * without needing to grow.
+	 * 
+	 * @param expectedSize The anticipated number of entries.
+	 * @param noEntryValue The value returned by get() for absent keys.
+	 */
+	public LongIntHashMap(int expectedSize, int noEntryValue) {
+		if (expectedSize < 0)
+			throw new IllegalArgumentException("size must be >= 0");
+		this.noEntryValue = noEntryValue;
+		allocate(tableSizeFor(expectedSize));
+	}
+
+	public LongIntHashMap() {
+		this(DEFAULT_CAPACITY, -1);
+	}
+
+	// -- LongIntHashMap methods --
+
+	/**
+	 * Returns the value associated with a key or the no entry value if the key
+	 * is not present.
+	 */
+	public int get(long key) {
+		if (key == FREE) return hasFreeKey ? freeKeyValue : noEntryValue;
+		int i = slot(key);
+		while (true) {
+			final long k = keys[i];
+			if (k == key) return values[i];
+			if (k == FREE) return noEntryValue;
+			i = (i + 1) & mask;
+		}
+	}
+
+	public boolean containsKey(long key) {
+		if (key == FREE) return hasFreeKey;
+		int i = slot(key);
+		while (true) {
+			final long k = keys[i];
+			if (k == key) return true;
+			if (k == FREE) return false;
+			i = (i + 1) & mask;
+		}
+	}
+
+	/**
+	 * Associates a value with a key. Returns the previous value of the key or
+	 * the no entry value if the key was not present.
+	 */
+	public int put(long key, int value) {
+		if (key == FREE) {
+			final int prev = hasFreeKey ? freeKeyValue : noEntryValue;
+			if (!hasFreeKey) size++;
+			hasFreeKey = true;
+			freeKeyValue = value;
+			return prev;
+		}
+		int i = slot(key);
+		while (true) {
+			final long k = keys[i];
+			if (k == FREE) break;
+			if (k == key) {
+				final int prev = values[i];
+				values[i] = value;
+				return prev;
+			}
+			i = (i + 1) & mask;
+		}
+		keys[i] = key;
+		values[i] = value;
+		size++;
+		if (size > MAX_LOAD * keys.length) rehash(keys.length << 1);
+		return noEntryValue;
+	}
+
+	/**
+	 * Removes a key. Returns its value or the no entry value if the key was not
+	 * present.
+	 */
+	public int remove(long key) {
+		if (key == FREE) {
+			if (!hasFreeKey) return noEntryValue;
+			hasFreeKey = false;
+			size--;
+			return freeKeyValue;
+		}
+		int i = slot(key);
+		while (true) {
+			final long k = keys[i];
+			if (k == FREE) return noEntryValue;
+			if (k == key) break;
+			i = (i + 1) & mask;
+		}
+		final int prev = values[i];
+		// backward shift deletion keeps probe sequences intact without tombstones
+		int gap = i;
+		int j = (i + 1) & mask;
+		while (true) {
+			final long k = keys[j];
+			if (k == FREE) break;
+			final int home = slot(k);
+			if (((j - home) & mask) >= ((j - gap) & mask)) {
+				keys[gap] = k;
+				values[gap] = values[j];
+				gap = j;
+			}
+			j = (j + 1) & mask;
+		}
+		keys[gap] = FREE;
+		size--;
+		return prev;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		Arrays.fill(keys, FREE);
+		hasFreeKey = false;
+		size = 0;
+	}
+
+	/**
+	 * Returns the keys of the map in unspecified order.
+	 */
+	public long[] keys() {
+		final long[] result = new long[size];
+		int n = 0;
+		if (hasFreeKey) result[n++] = FREE;
+		for (long k : keys) {
+			if (k != FREE) result[n++] = k;
+		}
+		return result;
+	}
+
+	// -- private helpers --
+
+	private int slot(long key) {
+		// murmur3 finalizer: spreads consecutive keys across the table
+		long h = key;
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return (int) h & mask;
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		values = new int[capacity];
+		Arrays.fill(keys, FREE);
+		mask = capacity - 1;
+	}
+
+	private void rehash(int capacity) {
+		final long[] oldKeys = keys;
+		final int[] oldValues = values;
+		allocate(capacity);
+		for (int j = 0; j < oldKeys.length; j++) {
+			final long k = oldKeys[j];
+			if (k == FREE) continue;
+			int i = slot(k);
+			while (keys[i] != FREE)
+				i = (i + 1) & mask;
+			keys[i] = k;
+			values[i] = oldValues[j];
+		}
+	}
+
+	private static int tableSizeFor(int expectedSize) {
+		final long needed = (long) Math.ceil(expectedSize / MAX_LOAD) + 1;
+		int capacity = DEFAULT_CAPACITY;
+		while (capacity < needed) {
+			if (capacity >= (1 << 30))
+				throw new IllegalArgumentException("too many keys: " + expectedSize);
+			capacity <<= 1;
+		}
+		return capacity;
+	}
+}
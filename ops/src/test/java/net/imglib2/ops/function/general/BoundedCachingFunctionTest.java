@@ -0,0 +1,141 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.ops.function.general;
+
+import static org.junit.Assert.assertEquals;
+import net.imglib2.ops.function.Function;
+import net.imglib2.type.numeric.real.DoubleType;
+
+import org.junit.Test;
+
+public class BoundedCachingFunctionTest {
+
+	private static class CountingFunction implements Function<long[], DoubleType> {
+
+		private final int[] calls;
+
+		public CountingFunction(int[] calls) {
+			this.calls = calls;
+		}
+
+		@Override
+		public void compute(long[] point, DoubleType output) {
+			calls[0]++;
+			output.setReal(point[0] * 1000 + point[1]);
+		}
+
+		@Override
+		public DoubleType createOutput() {
+			return new DoubleType();
+		}
+
+		@Override
+		public CountingFunction copy() {
+			return new CountingFunction(calls);
+		}
+	}
+
+	@Test
+	public void testNeighborhoodReuse() {
+		int[] calls = new int[1];
+		BoundedCachingFunction<DoubleType> func =
+			new BoundedCachingFunction<DoubleType>(new CountingFunction(calls),
+				new long[] { 0, 0 }, new long[] { 99, 99 }, 64);
+		DoubleType out = func.createOutput();
+		// slide a 3x3 window along a row: each point is requested up to 9 times
+		long[] pt = new long[2];
+		for (long x = 1; x < 99; x++) {
+			for (long dy = -1; dy <= 1; dy++) {
+				for (long dx = -1; dx <= 1; dx++) {
+					pt[0] = x + dx;
+					pt[1] = 50 + dy;
+					func.compute(pt, out);
+					assertEquals(pt[0] * 1000 + pt[1], out.getRealDouble(), 0);
+				}
+			}
+		}
+		assertEquals(100 * 3, calls[0]);
+		assertEquals(calls[0], func.getMisses());
+		assertEquals(98 * 9 - calls[0], func.getHits());
+	}
+
+	@Test
+	public void testEvictionAndBypass() {
+		int[] calls = new int[1];
+		BoundedCachingFunction<DoubleType> func =
+			new BoundedCachingFunction<DoubleType>(new CountingFunction(calls),
+				new long[] { 0, 0 }, new long[] { 9, 9 }, 4);
+		DoubleType out = func.createOutput();
+		for (int i = 0; i < 10; i++) {
+			func.compute(new long[] { i, 0 }, out);
+			assertEquals(i * 1000, out.getRealDouble(), 0);
+		}
+		assertEquals(10, calls[0]);
+		// recent values remain cached, old ones have been evicted
+		func.compute(new long[] { 9, 0 }, out);
+		assertEquals(10, calls[0]);
+		func.compute(new long[] { 0, 0 }, out);
+		assertEquals(11, calls[0]);
+		// points outside the region are computed every time
+		func.compute(new long[] { 20, 0 }, out);
+		func.compute(new long[] { 20, 0 }, out);
+		assertEquals(13, calls[0]);
+		assertEquals(20000, out.getRealDouble(), 0);
+	}
+
+	@Test
+	public void testSharedCopies() {
+		int[] calls = new int[1];
+		BoundedCachingFunction<DoubleType> func =
+			new BoundedCachingFunction<DoubleType>(new CountingFunction(calls),
+				new long[] { 0, 0 }, new long[] { 9, 9 }, 16, true);
+		BoundedCachingFunction<DoubleType> copy = func.copy();
+		DoubleType out = func.createOutput();
+		func.compute(new long[] { 3, 4 }, out);
+		copy.compute(new long[] { 3, 4 }, out);
+		assertEquals(1, calls[0]);
+		assertEquals(1, copy.getHits());
+
+		BoundedCachingFunction<DoubleType> unshared =
+			new BoundedCachingFunction<DoubleType>(new CountingFunction(calls),
+				new long[] { 0, 0 }, new long[] { 9, 9 }, 16);
+		unshared.compute(new long[] { 3, 4 }, out);
+		unshared.copy().compute(new long[] { 3, 4 }, out);
+		assertEquals(3, calls[0]);
+	}
+}
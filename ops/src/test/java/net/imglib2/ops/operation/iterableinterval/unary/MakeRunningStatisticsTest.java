@@ -0,0 +1,160 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.ops.operation.iterableinterval.unary;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.ops.data.QuantileSketch;
+import net.imglib2.ops.data.RunningStatistics;
+import net.imglib2.type.numeric.real.DoubleType;
+
+import org.junit.Test;
+
+public class MakeRunningStatisticsTest
+{
+
+	private static double[] values( int n, long seed )
+	{
+		Random rnd = new Random( seed );
+		double[] values = new double[ n ];
+		for ( int i = 0; i < n; i++ )
+			values[ i ] = 1000 + 10 * rnd.nextGaussian();
+		return values;
+	}
+
+	private static Img< DoubleType > img( double[] values )
+	{
+		Img< DoubleType > img = new ArrayImgFactory< DoubleType >().create( new long[] { values.length }, new DoubleType() );
+		int i = 0;
+		for ( DoubleType t : img )
+			t.set( values[ i++ ] );
+		return img;
+	}
+
+	@Test
+	public void testMoments()
+	{
+		double[] values = values( 1001, 1 );
+		double sum = 0, min = Double.MAX_VALUE, max = -Double.MAX_VALUE;
+		for ( double v : values )
+		{
+			sum += v;
+			min = Math.min( min, v );
+			max = Math.max( max, v );
+		}
+		double mean = sum / values.length;
+		double sqr = 0;
+		for ( double v : values )
+			sqr += ( v - mean ) * ( v - mean );
+
+		RunningStatistics stats = new MakeRunningStatistics< DoubleType >().compute( img( values ) );
+
+		assertEquals( values.length, stats.count() );
+		assertEquals( sum, stats.sum(), 1e-8 );
+		assertEquals( mean, stats.mean(), 1e-10 );
+		assertEquals( sqr / ( values.length - 1 ), stats.variance(), 1e-8 );
+		assertEquals( Math.sqrt( sqr / ( values.length - 1 ) ), stats.stdDeviation(), 1e-8 );
+		assertEquals( min, stats.min(), 0 );
+		assertEquals( max, stats.max(), 0 );
+	}
+
+	@Test
+	public void testParallelMatchesSerial()
+	{
+		Img< DoubleType > img = img( values( 10007, 2 ) );
+		RunningStatistics serial = new MakeRunningStatistics< DoubleType >( true ).compute( img );
+
+		ExecutorService service = Executors.newFixedThreadPool( 3 );
+		RunningStatistics parallel = new MakeRunningStatistics< DoubleType >( true, service, 7 ).compute( img );
+		service.shutdown();
+
+		assertEquals( serial.count(), parallel.count() );
+		assertEquals( serial.sum(), parallel.sum(), 1e-6 );
+		assertEquals( serial.mean(), parallel.mean(), 1e-10 );
+		assertEquals( serial.variance(), parallel.variance(), 1e-8 );
+		assertEquals( serial.min(), parallel.min(), 0 );
+		assertEquals( serial.max(), parallel.max(), 0 );
+		assertEquals( serial.median(), parallel.median(), 0.5 );
+	}
+
+	@Test
+	public void testExactQuantiles()
+	{
+		double[] values = values( 100, 3 );
+		RunningStatistics stats = new RunningStatistics( new QuantileSketch() );
+		for ( double v : values )
+			stats.add( v );
+
+		double[] sorted = values.clone();
+		Arrays.sort( sorted );
+		assertEquals( sorted[ 50 ], stats.median(), 0 );
+		assertEquals( sorted[ 0 ], stats.quantile( 0 ), 0 );
+		assertEquals( sorted[ 99 ], stats.quantile( 1 ), 0 );
+		assertEquals( sorted[ 25 ], stats.quantile( 0.25 ), 0 );
+	}
+
+	@Test
+	public void testApproximateQuantiles()
+	{
+		double[] values = values( 100000, 4 );
+		QuantileSketch a = new QuantileSketch( 256 );
+		QuantileSketch b = new QuantileSketch( 256 );
+		for ( int i = 0; i < values.length; i++ )
+			( i % 2 == 0 ? a : b ).add( values[ i ] );
+		a.merge( b );
+		assertEquals( values.length, a.count() );
+
+		double[] sorted = values.clone();
+		Arrays.sort( sorted );
+		for ( double q = 0.1; q < 1; q += 0.1 )
+		{
+			double estimate = a.quantile( q );
+			int rank = Arrays.binarySearch( sorted, estimate );
+			assertTrue( rank >= 0 );
+			assertEquals( q, ( double ) rank / values.length, 0.02 );
+		}
+	}
+}
@@ -0,0 +1,158 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.ops.operation.iterableinterval.unary.multilevelthresholder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import net.imglib2.histogram.Histogram1d;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.ops.operation.iterableinterval.unary.MakeHistogram;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+
+import org.junit.Test;
+
+/**
+ * Compares the dynamic programming search to an exhaustive search over all
+ * threshold combinations.
+ */
+public class OtsuMultilevelThresholderTest
+{
+
+	private static Img< UnsignedByteType > img()
+	{
+		Img< UnsignedByteType > img = new ArrayImgFactory< UnsignedByteType >().create( new long[] { 64, 64 }, new UnsignedByteType() );
+		Random rnd = new Random( 42 );
+		int i = 0;
+		for ( UnsignedByteType t : img )
+		{
+			// three overlapping modes
+			double mean = 40 + 80 * ( i++ % 3 );
+			t.set( ( int ) Math.max( 0, Math.min( 255, mean + 25 * rnd.nextGaussian() ) ) );
+		}
+		return img;
+	}
+
+	/** sum over all classes of S^2 / P for the given class ends (1-based) */
+	private static double objective( double[] p, double[] s, int[] ends )
+	{
+		double sum = 0;
+		int start = 1;
+		for ( int end : ends )
+		{
+			double pUV = p[ end ] - p[ start - 1 ];
+			double sUV = s[ end ] - s[ start - 1 ];
+			sum += pUV == 0 ? 0 : sUV * sUV / pUV;
+			start = end + 1;
+		}
+		return sum;
+	}
+
+	private static double exhaustive( double[] p, double[] s, int[] ends, int index, int start )
+	{
+		int numBins = p.length - 1;
+		if ( index == ends.length - 1 )
+		{
+			ends[ index ] = numBins;
+			return objective( p, s, ends );
+		}
+		double best = Double.NEGATIVE_INFINITY;
+		for ( int t = start; t <= numBins - ( ends.length - 1 - index ); t++ )
+		{
+			ends[ index ] = t;
+			best = Math.max( best, exhaustive( p, s, ends, index + 1, t + 1 ) );
+		}
+		return best;
+	}
+
+	private static void check( int numLevels, int numBins )
+	{
+		Img< UnsignedByteType > img = img();
+		Histogram1d< UnsignedByteType > histogram = new MakeHistogram< UnsignedByteType >( numBins ).compute( img );
+		double[] p = new double[ numBins + 1 ];
+		double[] s = new double[ numBins + 1 ];
+		for ( int v = 1; v <= numBins; v++ )
+		{
+			p[ v ] = p[ v - 1 ] + histogram.frequency( v - 1 );
+			s[ v ] = s[ v - 1 ] + v * histogram.frequency( v - 1 );
+		}
+
+		ThresholdValueCollection thresholds = new OtsuMultilevelThresholder< UnsignedByteType, Img< UnsignedByteType >>( numLevels, numBins ).compute( img );
+		double factor = 255.0 / numBins;
+		int[] ends = new int[ numLevels ];
+		for ( int j = 0; j < numLevels - 1; j++ )
+			ends[ j ] = ( int ) Math.round( thresholds.get( j ) / factor );
+		ends[ numLevels - 1 ] = numBins;
+		for ( int j = 1; j < numLevels; j++ )
+			assertTrue( ends[ j ] > ends[ j - 1 ] );
+
+		double expected = exhaustive( p, s, new int[ numLevels ], 0, 1 );
+		assertEquals( expected, objective( p, s, ends ), 1e-6 * expected );
+	}
+
+	@Test
+	public void testMatchesExhaustiveSearch()
+	{
+		check( 2, 256 );
+		check( 3, 64 );
+		check( 4, 32 );
+	}
+
+	@Test
+	public void testParallelMatchesSerial()
+	{
+		Img< UnsignedByteType > img = img();
+		ExecutorService service = Executors.newFixedThreadPool( 4 );
+		try
+		{
+			ThresholdValueCollection serial = new OtsuMultilevelThresholder< UnsignedByteType, Img< UnsignedByteType >>( 5, 256 ).compute( img );
+			ThresholdValueCollection parallel = new OtsuMultilevelThresholder< UnsignedByteType, Img< UnsignedByteType >>( 5, 256, service, 7 ).compute( img );
+			for ( int j = 0; j < 4; j++ )
+				assertEquals( serial.get( j ), parallel.get( j ), 0 );
+		}
+		finally
+		{
+			service.shutdown();
+		}
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.ops.operation.labeling.unary;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.labeling.Labeling;
+import net.imglib2.labeling.LabelingType;
+import net.imglib2.labeling.NativeImgLabeling;
+import net.imglib2.ops.operation.randomaccessibleinterval.unary.regiongrowing.AbstractRegionGrowing;
+import net.imglib2.type.numeric.integer.IntType;
+
+import org.junit.Test;
+
+public class GrowLabelingTest
+{
+
+	private static Labeling< Integer > labeling( long width, long height )
+	{
+		return new NativeImgLabeling< Integer, IntType >( new ArrayImgFactory< IntType >().create( new long[] { width, height }, new IntType() ) );
+	}
+
+	private static Labeling< Integer > grow( long[][] structuringElement, int numIterations, int[]... seeds )
+	{
+		Labeling< Integer > src = labeling( 8, 4 );
+		RandomAccess< LabelingType< Integer >> ra = src.randomAccess();
+		for ( int[] seed : seeds )
+		{
+			ra.setPosition( new int[] { seed[ 0 ], seed[ 1 ] } );
+			ra.get().setLabel( seed[ 2 ] );
+		}
+		Labeling< Integer > res = labeling( 8, 4 );
+		new GrowLabeling< Integer >( structuringElement, numIterations ).compute( src, res );
+		return res;
+	}
+
+	/**
+	 * Checks the labels of every pixel, with '.' meaning unlabeled, 'a' and
+	 * 'b' labels 1 and 2, and 'x' both labels.
+	 */
+	private static void assertLabels( String[] expected, Labeling< Integer > lab )
+	{
+		Cursor< LabelingType< Integer >> c = lab.localizingCursor();
+		while ( c.hasNext() )
+		{
+			c.fwd();
+			List< Integer > labels = new ArrayList< Integer >( c.get().getLabeling() );
+			Collections.sort( labels );
+			List< Integer > e;
+			switch ( expected[ c.getIntPosition( 1 ) ].charAt( c.getIntPosition( 0 ) ) )
+			{
+			case 'a':
+				e = Arrays.asList( 1 );
+				break;
+			case 'b':
+				e = Arrays.asList( 2 );
+				break;
+			case 'x':
+				e = Arrays.asList( 1, 2 );
+				break;
+			default:
+				e = Collections.emptyList();
+			}
+			assertEquals( "at " + c.getIntPosition( 0 ) + ", " + c.getIntPosition( 1 ), e, labels );
+		}
+	}
+
+	@Test
+	public void testOverlapping4Connected()
+	{
+		assertLabels( new String[] {
+				"aaabbb..",
+				"aaxxbbb.",
+				"aaabbb..",
+				".a..b..." }, grow( AbstractRegionGrowing.get4ConStructuringElement( 2 ), 2, new int[] { 1, 1, 1 }, new int[] { 4, 1, 2 } ) );
+	}
+
+	@Test
+	public void testOverlapping8Connected()
+	{
+		assertLabels( new String[] {
+				"aaxxbbb.",
+				"aaxxbbb.",
+				"aaxxbbb.",
+				"aaxxbbb." }, grow( AbstractRegionGrowing.get8ConStructuringElement( 2 ), 2, new int[] { 1, 1, 1 }, new int[] { 4, 1, 2 } ) );
+	}
+}
@@ -0,0 +1,231 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.ops.operation.randomaccessibleinterval.unary;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.BitSet;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.ops.data.CooccurrenceMatrix;
+import net.imglib2.ops.operation.iterableinterval.unary.MakeCooccurrenceMatrix;
+import net.imglib2.ops.operation.iterableinterval.unary.MakeCooccurrenceMatrix.HaralickFeature;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.real.DoubleType;
+import net.imglib2.view.Views;
+
+import org.junit.Test;
+
+/**
+ * Compares the sliding window feature maps to co-occurrence matrices counted
+ * from scratch for each window.
+ */
+public class HaralickFeatureMapsTest
+{
+
+	private static final int GRAY_LEVELS = 8;
+
+	private static final int NUM_FEATURES = HaralickFeature.values().length;
+
+	private static BitSet allFeatures()
+	{
+		BitSet features = new BitSet();
+		features.set( 0, NUM_FEATURES );
+		return features;
+	}
+
+	private static Img< UnsignedByteType > img( long... dims )
+	{
+		Img< UnsignedByteType > img = new ArrayImgFactory< UnsignedByteType >().create( dims, new UnsignedByteType() );
+		Random rnd = new Random( 7 );
+		for ( UnsignedByteType t : img )
+			t.set( rnd.nextInt( 256 ) );
+		return img;
+	}
+
+	private static Img< DoubleType > maps( Img< UnsignedByteType > img, long[][] offsets, long[] span, int tileSize, ExecutorService service )
+	{
+		int n = img.numDimensions();
+		long[] dims = new long[ n + 1 ];
+		img.dimensions( dims );
+		dims[ n ] = NUM_FEATURES;
+		Img< DoubleType > out = new ArrayImgFactory< DoubleType >().create( dims, new DoubleType() );
+		new HaralickFeatureMaps< UnsignedByteType, DoubleType >( offsets, span, GRAY_LEVELS, allFeatures(), tileSize, service ).compute( img, out );
+		return out;
+	}
+
+	@Test
+	public void testOffsets()
+	{
+		assertEquals( 4, HaralickFeatureMaps.getOffsets( 2, 1 ).length );
+		assertEquals( 13, HaralickFeatureMaps.getOffsets( 3, 2 ).length );
+	}
+
+	@Test
+	public void testWholeImageWindowMatchesCooccurrenceMatrix()
+	{
+		Img< UnsignedByteType > img = img( 13, 11 );
+		CooccurrenceMatrix matrix = new CooccurrenceMatrix( GRAY_LEVELS );
+		new MakeCooccurrenceMatrix< UnsignedByteType >( 0, 1, 2, GRAY_LEVELS, CooccurrenceMatrix.MatrixOrientation.DIAGONAL, allFeatures() ).compute( img, matrix );
+
+		Img< DoubleType > out = maps( img, new long[][] { { 2, -2 } }, new long[] { 20, 20 }, 3, null );
+		RandomAccess< DoubleType > ra = out.randomAccess();
+		ra.setPosition( new long[] { 6, 5, 0 } );
+		for ( int f = 0; f < NUM_FEATURES; f++ )
+		{
+			ra.setPosition( f, 2 );
+			assertEquals( matrix.getFeature( f ), ra.get().get(), 1e-9 );
+		}
+	}
+
+	@Test
+	public void testSlidingWindowMatchesBruteForce3D()
+	{
+		Img< UnsignedByteType > img = img( 12, 9, 7 );
+		long[][] offsets = HaralickFeatureMaps.getOffsets( 3, 1 );
+		for ( int tileSize : new int[] { 0, 1, 2, 5 } )
+		{
+			assertMatchesBruteForce( img, offsets, new long[] { 2, 1, 1 }, tileSize );
+			assertMatchesBruteForce( img, offsets, new long[] { 0, 2, 1 }, tileSize );
+		}
+		assertMatchesBruteForce( img, new long[][] { { 0, 2, -1 }, { 1, -1, 2 } }, new long[] { 1, 3, 2 }, 4 );
+	}
+
+	@Test
+	public void testEmptyInput()
+	{
+		Img< UnsignedByteType > img = img( 5, 4 );
+		Img< DoubleType > out = new ArrayImgFactory< DoubleType >().create( new long[] { 0, 4, NUM_FEATURES }, new DoubleType() );
+		new HaralickFeatureMaps< UnsignedByteType, DoubleType >( HaralickFeatureMaps.getOffsets( 2, 1 ), new long[] { 1, 1 }, GRAY_LEVELS, allFeatures() ).compute( Views.interval( img, new long[] { 0, 0 }, new long[] { -1, 3 } ), out );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testRejectsTilesTooLargeToBuffer()
+	{
+		RandomAccessibleInterval< UnsignedByteType > img = Views.interval( img( 1, 1 ), new FinalInterval( 1 << 20, 1 << 20 ) );
+		RandomAccessibleInterval< DoubleType > out = Views.interval( new ArrayImgFactory< DoubleType >().create( new long[] { 1, 1, NUM_FEATURES }, new DoubleType() ), new FinalInterval( 1 << 20, 1 << 20, NUM_FEATURES ) );
+		new HaralickFeatureMaps< UnsignedByteType, DoubleType >( HaralickFeatureMaps.getOffsets( 2, 1 ), new long[] { 1, 1 }, GRAY_LEVELS, allFeatures(), 1 << 17, null ).compute( img, out );
+	}
+
+	/**
+	 * Compares the sequential and parallel feature maps of a 3d image to
+	 * co-occurrence matrices counted from scratch for each window.
+	 */
+	private static void assertMatchesBruteForce( Img< UnsignedByteType > img, long[][] offsets, long[] span, int tileSize )
+	{
+		Img< DoubleType > out = maps( img, offsets, span, tileSize, null );
+
+		ExecutorService service = Executors.newFixedThreadPool( 3 );
+		Img< DoubleType > parallel;
+		try
+		{
+			parallel = maps( img, offsets, span, tileSize, service );
+		}
+		finally
+		{
+			service.shutdown();
+		}
+
+		int[] dims = { ( int ) img.dimension( 0 ), ( int ) img.dimension( 1 ), ( int ) img.dimension( 2 ) };
+
+		// quantized gray levels
+		int[][][] levels = new int[ dims[ 0 ] ][ dims[ 1 ] ][ dims[ 2 ] ];
+		double min = 255, max = 0;
+		for ( UnsignedByteType t : img )
+		{
+			min = Math.min( min, t.get() );
+			max = Math.max( max, t.get() );
+		}
+		Cursor< UnsignedByteType > c = img.localizingCursor();
+		while ( c.hasNext() )
+		{
+			c.fwd();
+			levels[ c.getIntPosition( 0 ) ][ c.getIntPosition( 1 ) ][ c.getIntPosition( 2 ) ] = ( int ) ( ( c.get().get() - min ) / ( max - min + 1 ) * GRAY_LEVELS );
+		}
+
+		double[] h = new double[ NUM_FEATURES ];
+		RandomAccess< DoubleType > ra = out.randomAccess();
+		RandomAccess< DoubleType > pra = parallel.randomAccess();
+		for ( int x = 0; x < dims[ 0 ]; x++ )
+			for ( int y = 0; y < dims[ 1 ]; y++ )
+				for ( int z = 0; z < dims[ 2 ]; z++ )
+				{
+					int[] pos = { x, y, z };
+					int[] lo = new int[ 3 ];
+					int[] hi = new int[ 3 ];
+					for ( int d = 0; d < 3; d++ )
+					{
+						lo[ d ] = ( int ) Math.max( 0, pos[ d ] - span[ d ] );
+						hi[ d ] = ( int ) Math.min( dims[ d ] - 1, pos[ d ] + span[ d ] );
+					}
+					double[] matrix = new double[ GRAY_LEVELS * GRAY_LEVELS ];
+					int pairs = 0;
+					for ( int i = lo[ 0 ]; i <= hi[ 0 ]; i++ )
+						for ( int j = lo[ 1 ]; j <= hi[ 1 ]; j++ )
+							for ( int k = lo[ 2 ]; k <= hi[ 2 ]; k++ )
+								for ( long[] o : offsets )
+									for ( int s = -1; s <= 1; s += 2 )
+									{
+										int qi = i + s * ( int ) o[ 0 ], qj = j + s * ( int ) o[ 1 ], qk = k + s * ( int ) o[ 2 ];
+										if ( qi < lo[ 0 ] || qi > hi[ 0 ] || qj < lo[ 1 ] || qj > hi[ 1 ] || qk < lo[ 2 ] || qk > hi[ 2 ] )
+											continue;
+										matrix[ levels[ i ][ j ][ k ] * GRAY_LEVELS + levels[ qi ][ qj ][ qk ] ]++;
+										pairs++;
+									}
+					for ( int i = 0; i < matrix.length; i++ )
+						matrix[ i ] = pairs > 0 ? matrix[ i ] / pairs : 0;
+					MakeCooccurrenceMatrix.computeFeatures( matrix, GRAY_LEVELS, allFeatures(), h );
+
+					for ( int f = 0; f < NUM_FEATURES; f++ )
+					{
+						ra.setPosition( new int[] { x, y, z, f } );
+						pra.setPosition( ra );
+						assertEquals( h[ f ], ra.get().get(), 1e-9 * Math.max( 1, Math.abs( h[ f ] ) ) );
+						assertEquals( ra.get().get(), pra.get().get(), 0 );
+					}
+				}
+	}
+}
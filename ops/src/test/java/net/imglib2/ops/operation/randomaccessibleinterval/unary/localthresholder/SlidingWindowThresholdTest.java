@@ -0,0 +1,193 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.ops.operation.randomaccessibleinterval.unary.localthresholder;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.ops.operation.BinaryOperation;
+import net.imglib2.ops.operation.iterable.binary.localthresholder.Bernsen;
+import net.imglib2.ops.operation.iterable.binary.localthresholder.MeanLocalThreshold;
+import net.imglib2.ops.operation.iterable.binary.localthresholder.MedianLocalThreshold;
+import net.imglib2.ops.operation.iterable.binary.localthresholder.MidGrey;
+import net.imglib2.ops.operation.iterable.binary.localthresholder.Niblack;
+import net.imglib2.ops.operation.iterable.binary.localthresholder.Sauvola;
+import net.imglib2.ops.operation.randomaccessibleinterval.unary.localthresholder.SlidingWindowThreshold.Method;
+import net.imglib2.type.logic.BitType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.view.Views;
+
+import org.junit.Test;
+
+/**
+ * Compares {@link SlidingWindowThreshold} to the neighborhood based local
+ * thresholders on clipped windows.
+ */
+public class SlidingWindowThresholdTest
+{
+
+	private static Img< UnsignedByteType > createImage( long[] dims )
+	{
+		Img< UnsignedByteType > img = new ArrayImgFactory< UnsignedByteType >().create( dims, new UnsignedByteType() );
+		Random rnd = new Random( 17 );
+		Cursor< UnsignedByteType > c = img.localizingCursor();
+		while ( c.hasNext() )
+		{
+			c.fwd();
+			// a ramp plus noise, so that windows have varying statistics
+			c.get().set( Math.min( 255, ( int ) ( 3 * c.getLongPosition( 0 ) + rnd.nextInt( 60 ) ) ) );
+		}
+		return img;
+	}
+
+	private static Img< BitType > reference( Img< UnsignedByteType > img, long[] span, BinaryOperation< Iterator< UnsignedByteType >, UnsignedByteType, BitType > op )
+	{
+		int n = img.numDimensions();
+		long[] dims = new long[ n ];
+		img.dimensions( dims );
+		Img< BitType > out = new ArrayImgFactory< BitType >().create( dims, new BitType() );
+		RandomAccess< BitType > ra = out.randomAccess();
+		Cursor< UnsignedByteType > c = img.localizingCursor();
+		ArrayList< UnsignedByteType > window = new ArrayList< UnsignedByteType >();
+		while ( c.hasNext() )
+		{
+			c.fwd();
+			window.clear();
+			Cursor< UnsignedByteType > w = img.localizingCursor();
+			A: while ( w.hasNext() )
+			{
+				w.fwd();
+				for ( int d = 0; d < n; d++ )
+				{
+					if ( Math.abs( w.getLongPosition( d ) - c.getLongPosition( d ) ) > span[ d ] )
+						continue A;
+				}
+				window.add( w.get().copy() );
+			}
+			ra.setPosition( c );
+			op.compute( window.iterator(), c.get(), ra.get() );
+		}
+		return out;
+	}
+
+	private static void assertSame( Img< UnsignedByteType > img, long[] span, Method method, double p1, double p2, BinaryOperation< Iterator< UnsignedByteType >, UnsignedByteType, BitType > op, ExecutorService service )
+	{
+		assertSame( img, span, method, p1, p2, op, 3, service );
+	}
+
+	private static void assertSame( Img< UnsignedByteType > img, long[] span, Method method, double p1, double p2, BinaryOperation< Iterator< UnsignedByteType >, UnsignedByteType, BitType > op, int tileSize, ExecutorService service )
+	{
+		Img< BitType > expected = reference( img, span, op );
+		Img< BitType > result = expected.factory().create( expected, new BitType() );
+		new SlidingWindowThreshold< UnsignedByteType >( method, span, p1, p2, tileSize, service ).compute( img, result );
+
+		Cursor< BitType > e = expected.cursor();
+		Cursor< BitType > r = result.cursor();
+		while ( e.hasNext() )
+		{
+			assertEquals( method.toString(), e.next().get(), r.next().get() );
+		}
+	}
+
+	@Test
+	public void testMatchesNeighborhoodThresholders()
+	{
+		Img< UnsignedByteType > img = createImage( new long[] { 19, 11 } );
+		long[] span = new long[] { 3, 2 };
+		ExecutorService service = Executors.newFixedThreadPool( 3 );
+		try
+		{
+			for ( ExecutorService s : new ExecutorService[] { null, service } )
+			{
+				assertSame( img, span, Method.MEAN, 2, 0, new MeanLocalThreshold< UnsignedByteType, Iterator< UnsignedByteType >>( 2 ), s );
+				assertSame( img, span, Method.NIBLACK, 0.2, 1, new Niblack< UnsignedByteType, Iterator< UnsignedByteType >>( 0.2, 1 ), s );
+				assertSame( img, span, Method.SAUVOLA, 0.5, 128, new Sauvola< UnsignedByteType, Iterator< UnsignedByteType >>( 0.5, 128 ), s );
+				assertSame( img, span, Method.BERNSEN, 15, 128, new Bernsen< UnsignedByteType, Iterator< UnsignedByteType >>( 15, 128 ), s );
+				assertSame( img, span, Method.MIDGREY, 3, 0, new MidGrey< UnsignedByteType, Iterator< UnsignedByteType >>( 3 ), s );
+				assertSame( img, span, Method.MEDIAN, 1, 0, new MedianLocalThreshold< UnsignedByteType, Iterator< UnsignedByteType >>( 1 ), s );
+			}
+		}
+		finally
+		{
+			service.shutdown();
+		}
+	}
+
+	@Test
+	public void testThreeDimensions()
+	{
+		Img< UnsignedByteType > img = createImage( new long[] { 9, 7, 8 } );
+		long[] span = new long[] { 2, 1, 2 };
+		assertSame( img, span, Method.SAUVOLA, 0.3, 100, new Sauvola< UnsignedByteType, Iterator< UnsignedByteType >>( 0.3, 100 ), null );
+		assertSame( img, span, Method.MIDGREY, 0, 0, new MidGrey< UnsignedByteType, Iterator< UnsignedByteType >>( 0 ), null );
+		assertSame( img, span, Method.MEDIAN, 0, 0, new MedianLocalThreshold< UnsignedByteType, Iterator< UnsignedByteType >>( 0 ), null );
+	}
+
+	@Test
+	public void testTileSizes()
+	{
+		Img< UnsignedByteType > img = createImage( new long[] { 9, 7, 8 } );
+		long[] span = new long[] { 2, 1, 2 };
+		for ( int tileSize : new int[] { 0, 1, 2, 4, 100 } )
+		{
+			assertSame( img, span, Method.MEAN, 2, 0, new MeanLocalThreshold< UnsignedByteType, Iterator< UnsignedByteType >>( 2 ), tileSize, null );
+			assertSame( img, span, Method.MEDIAN, 1, 0, new MedianLocalThreshold< UnsignedByteType, Iterator< UnsignedByteType >>( 1 ), tileSize, null );
+		}
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testRejectsTilesTooLargeToBuffer()
+	{
+		// a large virtual input, nothing is read before the tile size is checked
+		FinalInterval interval = new FinalInterval( 4096, 4096, 4096 );
+		RandomAccessibleInterval< UnsignedByteType > input = Views.interval( Views.extendBorder( createImage( new long[] { 1, 1, 1 } ) ), interval );
+		RandomAccessibleInterval< BitType > output = Views.interval( Views.extendBorder( new ArrayImgFactory< BitType >().create( new long[] { 1, 1, 1 }, new BitType() ) ), interval );
+		new SlidingWindowThreshold< UnsignedByteType >( Method.MEAN, new long[] { 1000, 1000, 1000 }, 0, 0 ).compute( input, output );
+	}
+}
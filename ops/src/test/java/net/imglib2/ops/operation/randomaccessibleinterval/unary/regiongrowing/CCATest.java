@@ -38,10 +38,13 @@
 package net.imglib2.ops.operation.randomaccessibleinterval.unary.regiongrowing;
 
 import junit.framework.Assert;
+import java.util.List;
+
 import net.imglib2.Cursor;
 import net.imglib2.img.Img;
 import net.imglib2.img.array.ArrayImgFactory;
 import net.imglib2.labeling.Labeling;
+import net.imglib2.labeling.LabelingType;
 import net.imglib2.labeling.NativeImgLabeling;
 import net.imglib2.type.numeric.integer.ByteType;
 import net.imglib2.type.numeric.integer.IntType;
@@ -75,4 +78,68 @@ public class CCATest
 
 		Assert.assertEquals( numCCCs, lab.firstElement().getMapping().getLabels().size() );
 	}
+
+	private static final int[][] BINARY = {
+			{ 1, 1, 0, 0, 1, 1 },
+			{ 1, 0, 0, 1, 1, 0 },
+			{ 0, 0, 1, 0, 0, 0 },
+			{ 1, 0, 1, 1, 0, 1 },
+			{ 1, 0, 0, 0, 0, 1 } };
+
+	@Test
+	public void testLabels4Connected()
+	{
+		assertLabels( new int[][] {
+				{ 1, 1, 0, 0, 2, 2 },
+				{ 1, 0, 0, 2, 2, 0 },
+				{ 0, 0, 3, 0, 0, 0 },
+				{ 4, 0, 3, 3, 0, 5 },
+				{ 4, 0, 0, 0, 0, 5 } }, AbstractRegionGrowing.get4ConStructuringElement( 2 ) );
+	}
+
+	@Test
+	public void testLabels8Connected()
+	{
+		assertLabels( new int[][] {
+				{ 1, 1, 0, 0, 2, 2 },
+				{ 1, 0, 0, 2, 2, 0 },
+				{ 0, 0, 2, 0, 0, 0 },
+				{ 3, 0, 2, 2, 0, 4 },
+				{ 3, 0, 0, 0, 0, 4 } }, AbstractRegionGrowing.get8ConStructuringElement( 2 ) );
+	}
+
+	/**
+	 * Labels {@link #BINARY} and checks the label of every pixel, 0 meaning
+	 * unlabeled. Components are numbered in the raster order of their first
+	 * pixel.
+	 */
+	private static void assertLabels( int[][] expected, long[][] structuringElement )
+	{
+		Img< ByteType > img = new ArrayImgFactory< ByteType >().create( new int[] { BINARY[ 0 ].length, BINARY.length }, new ByteType() );
+		Cursor< ByteType > c = img.localizingCursor();
+		while ( c.hasNext() )
+		{
+			c.fwd();
+			c.get().set( ( byte ) BINARY[ c.getIntPosition( 1 ) ][ c.getIntPosition( 0 ) ] );
+		}
+
+		CCA< ByteType, Img< ByteType >, Labeling< Integer >> cca = new CCA< ByteType, Img< ByteType >, Labeling< Integer >>( structuringElement, new ByteType() );
+		Labeling< Integer > lab = new NativeImgLabeling< Integer, IntType >( new ArrayImgFactory< IntType >().create( img, new IntType() ) );
+		cca.compute( img, lab );
+
+		Cursor< LabelingType< Integer >> lc = lab.localizingCursor();
+		while ( lc.hasNext() )
+		{
+			lc.fwd();
+			List< Integer > labels = lc.get().getLabeling();
+			int label = expected[ lc.getIntPosition( 1 ) ][ lc.getIntPosition( 0 ) ];
+			if ( label == 0 )
+				Assert.assertTrue( labels.isEmpty() );
+			else
+			{
+				Assert.assertEquals( 1, labels.size() );
+				Assert.assertEquals( label, labels.get( 0 ).intValue() );
+			}
+		}
+	}
 }
@@ -0,0 +1,128 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.ops.operation.randomaccessibleinterval.unary.regiongrowing;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.labeling.Labeling;
+import net.imglib2.labeling.LabelingType;
+import net.imglib2.labeling.NativeImgLabeling;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+
+import org.junit.Test;
+
+public class VoronoiLikeRegionGrowingTest
+{
+
+	private static Img< UnsignedByteType > img()
+	{
+		Img< UnsignedByteType > img = new ArrayImgFactory< UnsignedByteType >().create( new long[] { 400, 300 }, new UnsignedByteType() );
+		Random rnd = new Random( 17 );
+		Cursor< UnsignedByteType > c = img.localizingCursor();
+		while ( c.hasNext() )
+		{
+			c.fwd();
+			double x = c.getDoublePosition( 0 );
+			double y = c.getDoublePosition( 1 );
+			c.get().set( ( int ) ( 128 + 100 * Math.sin( x / 17 ) * Math.cos( y / 11 ) ) + rnd.nextInt( 20 ) );
+		}
+		return img;
+	}
+
+	private static Labeling< Integer > labeling( Img< UnsignedByteType > img )
+	{
+		return new NativeImgLabeling< Integer, IntType >( new ArrayImgFactory< IntType >().create( img, new IntType() ) );
+	}
+
+	@Test
+	public void testParallelMatchesSequential()
+	{
+		Img< UnsignedByteType > img = img();
+		Labeling< Integer > seeds = labeling( img );
+		RandomAccess< LabelingType< Integer >> ra = seeds.randomAccess();
+		Random rnd = new Random( 3 );
+		for ( int i = 0; i < 2000; i++ )
+		{
+			ra.setPosition( new int[] { rnd.nextInt( 400 ), rnd.nextInt( 300 ) } );
+			ra.get().setLabel( i % 500 );
+		}
+
+		Labeling< Integer > sequential = labeling( img );
+		new VoronoiLikeRegionGrowing< Integer, UnsignedByteType >( img, new UnsignedByteType( 60 ), false ).compute( seeds, sequential );
+
+		ExecutorService service = Executors.newFixedThreadPool( 4 );
+		Labeling< Integer > parallel = labeling( img );
+		try
+		{
+			new VoronoiLikeRegionGrowing< Integer, UnsignedByteType >( img, new UnsignedByteType( 60 ), false, service, 4 ).compute( seeds, parallel );
+		}
+		finally
+		{
+			service.shutdown();
+		}
+
+		Cursor< LabelingType< Integer >> c = sequential.localizingCursor();
+		RandomAccess< LabelingType< Integer >> pra = parallel.randomAccess();
+		RandomAccess< UnsignedByteType > ira = img.randomAccess();
+		long labeled = 0;
+		long included = 0;
+		while ( c.hasNext() )
+		{
+			c.fwd();
+			pra.setPosition( c );
+			ira.setPosition( c );
+			assertEquals( c.get().getLabeling(), pra.get().getLabeling() );
+			if ( !c.get().getLabeling().isEmpty() )
+				labeled++;
+			if ( ira.get().get() >= 60 )
+				included++;
+		}
+
+		// seeds may lie below the threshold, pixels above may be unreachable
+		assertEquals( included, labeled, included / 5 );
+	}
+}
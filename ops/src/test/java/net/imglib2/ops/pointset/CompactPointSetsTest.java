@@ -0,0 +1,176 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.ops.pointset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class CompactPointSetsTest {
+
+	@Test
+	public void testBitmapPointSet() {
+		PointSet hv =
+			new HyperVolumePointSet(new long[] { 1, 2 }, new long[] { 70, 5 });
+		BitmapPointSet ps = new BitmapPointSet(hv);
+
+		assertEquals(hv.size(), ps.size());
+		assertEquals(1, ps.min(0));
+		assertEquals(70, ps.max(0));
+		assertEquals(2, ps.min(1));
+		assertEquals(5, ps.max(1));
+		assertTrue(ps.includes(new long[] { 1, 2 }));
+		assertTrue(ps.includes(new long[] { 70, 5 }));
+		assertFalse(ps.includes(new long[] { 0, 2 }));
+		assertFalse(ps.includes(new long[] { 71, 5 }));
+
+		long count = 0;
+		PointSetIterator iter = ps.iterator();
+		while (iter.hasNext()) {
+			assertTrue(hv.includes(iter.next()));
+			count++;
+		}
+		assertEquals(hv.size(), count);
+
+		assertTrue(ps.remove(new long[] { 1, 2 }));
+		assertFalse(ps.remove(new long[] { 1, 2 }));
+		assertEquals(hv.size() - 1, ps.size());
+		assertEquals(1, ps.min(0));
+
+		ps.translate(new long[] { 10, -2 });
+		assertEquals(11, ps.min(0));
+		assertEquals(80, ps.max(0));
+		assertEquals(0, ps.min(1));
+		assertTrue(ps.includes(new long[] { 80, 3 }));
+		assertFalse(ps.includes(new long[] { 11, 0 }));
+		assertTrue(ps.includes(new long[] { 11, 1 }));
+	}
+
+	@Test
+	public void testGeneralPointSetIncludes() {
+		List<long[]> points = new ArrayList<long[]>();
+		for (int i = 0; i < 100; i++)
+			points.add(new long[] { i * 7, -i * 3, i % 5 });
+		GeneralPointSet ps = new GeneralPointSet(new long[3], points);
+		for (int i = 0; i < 100; i++) {
+			assertTrue(ps.includes(new long[] { i * 7, -i * 3, i % 5 }));
+			assertFalse(ps.includes(new long[] { i * 7 + 1, -i * 3, i % 5 }));
+		}
+		ps.translate(new long[] { 1, 2, 3 });
+		assertTrue(ps.includes(new long[] { 1, 2, 3 }));
+		assertTrue(ps.includes(new long[] { 99 * 7 + 1, -99 * 3 + 2, 4 + 3 }));
+		assertFalse(ps.includes(new long[] { 0, 0, 0 }));
+	}
+
+	@Test
+	public void testSetAlgebra() {
+		PointSet a = new HyperVolumePointSet(new long[] { 0, 0 }, new long[] { 9, 9 });
+		PointSet b = new HyperVolumePointSet(new long[] { 5, 5 }, new long[] { 14, 14 });
+
+		PointSet union = CompactPointSets.union(a, b);
+		PointSet intersection = CompactPointSets.intersection(a, b);
+		PointSet difference = CompactPointSets.difference(a, b);
+
+		assertEquals(new PointSetUnion(a, b).size(), union.size());
+		assertEquals(new PointSetIntersection(a, b).size(), intersection.size());
+		assertEquals(new PointSetDifference(a, b).size(), difference.size());
+		assertEquals(175, union.size());
+		assertEquals(25, intersection.size());
+		assertEquals(75, difference.size());
+
+		for (long x = -1; x <= 15; x++) {
+			for (long y = -1; y <= 15; y++) {
+				long[] p = new long[] { x, y };
+				assertEquals(a.includes(p) || b.includes(p), union.includes(p));
+				assertEquals(a.includes(p) && b.includes(p), intersection.includes(p));
+				assertEquals(a.includes(p) && !b.includes(p), difference.includes(p));
+			}
+		}
+
+		BitmapPointSet ba = new BitmapPointSet(union);
+		BitmapPointSet bb = new BitmapPointSet(union);
+		PointSetIterator iter = b.iterator();
+		while (iter.hasNext())
+			bb.remove(iter.next());
+		PointSet result = CompactPointSets.intersection(ba, bb);
+		assertTrue(result instanceof BitmapPointSet);
+		assertEquals(75, result.size());
+	}
+
+	@Test
+	public void testSparseSetsAreHashed() {
+		List<long[]> points = new ArrayList<long[]>();
+		points.add(new long[] { 0, 0 });
+		points.add(new long[] { 100000, 100000 });
+		PointSet sparse = new GeneralPointSet(new long[2], points);
+		PointSet ps = CompactPointSets.compact(new PointSetUnion(sparse,
+			new OnePointSet(new long[] { 5, 5 })));
+		assertTrue(ps instanceof GeneralPointSet);
+		assertEquals(3, ps.size());
+		assertTrue(ps.includes(new long[] { 5, 5 }));
+		assertTrue(ps.includes(new long[] { 100000, 100000 }));
+		assertFalse(ps.includes(new long[] { 5, 6 }));
+	}
+
+	@Test
+	public void testEmptyResultsKeepDimensions() {
+		PointSet a = new HyperVolumePointSet(new long[] { 0, 0 }, new long[] { 4, 4 });
+		PointSet b = new HyperVolumePointSet(new long[] { 10, 10 }, new long[] { 14, 14 });
+		PointSet c = new HyperVolumePointSet(new long[] { 2, 2 }, new long[] { 3, 3 });
+
+		PointSet empty = CompactPointSets.intersection(a, b);
+		assertEquals(0, empty.size());
+		assertEquals(2, empty.numDimensions());
+		assertFalse(empty.iterator().hasNext());
+
+		PointSet union = CompactPointSets.union(empty, c);
+		assertEquals(4, union.size());
+		assertTrue(union.includes(new long[] { 3, 3 }));
+
+		PointSet none = CompactPointSets.difference(c, a);
+		assertEquals(0, none.size());
+		assertEquals(2, none.numDimensions());
+		assertEquals(4, CompactPointSets.union(c, none).size());
+		assertEquals(0, CompactPointSets.intersection(none, empty).size());
+	}
+}
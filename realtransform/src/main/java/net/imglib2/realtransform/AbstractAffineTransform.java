@@ -48,7 +48,7 @@ import Jama.Matrix;
  *
  * @author Stephan Saalfeld <saalfeld@mpi-cbg.de>
  */
-public abstract class AbstractAffineTransform implements AffineGet, AffineSet
+public abstract class AbstractAffineTransform implements AffineGet, AffineSet, BatchRealTransform
 {
 	final protected int n;
 	
@@ -151,6 +151,18 @@ public abstract class AbstractAffineTransform implements AffineGet, AffineSet
 		}
 	}
 
+	@Override
+	public void apply( final double[] source, final double[] target, final int numPoints )
+	{
+		BatchRealTransforms.applyAffine( getRowPackedCopy(), n, source, target, numPoints );
+	}
+
+	@Override
+	public void apply( final double[][] source, final double[][] target, final int numPoints )
+	{
+		BatchRealTransforms.applyAffine( getRowPackedCopy(), n, source, target, numPoints );
+	}
+
 	@Override
 	public void apply( final RealLocalizable source, final RealPositionable target )
 	{
@@ -28,6 +28,7 @@
 package net.imglib2.realtransform;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import net.imglib2.RealLocalizable;
 import net.imglib2.RealPoint;
@@ -40,7 +41,7 @@ import net.imglib2.RealPositionable;
  *
  * @author Stephan Saalfeld <saalfeld@mpi-cbg.de>
  */
-public class AbstractRealTransformSequence< R extends RealTransform > implements RealTransform
+public class AbstractRealTransformSequence< R extends RealTransform > implements BatchRealTransform
 {
 	final protected ArrayList< R > transforms = new ArrayList< R >();;
 
@@ -177,6 +178,54 @@ public class AbstractRealTransformSequence< R extends RealTransform > implements
 		}
 	}
 	
+	/**
+	 * Apply the sequence to an interleaved block of coordinates.  Adjacent
+	 * affine transformations are concatenated into a single matrix such that
+	 * each coordinate is touched only once per run of affines.  If all
+	 * transformations preserve the number of dimensions, the block is
+	 * transformed stage by stage in place in the target block, otherwise
+	 * point by point.
+	 */
+	@Override
+	public void apply( final double[] source, final double[] target, final int numPoints )
+	{
+		if ( transforms.size() == 0 )
+			return;
+
+		/* affines are mutable, so the fused plan is built per call */
+		final List< BatchRealTransforms.Stage > stages = BatchRealTransforms.fuse( transforms );
+		if ( BatchRealTransforms.canApplyInPlace( stages ) )
+		{
+			stages.get( 0 ).apply( source, target, numPoints );
+			for ( int i = 1; i < stages.size(); ++i )
+				stages.get( i ).apply( target, target, numPoints );
+		}
+		else
+			BatchRealTransforms.applyPointwise( this, source, target, numPoints );
+	}
+
+	/**
+	 * Apply the sequence to a structure-of-arrays block of coordinates.
+	 *
+	 * @see #apply(double[], double[], int)
+	 */
+	@Override
+	public void apply( final double[][] source, final double[][] target, final int numPoints )
+	{
+		if ( transforms.size() == 0 )
+			return;
+
+		final List< BatchRealTransforms.Stage > stages = BatchRealTransforms.fuse( transforms );
+		if ( BatchRealTransforms.canApplyInPlace( stages ) )
+		{
+			stages.get( 0 ).apply( source, target, numPoints );
+			for ( int i = 1; i < stages.size(); ++i )
+				stages.get( i ).apply( target, target, numPoints );
+		}
+		else
+			BatchRealTransforms.applyPointwise( this, source, target, numPoints );
+	}
+
 	@SuppressWarnings( "unchecked" )
 	@Override
 	public AbstractRealTransformSequence< R > copy()
@@ -36,7 +36,7 @@ import net.imglib2.RealPositionable;
  *
  * @author Stephan Saalfeld <saalfeld@mpi-cbg.de>
  */
-abstract public class AbstractScale implements ScaleGet
+abstract public class AbstractScale implements ScaleGet, BatchRealTransform
 {
 	final protected double[] s;
 	final protected RealPoint[] ds;
@@ -124,6 +124,28 @@ abstract public class AbstractScale implements ScaleGet
 			target[ d ] = source[ d ] * s[ d ];
 	}
 
+	@Override
+	public void apply( final double[] source, final double[] target, final int numPoints )
+	{
+		final int n = s.length;
+		for ( int i = 0, o = 0; i < numPoints; ++i, o += n )
+			for ( int d = 0; d < n; ++d )
+				target[ o + d ] = source[ o + d ] * s[ d ];
+	}
+
+	@Override
+	public void apply( final double[][] source, final double[][] target, final int numPoints )
+	{
+		for ( int d = 0; d < s.length; ++d )
+		{
+			final double sd = s[ d ];
+			final double[] sourced = source[ d ];
+			final double[] targetd = target[ d ];
+			for ( int i = 0; i < numPoints; ++i )
+				targetd[ i ] = sourced[ i ] * sd;
+		}
+	}
+
 	@Override
 	public void apply( final float[] source, final float[] target )
 	{
@@ -36,7 +36,7 @@ import net.imglib2.RealPositionable;
  *
  * @author Stephan Saalfeld <saalfeld@mpi-cbg.de>
  */
-abstract public class AbstractTranslation implements InvertibleRealTransform, TranslationGet
+abstract public class AbstractTranslation implements InvertibleRealTransform, TranslationGet, BatchRealTransform
 {
 	final protected double[] t;
 	final protected RealPoint[] ds;
@@ -105,6 +105,28 @@ abstract public class AbstractTranslation implements InvertibleRealTransform, Tr
 			target[ d ] = source[ d ] + t[ d ];
 	}
 
+	@Override
+	public void apply( final double[] source, final double[] target, final int numPoints )
+	{
+		final int n = t.length;
+		for ( int i = 0, o = 0; i < numPoints; ++i, o += n )
+			for ( int d = 0; d < n; ++d )
+				target[ o + d ] = source[ o + d ] + t[ d ];
+	}
+
+	@Override
+	public void apply( final double[][] source, final double[][] target, final int numPoints )
+	{
+		for ( int d = 0; d < t.length; ++d )
+		{
+			final double td = t[ d ];
+			final double[] sourced = source[ d ];
+			final double[] targetd = target[ d ];
+			for ( int i = 0; i < numPoints; ++i )
+				targetd[ i ] = sourced[ i ] + td;
+		}
+	}
+
 	@Override
 	public void apply( final float[] source, final float[] target )
 	{
@@ -59,47 +59,128 @@ import net.imglib2.RealRandomAccessible;
  */
 public class AffineRandomAccessible< T, R extends AffineGet > extends RealTransformRandomAccessible< T, R >
 {
+	/**
+	 * Number of relative moves after which the target position is recomputed
+	 * from scratch to prevent accumulation of rounding errors.
+	 */
+	final static protected int resyncInterval = 4096;
+
 	/**
 	 * {@link RealRandomAccess} that generates its samples from a target
 	 * {@link RealRandomAccessible} at coordinates transformed by a
 	 * {@link RealTransform}.
 	 *
+	 * All moves are translated into relative moves of the target
+	 * {@link RealRandomAccess} by adding the per-dimension steps (partial
+	 * differentials) of the transformation, which are precomputed on
+	 * construction.  That way, an interpolating target only repositions its
+	 * underlying {@link RandomAccess} by the change of the integer floor
+	 * instead of setting it from scratch.  Every {@link #resyncInterval}
+	 * relative moves, the target position is recomputed from the full
+	 * transformation.  Positionings always apply the full transformation, so
+	 * the same position maps to the same target coordinates regardless of
+	 * the history of the access.
 	 */
 	public class AffineRandomAccess extends RealTransformRandomAccessible< T, R >.RealTransformRandomAccess
 	{
 		final double[] move = new double[ n ];
-		
+
+		/**
+		 * source space steps for a unit move in each dimension
+		 */
+		final protected double[][] steps;
+
+		/**
+		 * source space steps for a unit move backwards in each dimension
+		 */
+		final protected double[][] backSteps;
+
+		protected int relativeMoves = 0;
+
 		protected AffineRandomAccess()
 		{
 			super();
+			final int m = transformCopy.numTargetDimensions();
+			steps = new double[ n ][ m ];
+			backSteps = new double[ n ][ m ];
+			for ( int d = 0; d < n; ++d )
+			{
+				transformCopy.d( d ).localize( steps[ d ] );
+				for ( int e = 0; e < m; ++e )
+					backSteps[ d ][ e ] = -steps[ d ][ e ];
+			}
 			apply();
 		}
 
 		protected AffineRandomAccess( final AffineRandomAccess a )
 		{
 			super( a );
+			steps = new double[ n ][];
+			backSteps = new double[ n ][];
+			for ( int d = 0; d < n; ++d )
+			{
+				steps[ d ] = a.steps[ d ].clone();
+				backSteps[ d ] = a.backSteps[ d ].clone();
+			}
+			relativeMoves = a.relativeMoves;
 		}
 
 		protected void scaleMove( final double distance, final int d )
 		{
-			final RealLocalizable dd = transformCopy.d( d );
+			final double[] step = steps[ d ];
 			for ( int ddd = 0; ddd < n; ++ddd )
-				move[ ddd ] = distance * dd.getDoublePosition( ddd );
+				move[ ddd ] = distance * step[ ddd ];
+		}
+
+		/**
+		 * Move the target by a source space vector, or recompute its position
+		 * from the full transformation if due.
+		 */
+		final protected void moveTarget( final double[] distance )
+		{
+			if ( ++relativeMoves >= resyncInterval )
+				resync();
+			else
+				targetAccess.move( distance );
+		}
+
+		/**
+		 * Recompute the target position from the full transformation.
+		 */
+		final protected void resync()
+		{
+			relativeMoves = 0;
+			apply();
+		}
+
+		/**
+		 * Add the source space vector of a move by distance in dimension d to
+		 * the move vector (or initialize the move vector with it if first is
+		 * true).
+		 */
+		final protected void accumulateMove( final long distance, final int d, final boolean first )
+		{
+			final double[] step = steps[ d ];
+			if ( first )
+				for ( int ddd = 0; ddd < n; ++ddd )
+					move[ ddd ] = distance * step[ ddd ];
+			else if ( distance != 0 )
+				for ( int ddd = 0; ddd < n; ++ddd )
+					move[ ddd ] += distance * step[ ddd ];
 		}
-		
+
 		@Override
 		public void fwd( final int d )
 		{
 			super.fwd( d );
-			targetAccess.move( transformCopy.d( d ) );
+			moveTarget( steps[ d ] );
 		}
 
 		@Override
 		public void bck( final int d )
 		{
 			super.bck( d );
-			scaleMove( -1, d );
-			targetAccess.move( move );
+			moveTarget( backSteps[ d ] );
 		}
 
 		@Override
@@ -107,7 +188,7 @@ public class AffineRandomAccessible< T, R extends AffineGet > extends RealTransf
 		{
 			super.move( distance, d );
 			scaleMove( distance, d );
-			targetAccess.move( move );
+			moveTarget( move );
 		}
 
 		@Override
@@ -119,36 +200,42 @@ public class AffineRandomAccessible< T, R extends AffineGet > extends RealTransf
 		@Override
 		public void move( final Localizable localizable )
 		{
+			for ( int d = 0; d < n; ++d )
+				accumulateMove( localizable.getLongPosition( d ), d, d == 0 );
 			super.move( localizable );
-			apply();
+			moveTarget( move );
 		}
 
 		@Override
 		public void move( final int[] distance )
 		{
+			for ( int d = 0; d < n; ++d )
+				accumulateMove( distance[ d ], d, d == 0 );
 			super.move( distance );
-			apply();
+			moveTarget( move );
 		}
 
 		@Override
 		public void move( final long[] distance )
 		{
+			for ( int d = 0; d < n; ++d )
+				accumulateMove( distance[ d ], d, d == 0 );
 			super.move( distance );
-			apply();
+			moveTarget( move );
 		}
 
 		@Override
 		public void setPosition( final int[] pos )
 		{
 			super.setPosition( pos );
-			apply();
+			resync();
 		}
 
 		@Override
 		public void setPosition( final long[] pos )
 		{
 			super.setPosition( pos );
-			apply();
+			resync();
 		}
 
 		@Override
@@ -160,15 +247,15 @@ public class AffineRandomAccessible< T, R extends AffineGet > extends RealTransf
 		@Override
 		public void setPosition( final long pos, final int d )
 		{
-			final long distance = pos - position[ d ];
-			move( distance, d );
+			position[ d ] = pos;
+			resync();
 		}
 
 		@Override
 		public void setPosition( final Localizable localizable )
 		{
 			localizable.localize( position );
-			apply();
+			resync();
 		}
 
 		@Override
@@ -48,7 +48,7 @@ import net.imglib2.concatenate.PreConcatenable;
  * 
  * @author Stephan Saalfeld <saalfeld@mpi-cbg.de>
  */
-public class AffineTransform2D implements AffineGet, AffineSet, Concatenable< AffineGet >, PreConcatenable< AffineGet >
+public class AffineTransform2D implements AffineGet, AffineSet, BatchRealTransform, Concatenable< AffineGet >, PreConcatenable< AffineGet >
 {
 	final static protected class AffineMatrix2D
 	{
@@ -162,6 +162,36 @@ public class AffineTransform2D implements AffineGet, AffineSet, Concatenable< Af
 		target[ 1 ] = ( float )( source[ 0 ] * a.m10 + source[ 1 ] * a.m11 + a.m12 );
 	}
 	
+	@Override
+	public void apply( final double[] source, final double[] target, final int numPoints )
+	{
+		final double m00 = a.m00, m01 = a.m01, m02 = a.m02;
+		final double m10 = a.m10, m11 = a.m11, m12 = a.m12;
+		for ( int i = 0, o = 0; i < numPoints; ++i, o += 2 )
+		{
+			final double x = source[ o ];
+			final double y = source[ o + 1 ];
+			target[ o ] = x * m00 + y * m01 + m02;
+			target[ o + 1 ] = x * m10 + y * m11 + m12;
+		}
+	}
+	
+	@Override
+	public void apply( final double[][] source, final double[][] target, final int numPoints )
+	{
+		final double m00 = a.m00, m01 = a.m01, m02 = a.m02;
+		final double m10 = a.m10, m11 = a.m11, m12 = a.m12;
+		final double[] sx = source[ 0 ], sy = source[ 1 ];
+		final double[] tx = target[ 0 ], ty = target[ 1 ];
+		for ( int i = 0; i < numPoints; ++i )
+		{
+			final double x = sx[ i ];
+			final double y = sy[ i ];
+			tx[ i ] = x * m00 + y * m01 + m02;
+			ty[ i ] = x * m10 + y * m11 + m12;
+		}
+	}
+	
 	@Override
 	public void apply( final RealLocalizable source, final RealPositionable target )
 	{
@@ -51,7 +51,7 @@ import net.imglib2.util.Util;
  *
  * @author Stephan Saalfeld <saalfeld@mpi-cbg.de>
  */
-public class AffineTransform3D implements AffineGet, AffineSet, Concatenable< AffineGet >, PreConcatenable< AffineGet >
+public class AffineTransform3D implements AffineGet, AffineSet, BatchRealTransform, Concatenable< AffineGet >, PreConcatenable< AffineGet >
 {
 	final static protected class AffineMatrix3D
 	{
@@ -261,6 +261,42 @@ public class AffineTransform3D implements AffineGet, AffineSet, Concatenable< Af
 		target[ 2 ] = ( float )( source[ 0 ] * a.m20 + source[ 1 ] * a.m21 + source[ 2 ] * a.m22 + a.m23 );
 	}
 	
+	@Override
+	public void apply( final double[] source, final double[] target, final int numPoints )
+	{
+		final double m00 = a.m00, m01 = a.m01, m02 = a.m02, m03 = a.m03;
+		final double m10 = a.m10, m11 = a.m11, m12 = a.m12, m13 = a.m13;
+		final double m20 = a.m20, m21 = a.m21, m22 = a.m22, m23 = a.m23;
+		for ( int i = 0, o = 0; i < numPoints; ++i, o += 3 )
+		{
+			final double x = source[ o ];
+			final double y = source[ o + 1 ];
+			final double z = source[ o + 2 ];
+			target[ o ] = x * m00 + y * m01 + z * m02 + m03;
+			target[ o + 1 ] = x * m10 + y * m11 + z * m12 + m13;
+			target[ o + 2 ] = x * m20 + y * m21 + z * m22 + m23;
+		}
+	}
+	
+	@Override
+	public void apply( final double[][] source, final double[][] target, final int numPoints )
+	{
+		final double m00 = a.m00, m01 = a.m01, m02 = a.m02, m03 = a.m03;
+		final double m10 = a.m10, m11 = a.m11, m12 = a.m12, m13 = a.m13;
+		final double m20 = a.m20, m21 = a.m21, m22 = a.m22, m23 = a.m23;
+		final double[] sx = source[ 0 ], sy = source[ 1 ], sz = source[ 2 ];
+		final double[] tx = target[ 0 ], ty = target[ 1 ], tz = target[ 2 ];
+		for ( int i = 0; i < numPoints; ++i )
+		{
+			final double x = sx[ i ];
+			final double y = sy[ i ];
+			final double z = sz[ i ];
+			tx[ i ] = x * m00 + y * m01 + z * m02 + m03;
+			ty[ i ] = x * m10 + y * m11 + z * m12 + m13;
+			tz[ i ] = x * m20 + y * m21 + z * m22 + m23;
+		}
+	}
+	
 	@Override
 	public void apply( final RealLocalizable source, final RealPositionable target )
 	{
@@ -0,0 +1,90 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.realtransform;
+
+/**
+ * A {@link RealTransform} that can transform blocks of many coordinates per
+ * call.  Transforming millions of points through
+ * {@link RealTransform#apply(double[], double[])} is dominated by the
+ * overhead of one (virtual) call per point.  Implementations of this
+ * interface process flat coordinate blocks in tight loops instead.
+ *
+ * <p>Two layouts are supported: <em>interleaved</em> blocks store the
+ * coordinates of point i at positions i*n, ..., i*n+n-1 of a single array,
+ * <em>structure-of-arrays</em> blocks store coordinate d of point i at
+ * position i of the d-th array.  The number of coordinates per point is
+ * {@link #numSourceDimensions()} for the source block and
+ * {@link #numTargetDimensions()} for the target block.  Unlike for
+ * single points, source and target may be the same block if the numbers of
+ * source and target dimensions are equal.</p>
+ *
+ * <p>Use {@link BatchRealTransforms} to transform blocks with arbitrary
+ * {@link RealTransform RealTransforms}.</p>
+ */
+public interface BatchRealTransform extends RealTransform
+{
+	/**
+	 * Apply the {@link RealTransform} to an interleaved block of source
+	 * coordinates to obtain an interleaved block of target coordinates.
+	 *
+	 * @param source
+	 *            source coordinates, numSourceDimensions() per point.
+	 * @param target
+	 *            set this to the target coordinates, numTargetDimensions()
+	 *            per point.
+	 * @param numPoints
+	 *            number of points to transform.
+	 */
+	public void apply( final double[] source, final double[] target, final int numPoints );
+
+	/**
+	 * Apply the {@link RealTransform} to a structure-of-arrays block of source
+	 * coordinates to obtain a structure-of-arrays block of target
+	 * coordinates.
+	 *
+	 * @param source
+	 *            source coordinates, source[ d ][ i ] is coordinate d of
+	 *            point i.
+	 * @param target
+	 *            set this to the target coordinates, target[ d ][ i ] is
+	 *            coordinate d of point i.
+	 * @param numPoints
+	 *            number of points to transform.
+	 */
+	public void apply( final double[][] source, final double[][] target, final int numPoints );
+}
@@ -0,0 +1,313 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.realtransform;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Static utility methods to transform blocks of coordinates with
+ * {@link RealTransform RealTransforms}.  {@link BatchRealTransform
+ * BatchRealTransforms} transform the block themselves, all other
+ * {@link RealTransform RealTransforms} are applied point by point.  See
+ * {@link BatchRealTransform} for a description of the supported block
+ * layouts.
+ */
+public class BatchRealTransforms
+{
+	private BatchRealTransforms()
+	{}
+
+	/**
+	 * Apply a {@link RealTransform} to an interleaved block of coordinates.
+	 *
+	 * @param transform
+	 * @param source
+	 *            source coordinates, numSourceDimensions() per point.
+	 * @param target
+	 *            target coordinates, numTargetDimensions() per point.
+	 * @param numPoints
+	 */
+	public static void apply( final RealTransform transform, final double[] source, final double[] target, final int numPoints )
+	{
+		if ( transform instanceof BatchRealTransform )
+			( ( BatchRealTransform )transform ).apply( source, target, numPoints );
+		else
+			applyPointwise( transform, source, target, numPoints );
+	}
+
+	/**
+	 * Apply a {@link RealTransform} to a structure-of-arrays block of
+	 * coordinates.
+	 *
+	 * @param transform
+	 * @param source
+	 *            source coordinates, source[ d ][ i ] is coordinate d of
+	 *            point i.
+	 * @param target
+	 *            target coordinates, target[ d ][ i ] is coordinate d of
+	 *            point i.
+	 * @param numPoints
+	 */
+	public static void apply( final RealTransform transform, final double[][] source, final double[][] target, final int numPoints )
+	{
+		if ( transform instanceof BatchRealTransform )
+			( ( BatchRealTransform )transform ).apply( source, target, numPoints );
+		else
+			applyPointwise( transform, source, target, numPoints );
+	}
+
+	/**
+	 * Apply a {@link RealTransform} point by point to an interleaved block of
+	 * coordinates.
+	 */
+	public static void applyPointwise( final RealTransform transform, final double[] source, final double[] target, final int numPoints )
+	{
+		final int n = transform.numSourceDimensions();
+		final int m = transform.numTargetDimensions();
+		final double[] s = new double[ n ];
+		final double[] t = new double[ m ];
+		for ( int i = 0, si = 0, ti = 0; i < numPoints; ++i, si += n, ti += m )
+		{
+			System.arraycopy( source, si, s, 0, n );
+			transform.apply( s, t );
+			System.arraycopy( t, 0, target, ti, m );
+		}
+	}
+
+	/**
+	 * Apply a {@link RealTransform} point by point to a structure-of-arrays
+	 * block of coordinates.
+	 */
+	public static void applyPointwise( final RealTransform transform, final double[][] source, final double[][] target, final int numPoints )
+	{
+		final int n = transform.numSourceDimensions();
+		final int m = transform.numTargetDimensions();
+		final double[] s = new double[ n ];
+		final double[] t = new double[ m ];
+		for ( int i = 0; i < numPoints; ++i )
+		{
+			for ( int d = 0; d < n; ++d )
+				s[ d ] = source[ d ][ i ];
+			transform.apply( s, t );
+			for ( int d = 0; d < m; ++d )
+				target[ d ][ i ] = t[ d ];
+		}
+	}
+
+	/**
+	 * Apply an n-dimensional affine transformation, given as a row packed
+	 * n&times;(n+1) matrix, to an interleaved block of coordinates.
+	 * Source and target may be the same array.
+	 */
+	public static void applyAffine( final double[] matrix, final int n, final double[] source, final double[] target, final int numPoints )
+	{
+		assert matrix.length >= n * ( n + 1 ) : "Matrix too small.";
+
+		final int n1 = n + 1;
+		final double[] x = new double[ n ];
+		for ( int i = 0, o = 0; i < numPoints; ++i, o += n )
+		{
+			System.arraycopy( source, o, x, 0, n );
+			for ( int r = 0, k = 0; r < n; ++r, k += n1 )
+			{
+				double y = matrix[ k + n ];
+				for ( int c = 0; c < n; ++c )
+					y += matrix[ k + c ] * x[ c ];
+				target[ o + r ] = y;
+			}
+		}
+	}
+
+	/**
+	 * Apply an n-dimensional affine transformation, given as a row packed
+	 * n&times;(n+1) matrix, to a structure-of-arrays block of coordinates.
+	 * Source and target may be the same arrays.
+	 */
+	public static void applyAffine( final double[] matrix, final int n, final double[][] source, final double[][] target, final int numPoints )
+	{
+		assert matrix.length >= n * ( n + 1 ) : "Matrix too small.";
+
+		final int n1 = n + 1;
+		final double[] x = new double[ n ];
+		for ( int i = 0; i < numPoints; ++i )
+		{
+			for ( int c = 0; c < n; ++c )
+				x[ c ] = source[ c ][ i ];
+			for ( int r = 0, k = 0; r < n; ++r, k += n1 )
+			{
+				double y = matrix[ k + n ];
+				for ( int c = 0; c < n; ++c )
+					y += matrix[ k + c ] * x[ c ];
+				target[ r ][ i ] = y;
+			}
+		}
+	}
+
+	/**
+	 * Concatenate two n-dimensional affine transformations given as row
+	 * packed n&times;(n+1) matrices.
+	 *
+	 * @return the row packed matrix of the transformation that applies first
+	 *         and then second.
+	 */
+	public static double[] concatenateAffine( final double[] second, final double[] first, final int n )
+	{
+		final int n1 = n + 1;
+		final double[] result = new double[ n * n1 ];
+		for ( int r = 0; r < n; ++r )
+		{
+			for ( int c = 0; c < n1; ++c )
+			{
+				double v = c == n ? second[ r * n1 + n ] : 0;
+				for ( int k = 0; k < n; ++k )
+					v += second[ r * n1 + k ] * first[ k * n1 + c ];
+				result[ r * n1 + c ] = v;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * A step of a fused sequence: either a single {@link RealTransform} or
+	 * the row packed matrix of a run of adjacent affine transformations.
+	 */
+	static class Stage
+	{
+		final RealTransform transform;
+
+		final double[] matrix;
+
+		final int n;
+
+		Stage( final RealTransform transform )
+		{
+			this.transform = transform;
+			this.matrix = null;
+			this.n = -1;
+		}
+
+		Stage( final double[] matrix, final int n )
+		{
+			this.transform = null;
+			this.matrix = matrix;
+			this.n = n;
+		}
+
+		int numSourceDimensions()
+		{
+			return transform == null ? n : transform.numSourceDimensions();
+		}
+
+		int numTargetDimensions()
+		{
+			return transform == null ? n : transform.numTargetDimensions();
+		}
+
+		void apply( final double[] source, final double[] target, final int numPoints )
+		{
+			if ( transform == null )
+				applyAffine( matrix, n, source, target, numPoints );
+			else
+				BatchRealTransforms.apply( transform, source, target, numPoints );
+		}
+
+		void apply( final double[][] source, final double[][] target, final int numPoints )
+		{
+			if ( transform == null )
+				applyAffine( matrix, n, source, target, numPoints );
+			else
+				BatchRealTransforms.apply( transform, source, target, numPoints );
+		}
+	}
+
+	private static boolean isSquareAffine( final RealTransform t )
+	{
+		return t instanceof AffineGet && t.numSourceDimensions() == t.numTargetDimensions();
+	}
+
+	/**
+	 * Fuse runs of adjacent affine transformations of equal dimensionality
+	 * into single matrices.  Runs of length one keep the original transform
+	 * so that its specialized implementation is used.
+	 */
+	static List< Stage > fuse( final List< ? extends RealTransform > transforms )
+	{
+		final ArrayList< Stage > stages = new ArrayList< Stage >();
+		final int size = transforms.size();
+		for ( int i = 0; i < size; )
+		{
+			final RealTransform t = transforms.get( i );
+			int j = i + 1;
+			if ( isSquareAffine( t ) )
+			{
+				final int n = t.numSourceDimensions();
+				while ( j < size && isSquareAffine( transforms.get( j ) ) && transforms.get( j ).numSourceDimensions() == n )
+					++j;
+				if ( j - i > 1 )
+				{
+					double[] matrix = ( ( AffineGet )t ).getRowPackedCopy();
+					for ( int k = i + 1; k < j; ++k )
+						matrix = concatenateAffine( ( ( AffineGet )transforms.get( k ) ).getRowPackedCopy(), matrix, n );
+					stages.add( new Stage( matrix, n ) );
+					i = j;
+					continue;
+				}
+			}
+			stages.add( new Stage( t ) );
+			i = j;
+		}
+		return stages;
+	}
+
+	/**
+	 * Returns true if all stages map n-dimensional coordinates to
+	 * n-dimensional coordinates with the same n, such that they can be
+	 * applied one after the other in place on the target block.
+	 */
+	static boolean canApplyInPlace( final List< Stage > stages )
+	{
+		if ( stages.isEmpty() )
+			return false;
+		final int n = stages.get( 0 ).numSourceDimensions();
+		for ( final Stage stage : stages )
+			if ( stage.numSourceDimensions() != n || stage.numTargetDimensions() != n )
+				return false;
+		return true;
+	}
+}
@@ -0,0 +1,230 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.realtransform;
+
+import java.util.Random;
+
+import net.imglib2.Point;
+import net.imglib2.RealInterval;
+import net.imglib2.RealLocalizable;
+import net.imglib2.RealPoint;
+import net.imglib2.RealRandomAccess;
+import net.imglib2.RealRandomAccessible;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Checks that the incremental positioning of
+ * {@link AffineRandomAccessible.AffineRandomAccess} agrees with applying the
+ * transformation from scratch.
+ */
+public class AffineRandomAccessibleTest
+{
+	/**
+	 * A {@link RealRandomAccessible} whose value is the position it is
+	 * sampled at.
+	 */
+	static class PositionRandomAccessible implements RealRandomAccessible< RealLocalizable >
+	{
+		static class PositionRandomAccess extends RealPoint implements RealRandomAccess< RealLocalizable >
+		{
+			public PositionRandomAccess( final int n )
+			{
+				super( n );
+			}
+
+			@Override
+			public RealLocalizable get()
+			{
+				return this;
+			}
+
+			@Override
+			public PositionRandomAccess copy()
+			{
+				final PositionRandomAccess a = new PositionRandomAccess( n );
+				a.setPosition( this );
+				return a;
+			}
+
+			@Override
+			public PositionRandomAccess copyRealRandomAccess()
+			{
+				return copy();
+			}
+		}
+
+		@Override
+		public int numDimensions()
+		{
+			return 3;
+		}
+
+		@Override
+		public RealRandomAccess< RealLocalizable > realRandomAccess()
+		{
+			return new PositionRandomAccess( 3 );
+		}
+
+		@Override
+		public RealRandomAccess< RealLocalizable > realRandomAccess( final RealInterval interval )
+		{
+			return realRandomAccess();
+		}
+	}
+
+	final static private Random rnd = new Random( 1234 );
+
+	private static void assertTransformed( final AffineTransform3D affine, final Point position, final RealLocalizable actual )
+	{
+		final double[] source = new double[ 3 ];
+		final double[] target = new double[ 3 ];
+		position.localize( source );
+		affine.apply( source, target );
+		for ( int d = 0; d < 3; ++d )
+			Assert.assertEquals( target[ d ], actual.getDoublePosition( d ), 1e-6 );
+	}
+
+	@Test
+	public void testIncrementalPositioning()
+	{
+		final AffineTransform3D affine = new AffineTransform3D();
+		affine.set(
+				0.7, -0.3, 0.1, 12.3,
+				0.25, 1.1, -0.4, -5.0,
+				-0.05, 0.2, 0.9, 0.75 );
+		final AffineRandomAccessible< RealLocalizable, AffineGet > accessible = new AffineRandomAccessible< RealLocalizable, AffineGet >( new PositionRandomAccessible(), affine );
+		final AffineRandomAccessible< RealLocalizable, AffineGet >.AffineRandomAccess a = accessible.randomAccess();
+		final Point p = new Point( 3 );
+
+		for ( int i = 0; i < 20000; ++i )
+		{
+			final int d = rnd.nextInt( 3 );
+			final long[] pos = new long[] { rnd.nextInt( 200 ) - 100, rnd.nextInt( 200 ) - 100, rnd.nextInt( 200 ) - 100 };
+			switch ( rnd.nextInt( 8 ) )
+			{
+			case 0:
+				a.fwd( d );
+				p.fwd( d );
+				break;
+			case 1:
+				a.bck( d );
+				p.bck( d );
+				break;
+			case 2:
+				a.move( pos[ d ], d );
+				p.move( pos[ d ], d );
+				break;
+			case 3:
+				a.move( new int[] { 1, -2, 3 } );
+				p.move( new int[] { 1, -2, 3 } );
+				break;
+			case 4:
+				a.setPosition( pos );
+				p.setPosition( pos );
+				break;
+			case 5:
+				a.setPosition( pos[ d ], d );
+				p.setPosition( pos[ d ], d );
+				break;
+			case 6:
+				a.setPosition( new Point( pos ) );
+				p.setPosition( pos );
+				break;
+			default:
+				a.move( new Point( new long[] { -1, 0, 2 } ) );
+				p.move( new long[] { -1, 0, 2 } );
+			}
+			for ( int e = 0; e < 3; ++e )
+				Assert.assertEquals( p.getLongPosition( e ), a.getLongPosition( e ) );
+			assertTransformed( affine, p, a.get() );
+		}
+
+		final AffineRandomAccessible< RealLocalizable, AffineGet >.AffineRandomAccess b = a.copyRandomAccess();
+		b.fwd( 0 );
+		p.fwd( 0 );
+		assertTransformed( affine, p, b.get() );
+	}
+
+	@Test
+	public void testSetPositionIndependentOfHistory()
+	{
+		final AffineTransform3D affine = new AffineTransform3D();
+		affine.set(
+				0.1, 0.0, 0.0, 0.0,
+				0.0, 0.3, 0.01, 0.0,
+				0.0, 0.0, 0.7, 0.1 );
+		final AffineRandomAccessible< RealLocalizable, AffineGet > accessible = new AffineRandomAccessible< RealLocalizable, AffineGet >( new PositionRandomAccessible(), affine );
+		final AffineRandomAccessible< RealLocalizable, AffineGet >.AffineRandomAccess walked = accessible.randomAccess();
+
+		for ( int i = 0; i < 1000; ++i )
+		{
+			// wander off by unit steps and moves
+			for ( int j = 0; j < 10; ++j )
+			{
+				final int d = rnd.nextInt( 3 );
+				if ( rnd.nextBoolean() )
+					walked.fwd( d );
+				else
+					walked.move( rnd.nextInt( 7 ) - 3, d );
+			}
+
+			final long[] pos = new long[] { rnd.nextInt( 40 ) - 20, rnd.nextInt( 40 ) - 20, rnd.nextInt( 40 ) - 20 };
+			final AffineRandomAccessible< RealLocalizable, AffineGet >.AffineRandomAccess fresh = accessible.randomAccess();
+			fresh.setPosition( pos );
+			switch ( i % 4 )
+			{
+			case 0:
+				walked.setPosition( pos );
+				break;
+			case 1:
+				walked.setPosition( new int[] { ( int ) pos[ 0 ], ( int ) pos[ 1 ], ( int ) pos[ 2 ] } );
+				break;
+			case 2:
+				walked.setPosition( new Point( pos ) );
+				break;
+			default:
+				for ( int d = 0; d < 3; ++d )
+					walked.setPosition( pos[ d ], d );
+			}
+			for ( int d = 0; d < 3; ++d )
+				Assert.assertEquals( fresh.get().getDoublePosition( d ), walked.get().getDoublePosition( d ), 0 );
+		}
+	}
+}
@@ -0,0 +1,255 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.realtransform;
+
+import java.util.Random;
+
+import net.imglib2.RealLocalizable;
+import net.imglib2.RealPositionable;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Compares batched coordinate transformation with point by point
+ * application.
+ */
+public class BatchRealTransformsTest
+{
+	final static Random rnd = new Random( 0 );
+
+	final static int numPoints = 1000;
+
+	final static double EPS = 1e-10;
+
+	/**
+	 * A plain {@link RealTransform} that is not a {@link BatchRealTransform}
+	 * and drops the last dimension.
+	 */
+	final static class Projection implements RealTransform
+	{
+		final int n;
+
+		Projection( final int n )
+		{
+			this.n = n;
+		}
+
+		@Override
+		public int numSourceDimensions()
+		{
+			return n;
+		}
+
+		@Override
+		public int numTargetDimensions()
+		{
+			return n - 1;
+		}
+
+		@Override
+		public void apply( final double[] source, final double[] target )
+		{
+			for ( int d = 0; d < n - 1; ++d )
+				target[ d ] = source[ d ] + source[ n - 1 ];
+		}
+
+		@Override
+		public void apply( final float[] source, final float[] target )
+		{
+			for ( int d = 0; d < n - 1; ++d )
+				target[ d ] = source[ d ] + source[ n - 1 ];
+		}
+
+		@Override
+		public void apply( final RealLocalizable source, final RealPositionable target )
+		{
+			for ( int d = 0; d < n - 1; ++d )
+				target.setPosition( source.getDoublePosition( d ) + source.getDoublePosition( n - 1 ), d );
+		}
+
+		@Override
+		public RealTransform copy()
+		{
+			return this;
+		}
+	}
+
+	final static double[] random( final int size )
+	{
+		final double[] x = new double[ size ];
+		for ( int i = 0; i < size; ++i )
+			x[ i ] = rnd.nextDouble() * 2 - 1;
+		return x;
+	}
+
+	final static AffineTransform3D randomAffine3D()
+	{
+		final AffineTransform3D affine = new AffineTransform3D();
+		affine.set( random( 12 ) );
+		return affine;
+	}
+
+	final static double[][] toSoA( final double[] interleaved, final int n, final int numPoints )
+	{
+		final double[][] soa = new double[ n ][ numPoints ];
+		for ( int i = 0; i < numPoints; ++i )
+			for ( int d = 0; d < n; ++d )
+				soa[ d ][ i ] = interleaved[ i * n + d ];
+		return soa;
+	}
+
+	final static void check( final RealTransform transform )
+	{
+		final int n = transform.numSourceDimensions();
+		final int m = transform.numTargetDimensions();
+		final double[] source = random( n * numPoints );
+		final double[] expected = new double[ m * numPoints ];
+		BatchRealTransforms.applyPointwise( transform, source, expected, numPoints );
+
+		final double[] target = new double[ m * numPoints ];
+		BatchRealTransforms.apply( transform, source, target, numPoints );
+		Assert.assertArrayEquals( expected, target, EPS );
+
+		final double[][] soaSource = toSoA( source, n, numPoints );
+		final double[][] soaTarget = new double[ m ][ numPoints ];
+		BatchRealTransforms.apply( transform, soaSource, soaTarget, numPoints );
+		final double[][] soaExpected = toSoA( expected, m, numPoints );
+		for ( int d = 0; d < m; ++d )
+			Assert.assertArrayEquals( soaExpected[ d ], soaTarget[ d ], EPS );
+
+		if ( n == m )
+		{
+			BatchRealTransforms.apply( transform, source, source, numPoints );
+			Assert.assertArrayEquals( expected, source, EPS );
+
+			BatchRealTransforms.apply( transform, soaSource, soaSource, numPoints );
+			for ( int d = 0; d < m; ++d )
+				Assert.assertArrayEquals( soaExpected[ d ], soaSource[ d ], EPS );
+		}
+	}
+
+	@Test
+	public void testAffineTransform2D()
+	{
+		final AffineTransform2D affine = new AffineTransform2D();
+		affine.set( random( 6 ) );
+		check( affine );
+	}
+
+	@Test
+	public void testAffineTransform3D()
+	{
+		check( randomAffine3D() );
+	}
+
+	@Test
+	public void testAffineTransform()
+	{
+		final AffineTransform affine = new AffineTransform( 4 );
+		affine.set( random( 20 ) );
+		check( affine );
+	}
+
+	@Test
+	public void testScaleAndTranslation()
+	{
+		check( new Scale( random( 4 ) ) );
+		check( new Scale3D( random( 3 ) ) );
+		check( new Translation3D( random( 3 ) ) );
+		check( new Translation2D( random( 2 ) ) );
+	}
+
+	@Test
+	public void testPlainRealTransform()
+	{
+		check( new Projection( 3 ) );
+	}
+
+	@Test
+	public void testConcatenateAffine()
+	{
+		final AffineTransform3D a1 = randomAffine3D();
+		final AffineTransform3D a2 = randomAffine3D();
+		final AffineTransform3D a21 = a1.copy();
+		a21.preConcatenate( a2 );
+
+		final double[] m21 = BatchRealTransforms.concatenateAffine( a2.getRowPackedCopy(), a1.getRowPackedCopy(), 3 );
+		Assert.assertArrayEquals( a21.getRowPackedCopy(), m21, EPS );
+	}
+
+	@Test
+	public void testFusedSequence()
+	{
+		final RealTransformSequence sequence = new RealTransformSequence();
+		sequence.add( randomAffine3D() );
+		sequence.add( new Scale3D( 0.5, 2, 3 ) );
+		sequence.add( new Translation3D( 1, 2, 3 ) );
+		sequence.add( new Projection( 3 ).copy() );
+		check( sequence );
+
+		final InvertibleRealTransformSequence invertible = new InvertibleRealTransformSequence();
+		invertible.add( randomAffine3D() );
+		invertible.add( new Translation3D( 1, 2, 3 ) );
+		invertible.add( randomAffine3D() );
+		check( invertible );
+	}
+
+	@Test
+	public void testMixedSequence()
+	{
+		final RealTransformSequence sequence = new RealTransformSequence();
+		sequence.add( new Translation3D( -1, 2, -3 ) );
+		sequence.add( new Projection( 3 ) );
+		sequence.add( new Scale2D( 2, 3 ) );
+		check( sequence );
+	}
+
+	@Test
+	public void testFusionUsesCurrentState()
+	{
+		final AffineTransform3D a1 = randomAffine3D();
+		final AffineTransform3D a2 = randomAffine3D();
+		final RealTransformSequence sequence = new RealTransformSequence();
+		sequence.add( a1 );
+		sequence.add( a2 );
+		check( sequence );
+		a1.set( random( 12 ) );
+		check( sequence );
+	}
+}
@@ -38,6 +38,7 @@
 package net.imglib2.ui;
 
 import java.awt.Graphics;
+import java.util.Arrays;
 
 import net.imglib2.Interval;
 import net.imglib2.display.ARGBScreenImage;
@@ -74,6 +75,12 @@ public abstract class AbstractInteractiveViewer3D< T extends NumericType< T > >
 	 */
 	final protected AffineTransform3D sourceToScreen = new AffineTransform3D();
 
+	/**
+	 * {@link #sourceToScreen} of the previous {@link #drawScreenImage()}, used
+	 * to decide whether a volatile projector has to re-map everything.
+	 */
+	protected double[] lastSourceToScreen = null;
+
 	/**
 	 * Currently active projector, used to re-paint the display. It maps the
 	 * {@link #source} data to {@link #screenImage}.
@@ -117,11 +124,24 @@ public abstract class AbstractInteractiveViewer3D< T extends NumericType< T > >
 			sourceToScreen.set( viewerTransform );
 		}
 		sourceToScreen.concatenate( sourceTransform );
-		projector.map();
 		if ( VolatileXYRandomAccessibleProjector.class.isInstance( projector ) )
-			return ( ( VolatileXYRandomAccessibleProjector< ?, ?, ? > )projector ).isValid();
-		else
-			return true;
+		{
+			/*
+			 * re-map only tiles that were pending in the previous pass unless
+			 * the transformation changed
+			 */
+			final VolatileXYRandomAccessibleProjector< ?, ?, ? > volatileProjector = ( VolatileXYRandomAccessibleProjector< ?, ?, ? > )projector;
+			final double[] m = sourceToScreen.getRowPackedCopy();
+			if ( !Arrays.equals( m, lastSourceToScreen ) )
+			{
+				volatileProjector.invalidateAll();
+				lastSourceToScreen = m;
+			}
+			volatileProjector.mapInvalid();
+			return volatileProjector.isValid();
+		}
+		projector.map();
+		return true;
 	}
 
 	@Override
@@ -0,0 +1,190 @@
+/*
+ * #%L
+ * ImgLib2: a general-purpose, multidimensional image processing library.
+ * %%
+ * Copyright (C) 2009 - 2013 Stephan Preibisch, Tobias Pietzsch, Barry DeZonia,
+ * Stephan Saalfeld, Albert Cardona, Curtis Rueden, Christian Dietz, Jean-Yves
+ * Tinevez, Johannes Schindelin, Lee Kamentsky, Larry Lindsey, Grant Harris,
+ * Mark Hiner, Aivar Grislis, Martin Horn, Nick Perry, Michael Zinsmaier,
+ * Steffen Jaensch, Jan Funke, Mark Longair, and Dimiter Prodanov.
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * 
+ * The views and conclusions contained in the software and documentation are
+ * those of the authors and should not be interpreted as representing official
+ * policies, either expressed or implied, of any organization.
+ * #L%
+ */
+
+package net.imglib2.ui;
+
+import java.awt.event.KeyEvent;
+import java.awt.event.KeyListener;
+
+import net.imglib2.RandomAccessible;
+import net.imglib2.converter.Converter;
+import net.imglib2.display.XYRandomAccessibleProjector;
+import net.imglib2.interpolation.Interpolant;
+import net.imglib2.interpolation.InterpolatorFactory;
+import net.imglib2.interpolation.randomaccess.NLinearInterpolatorFactory;
+import net.imglib2.interpolation.randomaccess.NearestNeighborInterpolatorFactory;
+import net.imglib2.pyramid.Pyramid;
+import net.imglib2.realtransform.AffineGet;
+import net.imglib2.realtransform.AffineRandomAccessible;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.view.Views;
+
+/**
+ * Interactive viewer for a {@link Pyramid}.  Each repaint reads from the
+ * coarsest {@link Pyramid#bestLevel(double) level} that still provides the
+ * resolution of the current zoom, such that zoomed out views do not touch
+ * the full resolution data.
+ *
+ * @param <T>
+ */
+public class InteractivePyramidViewer3D< T extends RealType< T > > extends AbstractInteractiveViewer3D< T >
+{
+	/**
+	 * The {@link Pyramid} to display
+	 */
+	final protected Pyramid< T > pyramid;
+
+	/**
+	 * Converts pyramid type T to ARGBType for display
+	 */
+	final protected Converter< ? super T, ARGBType > converter;
+
+	/**
+	 * Transformation from {@link #currentLevel} to {@link #screenImage}.
+	 */
+	final protected AffineTransform3D levelToScreen = new AffineTransform3D();
+
+	/**
+	 * The pyramid level that {@link #projector} reads from.
+	 */
+	protected int currentLevel = 0;
+
+	protected int interpolation = 0;
+
+	public InteractivePyramidViewer3D( final int width, final int height, final Pyramid< T > pyramid, final Converter< ? super T, ARGBType > converter )
+	{
+		this( width, height, pyramid, new AffineTransform3D(), converter, DisplayTypes.DISPLAY_SWING );
+	}
+
+	public InteractivePyramidViewer3D( final int width, final int height, final Pyramid< T > pyramid, final AffineTransform3D sourceTransform, final Converter< ? super T, ARGBType > converter, final DisplayTypes displayType )
+	{
+		super( width, height, pyramid.getLevel( 0 ), sourceTransform, displayType );
+		this.pyramid = pyramid;
+		this.converter = converter;
+		projector = createProjector();
+		display.startPainter();
+
+		// add KeyHandler for toggling interpolation
+		display.addHandler( new KeyListener() {
+			@Override
+			public void keyPressed( final KeyEvent e )
+			{
+				if ( e.getKeyCode() == KeyEvent.VK_I )
+					toggleInterpolation();
+			}
+
+			@Override
+			public void keyTyped( final KeyEvent e ) {}
+
+			@Override
+			public void keyReleased( final KeyEvent e ) {}
+		});
+	}
+
+	protected void toggleInterpolation()
+	{
+		++interpolation;
+		interpolation %= 2;
+		projector = createProjector();
+		display.requestRepaint();
+	}
+
+	/**
+	 * @return screen pixels per source pixel of a 3d affine transformation.
+	 */
+	public static double scale( final AffineTransform3D transform )
+	{
+		final double det =
+				transform.get( 0, 0 ) * ( transform.get( 1, 1 ) * transform.get( 2, 2 ) - transform.get( 1, 2 ) * transform.get( 2, 1 ) ) -
+				transform.get( 0, 1 ) * ( transform.get( 1, 0 ) * transform.get( 2, 2 ) - transform.get( 1, 2 ) * transform.get( 2, 0 ) ) +
+				transform.get( 0, 2 ) * ( transform.get( 1, 0 ) * transform.get( 2, 1 ) - transform.get( 1, 1 ) * transform.get( 2, 0 ) );
+		return Math.cbrt( Math.abs( det ) );
+	}
+
+	@Override
+	public boolean drawScreenImage()
+	{
+		synchronized( viewerTransform )
+		{
+			sourceToScreen.set( viewerTransform );
+		}
+		sourceToScreen.concatenate( sourceTransform );
+
+		final int level = pyramid.bestLevel( scale( sourceToScreen ) );
+		if ( level != currentLevel )
+		{
+			currentLevel = level;
+			projector = createProjector();
+		}
+
+		/* level pixel p is centered at source coordinate f * p + ( f - 1 ) / 2 */
+		final double f = pyramid.getFactor( currentLevel );
+		final double o = 0.5 * ( f - 1 );
+		final AffineTransform3D levelToSource = new AffineTransform3D();
+		levelToSource.set(
+				f, 0, 0, o,
+				0, f, 0, o,
+				0, 0, f, o );
+		levelToScreen.set( sourceToScreen );
+		levelToScreen.concatenate( levelToSource );
+
+		projector.map();
+		return true;
+	}
+
+	@Override
+	protected XYRandomAccessibleProjector< T, ARGBType > createProjector()
+	{
+		final InterpolatorFactory< T, RandomAccessible< T > > interpolatorFactory;
+		switch ( interpolation )
+		{
+		case 0:
+			interpolatorFactory = new NearestNeighborInterpolatorFactory< T >();
+			break;
+		case 1:
+		default:
+			interpolatorFactory = new NLinearInterpolatorFactory< T >();
+			break;
+		}
+		final RandomAccessible< T > source = Views.extendZero( pyramid.getLevel( currentLevel ) );
+		final Interpolant< T, RandomAccessible< T > > interpolant = new Interpolant< T, RandomAccessible< T > >( source, interpolatorFactory );
+		final AffineRandomAccessible< T, AffineGet > mapping = new AffineRandomAccessible< T, AffineGet >( interpolant, levelToScreen.inverse() );
+		return new XYRandomAccessibleProjector< T, ARGBType >( mapping, screenImage, converter );
+	}
+}